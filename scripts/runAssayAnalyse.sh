@@ -10,6 +10,12 @@ PROJECT_ACCESSION=""
 # (required) the assay accession
 ASSAY_ACCESSION=""
 
+# (optional) number of workers used to process the PSMs
+PSM_WORKERS=1
+
+# (optional) job used to analyse the assay, the chunk job uses less memory for large assays
+JOB_BEAN_NAME="analyzeAssayInformationJob"
+
 ##### VARIABLES
 # the name to give to the LSF job (to be extended with additional info)
 JOB_NAME="assay_analyse"
@@ -29,10 +35,12 @@ printUsage() {
     echo "Description: In the revised archive pipeline, this will analyse the assay and calculate the assay statistics"
     echo "$ ./scripts/runAssayAnalyse.sh"
     echo ""
-    echo "Usage: ./runAssayAnalyse.sh -a|--accession -s|--assay_accession [-e|--email]"
+    echo "Usage: ./runAssayAnalyse.sh -a|--accession -s|--assay_accession [-w|--workers] [-c|--chunk] [-e|--email]"
     echo "     Example: ./runAssayAnalyse.sh -a PXD011181 -s 99258"
     echo "     (required) accession         : the project accession"
     echo "     (required) assay_accession   : the assay accession"
+    echo "     (optional) workers           : number of workers used to process the PSMs (default 1)"
+    echo "     (optional) chunk             : process the PSMs and proteins in chunks (analyzeAssayInformationChunkJob), for large assays"
     echo "     (optional) email             :  Email to send LSF notification"
 }
 
@@ -47,6 +55,13 @@ while [ "$1" != "" ]; do
         shift
         ASSAY_ACCESSION=$1
         ;;
+      "-w" | "--workers")
+        shift
+        PSM_WORKERS=$1
+        ;;
+      "-c" | "--chunk")
+        JOB_BEAN_NAME="analyzeAssayInformationChunkJob"
+        ;;
     esac
     shift
 done
@@ -75,8 +90,9 @@ cd ${0%/*}
 #### RUN it on the production queue #####
 bsub -M ${MEMORY_LIMIT} \
      -R \"rusage[mem=${MEMORY_LIMIT}]\" \
+     -n ${PSM_WORKERS} \
      -q research-rh74 \
      -g /pride/analyze_assays \
      -u ${JOB_EMAIL} \
      -J ${JOB_NAME} \
-     ./runPipelineInJava.sh ${LOG_PATH} ${LOG_FILE_NAME} ${MEMORY_LIMIT_JAVA}m -jar revised-archive-submission-pipeline.jar --spring.batch.job.names=analyzeAssayInformationJob project=${PROJECT_ACCESSION} assay=${ASSAY_ACCESSION}
\ No newline at end of file
+     ./runPipelineInJava.sh ${LOG_PATH} ${LOG_FILE_NAME} ${MEMORY_LIMIT_JAVA}m -jar revised-archive-submission-pipeline.jar --spring.batch.job.names=${JOB_BEAN_NAME} project=${PROJECT_ACCESSION} assay=${ASSAY_ACCESSION} --psmProcessingWorkers=${PSM_WORKERS}
\ No newline at end of file
@@ -0,0 +1,89 @@
+#!/usr/bin/env bash
+
+# Load environment (and make the bsub command available)
+. /etc/profile.d/lsf.sh
+
+##### OPTIONS
+# (optional) number of assays analysed at the same time by the worker
+SLOTS=1
+
+# (optional) memory reserved for each assay in MB
+ASSAY_MEMORY=4096
+
+# (optional) worker id, each worker running at the same time needs its own id
+WORKER_ID=""
+
+##### VARIABLES
+# the name to give to the LSF job (to be extended with additional info)
+JOB_NAME="assay_analysis_worker"
+# memory limit
+MEMORY_LIMIT=6000
+# memory overhead
+MEMORY_OVERHEAD=1000
+# LSF email notification
+JOB_EMAIL="pride-report@ebi.ac.uk"
+# Log file path
+LOG_PATH="./log/${JOB_NAME}/"
+# Log file name
+LOG_FILE_NAME=""
+
+##### FUNCTIONS
+printUsage() {
+    echo "Description: In the revised archive pipeline, this will start a worker that analyses the assays of the assay analysis queue until it is stopped (bkill sends SIGTERM, the running assays are finished)"
+    echo "$ ./scripts/runAssayAnalysisWorker.sh"
+    echo ""
+    echo "Usage: ./runAssayAnalysisWorker.sh [-s|--slots] [-m|--memory] [-am|--assay_memory] [-i|--id]"
+    echo "     Example: ./runAssayAnalysisWorker.sh -s 2 -m 12000 -i worker-1"
+    echo "     (optional) slots             : number of assays analysed at the same time (default 1)"
+    echo "     (optional) memory            : memory limit of the worker in MB (default 6000)"
+    echo "     (optional) assay_memory      : memory reserved for each assay in MB (default 4096)"
+    echo "     (optional) id                : worker id (default the host name)"
+}
+
+##### PARSE the provided parameters
+while [ "$1" != "" ]; do
+    case $1 in
+      "-s" | "--slots")
+        shift
+        SLOTS=$1
+        ;;
+      "-m" | "--memory")
+        shift
+        MEMORY_LIMIT=$1
+        ;;
+      "-am" | "--assay_memory")
+        shift
+        ASSAY_MEMORY=$1
+        ;;
+      "-i" | "--id")
+        shift
+        WORKER_ID=$1
+        ;;
+      "-h" | "--help")
+        printUsage
+        exit 0
+        ;;
+    esac
+    shift
+done
+
+##### Set variables
+if [ -n "${WORKER_ID}" ]; then
+    JOB_NAME="${JOB_NAME}-${WORKER_ID}"
+fi
+DATE=$(date +"%Y%m%d%H%M")
+LOG_FILE_NAME="${JOB_NAME}-${DATE}.log"
+MEMORY_LIMIT_JAVA=$((MEMORY_LIMIT-MEMORY_OVERHEAD))
+
+##### Change directory to where the script locate
+cd ${0%/*}
+
+#### RUN it on the production queue #####
+bsub -M ${MEMORY_LIMIT} \
+     -R \"rusage[mem=${MEMORY_LIMIT}]\" \
+     -n ${SLOTS} \
+     -q research-rh74 \
+     -g /pride/analyze_assays \
+     -u ${JOB_EMAIL} \
+     -J ${JOB_NAME} \
+     ./runPipelineInJava.sh ${LOG_PATH} ${LOG_FILE_NAME} ${MEMORY_LIMIT_JAVA}m -jar revised-archive-submission-pipeline.jar --spring.batch.job.enabled=false --assay.worker.enabled=true --assay.worker.slots=${SLOTS} --assay.worker.assayMemory=${ASSAY_MEMORY} --assay.worker.id=${WORKER_ID}
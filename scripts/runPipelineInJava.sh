@@ -27,10 +27,36 @@ LOG_FILE_FULL_PATH="${curdir}${LOG_FILE_LOCAL}"
 #filebeat_pid=$!
 ## ---- filebeat end ---
 
-${JAVA_DIR}java -Xmx${MEMORY_LIMIT} ${PIPELINE_JOB_PARAMETERS} > ${LOG_FILE_LOCAL} 2>&1
+# the performance report of the job is written next to its log
+RUN_START_MARKER=$(mktemp)
+${JAVA_DIR}java -Xmx${MEMORY_LIMIT} ${PIPELINE_JOB_PARAMETERS} --performance.report.dir=${LOG_PATH} > ${LOG_FILE_LOCAL} 2>&1
 
 CODE=$?
 
+JAR_FILE=$(echo ${PIPELINE_JOB_PARAMETERS} | sed -n 's/.*-jar \([^ ]*\).*/\1/p')
+
+# print the time by phase of the JFR recording of the job, if it was launched with the profile job parameter
+PROFILE_RECORDING=$(find ${LOG_PATH} -maxdepth 1 -name '*.jfr' -newer ${RUN_START_MARKER} | head -1)
+if [ -n "${PROFILE_RECORDING}" ] && [ -n "${JAR_FILE}" ]; then
+    ${JAVA_DIR}java -cp ${JAR_FILE} -Dloader.main=uk.ac.ebi.pride.archive.pipeline.metrics.JfrPhaseSummary \
+        org.springframework.boot.loader.PropertiesLauncher ${PROFILE_RECORDING} >> ${LOG_FILE_LOCAL} 2>&1
+fi
+
+# compare the performance report with the baselines of the job, if PERFORMANCE_BASELINE_DIR is set
+PERFORMANCE_MSG=""
+if [ -n "${PERFORMANCE_BASELINE_DIR}" ]; then
+    PERFORMANCE_REPORT=$(find ${LOG_PATH} -maxdepth 1 -name '*.perf.json' -newer ${RUN_START_MARKER} | head -1)
+    if [ -n "${PERFORMANCE_REPORT}" ] && [ -n "${JAR_FILE}" ]; then
+        ${JAVA_DIR}java -cp ${JAR_FILE} -Dloader.main=uk.ac.ebi.pride.archive.pipeline.metrics.PerformanceReportComparator \
+            org.springframework.boot.loader.PropertiesLauncher ${PERFORMANCE_REPORT} ${PERFORMANCE_BASELINE_DIR} \
+            --save-baseline >> ${LOG_FILE_LOCAL} 2>&1
+        if [ $? -eq 2 ]; then
+            PERFORMANCE_MSG=" \n *PERFORMANCE REGRESSION*: see _${PERFORMANCE_REPORT}_"
+        fi
+    fi
+fi
+rm -f ${RUN_START_MARKER}
+
 while [ "$#" -gt 0 ]; do
   case "$1" in
     --spring.batch.job.names=*) job_name="${1#*=}"; shift 1;;
@@ -48,7 +74,7 @@ else
      slack_url=$SLACK_ERROR_REPORT_URL
 fi
 
-MSG="${MSG} \n (${PIPELINE_JOB_PARAMETERS}) \n LOG: _${LOG_FILE_FULL_PATH}_ \n ------------------------------------------------------------------------------ "
+MSG="${MSG}${PERFORMANCE_MSG} \n (${PIPELINE_JOB_PARAMETERS}) \n LOG: _${LOG_FILE_FULL_PATH}_ \n ------------------------------------------------------------------------------ "
 
 curl -X POST --data-urlencode "payload={ \"text\": \"$MSG\"}" $slack_url || true
 
@@ -0,0 +1,108 @@
+package uk.ac.ebi.pride.archive.pipeline.configuration;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import uk.ac.ebi.pride.archive.pipeline.services.redis.RedisAssayAnalysisQueue;
+import uk.ac.ebi.pride.archive.pipeline.services.worker.AssayAnalysisRunner;
+import uk.ac.ebi.pride.archive.pipeline.services.worker.AssayAnalysisWorker;
+import uk.ac.ebi.pride.archive.pipeline.services.worker.BatchJobAssayAnalysisRunner;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Worker mode of the pipeline: instead of running one job and exiting, the application consumes the assay analysis
+ * queue ({@code redis.assay.analyse.queue}) and analyses the assays until it is stopped (SIGTERM). It is enabled
+ * with {@code --assay.worker.enabled=true}, together with {@code --spring.batch.job.enabled=false} so no job is run
+ * at startup (see runAssayAnalysisWorker.sh).
+ */
+@Configuration
+@Slf4j
+@ConditionalOnProperty(name = "assay.worker.enabled", havingValue = "true")
+@Import({ArchiveRedisConfig.class})
+public class AssayAnalysisWorkerConfig {
+
+    @Autowired
+    RedisConnectionFactory connectionFactory;
+
+    @Autowired
+    JobLauncher jobLauncher;
+
+    @Autowired
+    @Qualifier("analyzeAssayInformationJob")
+    Job analyzeAssayInformationJob;
+
+    @Value("${redis.assay.analyse.queue}")
+    private String redisQueueName;
+
+    /**
+     * Identifier of the worker, the name of the host by default. Each worker running at the same time needs its own id.
+     **/
+    @Value("${assay.worker.id:}")
+    private String workerId;
+
+    /**
+     * Number of assays analysed at the same time.
+     **/
+    @Value("${assay.worker.slots:#{1}}")
+    private Integer slots;
+
+    /**
+     * Memory in MB available for the analyses (80% of the maximum heap if 0) and memory in MB reserved for each assay.
+     **/
+    @Value("${assay.worker.memoryBudget:#{0}}")
+    private Integer memoryBudget;
+
+    @Value("${assay.worker.assayMemory:#{4096}}")
+    private Integer assayMemory;
+
+    /**
+     * Maximum time in seconds waiting for a message and maximum time in seconds waiting for the running analyses
+     * when the worker is stopped.
+     **/
+    @Value("${assay.worker.pollTimeout:#{1}}")
+    private Long pollTimeout;
+
+    @Value("${assay.worker.shutdownTimeout:#{7200}}")
+    private Long shutdownTimeout;
+
+    @Bean
+    public AssayAnalysisRunner assayAnalysisRunner() {
+        return new BatchJobAssayAnalysisRunner(jobLauncher, analyzeAssayInformationJob);
+    }
+
+    @Bean(destroyMethod = "stop")
+    public AssayAnalysisWorker assayAnalysisWorker(AssayAnalysisRunner assayAnalysisRunner) throws UnknownHostException {
+        String id = (workerId != null && !workerId.trim().isEmpty()) ? workerId
+                : InetAddress.getLocalHost().getHostName();
+        RedisAssayAnalysisQueue queue = new RedisAssayAnalysisQueue(connectionFactory, redisQueueName, id);
+
+        int budget = memoryBudget;
+        if (budget <= 0)
+            budget = (int) (Runtime.getRuntime().maxMemory() / (1024 * 1024) * 8 / 10);
+
+        return new AssayAnalysisWorker(queue, assayAnalysisRunner, slots, budget, assayMemory,
+                pollTimeout, shutdownTimeout);
+    }
+
+    /**
+     * Start the worker and keep the application running until the worker is stopped by the shutdown of the context.
+     */
+    @Bean
+    public ApplicationRunner assayAnalysisWorkerRunner(AssayAnalysisWorker assayAnalysisWorker) {
+        return args -> {
+            assayAnalysisWorker.start();
+            assayAnalysisWorker.awaitTermination();
+        };
+    }
+}
@@ -0,0 +1,108 @@
+package uk.ac.ebi.pride.archive.pipeline.configuration;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.jvm.ClassLoaderMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmGcMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmMemoryMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmThreadMetrics;
+import io.micrometer.core.instrument.binder.system.ProcessorMetrics;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.micrometer.jmx.JmxConfig;
+import io.micrometer.jmx.JmxMeterRegistry;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import uk.ac.ebi.pride.archive.pipeline.metrics.PrometheusTextFileExporter;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Registries of the metrics of the pipeline (see {@link uk.ac.ebi.pride.archive.pipeline.metrics.PipelineMetrics}).
+ * The metrics are kept in a Prometheus registry, exported to a text file if {@code metrics.prometheus.file} is set,
+ * and in a JMX registry, so they can be read with jconsole or any JMX client in the LSF nodes. The registries are
+ * added to the global registry of Micrometer, used by the jobs and the services, together with the JVM memory,
+ * GC, thread and CPU metrics.
+ *
+ * The configuration is imported by {@link uk.ac.ebi.pride.archive.pipeline.jobs.AbstractArchiveJob}.
+ */
+@Configuration
+@Slf4j
+public class PipelineMetricsConfig {
+
+    @Value("${metrics.prometheus.file:#{null}}")
+    private String prometheusFile;
+
+    @Value("${metrics.prometheus.interval:#{60000}}")
+    private Long prometheusInterval;
+
+    @Value("${metrics.jmx.enabled:#{true}}")
+    private Boolean jmxEnabled;
+
+    @Value("${metrics.jmx.domain:pride.pipeline}")
+    private String jmxDomain;
+
+    @Bean
+    public PrometheusMeterRegistry prometheusMeterRegistry() {
+        return new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+    }
+
+    @Bean(destroyMethod = "close")
+    public MeterRegistry pipelineMeterRegistry(PrometheusMeterRegistry prometheusMeterRegistry) {
+        CompositeMeterRegistry registry = new CompositeMeterRegistry();
+        registry.add(prometheusMeterRegistry);
+        if (jmxEnabled) {
+            registry.add(new JmxMeterRegistry(new JmxConfig() {
+                @Override
+                public String get(String key) {
+                    return null;
+                }
+
+                @Override
+                public String domain() {
+                    return jmxDomain;
+                }
+            }, Clock.SYSTEM));
+        }
+        registry.config().commonTags("host", getHostName());
+
+        new JvmMemoryMetrics().bindTo(registry);
+        new JvmThreadMetrics().bindTo(registry);
+        new ClassLoaderMetrics().bindTo(registry);
+        new ProcessorMetrics().bindTo(registry);
+        Metrics.addRegistry(registry);
+        return registry;
+    }
+
+    @Bean(destroyMethod = "close")
+    public JvmGcMetrics jvmGcMetrics(MeterRegistry pipelineMeterRegistry) {
+        JvmGcMetrics gcMetrics = new JvmGcMetrics();
+        gcMetrics.bindTo(pipelineMeterRegistry);
+        return gcMetrics;
+    }
+
+    /**
+     * Exporter of the Prometheus text file, only created if {@code metrics.prometheus.file} is set.
+     */
+    @Bean(destroyMethod = "close")
+    public PrometheusTextFileExporter prometheusTextFileExporter(PrometheusMeterRegistry prometheusMeterRegistry) {
+        if (prometheusFile == null || prometheusFile.trim().isEmpty())
+            return null;
+        return new PrometheusTextFileExporter(prometheusMeterRegistry, new File(prometheusFile.trim()), prometheusInterval);
+    }
+
+    private static String getHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            log.warn("The host name can't be resolved -- " + e.getMessage());
+            return "unknown";
+        }
+    }
+}
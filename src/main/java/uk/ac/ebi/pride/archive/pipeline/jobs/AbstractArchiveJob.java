@@ -4,10 +4,22 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.configuration.annotation.EnableBatchProcessing;
 import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
 import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+import org.springframework.core.env.Environment;
+import uk.ac.ebi.pride.archive.pipeline.configuration.PipelineMetricsConfig;
+import uk.ac.ebi.pride.archive.pipeline.listeners.BatchMetricsListener;
+import uk.ac.ebi.pride.archive.pipeline.listeners.BatchMetricsListenerRegistrar;
+import uk.ac.ebi.pride.archive.pipeline.listeners.JfrRecordingListener;
+import uk.ac.ebi.pride.archive.pipeline.listeners.PerformanceReportListener;
+import uk.ac.ebi.pride.archive.pipeline.metrics.DependencyTimingPostProcessor;
+import uk.ac.ebi.pride.archive.pipeline.metrics.PrometheusTextFileExporter;
+
+import java.io.File;
 
 /**
  * This code is licensed under the Apache License, Version 2.0 (the
@@ -19,7 +31,8 @@ import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
  * ==Overview==
  * <p>
  *
- * This class create the default Job and Step handler for every job.
+ * This class create the default Job and Step handler for every job. The metrics of the jobs, the steps and the calls
+ * to MongoDB, Solr and Oracle are recorded for every job (see {@link PipelineMetricsConfig}).
  *
  * <p>
  * Created by ypriverol (ypriverol@gmail.com) on 05/06/2018.
@@ -27,6 +40,7 @@ import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
 @Configuration
 @Slf4j
 @EnableBatchProcessing
+@Import(PipelineMetricsConfig.class)
 public class AbstractArchiveJob{
 
     @SuppressWarnings("SpringJavaAutowiredFieldsWarningInspection")
@@ -42,4 +56,25 @@ public class AbstractArchiveJob{
         return new PropertySourcesPlaceholderConfigurer();
     }
 
+    /**
+     * Metrics, performance report and JFR recording listeners of all the jobs. The performance reports and the JFR
+     * recordings of the jobs launched with the job parameter {@code profile} are written in
+     * {@code performance.report.dir}, the log directory of the job in the LSF scripts.
+     */
+    @Bean
+    public static BatchMetricsListenerRegistrar batchMetricsListenerRegistrar(
+            ObjectProvider<PrometheusTextFileExporter> prometheusTextFileExporter, Environment environment) {
+        String reportDirectory = environment.getProperty("performance.report.dir", "./performance").trim();
+        File directory = reportDirectory.isEmpty() ? null : new File(reportDirectory);
+        return new BatchMetricsListenerRegistrar(
+                new BatchMetricsListener(prometheusTextFileExporter::getIfAvailable),
+                new PerformanceReportListener(directory),
+                new JfrRecordingListener(directory));
+    }
+
+    @Bean
+    public static DependencyTimingPostProcessor dependencyTimingPostProcessor() {
+        return new DependencyTimingPostProcessor();
+    }
+
 }
@@ -10,11 +10,17 @@ import org.springframework.batch.core.scope.context.ChunkContext;
 import org.springframework.batch.core.step.tasklet.Tasklet;
 import org.springframework.batch.repeat.RepeatStatus;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoTemplate;
 import uk.ac.ebi.pride.archive.pipeline.jobs.AbstractArchiveJob;
+import uk.ac.ebi.pride.archive.pipeline.metrics.PipelineMetrics;
+import uk.ac.ebi.pride.archive.pipeline.services.backup.RestoreCheckpoint;
+import uk.ac.ebi.pride.archive.pipeline.services.molecules.AssayAnalysisSettings;
+import uk.ac.ebi.pride.archive.pipeline.services.molecules.BackupRestoreEngine;
 import uk.ac.ebi.pride.archive.pipeline.utility.BackupUtil;
 import uk.ac.ebi.pride.archive.pipeline.utility.SubmissionPipelineConstants;
 import uk.ac.ebi.pride.archive.spectra.configs.AWS3Configuration;
@@ -28,12 +34,12 @@ import uk.ac.ebi.pride.mongodb.molecules.model.psm.PrideMongoPsmSummaryEvidence;
 import uk.ac.ebi.pride.mongodb.molecules.service.molecules.PrideMoleculesMongoService;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
 
 @Configuration
 @Slf4j
@@ -43,6 +49,10 @@ public class PrideAnalyzeAssayFromBackupFiles extends AbstractArchiveJob {
     @Autowired
     PrideMoleculesMongoService moleculesService;
 
+    @Autowired
+    @Qualifier("moleculesMongoTemplate")
+    MongoTemplate moleculesMongoTemplate;
+
     @Autowired
     S3SpectralArchive spectralArchive;
 
@@ -52,19 +62,46 @@ public class PrideAnalyzeAssayFromBackupFiles extends AbstractArchiveJob {
     @Value("${pride.data.backup.path}")
     String backupPath;
 
-    private Map<String, Long> taskTimeMap = new HashMap<>();
+    @Value("${mongoBulkSize:#{1000}}")
+    private Integer mongoBulkSize;
+
+    @Value("${mongoBulkFlushInterval:#{10000}}")
+    private Long mongoBulkFlushInterval;
+
+    @Value("${s3ConcurrentUploads:#{8}}")
+    private Integer s3ConcurrentUploads;
+
+    @Value("${s3UploadQueueSize:#{500}}")
+    private Integer s3UploadQueueSize;
+
+    @Value("${s3UploadProgressInterval:#{60}}")
+    private Long s3UploadProgressInterval;
+
+    /**
+     * Number of backup files restored at the same time, and the checkpoint of the restore of the whole backup
+     * directory (restore-checkpoint.txt in the backup directory if empty). The restore of a project has its own
+     * checkpoint, restore-checkpoint-&lt;project&gt;.txt in the same directory.
+     **/
+    @Value("${restoreConcurrentFiles:#{4}}")
+    private Integer restoreConcurrentFiles;
+
+    @Value("${pride.data.backup.restore.checkpoint:}")
+    private String restoreCheckpointFile;
 
     private String projectAccession;
     private String assayAccession;
+    private String resume;
 
     @Bean
     @StepScope
     public Tasklet initPrideAnalyzeAssayFromBackupFilesJob(@Value("#{jobParameters['project']}") String projectAccession,
-                                                           @Value("#{jobParameters['assay']}") String assayAccession) {
+                                                           @Value("#{jobParameters['assay']}") String assayAccession,
+                                                           @Value("#{jobParameters['resume']}") String resume) {
         return (stepContribution, chunkContext) ->
         {
             this.projectAccession = projectAccession;
             this.assayAccession = assayAccession;
+            this.resume = resume;
             System.out.println(String.format("==================>>>>>>> SolrIndexProteinPeptideJob - Run the job for Project %s", projectAccession));
             return RepeatStatus.FINISHED;
         };
@@ -76,23 +113,12 @@ public class PrideAnalyzeAssayFromBackupFiles extends AbstractArchiveJob {
                 .get(SubmissionPipelineConstants.PrideArchiveJobNames.PRIDE_ANALYZE_ASSAY_FROM_BACKUP_FILES.getName())
                 .start(stepBuilderFactory
                         .get("initPrideAnalyzeAssayFromBackupFilesJob")
-                        .tasklet(initPrideAnalyzeAssayFromBackupFilesJob(null, null))
+                        .tasklet(initPrideAnalyzeAssayFromBackupFilesJob(null, null, null))
                         .build())
                 .next(prideAnalyzeAssayFromBackupFilesStep())
-                .next(prideAnalyzeAssayFromBackupFilesPrintTraceStep())
                 .build();
     }
 
-    @Bean
-    public Step prideAnalyzeAssayFromBackupFilesPrintTraceStep() {
-        return stepBuilderFactory
-                .get("prideAnalyzeAssayFromBackupFilesPrintTraceStep")
-                .tasklet((stepContribution, chunkContext) -> {
-                    taskTimeMap.forEach((key, value) -> log.info("Task: " + key + " Time: " + value));
-                    return RepeatStatus.FINISHED;
-                }).build();
-    }
-
     @Bean
     public Step prideAnalyzeAssayFromBackupFilesStep() {
         return stepBuilderFactory
@@ -104,59 +130,98 @@ public class PrideAnalyzeAssayFromBackupFiles extends AbstractArchiveJob {
                         long tm = System.currentTimeMillis();
 
                         if (projectAccession == null) {
-                            for (Path d : Files.newDirectoryStream(Paths.get(backupPath), path -> path.toFile().isDirectory())) {
-                                for (Path f : Files.newDirectoryStream(d, path -> path.toFile().isFile())) {
-                                    restoreFromFile(f);
+                            // every project of the backup directory
+                            // the restore of the whole directory resumes by default, resume=false starts it again
+                            try (RestoreCheckpoint checkpoint = openCheckpoint(null, !"false".equalsIgnoreCase(resume))) {
+                                BackupRestoreEngine engine = createRestoreEngine(checkpoint);
+                                try (DirectoryStream<Path> projects = Files.newDirectoryStream(Paths.get(backupPath),
+                                        path -> path.toFile().isDirectory())) {
+                                    for (Path d : projects) {
+                                        submitFiles(engine, d);
+                                    }
+                                } catch (Exception e) {
+                                    engine.shutdownNow();
+                                    throw e;
                                 }
+                                awaitRestore(engine);
                             }
                         } else if (assayAccession == null) {
-                            String dir = backupPath.endsWith(File.separator) ? backupPath + projectAccession : backupPath + File.separator + projectAccession;
-                            for (Path f : Files.newDirectoryStream(Paths.get(dir), path -> path.toFile().isFile())) {
-                                restoreFromFile(f);
+                            // a project is restored again by default, resume=true resumes an interrupted restore
+                            try (RestoreCheckpoint checkpoint = openCheckpoint(projectAccession,
+                                    "true".equalsIgnoreCase(resume))) {
+                                BackupRestoreEngine engine = createRestoreEngine(checkpoint);
+                                try {
+                                    submitFiles(engine, Paths.get(backupPath, projectAccession));
+                                } catch (Exception e) {
+                                    engine.shutdownNow();
+                                    throw e;
+                                }
+                                awaitRestore(engine);
                             }
                         } else {
-                            restoreFromFiles(projectAccession, assayAccession);
+                            // a single assay is always restored, without checkpoint
+                            BackupRestoreEngine engine = createRestoreEngine(null);
+                            try {
+                                for (Class<?> type : Arrays.asList(PrideMongoProteinEvidence.class,
+                                        PrideMongoPeptideEvidence.class, PrideMongoPsmSummaryEvidence.class,
+                                        ArchiveSpectrum.class)) {
+                                    engine.submit(Paths.get(BackupUtil.findBackupFile(backupPath, projectAccession,
+                                            assayAccession, type)));
+                                }
+                            } catch (Exception e) {
+                                engine.shutdownNow();
+                                throw e;
+                            }
+                            awaitRestore(engine);
                         }
 
-                        taskTimeMap.put("PrideAnalyzeAssayFromBackupFiles", System.currentTimeMillis() - tm);
+                        PipelineMetrics.recordTask("PrideAnalyzeAssayFromBackupFiles", tm);
 
                         return RepeatStatus.FINISHED;
                     }
                 }).build();
     }
 
-    private void restoreFromFile(Path file) throws Exception {
-        String fileName = file.getFileName().toString();
-        if (fileName.endsWith(PrideMongoPsmSummaryEvidence.class.getSimpleName() + BackupUtil.JSON_EXT)) {
-            List<PrideMongoPsmSummaryEvidence> objs = BackupUtil.getObjectsFromFile(file, PrideMongoPsmSummaryEvidence.class);
-            objs.forEach(o -> moleculesService.savePsmSummaryEvidence(o));
-        } else if (fileName.endsWith(PrideMongoPeptideEvidence.class.getSimpleName() + BackupUtil.JSON_EXT)) {
-            List<PrideMongoPeptideEvidence> objs = BackupUtil.getObjectsFromFile(file, PrideMongoPeptideEvidence.class);
-            objs.forEach(o -> moleculesService.savePeptideEvidence(o));
-        } else if (fileName.endsWith(PrideMongoProteinEvidence.class.getSimpleName() + BackupUtil.JSON_EXT)) {
-            List<PrideMongoProteinEvidence> objs = BackupUtil.getObjectsFromFile(file, PrideMongoProteinEvidence.class);
-            objs.forEach(o -> moleculesService.saveProteinEvidences(o));
-        } else if (fileName.endsWith(ArchiveSpectrum.class.getSimpleName() + BackupUtil.JSON_EXT)) {
-            List<ArchiveSpectrum> objs = BackupUtil.getObjectsFromFile(file, ArchiveSpectrum.class);
-            for (ArchiveSpectrum o : objs) {
-                spectralArchive.writePSM(o.getUsi(), o);
-            }
-        }
+    /**
+     * Open the checkpoint of a scope of restore, each scope has its own file.
+     *
+     * @param projectAccession project restored, null for the whole backup directory
+     * @param resume           false to restore again the files recorded in the checkpoint
+     */
+    private RestoreCheckpoint openCheckpoint(String projectAccession, boolean resume) throws IOException {
+        File file;
+        if (restoreCheckpointFile.isEmpty())
+            file = RestoreCheckpoint.getCheckpointFile(new File(backupPath), projectAccession);
+        else if (projectAccession == null)
+            file = new File(restoreCheckpointFile);
+        else
+            file = RestoreCheckpoint.getCheckpointFile(new File(restoreCheckpointFile).getAbsoluteFile().getParentFile(),
+                    projectAccession);
+        return new RestoreCheckpoint(file, Paths.get(backupPath), resume);
     }
 
-    private void restoreFromFiles(String projectAccession, String assayAccession) throws Exception {
-        List<PrideMongoProteinEvidence> prideMongoProteinEvidences = BackupUtil.getPrideMongoProteinEvidenceFromBackup(backupPath, projectAccession, assayAccession);
-        prideMongoProteinEvidences.forEach(p -> moleculesService.saveProteinEvidences(p));
-
-        List<PrideMongoPeptideEvidence> prideMongoPeptideEvidences = BackupUtil.getPrideMongoPeptideEvidenceFromBackup(backupPath, projectAccession, assayAccession);
-        prideMongoPeptideEvidences.forEach(p -> moleculesService.savePeptideEvidence(p));
-
-        List<PrideMongoPsmSummaryEvidence> prideMongoPsmSummaryEvidences = BackupUtil.getPrideMongoPsmSummaryEvidenceFromBackup(backupPath, projectAccession, assayAccession);
-        prideMongoPsmSummaryEvidences.forEach(p -> moleculesService.savePsmSummaryEvidence(p));
+    private BackupRestoreEngine createRestoreEngine(RestoreCheckpoint checkpoint) {
+        AssayAnalysisSettings settings = new AssayAnalysisSettings(productionPath, backupPath);
+        settings.setMongoBulkSize(mongoBulkSize);
+        settings.setMongoBulkFlushInterval(mongoBulkFlushInterval);
+        settings.setS3ConcurrentUploads(s3ConcurrentUploads);
+        settings.setS3UploadQueueSize(s3UploadQueueSize);
+        settings.setS3UploadProgressInterval(s3UploadProgressInterval);
+        settings.setRestoreConcurrentFiles(restoreConcurrentFiles);
+        return new BackupRestoreEngine(moleculesService, moleculesMongoTemplate, spectralArchive, settings, checkpoint);
+    }
 
-        List<ArchiveSpectrum> archiveSpectrums = BackupUtil.getArchiveSpectrumFromBackup(backupPath, projectAccession, assayAccession);
-        for (ArchiveSpectrum p : archiveSpectrums) {
-            spectralArchive.writePSM(p.getUsi(), p);
+    private void submitFiles(BackupRestoreEngine engine, Path projectDirectory) throws Exception {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(projectDirectory, path -> path.toFile().isFile())) {
+            for (Path f : files) {
+                engine.submit(f);
+            }
         }
     }
+
+    private void awaitRestore(BackupRestoreEngine engine) throws Exception {
+        engine.awaitCompletion();
+        log.info("Backup restore of " + (projectAccession == null ? "all the projects" : projectAccession)
+                + " -- restored files: " + engine.getRestoredFiles() + " already restored: " + engine.getSkippedFiles());
+    }
 }
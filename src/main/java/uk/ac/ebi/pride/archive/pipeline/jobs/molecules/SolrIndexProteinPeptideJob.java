@@ -15,12 +15,12 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
 import uk.ac.ebi.pride.archive.pipeline.configuration.SolrCloudMasterConfig;
 import uk.ac.ebi.pride.archive.pipeline.jobs.AbstractArchiveJob;
+import uk.ac.ebi.pride.archive.pipeline.metrics.PipelineMetrics;
 import uk.ac.ebi.pride.archive.pipeline.utility.BackupUtil;
 import uk.ac.ebi.pride.archive.pipeline.utility.SubmissionPipelineConstants;
 import uk.ac.ebi.pride.mongodb.archive.service.projects.PrideProjectMongoService;
 import uk.ac.ebi.pride.mongodb.configs.ArchiveMongoConfig;
 import uk.ac.ebi.pride.mongodb.configs.MoleculesMongoConfig;
-import uk.ac.ebi.pride.mongodb.molecules.model.peptide.PrideMongoPeptideEvidence;
 import uk.ac.ebi.pride.mongodb.molecules.service.molecules.PrideMoleculesMongoService;
 import uk.ac.ebi.pride.solr.indexes.pride.model.PrideSolrProject;
 import uk.ac.ebi.pride.solr.indexes.pride.services.SolrProjectService;
@@ -40,8 +40,6 @@ public class SolrIndexProteinPeptideJob extends AbstractArchiveJob {
     @Autowired
     private SolrProjectService solrProjectService;
 
-    private Map<String, Long> taskTimeMap = new HashMap<>();
-
     @Value("${project:#{null}}")
     private String projectAccession;
 
@@ -68,20 +66,9 @@ public class SolrIndexProteinPeptideJob extends AbstractArchiveJob {
                         .tasklet(initJobSolrIndexProteinPeptideJob())
                         .build())
                 .next(solrIndexProteinPeptideIndexStep())
-                .next(solrIndexPrintTraceStep())
                 .build();
     }
 
-    @Bean
-    public Step solrIndexPrintTraceStep() {
-        return stepBuilderFactory
-                .get("solrIndexPrintTraceStep")
-                .tasklet((stepContribution, chunkContext) -> {
-                    taskTimeMap.forEach((key, value) -> log.info("Task: " + key + " Time: " + value));
-                    return RepeatStatus.FINISHED;
-                }).build();
-    }
-
     @Bean
     public Step solrIndexProteinPeptideIndexStep() {
         return stepBuilderFactory
@@ -98,7 +85,7 @@ public class SolrIndexProteinPeptideJob extends AbstractArchiveJob {
                         restoreFromFile(projectAccession);
                     }
 
-                    taskTimeMap.put("InsertPeptidesProteinsIntoSolr", System.currentTimeMillis() - initInsertPeptides);
+                    PipelineMetrics.recordTask("InsertPeptidesProteinsIntoSolr", initInsertPeptides);
 
                     return RepeatStatus.FINISHED;
                 }).build();
@@ -109,18 +96,9 @@ public class SolrIndexProteinPeptideJob extends AbstractArchiveJob {
         if (solrProject == null) {
             return;
         }
-        String dir = backupPath + projectAccession;
         Set<String> proteinAccessions = new HashSet<>();
         Set<String> peptideSequences = new HashSet<>();
-        for (Path f : Files.newDirectoryStream(Paths.get(dir), path -> path.toFile().isFile())) {
-            if (f.getFileName().toString().endsWith(PrideMongoPeptideEvidence.class.getSimpleName() + BackupUtil.JSON_EXT)) {
-                List<PrideMongoPeptideEvidence> objs = BackupUtil.getObjectsFromFile(f, PrideMongoPeptideEvidence.class);
-                objs.forEach(o -> {
-                    proteinAccessions.add(o.getProteinAccession());
-                    peptideSequences.add(o.getPeptideSequence());
-                });
-            }
-        }
+        BackupUtil.collectProteinsAndPeptides(backupPath, projectAccession, proteinAccessions, peptideSequences);
 
         solrProject.addProteinIdentifications(proteinAccessions);
         solrProject.addPeptideSequences(peptideSequences);
@@ -11,6 +11,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
 import uk.ac.ebi.pride.archive.pipeline.jobs.AbstractArchiveJob;
+import uk.ac.ebi.pride.archive.pipeline.metrics.PipelineMetrics;
 import uk.ac.ebi.pride.archive.pipeline.utility.SubmissionPipelineConstants;
 import uk.ac.ebi.pride.mongodb.archive.model.files.MongoPrideFile;
 import uk.ac.ebi.pride.mongodb.archive.repo.files.PrideFileMongoRepository;
@@ -46,27 +47,14 @@ public class MongoChecksumJob extends AbstractArchiveJob {
     @Value("${path:#{null}}")
     private String path;
 
-    private Map<String, Long> taskTimeMap = new HashMap<>();
-
     @Bean
     public Job mongoChecksumJobBean() {
         return jobBuilderFactory
                 .get(SubmissionPipelineConstants.PrideArchiveJobNames.PRIDE_ARCHIVE_MONGO_CHECKSUM.getName())
                 .start(populateMongoChecksumStep())
-                .next(mongoChecksumPrintTraceStep())
                 .build();
     }
 
-    @Bean
-    public Step mongoChecksumPrintTraceStep() {
-        return stepBuilderFactory
-                .get("mongoChecksumPrintTraceStep")
-                .tasklet((stepContribution, chunkContext) -> {
-                    taskTimeMap.forEach((key, value) -> log.info("Task: " + key + " Time: " + value));
-                    return RepeatStatus.FINISHED;
-                }).build();
-    }
-
     @Bean
     public Step populateMongoChecksumStep() {
         return stepBuilderFactory
@@ -119,7 +107,7 @@ public class MongoChecksumJob extends AbstractArchiveJob {
                         });
                     });
 
-                    taskTimeMap.put("populateMongoChecksumStep", System.currentTimeMillis() - initTime);
+                    PipelineMetrics.recordTask("populateMongoChecksumStep", initTime);
 
                     return RepeatStatus.FINISHED;
                 }).build();
@@ -14,11 +14,11 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
 import uk.ac.ebi.pride.archive.pipeline.jobs.AbstractArchiveJob;
+import uk.ac.ebi.pride.archive.pipeline.metrics.PipelineMetrics;
 import uk.ac.ebi.pride.archive.pipeline.utility.BackupUtil;
 import uk.ac.ebi.pride.mongodb.archive.model.molecules.MongoPrideMolecules;
 import uk.ac.ebi.pride.mongodb.archive.service.molecules.PrideMoleculesMongoService;
 import uk.ac.ebi.pride.mongodb.configs.ArchiveMongoConfig;
-import uk.ac.ebi.pride.mongodb.molecules.model.peptide.PrideMongoPeptideEvidence;
 
 import java.io.File;
 import java.nio.file.Files;
@@ -33,8 +33,6 @@ import java.util.stream.Collectors;
 @Import({ArchiveMongoConfig.class, PrideMoleculesMongoService.class})
 public class MongoProjectProteinPeptideJob extends AbstractArchiveJob {
 
-    private Map<String, Long> taskTimeMap = new HashMap<>();
-
     @Value("${project:#{null}}")
     private String projectAccession;
 
@@ -64,20 +62,9 @@ public class MongoProjectProteinPeptideJob extends AbstractArchiveJob {
                         .tasklet(initMongoProjectProteinPeptideJob())
                         .build())
                 .next(mongoProjectProteinPeptideStep())
-                .next(mongoProjectProteinPeptideJobPrintTraceStep())
                 .build();
     }
 
-    @Bean
-    public Step mongoProjectProteinPeptideJobPrintTraceStep() {
-        return stepBuilderFactory
-                .get("mongoProjectProteinPeptideJobPrintTraceStep")
-                .tasklet((stepContribution, chunkContext) -> {
-                    taskTimeMap.forEach((key, value) -> log.info("Task: " + key + " Time: " + value));
-                    return RepeatStatus.FINISHED;
-                }).build();
-    }
-
     @Bean
     public Step mongoProjectProteinPeptideStep() {
         return stepBuilderFactory
@@ -94,25 +81,16 @@ public class MongoProjectProteinPeptideJob extends AbstractArchiveJob {
                         restoreFromFile(projectAccession);
                     }
 
-                    taskTimeMap.put("mongoProjectProteinPeptide", System.currentTimeMillis() - initInsertPeptides);
+                    PipelineMetrics.recordTask("mongoProjectProteinPeptide", initInsertPeptides);
 
                     return RepeatStatus.FINISHED;
                 }).build();
     }
 
     private void restoreFromFile(String projectAccession) throws Exception {
-        String dir = backupPath + projectAccession;
         Set<String> proteinAccessions = new HashSet<>();
         Set<String> peptideSequences = new HashSet<>();
-        for (Path f : Files.newDirectoryStream(Paths.get(dir), path -> path.toFile().isFile())) {
-            if (f.getFileName().toString().endsWith(PrideMongoPeptideEvidence.class.getSimpleName() + BackupUtil.JSON_EXT)) {
-                List<PrideMongoPeptideEvidence> objs = BackupUtil.getObjectsFromFile(f, PrideMongoPeptideEvidence.class);
-                objs.forEach(o -> {
-                    proteinAccessions.add(o.getProteinAccession());
-                    peptideSequences.add(o.getPeptideSequence());
-                });
-            }
-        }
+        BackupUtil.collectProteinsAndPeptides(backupPath, projectAccession, proteinAccessions, peptideSequences);
 
         MongoPrideMolecules mongoPrideMolecules = MongoPrideMolecules.builder().projectAccession(projectAccession)
                 .peptideAccessions(peptideSequences.stream().collect(Collectors.joining(","))).proteinAccessions(proteinAccessions.stream().collect(Collectors.joining(","))).build();
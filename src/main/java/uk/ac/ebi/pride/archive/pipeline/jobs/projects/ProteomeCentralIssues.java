@@ -16,6 +16,7 @@ import org.springframework.context.annotation.Import;
 import uk.ac.ebi.pride.archive.pipeline.configuration.ArchiveOracleConfig;
 import uk.ac.ebi.pride.archive.pipeline.configuration.DataSourceConfiguration;
 import uk.ac.ebi.pride.archive.pipeline.jobs.AbstractArchiveJob;
+import uk.ac.ebi.pride.archive.pipeline.metrics.PipelineMetrics;
 import uk.ac.ebi.pride.archive.px.PostMessage;
 import uk.ac.ebi.pride.archive.px.Util;
 import uk.ac.ebi.pride.archive.px.ValidateMessage;
@@ -37,8 +38,6 @@ import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
 
 @Configuration
 @Slf4j
@@ -64,8 +63,6 @@ public class ProteomeCentralIssues extends AbstractArchiveJob {
     @Value("${px.partner.pass}")
     private String pxPassword;
 
-    private Map<String, Long> taskTimeMap = new HashMap<>();
-
     private String[] projectAccessions;
     private Path pxXmlsDir;
     private Path pcIssuesDir;
@@ -122,7 +119,6 @@ public class ProteomeCentralIssues extends AbstractArchiveJob {
                         .tasklet(initPcIssuesJob(null))
                         .build())
                 .next(generatePxXmlStep())
-                .next(pcIssuesPrintTraceStep())
                 .build();
     }
 
@@ -146,7 +142,7 @@ public class ProteomeCentralIssues extends AbstractArchiveJob {
                             generatePxXml(oracleProject);
                         });
                     }
-                    taskTimeMap.put("generatePxXmlMessageStep", System.currentTimeMillis() - startTime);
+                    PipelineMetrics.recordTask("generatePxXmlMessageStep", startTime);
                     return RepeatStatus.FINISHED;
                 }).build();
     }
@@ -217,14 +213,4 @@ public class ProteomeCentralIssues extends AbstractArchiveJob {
                     StandardOpenOption.CREATE, StandardOpenOption.APPEND); //store error to a file as well
         }
     }
-
-    @Bean
-    public Step pcIssuesPrintTraceStep() {
-        return stepBuilderFactory
-                .get("pcIssuesPrintTraceStep")
-                .tasklet((stepContribution, chunkContext) -> {
-                    taskTimeMap.forEach((key, value) -> log.info("Task: " + key + " Time: " + value));
-                    return RepeatStatus.FINISHED;
-                }).build();
-    }
 }
@@ -20,6 +20,7 @@ import uk.ac.ebi.pride.archive.pipeline.configuration.DataSourceConfiguration;
 import uk.ac.ebi.pride.archive.pipeline.configuration.SolrCloudMasterConfig;
 import uk.ac.ebi.pride.archive.pipeline.core.transformers.PrideProjectTransformer;
 import uk.ac.ebi.pride.archive.pipeline.jobs.AbstractArchiveJob;
+import uk.ac.ebi.pride.archive.pipeline.metrics.PipelineMetrics;
 import uk.ac.ebi.pride.archive.pipeline.utility.DateUtils;
 import uk.ac.ebi.pride.archive.pipeline.utility.HashUtils;
 import uk.ac.ebi.pride.archive.repo.repos.file.ProjectFile;
@@ -64,8 +65,6 @@ public class SanityCheckJob extends AbstractArchiveJob {
     @Value("${aspera.protocol.url}")
     private String asperaUrl;
 
-    private Map<String, Long> taskTimeMap = new HashMap<>();
-
     private String[] projectAccessions;
     private boolean fixFilesOptionSet = false;
     private boolean fixProjectsOptionSet = false;
@@ -102,20 +101,9 @@ public class SanityCheckJob extends AbstractArchiveJob {
                         .tasklet(initSanityCheckJob(null, null, null))
                         .build())
                 .next(sanityCheckStep())
-                .next(sanityCheckPrintTraceStep())
                 .build();
     }
 
-    @Bean
-    public Step sanityCheckPrintTraceStep() {
-        return stepBuilderFactory
-                .get("sanityCheckPrintTraceStep")
-                .tasklet((stepContribution, chunkContext) -> {
-                    taskTimeMap.forEach((key, value) -> log.info("Task: " + key + " Time: " + value));
-                    return RepeatStatus.FINISHED;
-                }).build();
-    }
-
     @Bean
     public Step sanityCheckStep() {
         return stepBuilderFactory
@@ -131,7 +119,7 @@ public class SanityCheckJob extends AbstractArchiveJob {
                         Arrays.stream(projectAccessions).forEach(this::compareProjectsAndFix);
                     }
 
-                    taskTimeMap.put("SanityCheckJob", System.currentTimeMillis() - initInsertPeptides);
+                    PipelineMetrics.recordTask("SanityCheckJob", initInsertPeptides);
 
                     return RepeatStatus.FINISHED;
                 }).build();
@@ -15,6 +15,7 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
 import uk.ac.ebi.pride.archive.pipeline.configuration.SolrCloudMasterConfig;
 import uk.ac.ebi.pride.archive.pipeline.jobs.AbstractArchiveJob;
+import uk.ac.ebi.pride.archive.pipeline.metrics.PipelineMetrics;
 import uk.ac.ebi.pride.archive.pipeline.utility.SubmissionPipelineConstants;
 import uk.ac.ebi.pride.mongodb.archive.model.files.MongoPrideFile;
 import uk.ac.ebi.pride.mongodb.archive.service.files.PrideFileMongoService;
@@ -23,9 +24,7 @@ import uk.ac.ebi.pride.mongodb.configs.MoleculesMongoConfig;
 import uk.ac.ebi.pride.solr.indexes.pride.model.PrideSolrProject;
 import uk.ac.ebi.pride.solr.indexes.pride.services.SolrProjectService;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -41,8 +40,6 @@ public class SolrSyncMissingFilesJob extends AbstractArchiveJob {
     @Autowired
     private SolrProjectService solrProjectService;
 
-    private Map<String, Long> taskTimeMap = new HashMap<>();
-
     private String projectAccession;
 
     @Bean
@@ -65,20 +62,9 @@ public class SolrSyncMissingFilesJob extends AbstractArchiveJob {
                         .tasklet(initSolrSyncMissingFilesJob(null))
                         .build())
                 .next(solrSyncMissingFilesStep())
-                .next(solrSyncMissingFilesPrintTraceStep())
                 .build();
     }
 
-    @Bean
-    public Step solrSyncMissingFilesPrintTraceStep() {
-        return stepBuilderFactory
-                .get("solrSyncMissingFilesPrintTraceStep")
-                .tasklet((stepContribution, chunkContext) -> {
-                    taskTimeMap.forEach((key, value) -> log.info("Task: " + key + " Time: " + value));
-                    return RepeatStatus.FINISHED;
-                }).build();
-    }
-
     @Bean
     public Step solrSyncMissingFilesStep() {
         return stepBuilderFactory
@@ -100,7 +86,7 @@ public class SolrSyncMissingFilesJob extends AbstractArchiveJob {
                         updateSolrProject(projectAccession, fileNames);
                     }
 
-                    taskTimeMap.put("SolrSyncMissingFiles", System.currentTimeMillis() - initInsertPeptides);
+                    PipelineMetrics.recordTask("SolrSyncMissingFiles", initInsertPeptides);
 
                     return RepeatStatus.FINISHED;
                 }).build();
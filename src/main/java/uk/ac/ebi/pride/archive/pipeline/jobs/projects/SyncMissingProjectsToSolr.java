@@ -12,6 +12,8 @@ import org.springframework.context.annotation.Import;
 import uk.ac.ebi.pride.archive.pipeline.configuration.SolrCloudMasterConfig;
 import uk.ac.ebi.pride.archive.pipeline.core.transformers.PrideProjectTransformer;
 import uk.ac.ebi.pride.archive.pipeline.jobs.AbstractArchiveJob;
+import uk.ac.ebi.pride.archive.pipeline.metrics.PipelineMetrics;
+import uk.ac.ebi.pride.archive.pipeline.metrics.PipelineProfiler;
 import uk.ac.ebi.pride.archive.pipeline.utility.SubmissionPipelineConstants;
 import uk.ac.ebi.pride.mongodb.archive.model.files.MongoPrideFile;
 import uk.ac.ebi.pride.mongodb.archive.model.projects.MongoPrideProject;
@@ -45,27 +47,14 @@ public class SyncMissingProjectsToSolr extends AbstractArchiveJob {
     @Autowired
     private PrideMoleculesMongoService prideMoleculesMongoService;
 
-    private Map<String, Long> taskTimeMap = new HashMap<>();
-
     @Bean
     public Job syncMissingProjectsToSolrJob() {
         return jobBuilderFactory
                 .get(SubmissionPipelineConstants.PrideArchiveJobNames.PRIDE_ARCHIVE_SYNC_MISSING_PROJECTS_SOLR.getName())
                 .start(solrSyncMissingProjectsStep())
-                .next(syncMissingProjectsToSolrPrintTraceStep())
                 .build();
     }
 
-    @Bean
-    public Step syncMissingProjectsToSolrPrintTraceStep() {
-        return stepBuilderFactory
-                .get("syncMissingProjectsToSolrPrintTraceStep")
-                .tasklet((stepContribution, chunkContext) -> {
-                    taskTimeMap.forEach((key, value) -> log.info("Task: " + key + " Time: " + value));
-                    return RepeatStatus.FINISHED;
-                }).build();
-    }
-
     @Bean
     public Step solrSyncMissingProjectsStep() {
         return stepBuilderFactory
@@ -86,7 +75,7 @@ public class SyncMissingProjectsToSolr extends AbstractArchiveJob {
                     doProjectSync(onlyInMongo);
                     removeExtraProjects(onlyInSolr);
 
-                    taskTimeMap.put("SyncMissingProjectsToSolr", System.currentTimeMillis() - initTime);
+                    PipelineMetrics.recordTask("SyncMissingProjectsToSolr", initTime);
 
                     return RepeatStatus.FINISHED;
                 }).build();
@@ -97,6 +86,7 @@ public class SyncMissingProjectsToSolr extends AbstractArchiveJob {
             Optional<MongoPrideProject> mongoPrideProjectOptional = prideProjectMongoService.findByAccession(i);
             if (mongoPrideProjectOptional.isPresent()) {
                 MongoPrideProject mongoPrideProject = mongoPrideProjectOptional.get();
+                PipelineProfiler.Span span = PipelineProfiler.start(PipelineProfiler.Phase.PROJECT_TRANSFORM, i);
                 PrideSolrProject solrProject = PrideProjectTransformer.transformProjectMongoToSolr(mongoPrideProject);
 
                 List<MongoPrideFile> files = prideFileMongoService.findFilesByProjectAccession(i);
@@ -108,8 +98,11 @@ public class SyncMissingProjectsToSolr extends AbstractArchiveJob {
 
                 solrProject.addProteinIdentifications(proteinAccessions);
                 solrProject.addPeptideSequences(peptideSequences);
+                span.close();
 
+                span = PipelineProfiler.start(PipelineProfiler.Phase.PROJECT_WRITE, i);
                 PrideSolrProject status = solrProjectService.save(solrProject);
+                span.close();
                 log.info("The project -- " + status.getAccession() + " has been inserted in SolrCloud");
             }
         });
@@ -13,6 +13,7 @@ import uk.ac.ebi.pride.archive.pipeline.configuration.DataSourceConfiguration;
 import uk.ac.ebi.pride.archive.pipeline.configuration.SolrCloudMasterConfig;
 import uk.ac.ebi.pride.archive.pipeline.core.transformers.PrideProjectTransformer;
 import uk.ac.ebi.pride.archive.pipeline.jobs.AbstractArchiveJob;
+import uk.ac.ebi.pride.archive.pipeline.metrics.PipelineProfiler;
 import uk.ac.ebi.pride.archive.pipeline.utility.SubmissionPipelineConstants;
 import uk.ac.ebi.pride.mongodb.archive.model.files.MongoPrideFile;
 import uk.ac.ebi.pride.mongodb.archive.model.projects.MongoPrideProject;
@@ -65,11 +66,15 @@ public class SyncProjectsMongoToSolrCloudJob extends AbstractArchiveJob {
 
 
     private void doProjectSync(MongoPrideProject mongoPrideProject){
+        PipelineProfiler.Span span = PipelineProfiler.start(PipelineProfiler.Phase.PROJECT_TRANSFORM, mongoPrideProject.getAccession());
         PrideSolrProject solrProject = PrideProjectTransformer.transformProjectMongoToSolr(mongoPrideProject);
         List<MongoPrideFile> files = prideFileMongoService.findFilesByProjectAccession(mongoPrideProject.getAccession());
         Set<String> fileNames = files.stream().map(MongoPrideFile::getFileName).collect(Collectors.toSet());
         solrProject.setProjectFileNames(fileNames);
+        span.close();
+        span = PipelineProfiler.start(PipelineProfiler.Phase.PROJECT_WRITE, mongoPrideProject.getAccession());
         PrideSolrProject status = solrProjectService.save(solrProject);
+        span.close();
         log.info("The project -- " + status.getAccession() + " has been inserted in SolrCloud");
     }
 
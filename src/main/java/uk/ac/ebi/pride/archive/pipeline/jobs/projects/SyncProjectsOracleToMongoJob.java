@@ -15,6 +15,7 @@ import uk.ac.ebi.pride.archive.pipeline.configuration.ArchiveOracleConfig;
 import uk.ac.ebi.pride.archive.pipeline.configuration.DataSourceConfiguration;
 import uk.ac.ebi.pride.archive.pipeline.core.transformers.PrideProjectTransformer;
 import uk.ac.ebi.pride.archive.pipeline.jobs.AbstractArchiveJob;
+import uk.ac.ebi.pride.archive.pipeline.metrics.PipelineProfiler;
 import uk.ac.ebi.pride.archive.pipeline.utility.SubmissionPipelineConstants;
 import uk.ac.ebi.pride.archive.repo.repos.file.ProjectFile;
 import uk.ac.ebi.pride.archive.repo.repos.file.ProjectFileRepository;
@@ -104,8 +105,12 @@ public class SyncProjectsOracleToMongoJob extends AbstractArchiveJob {
 
     private void doProjectSync(Project oracleProject) {
         if (oracleProject.isPublicProject()) {
+            PipelineProfiler.Span span = PipelineProfiler.start(PipelineProfiler.Phase.PROJECT_TRANSFORM, oracleProject.getAccession());
             MongoPrideProject mongoPrideProject = PrideProjectTransformer.transformOracleToMongo(oracleProject);
+            span.close();
+            span = PipelineProfiler.start(PipelineProfiler.Phase.PROJECT_WRITE, oracleProject.getAccession());
             Optional<MongoPrideProject> status = prideProjectMongoService.upsert(mongoPrideProject);
+            span.close();
             log.info(oracleProject.getAccession() + "-- Inserted Status " + status.isPresent());
         }
     }
@@ -114,7 +119,12 @@ public class SyncProjectsOracleToMongoJob extends AbstractArchiveJob {
         Project oracleProject = oracleProjectRepository.findByAccession(mongoPrideProject.getAccession());
         List<ProjectFile> oracleFiles = oracleFileRepository.findAllByProjectId(oracleProject.getId());
         List<MongoPrideMSRun> msRunRawFiles = new ArrayList<>();
-        List<Tuple<MongoPrideFile, MongoPrideFile>> status = prideFileMongoService.insertAllFilesAndMsRuns(PrideProjectTransformer.transformOracleFilesToMongoFiles(oracleFiles, msRunRawFiles, oracleProject, ftpProtocol, asperaProtocol), msRunRawFiles);
+        PipelineProfiler.Span span = PipelineProfiler.start(PipelineProfiler.Phase.PROJECT_TRANSFORM, oracleProject.getAccession());
+        List<MongoPrideFile> mongoFiles = PrideProjectTransformer.transformOracleFilesToMongoFiles(oracleFiles, msRunRawFiles, oracleProject, ftpProtocol, asperaProtocol);
+        span.close();
+        span = PipelineProfiler.start(PipelineProfiler.Phase.PROJECT_WRITE, oracleProject.getAccession());
+        List<Tuple<MongoPrideFile, MongoPrideFile>> status = prideFileMongoService.insertAllFilesAndMsRuns(mongoFiles, msRunRawFiles);
+        span.close();
         log.info("Number of files has been inserted -- " + status.size());
         if (msRunRawFiles.size() > 0) {
             //to-do
@@ -0,0 +1,139 @@
+package uk.ac.ebi.pride.archive.pipeline.listeners;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import uk.ac.ebi.pride.archive.pipeline.metrics.PipelineMetrics;
+import uk.ac.ebi.pride.archive.pipeline.metrics.PrometheusTextFileExporter;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Metrics of the jobs, the steps and the chunks. The duration of every step and chunk and the items read, written,
+ * filtered and skipped by the steps are recorded in the meters of {@link PipelineMetrics}, and a summary of the steps
+ * is logged at the end of the job, in place of the print trace steps that the jobs used to have.
+ *
+ * The listener is registered in all the jobs and steps by
+ * {@link uk.ac.ebi.pride.archive.pipeline.jobs.AbstractArchiveJob}.
+ */
+@Slf4j
+public class BatchMetricsListener implements JobExecutionListener, StepExecutionListener, ChunkListener {
+
+    private static final String CHUNK_START = BatchMetricsListener.class.getName() + ".chunkStart";
+
+    private final Supplier<PrometheusTextFileExporter> exporter;
+
+    /**
+     * @param exporter exporter of the metrics file, the supplier can return null if the file is not exported
+     */
+    public BatchMetricsListener(Supplier<PrometheusTextFileExporter> exporter) {
+        this.exporter = exporter;
+    }
+
+    @Override
+    public void beforeJob(JobExecution jobExecution) {
+    }
+
+    @Override
+    public void afterJob(JobExecution jobExecution) {
+        log.info(PipelineJobStatusListener.OUTPUT_DIVIDER);
+        log.info("Job: " + jobExecution.getJobInstance().getJobName() + " Status: " + jobExecution.getStatus()
+                + " Time: " + getTime(jobExecution.getStartTime(), jobExecution.getEndTime()));
+        for (StepExecution stepExecution : jobExecution.getStepExecutions()) {
+            log.info("Step: " + stepExecution.getStepName() + " Status: " + stepExecution.getStatus()
+                    + " Time: " + getTime(stepExecution.getStartTime(), stepExecution.getEndTime())
+                    + " Read: " + stepExecution.getReadCount() + " Written: " + stepExecution.getWriteCount()
+                    + " Filtered: " + stepExecution.getFilterCount() + " Skipped: " + stepExecution.getSkipCount()
+                    + " Commits: " + stepExecution.getCommitCount());
+        }
+        log.info(PipelineJobStatusListener.OUTPUT_DIVIDER);
+
+        PrometheusTextFileExporter textFileExporter = exporter.get();
+        if (textFileExporter != null)
+            textFileExporter.exportQuietly();
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+    }
+
+    /**
+     * Record the duration and the items of the step. The end time of the step is not set yet, the duration is until
+     * now.
+     */
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        Tags tags = stepTags(stepExecution);
+        long time = System.currentTimeMillis() - stepExecution.getStartTime().getTime();
+        Timer.builder(PipelineMetrics.STEP_TIMER)
+                .tags(tags)
+                .tag("status", stepExecution.getStatus().name())
+                .register(PipelineMetrics.registry())
+                .record(time, TimeUnit.MILLISECONDS);
+
+        countItems(tags, "read", stepExecution.getReadCount());
+        countItems(tags, "write", stepExecution.getWriteCount());
+        countItems(tags, "filter", stepExecution.getFilterCount());
+        countItems(tags, "skip", stepExecution.getSkipCount());
+        return null;
+    }
+
+    @Override
+    public void beforeChunk(ChunkContext context) {
+        context.setAttribute(CHUNK_START, System.nanoTime());
+    }
+
+    @Override
+    public void afterChunk(ChunkContext context) {
+        recordChunk(context, "COMPLETED");
+    }
+
+    @Override
+    public void afterChunkError(ChunkContext context) {
+        recordChunk(context, "FAILED");
+    }
+
+    private static void recordChunk(ChunkContext context, String status) {
+        Object start = context.getAttribute(CHUNK_START);
+        if (!(start instanceof Long))
+            return;
+        context.removeAttribute(CHUNK_START);
+        Timer.builder(PipelineMetrics.CHUNK_TIMER)
+                .tags(stepTags(context.getStepContext().getStepExecution()))
+                .tag("status", status)
+                .register(PipelineMetrics.registry())
+                .record(System.nanoTime() - (Long) start, TimeUnit.NANOSECONDS);
+    }
+
+    private static void countItems(Tags tags, String type, long count) {
+        if (count <= 0)
+            return;
+        Counter.builder(PipelineMetrics.STEP_ITEMS)
+                .tags(tags)
+                .tag("type", type)
+                .register(PipelineMetrics.registry())
+                .increment(count);
+    }
+
+    private static Tags stepTags(StepExecution stepExecution) {
+        return Tags.of("job", stepExecution.getJobExecution().getJobInstance().getJobName(),
+                "step", stepExecution.getStepName());
+    }
+
+    private static String getTime(Date start, Date end) {
+        if (start == null)
+            return "-";
+        long endTime = (end != null) ? end.getTime() : System.currentTimeMillis();
+        return (endTime - start.getTime()) + " ms";
+    }
+}
@@ -0,0 +1,62 @@
+package uk.ac.ebi.pride.archive.pipeline.listeners;
+
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.job.AbstractJob;
+import org.springframework.batch.core.step.AbstractStep;
+import org.springframework.batch.core.step.StepLocator;
+import org.springframework.batch.core.step.tasklet.TaskletStep;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Register the metrics listeners ({@link BatchMetricsListener}, {@link PerformanceReportListener},
+ * {@link JfrRecordingListener}) in every job and in all the steps of the job, including the steps that are built
+ * inside the job definition and are not beans. Each listener is registered as job, step and chunk listener depending
+ * on the interfaces it implements. The steps shared by several jobs are registered only once.
+ */
+public class BatchMetricsListenerRegistrar implements BeanPostProcessor {
+
+    private final List<Object> listeners;
+    private final Set<Step> registeredSteps = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    public BatchMetricsListenerRegistrar(Object... listeners) {
+        this.listeners = Arrays.asList(listeners);
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof AbstractJob) {
+            for (Object listener : listeners) {
+                if (listener instanceof JobExecutionListener)
+                    ((AbstractJob) bean).registerJobExecutionListener((JobExecutionListener) listener);
+            }
+        }
+        if (bean instanceof Job && bean instanceof StepLocator) {
+            StepLocator stepLocator = (StepLocator) bean;
+            for (String stepName : stepLocator.getStepNames()) {
+                register(stepLocator.getStep(stepName));
+            }
+        }
+        return bean;
+    }
+
+    private synchronized void register(Step step) {
+        if (!(step instanceof AbstractStep) || !registeredSteps.add(step))
+            return;
+        for (Object listener : listeners) {
+            if (listener instanceof StepExecutionListener)
+                ((AbstractStep) step).registerStepExecutionListener((StepExecutionListener) listener);
+            if (listener instanceof ChunkListener && step instanceof TaskletStep)
+                ((TaskletStep) step).registerChunkListener((ChunkListener) listener);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package uk.ac.ebi.pride.archive.pipeline.listeners;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+import uk.ac.ebi.pride.archive.pipeline.metrics.PipelineProfiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Record the job executions launched with the job parameter {@code profile} with Java Flight Recorder, into
+ * {@code <job>-<execution>-<yyyyMMddHHmmss>.jfr} in the report directory, next to the performance report. With
+ * {@code profile=true} the recording has the events of the phases of the pipeline ({@link PipelineProfiler}) and the
+ * garbage collections; any other value but {@code false} is the name of a JFR configuration whose settings are added,
+ * e.g. {@code profile=default}.
+ *
+ * The time by phase of a recording is printed by {@code uk.ac.ebi.pride.archive.pipeline.metrics.JfrPhaseSummary}.
+ * The profiling needs a build with the {@code jfr} Maven profile (JDK 11+), it is disabled otherwise.
+ */
+@Slf4j
+public class JfrRecordingListener implements JobExecutionListener {
+
+    public static final String PROFILE_PARAMETER = "profile";
+
+    private final File recordingDirectory;
+    private final Map<Long, PipelineProfiler.Recording> recorders = new ConcurrentHashMap<>();
+
+    /**
+     * @param recordingDirectory directory of the recordings, null to disable the profiling
+     */
+    public JfrRecordingListener(File recordingDirectory) {
+        this.recordingDirectory = recordingDirectory;
+    }
+
+    @Override
+    public void beforeJob(JobExecution jobExecution) {
+        String profile = jobExecution.getJobParameters().getString(PROFILE_PARAMETER);
+        if (recordingDirectory == null || profile == null || profile.equalsIgnoreCase("false"))
+            return;
+        if (!PipelineProfiler.isAvailable()) {
+            log.warn("The job can't be profiled, Java Flight Recorder needs Java 11 or Java 8u262+ and a build with "
+                    + "the jfr profile -- " + System.getProperty("java.version"));
+            return;
+        }
+
+        String jobName = jobExecution.getJobInstance().getJobName();
+        File file = new File(recordingDirectory, jobName + "-" + jobExecution.getId() + "-"
+                + new SimpleDateFormat("yyyyMMddHHmmss").format(new Date()) + ".jfr");
+        try {
+            if (!recordingDirectory.isDirectory() && !recordingDirectory.mkdirs() && !recordingDirectory.isDirectory())
+                throw new IOException("The directory can't be created -- " + recordingDirectory);
+            String configuration = profile.equalsIgnoreCase("true") ? null : profile;
+            recorders.put(jobExecution.getId(),
+                    PipelineProfiler.startRecording(jobName + "-" + jobExecution.getId(), configuration, file));
+            log.info("Profiling the job with Java Flight Recorder -- " + file.getAbsolutePath());
+        } catch (Exception e) {
+            log.warn("The JFR recording of the job can't be started -- " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void afterJob(JobExecution jobExecution) {
+        PipelineProfiler.Recording recorder = recorders.remove(jobExecution.getId());
+        if (recorder == null)
+            return;
+        try {
+            log.info("JFR recording of the job -- " + recorder.stop().getAbsolutePath());
+        } catch (Exception e) {
+            log.warn("The JFR recording of the job can't be written -- " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package uk.ac.ebi.pride.archive.pipeline.listeners;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.batch.core.JobParameter;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import uk.ac.ebi.pride.archive.pipeline.metrics.HeapSampler;
+import uk.ac.ebi.pride.archive.pipeline.metrics.PerformanceReport;
+import uk.ac.ebi.pride.archive.pipeline.metrics.ResourceSnapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Write a performance report of every job execution ({@link PerformanceReport}) as JSON in the report directory,
+ * usually the log directory of the job: wall and CPU time, items read and written, throughput, peak heap, GC and the
+ * calls to the external systems of every step. The reports are compared with the baselines of the job by
+ * {@link uk.ac.ebi.pride.archive.pipeline.metrics.PerformanceReportComparator}. The peak heap of each job and step is
+ * sampled while it runs ({@link HeapSampler}), the concurrent jobs of a worker don't reset the peak of each other.
+ *
+ * The listener is registered in all the jobs and steps by
+ * {@link uk.ac.ebi.pride.archive.pipeline.jobs.AbstractArchiveJob}.
+ */
+@Slf4j
+public class PerformanceReportListener implements JobExecutionListener, StepExecutionListener {
+
+    private final File reportDirectory;
+
+    private final Map<Long, ResourceSnapshot> jobSnapshots = new ConcurrentHashMap<>();
+    private final Map<Long, ResourceSnapshot> stepSnapshots = new ConcurrentHashMap<>();
+    private final Map<Long, HeapSampler.Window> jobHeapWindows = new ConcurrentHashMap<>();
+    private final Map<Long, HeapSampler.Window> stepHeapWindows = new ConcurrentHashMap<>();
+    private final Map<Long, PerformanceReport> reports = new ConcurrentHashMap<>();
+
+    /**
+     * @param reportDirectory directory of the reports, null to disable the reports
+     */
+    public PerformanceReportListener(File reportDirectory) {
+        this.reportDirectory = reportDirectory;
+    }
+
+    @Override
+    public void beforeJob(JobExecution jobExecution) {
+        if (reportDirectory == null)
+            return;
+        jobHeapWindows.put(jobExecution.getId(), HeapSampler.start());
+        jobSnapshots.put(jobExecution.getId(), ResourceSnapshot.take());
+        PerformanceReport report = new PerformanceReport();
+        report.setJobName(jobExecution.getJobInstance().getJobName());
+        report.setJobExecutionId(jobExecution.getId());
+        report.setHost(getHostName());
+        report.setStartTime(System.currentTimeMillis());
+        for (Map.Entry<String, JobParameter> parameter : jobExecution.getJobParameters().getParameters().entrySet())
+            report.getParameters().put(parameter.getKey(), String.valueOf(parameter.getValue().getValue()));
+        reports.put(jobExecution.getId(), report);
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        if (reportDirectory == null)
+            return;
+        stepHeapWindows.put(stepExecution.getId(), HeapSampler.start());
+        stepSnapshots.put(stepExecution.getId(), ResourceSnapshot.take());
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        ResourceSnapshot start = stepSnapshots.remove(stepExecution.getId());
+        long peakHeap = closeHeapWindow(stepHeapWindows, stepExecution.getId());
+        PerformanceReport report = reports.get(stepExecution.getJobExecutionId());
+        if (start == null || report == null)
+            return null;
+        ResourceSnapshot end = ResourceSnapshot.take();
+
+        PerformanceReport.StepReport step = new PerformanceReport.StepReport();
+        step.setName(stepExecution.getStepName());
+        step.setStatus(stepExecution.getStatus().name());
+        step.setWallTimeMillis(end.getWallTimeSince(start));
+        step.setCpuTimeMillis(end.getCpuTimeSince(start));
+        step.setReadCount(stepExecution.getReadCount());
+        step.setWriteCount(stepExecution.getWriteCount());
+        step.setFilterCount(stepExecution.getFilterCount());
+        step.setSkipCount(stepExecution.getSkipCount());
+        long items = Math.max(stepExecution.getReadCount(), stepExecution.getWriteCount());
+        step.setItemsPerSecond((step.getWallTimeMillis() > 0) ? items * 1000.0 / step.getWallTimeMillis() : 0);
+        step.setPeakHeapBytes(peakHeap);
+        step.setGcCount(end.getGcCountSince(start));
+        step.setGcTimeMillis(end.getGcTimeSince(start));
+        step.setCalls(end.getCallsSince(start));
+        synchronized (report) {
+            report.getSteps().add(step);
+        }
+        return null;
+    }
+
+    @Override
+    public void afterJob(JobExecution jobExecution) {
+        ResourceSnapshot start = jobSnapshots.remove(jobExecution.getId());
+        long peakHeap = closeHeapWindow(jobHeapWindows, jobExecution.getId());
+        PerformanceReport report = reports.remove(jobExecution.getId());
+        if (start == null || report == null)
+            return;
+        ResourceSnapshot end = ResourceSnapshot.take();
+
+        report.setStatus(jobExecution.getStatus().name());
+        report.setWallTimeMillis(end.getWallTimeSince(start));
+        report.setCpuTimeMillis(end.getCpuTimeSince(start));
+        report.setGcCount(end.getGcCountSince(start));
+        report.setGcTimeMillis(end.getGcTimeSince(start));
+        long itemsRead = 0;
+        for (PerformanceReport.StepReport step : report.getSteps()) {
+            itemsRead += step.getReadCount();
+            peakHeap = Math.max(peakHeap, step.getPeakHeapBytes());
+        }
+        report.setPeakHeapBytes(peakHeap);
+        report.setInputSize((itemsRead > 0) ? itemsRead : end.getPsmsSince(start));
+
+        File file = new File(reportDirectory, report.getJobName() + "-" + jobExecution.getId() + "-"
+                + new SimpleDateFormat("yyyyMMddHHmmss").format(new Date(report.getStartTime())) + ".perf.json");
+        try {
+            if (!reportDirectory.isDirectory() && !reportDirectory.mkdirs() && !reportDirectory.isDirectory())
+                throw new IOException("The directory can't be created -- " + reportDirectory);
+            report.write(file);
+            log.info("Performance report of the job -- " + file.getAbsolutePath());
+        } catch (IOException e) {
+            log.warn("The performance report of the job can't be written -- " + file + " -- " + e.getMessage());
+        }
+    }
+
+    /**
+     * Close the heap window of a job or a step.
+     *
+     * @return peak heap of the window in bytes, 0 if there is no window
+     */
+    private static long closeHeapWindow(Map<Long, HeapSampler.Window> windows, Long id) {
+        HeapSampler.Window window = windows.remove(id);
+        if (window == null)
+            return 0;
+        long peakHeap = window.getPeak();
+        window.close();
+        return peakHeap;
+    }
+
+    private static String getHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "unknown";
+        }
+    }
+}
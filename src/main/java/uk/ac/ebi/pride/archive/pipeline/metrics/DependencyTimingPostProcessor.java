@@ -0,0 +1,133 @@
+package uk.ac.ebi.pride.archive.pipeline.metrics;
+
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.Advised;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time the calls of the jobs to MongoDB, Solr and Oracle. The services of the MongoDB and Solr libraries and the
+ * repositories and services of the Oracle archive are proxied, and every call is recorded in the
+ * {@link PipelineMetrics#IO_TIMER} timer of its dependency, with the class and the method as operation. While a job
+ * is profiled the calls are also committed as {@link PipelineProfiler} events (mongodbCall, solrCall, oracleCall).
+ *
+ * Only the outermost call of a thread is recorded: a service of the Oracle archive calling its repositories, or a
+ * MongoDB service calling another one, is one call of the job.
+ *
+ * S3 is timed by the {@link uk.ac.ebi.pride.archive.pipeline.services.spectra.AsyncSpectrumUploader} and the bulk
+ * writes into MongoDB by the {@link uk.ac.ebi.pride.archive.pipeline.services.molecules.BulkEvidenceWriter}, they don't
+ * go through Spring beans.
+ */
+@Slf4j
+public class DependencyTimingPostProcessor implements BeanPostProcessor {
+
+    private static final Map<String, PipelineMetrics.Dependency> DEPENDENCY_PACKAGES = new LinkedHashMap<>();
+
+    static {
+        DEPENDENCY_PACKAGES.put("uk.ac.ebi.pride.mongodb.", PipelineMetrics.Dependency.MONGODB);
+        DEPENDENCY_PACKAGES.put("uk.ac.ebi.pride.solr.", PipelineMetrics.Dependency.SOLR);
+        DEPENDENCY_PACKAGES.put("uk.ac.ebi.pride.archive.repo.", PipelineMetrics.Dependency.ORACLE);
+    }
+
+    private static final ThreadLocal<Boolean> IN_CALL = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        Class<?> type = AopUtils.getTargetClass(bean);
+        PipelineMetrics.Dependency dependency = getDependency(type);
+        // the Spring Data repositories are proxies of the repository interfaces
+        if (dependency == null && AopUtils.isJdkDynamicProxy(bean)) {
+            for (Class<?> proxiedInterface : ClassUtils.getAllInterfacesForClass(bean.getClass())) {
+                dependency = getDependency(proxiedInterface);
+                if (dependency != null) {
+                    type = proxiedInterface;
+                    break;
+                }
+            }
+        }
+        if (dependency == null)
+            return bean;
+
+        TimingInterceptor interceptor = new TimingInterceptor(dependency, type.getSimpleName());
+        if (bean instanceof Advised && !((Advised) bean).isFrozen()) {
+            ((Advised) bean).addAdvice(0, interceptor);
+            return bean;
+        }
+        try {
+            ProxyFactory proxyFactory = new ProxyFactory(bean);
+            proxyFactory.setProxyTargetClass(true);
+            proxyFactory.addAdvice(interceptor);
+            return proxyFactory.getProxy(bean.getClass().getClassLoader());
+        } catch (RuntimeException e) {
+            log.warn("The calls of the bean " + beanName + " can't be timed -- " + e.getMessage());
+            return bean;
+        }
+    }
+
+    /**
+     * Dependency of the services and repositories of the libraries, null for any other bean (configurations,
+     * templates, clients).
+     */
+    private static PipelineMetrics.Dependency getDependency(Class<?> type) {
+        if (type == null || AnnotationUtils.findAnnotation(type, Configuration.class) != null)
+            return null;
+        String name = type.getName();
+        if (!name.endsWith("Service") && !name.endsWith("Repository"))
+            return null;
+        for (Map.Entry<String, PipelineMetrics.Dependency> entry : DEPENDENCY_PACKAGES.entrySet()) {
+            if (name.startsWith(entry.getKey()))
+                return entry.getValue();
+        }
+        return null;
+    }
+
+    /**
+     * Record the outermost calls of the proxied bean, the timers are cached by method.
+     */
+    private static class TimingInterceptor implements MethodInterceptor {
+
+        private final PipelineMetrics.Dependency dependency;
+        private final PipelineProfiler.Phase phase;
+        private final String typeName;
+        private final Map<Method, Timer> timers = new ConcurrentHashMap<>();
+
+        TimingInterceptor(PipelineMetrics.Dependency dependency, String typeName) {
+            this.dependency = dependency;
+            this.phase = PipelineProfiler.Phase.callOf(dependency);
+            this.typeName = typeName;
+        }
+
+        @Override
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            Method method = invocation.getMethod();
+            if (IN_CALL.get() || method.getDeclaringClass() == Object.class)
+                return invocation.proceed();
+
+            Timer timer = timers.computeIfAbsent(method,
+                    m -> PipelineMetrics.ioTimer(dependency, typeName + "." + m.getName()));
+            PipelineProfiler.Span span = PipelineProfiler.start(phase, timer.getId().getTag("operation"), null, 0);
+            long start = System.nanoTime();
+            IN_CALL.set(Boolean.TRUE);
+            try {
+                return invocation.proceed();
+            } finally {
+                IN_CALL.set(Boolean.FALSE);
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                span.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package uk.ac.ebi.pride.archive.pipeline.metrics;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Periodic sampler of the used heap, for the peak heap of a job or a step. Each job and step opens its own
+ * {@link Window}, which keeps the maximum of the samples taken while it is open, so the jobs running at the same time
+ * (assay analysis worker) don't reset the peak of each other as the JVM-wide peak of the memory pools would.
+ *
+ * The heap is shared by the JVM, the peak of a window includes the memory of the other jobs running at the same time.
+ * The samples are taken every {@link #SAMPLE_INTERVAL_MILLIS}, a shorter peak between two samples is not seen.
+ */
+public final class HeapSampler {
+
+    static final long SAMPLE_INTERVAL_MILLIS = 200;
+
+    private static final Set<Window> WINDOWS = ConcurrentHashMap.newKeySet();
+    private static final ScheduledExecutorService SCHEDULER = createScheduler();
+    private static ScheduledFuture<?> sampling;
+
+    private HeapSampler() {
+    }
+
+    private static ScheduledExecutorService createScheduler() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("heap-sampler-");
+        threadFactory.setDaemon(true);
+        return Executors.newSingleThreadScheduledExecutor(threadFactory);
+    }
+
+    /**
+     * Open a window, the heap is sampled until all the windows are closed.
+     */
+    public static synchronized Window start() {
+        Window window = new Window(getUsedHeap());
+        WINDOWS.add(window);
+        if (sampling == null)
+            sampling = SCHEDULER.scheduleAtFixedRate(HeapSampler::sample, SAMPLE_INTERVAL_MILLIS,
+                    SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        return window;
+    }
+
+    private static synchronized void stop(Window window) {
+        WINDOWS.remove(window);
+        if (WINDOWS.isEmpty() && sampling != null) {
+            sampling.cancel(false);
+            sampling = null;
+        }
+    }
+
+    private static void sample() {
+        long used = getUsedHeap();
+        for (Window window : WINDOWS)
+            window.update(used);
+    }
+
+    /**
+     * Heap used by the JVM, in bytes.
+     */
+    public static long getUsedHeap() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Maximum of the heap samples taken while the window is open.
+     */
+    public static class Window implements AutoCloseable {
+
+        private final AtomicLong peak;
+
+        private Window(long used) {
+            this.peak = new AtomicLong(used);
+        }
+
+        private void update(long used) {
+            peak.accumulateAndGet(used, Math::max);
+        }
+
+        /**
+         * Peak heap of the window in bytes, including the current usage.
+         */
+        public long getPeak() {
+            update(getUsedHeap());
+            return peak.get();
+        }
+
+        @Override
+        public void close() {
+            stop(this);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package uk.ac.ebi.pride.archive.pipeline.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+
+/**
+ * Java Flight Recorder support of the {@link PipelineProfiler}. The implementation and the JFR events are in
+ * {@code src/main/jfr}, compiled only by the {@code jfr} Maven profile (JDK 11+), and the implementation is loaded by
+ * name: the pipeline is built and run on Java 8 without them.
+ */
+interface JfrSupport {
+
+    String IMPLEMENTATION = "uk.ac.ebi.pride.archive.pipeline.metrics.FlightRecorderSupport";
+
+    /**
+     * @return true if the JVM can record the JFR events
+     */
+    boolean isAvailable();
+
+    /**
+     * Begin the JFR event of a phase.
+     */
+    PipelineProfiler.Span start(PipelineProfiler.Phase phase, String operation, String subject, long items);
+
+    /**
+     * Start a JFR recording of the pipeline events.
+     *
+     * @param name          name of the recording
+     * @param configuration JFR configuration to add to the pipeline events, null for only the pipeline events
+     * @param destination   file of the recording
+     */
+    PipelineProfiler.Recording startRecording(String name, String configuration, File destination)
+            throws IOException, ParseException;
+}
@@ -0,0 +1,350 @@
+package uk.ac.ebi.pride.archive.pipeline.metrics;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Performance report of a job execution, written as JSON at the end of the job by
+ * {@link uk.ac.ebi.pride.archive.pipeline.listeners.PerformanceReportListener} and compared with the baselines of the
+ * job by {@link PerformanceReportComparator}.
+ *
+ * The CPU time, the GC and the peak heap are the ones of the JVM during the job or the step, they include the other
+ * jobs running at the same time in the same JVM (assay analysis worker). The peak heap is the maximum of the heap
+ * samples taken while the job or the step runs ({@link HeapSampler}).
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class PerformanceReport {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .enable(SerializationFeature.INDENT_OUTPUT);
+
+    private String jobName;
+    private Long jobExecutionId;
+    private String status;
+    private String host;
+    private Map<String, String> parameters = new LinkedHashMap<>();
+    private long startTime;
+    private long wallTimeMillis;
+    private long cpuTimeMillis;
+    private long inputSize;
+    private long peakHeapBytes;
+    private long gcCount;
+    private long gcTimeMillis;
+    private List<StepReport> steps = new ArrayList<>();
+
+    public static PerformanceReport read(File file) throws IOException {
+        return OBJECT_MAPPER.readValue(file, PerformanceReport.class);
+    }
+
+    public void write(File file) throws IOException {
+        OBJECT_MAPPER.writeValue(file, this);
+    }
+
+    /**
+     * Report of a step by name, null if the job doesn't have the step.
+     */
+    public StepReport getStep(String name) {
+        for (StepReport step : steps) {
+            if (step.getName().equals(name))
+                return step;
+        }
+        return null;
+    }
+
+    public String getJobName() {
+        return jobName;
+    }
+
+    public void setJobName(String jobName) {
+        this.jobName = jobName;
+    }
+
+    public Long getJobExecutionId() {
+        return jobExecutionId;
+    }
+
+    public void setJobExecutionId(Long jobExecutionId) {
+        this.jobExecutionId = jobExecutionId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+    public Map<String, String> getParameters() {
+        return parameters;
+    }
+
+    public void setParameters(Map<String, String> parameters) {
+        this.parameters = parameters;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(long startTime) {
+        this.startTime = startTime;
+    }
+
+    public long getWallTimeMillis() {
+        return wallTimeMillis;
+    }
+
+    public void setWallTimeMillis(long wallTimeMillis) {
+        this.wallTimeMillis = wallTimeMillis;
+    }
+
+    public long getCpuTimeMillis() {
+        return cpuTimeMillis;
+    }
+
+    public void setCpuTimeMillis(long cpuTimeMillis) {
+        this.cpuTimeMillis = cpuTimeMillis;
+    }
+
+    /**
+     * Size of the input of the job: the items read by the steps or, for the jobs that read their input in tasklets,
+     * the PSMs processed. Only the reports with a similar input size are compared.
+     */
+    public long getInputSize() {
+        return inputSize;
+    }
+
+    public void setInputSize(long inputSize) {
+        this.inputSize = inputSize;
+    }
+
+    public long getPeakHeapBytes() {
+        return peakHeapBytes;
+    }
+
+    public void setPeakHeapBytes(long peakHeapBytes) {
+        this.peakHeapBytes = peakHeapBytes;
+    }
+
+    public long getGcCount() {
+        return gcCount;
+    }
+
+    public void setGcCount(long gcCount) {
+        this.gcCount = gcCount;
+    }
+
+    public long getGcTimeMillis() {
+        return gcTimeMillis;
+    }
+
+    public void setGcTimeMillis(long gcTimeMillis) {
+        this.gcTimeMillis = gcTimeMillis;
+    }
+
+    public List<StepReport> getSteps() {
+        return steps;
+    }
+
+    public void setSteps(List<StepReport> steps) {
+        this.steps = steps;
+    }
+
+    /**
+     * Performance of a step.
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class StepReport {
+
+        private String name;
+        private String status;
+        private long wallTimeMillis;
+        private long cpuTimeMillis;
+        private long readCount;
+        private long writeCount;
+        private long filterCount;
+        private long skipCount;
+        private double itemsPerSecond;
+        private long peakHeapBytes;
+        private long gcCount;
+        private long gcTimeMillis;
+        private List<CallReport> calls = new ArrayList<>();
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public void setStatus(String status) {
+            this.status = status;
+        }
+
+        public long getWallTimeMillis() {
+            return wallTimeMillis;
+        }
+
+        public void setWallTimeMillis(long wallTimeMillis) {
+            this.wallTimeMillis = wallTimeMillis;
+        }
+
+        public long getCpuTimeMillis() {
+            return cpuTimeMillis;
+        }
+
+        public void setCpuTimeMillis(long cpuTimeMillis) {
+            this.cpuTimeMillis = cpuTimeMillis;
+        }
+
+        public long getReadCount() {
+            return readCount;
+        }
+
+        public void setReadCount(long readCount) {
+            this.readCount = readCount;
+        }
+
+        public long getWriteCount() {
+            return writeCount;
+        }
+
+        public void setWriteCount(long writeCount) {
+            this.writeCount = writeCount;
+        }
+
+        public long getFilterCount() {
+            return filterCount;
+        }
+
+        public void setFilterCount(long filterCount) {
+            this.filterCount = filterCount;
+        }
+
+        public long getSkipCount() {
+            return skipCount;
+        }
+
+        public void setSkipCount(long skipCount) {
+            this.skipCount = skipCount;
+        }
+
+        /**
+         * Items read (or written, if the step writes more than it reads) per second of wall time.
+         */
+        public double getItemsPerSecond() {
+            return itemsPerSecond;
+        }
+
+        public void setItemsPerSecond(double itemsPerSecond) {
+            this.itemsPerSecond = itemsPerSecond;
+        }
+
+        public long getPeakHeapBytes() {
+            return peakHeapBytes;
+        }
+
+        public void setPeakHeapBytes(long peakHeapBytes) {
+            this.peakHeapBytes = peakHeapBytes;
+        }
+
+        public long getGcCount() {
+            return gcCount;
+        }
+
+        public void setGcCount(long gcCount) {
+            this.gcCount = gcCount;
+        }
+
+        public long getGcTimeMillis() {
+            return gcTimeMillis;
+        }
+
+        public void setGcTimeMillis(long gcTimeMillis) {
+            this.gcTimeMillis = gcTimeMillis;
+        }
+
+        public List<CallReport> getCalls() {
+            return calls;
+        }
+
+        public void setCalls(List<CallReport> calls) {
+            this.calls = calls;
+        }
+    }
+
+    /**
+     * Calls of a step to an external system ({@link PipelineMetrics#IO_TIMER}).
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class CallReport {
+
+        private String dependency;
+        private String operation;
+        private long count;
+        private double totalTimeMillis;
+        private double meanTimeMillis;
+
+        public String getDependency() {
+            return dependency;
+        }
+
+        public void setDependency(String dependency) {
+            this.dependency = dependency;
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        public void setOperation(String operation) {
+            this.operation = operation;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public void setCount(long count) {
+            this.count = count;
+        }
+
+        public double getTotalTimeMillis() {
+            return totalTimeMillis;
+        }
+
+        public void setTotalTimeMillis(double totalTimeMillis) {
+            this.totalTimeMillis = totalTimeMillis;
+        }
+
+        public double getMeanTimeMillis() {
+            return meanTimeMillis;
+        }
+
+        public void setMeanTimeMillis(double meanTimeMillis) {
+            this.meanTimeMillis = meanTimeMillis;
+        }
+    }
+}
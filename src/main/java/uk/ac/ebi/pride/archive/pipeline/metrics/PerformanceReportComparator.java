@@ -0,0 +1,228 @@
+package uk.ac.ebi.pride.archive.pipeline.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compare the {@link PerformanceReport} of a job execution with the baselines of the job and flag the steps that
+ * regressed. The baseline is the report of the same job with the closest input size, among the ones within the size
+ * tolerance; the times of the baseline are scaled to the input size of the report. A step regressed if its wall or
+ * CPU time is more than the threshold (relative) and the minimum delta (absolute) above the baseline.
+ *
+ * Command line, from the jar of the pipeline:
+ * <pre>
+ * java -cp pride-pipelines.jar -Dloader.main=uk.ac.ebi.pride.archive.pipeline.metrics.PerformanceReportComparator \
+ *     org.springframework.boot.loader.PropertiesLauncher report.perf.json baselineDirectory \
+ *     [--threshold=0.2] [--size-tolerance=0.5] [--min-delta=5000] [--save-baseline]
+ * </pre>
+ * The exit code is 0 if no step regressed, 2 if any step regressed and 1 on errors. With {@code --save-baseline} a
+ * completed report without regressions is copied into the baseline directory.
+ */
+public class PerformanceReportComparator {
+
+    public static final double DEFAULT_THRESHOLD = 0.2;
+    public static final double DEFAULT_SIZE_TOLERANCE = 0.5;
+    public static final long DEFAULT_MIN_DELTA_MILLIS = 5000;
+
+    private static final String REPORT_EXTENSION = ".perf.json";
+
+    private final double threshold;
+    private final double sizeTolerance;
+    private final long minDeltaMillis;
+
+    /**
+     * @param threshold      relative increase of the time of a step that is a regression, e.g. 0.2 for 20%
+     * @param sizeTolerance  relative difference of input size of the baselines that are comparable, e.g. 0.5 for 50%
+     * @param minDeltaMillis minimum increase of the time of a step that is a regression, avoids flagging short steps
+     */
+    public PerformanceReportComparator(double threshold, double sizeTolerance, long minDeltaMillis) {
+        this.threshold = threshold;
+        this.sizeTolerance = sizeTolerance;
+        this.minDeltaMillis = minDeltaMillis;
+    }
+
+    /**
+     * Baseline of a report: the report of the same job with the closest input size within the size tolerance.
+     *
+     * @return baseline, null if there is no comparable baseline
+     */
+    public PerformanceReport selectBaseline(PerformanceReport report, Collection<PerformanceReport> baselines) {
+        PerformanceReport selected = null;
+        double selectedDistance = Double.MAX_VALUE;
+        for (PerformanceReport baseline : baselines) {
+            if (!report.getJobName().equals(baseline.getJobName()) || isSameExecution(report, baseline))
+                continue;
+            double distance = sizeDistance(report.getInputSize(), baseline.getInputSize());
+            if (distance <= sizeTolerance && (distance < selectedDistance
+                    || (distance == selectedDistance && baseline.getStartTime() > selected.getStartTime()))) {
+                selected = baseline;
+                selectedDistance = distance;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Steps of the report that regressed against the baseline.
+     */
+    public List<Regression> compare(PerformanceReport report, PerformanceReport baseline) {
+        double scale = (report.getInputSize() > 0 && baseline.getInputSize() > 0) ?
+                (double) report.getInputSize() / baseline.getInputSize() : 1.0;
+        List<Regression> regressions = new ArrayList<>();
+        for (PerformanceReport.StepReport step : report.getSteps()) {
+            PerformanceReport.StepReport baselineStep = baseline.getStep(step.getName());
+            if (baselineStep == null)
+                continue;
+            addRegression(regressions, step.getName(), "wallTime", step.getWallTimeMillis(),
+                    baselineStep.getWallTimeMillis() * scale);
+            if (step.getCpuTimeMillis() >= 0 && baselineStep.getCpuTimeMillis() >= 0)
+                addRegression(regressions, step.getName(), "cpuTime", step.getCpuTimeMillis(),
+                        baselineStep.getCpuTimeMillis() * scale);
+        }
+        return regressions;
+    }
+
+    private void addRegression(List<Regression> regressions, String step, String metric, long value, double expected) {
+        if (value - expected >= minDeltaMillis && value > expected * (1 + threshold))
+            regressions.add(new Regression(step, metric, expected, value));
+    }
+
+    /**
+     * The report of an execution saved as baseline is not its own baseline.
+     */
+    private static boolean isSameExecution(PerformanceReport report, PerformanceReport baseline) {
+        return baseline.getJobExecutionId() != null && baseline.getJobExecutionId().equals(report.getJobExecutionId())
+                && baseline.getStartTime() == report.getStartTime();
+    }
+
+    /**
+     * Relative difference between two input sizes, 0 if both are 0.
+     */
+    static double sizeDistance(long size, long baselineSize) {
+        long max = Math.max(size, baselineSize);
+        return (max == 0) ? 0 : (double) Math.abs(size - baselineSize) / max;
+    }
+
+    /**
+     * Reports of a baseline directory.
+     */
+    public static List<PerformanceReport> readBaselines(File directory) throws IOException {
+        List<PerformanceReport> baselines = new ArrayList<>();
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(REPORT_EXTENSION));
+        if (files == null)
+            return baselines;
+        for (File file : files)
+            baselines.add(PerformanceReport.read(file));
+        return baselines;
+    }
+
+    public static void main(String[] args) {
+        try {
+            System.exit(run(args));
+        } catch (Exception e) {
+            System.err.println("The performance report can't be compared -- " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    static int run(String[] args) throws IOException {
+        List<String> files = new ArrayList<>();
+        double threshold = DEFAULT_THRESHOLD;
+        double sizeTolerance = DEFAULT_SIZE_TOLERANCE;
+        long minDelta = DEFAULT_MIN_DELTA_MILLIS;
+        boolean saveBaseline = false;
+        for (String arg : args) {
+            if (arg.startsWith("--threshold="))
+                threshold = Double.parseDouble(arg.substring("--threshold=".length()));
+            else if (arg.startsWith("--size-tolerance="))
+                sizeTolerance = Double.parseDouble(arg.substring("--size-tolerance=".length()));
+            else if (arg.startsWith("--min-delta="))
+                minDelta = Long.parseLong(arg.substring("--min-delta=".length()));
+            else if (arg.equals("--save-baseline"))
+                saveBaseline = true;
+            else
+                files.add(arg);
+        }
+        if (files.size() != 2) {
+            System.err.println("Usage: PerformanceReportComparator report" + REPORT_EXTENSION + " baselineDirectory "
+                    + "[--threshold=0.2] [--size-tolerance=0.5] [--min-delta=5000] [--save-baseline]");
+            return 1;
+        }
+
+        File reportFile = new File(files.get(0));
+        File baselineDirectory = new File(files.get(1));
+        PerformanceReport report = PerformanceReport.read(reportFile);
+        PerformanceReportComparator comparator = new PerformanceReportComparator(threshold, sizeTolerance, minDelta);
+        PerformanceReport baseline = comparator.selectBaseline(report, readBaselines(baselineDirectory));
+
+        List<Regression> regressions = new ArrayList<>();
+        if (baseline == null) {
+            System.out.println("No baseline of " + report.getJobName() + " with input size " + report.getInputSize());
+        } else {
+            System.out.println("Baseline of " + report.getJobName() + ": execution " + baseline.getJobExecutionId()
+                    + " input size " + baseline.getInputSize() + " (report input size " + report.getInputSize() + ")");
+            regressions = comparator.compare(report, baseline);
+            for (Regression regression : regressions)
+                System.out.println("REGRESSION " + regression);
+            if (regressions.isEmpty())
+                System.out.println("No step regressed");
+        }
+
+        if (saveBaseline && regressions.isEmpty() && "COMPLETED".equals(report.getStatus())) {
+            if (!baselineDirectory.isDirectory() && !baselineDirectory.mkdirs())
+                throw new IOException("The baseline directory can't be created -- " + baselineDirectory);
+            Files.copy(reportFile.toPath(), new File(baselineDirectory, reportFile.getName()).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            System.out.println("Report saved as baseline in " + baselineDirectory);
+        }
+        return regressions.isEmpty() ? 0 : 2;
+    }
+
+    /**
+     * Metric of a step above its baseline.
+     */
+    public static class Regression {
+
+        private final String step;
+        private final String metric;
+        private final double expectedMillis;
+        private final long actualMillis;
+
+        Regression(String step, String metric, double expectedMillis, long actualMillis) {
+            this.step = step;
+            this.metric = metric;
+            this.expectedMillis = expectedMillis;
+            this.actualMillis = actualMillis;
+        }
+
+        public String getStep() {
+            return step;
+        }
+
+        public String getMetric() {
+            return metric;
+        }
+
+        public double getExpectedMillis() {
+            return expectedMillis;
+        }
+
+        public long getActualMillis() {
+            return actualMillis;
+        }
+
+        @Override
+        public String toString() {
+            if (expectedMillis <= 0)
+                return String.format(Locale.ROOT, "step: %s %s: %d ms baseline: 0 ms", step, metric, actualMillis);
+            return String.format(Locale.ROOT, "step: %s %s: %d ms baseline: %.0f ms (%+.0f%%)", step, metric,
+                    actualMillis, expectedMillis, (actualMillis / expectedMillis - 1) * 100);
+        }
+    }
+}
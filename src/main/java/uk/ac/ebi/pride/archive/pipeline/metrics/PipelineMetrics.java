@@ -0,0 +1,118 @@
+package uk.ac.ebi.pride.archive.pipeline.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Names and helpers of the metrics of the pipeline. The meters are registered in the global registry of Micrometer
+ * ({@link Metrics#globalRegistry}), where the Prometheus and JMX registries are added by
+ * {@link uk.ac.ebi.pride.archive.pipeline.configuration.PipelineMetricsConfig}, so they can be used by the objects
+ * that are not Spring beans (assay executions, spectrum readers, writers). Without registries the meters are no-op.
+ *
+ * Meters:
+ * <ul>
+ *     <li>pride.pipeline.step: duration of the steps, by job, step and status</li>
+ *     <li>pride.pipeline.step.items: items read, written, filtered and skipped by the steps</li>
+ *     <li>pride.pipeline.chunk: duration of the chunks (and of the tasklet calls) of the steps</li>
+ *     <li>pride.pipeline.task: duration of the tasks inside the steps, the former task time map of the jobs</li>
+ *     <li>pride.pipeline.io: calls to MongoDB, Solr, S3 and Oracle, by dependency and operation</li>
+ *     <li>pride.pipeline.psms: PSMs processed, the rate is the PSMs per second</li>
+ *     <li>pride.pipeline.spectra.bytes: bytes of the spectrum files read, by file type</li>
+ * </ul>
+ */
+@Slf4j
+public final class PipelineMetrics {
+
+    public static final String STEP_TIMER = "pride.pipeline.step";
+    public static final String STEP_ITEMS = "pride.pipeline.step.items";
+    public static final String CHUNK_TIMER = "pride.pipeline.chunk";
+    public static final String TASK_TIMER = "pride.pipeline.task";
+    public static final String IO_TIMER = "pride.pipeline.io";
+    public static final String PSM_COUNTER = "pride.pipeline.psms";
+    public static final String SPECTRA_BYTES_COUNTER = "pride.pipeline.spectra.bytes";
+
+    /**
+     * External systems used by the jobs, the value of the dependency tag of {@link #IO_TIMER}.
+     */
+    public enum Dependency {
+        MONGODB, SOLR, S3, ORACLE;
+
+        public String getTag() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private PipelineMetrics() {
+    }
+
+    public static MeterRegistry registry() {
+        return Metrics.globalRegistry;
+    }
+
+    /**
+     * Record the time of a task that started at {@code startMillis} and log it, as the jobs used to do at the end with
+     * the task time map.
+     *
+     * @param task        name of the task
+     * @param startMillis start of the task ({@link System#currentTimeMillis()})
+     * @return time of the task in milliseconds
+     */
+    public static long recordTask(String task, long startMillis) {
+        long time = System.currentTimeMillis() - startMillis;
+        Timer.builder(TASK_TIMER)
+                .tag("task", task)
+                .register(registry())
+                .record(time, TimeUnit.MILLISECONDS);
+        log.info("Task: " + task + " Time: " + time);
+        return time;
+    }
+
+    /**
+     * Timer of the calls of an operation to an external system. The timers are cached by the registry, but the hot
+     * paths should keep the timer instead of looking it up for every call.
+     *
+     * @param dependency external system
+     * @param operation  operation, usually the class and the method called
+     * @return Timer
+     */
+    public static Timer ioTimer(Dependency dependency, String operation) {
+        return Timer.builder(IO_TIMER)
+                .tag("dependency", dependency.getTag())
+                .tag("operation", operation)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(registry());
+    }
+
+    /**
+     * Time a call to an external system.
+     */
+    public static <T> T timeIo(Dependency dependency, String operation, Supplier<T> call) {
+        return ioTimer(dependency, operation).record(call);
+    }
+
+    public static Counter psmCounter() {
+        return Counter.builder(PSM_COUNTER)
+                .baseUnit("psms")
+                .register(registry());
+    }
+
+    /**
+     * Counter of the bytes read from the spectrum files of a type.
+     *
+     * @param fileType type of the spectrum files, for example mgf or mzml
+     * @return Counter
+     */
+    public static Counter spectraBytesCounter(String fileType) {
+        return Counter.builder(SPECTRA_BYTES_COUNTER)
+                .baseUnit("bytes")
+                .tag("type", fileType)
+                .register(registry());
+    }
+}
@@ -0,0 +1,174 @@
+package uk.ac.ebi.pride.archive.pipeline.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Profiling of the per-PSM and per-record paths of the jobs with Java Flight Recorder. The code of a phase (spectrum
+ * reading, delta mass, JSON serialization of the backups, bulk inserts, S3 uploads, calls to MongoDB, Solr and
+ * Oracle, transform and write of the projects) is wrapped in a {@link Span}, committed as a JFR event while a
+ * recording of a job is running ({@link #startRecording(String, String, File)}).
+ *
+ * Without recordings {@link #start(Phase)} returns a shared no-op span, the instrumentation costs a volatile read.
+ * The JFR classes ({@link JfrSupport}) are only compiled by the {@code jfr} Maven profile, on JDK 11+; the profiling
+ * is not available in a build without them or on a JVM without the JFR events API (Java 11 or Java 8u262+).
+ *
+ * <pre>
+ * PipelineProfiler.Span span = PipelineProfiler.start(PipelineProfiler.Phase.DELTA_MASS, assayAccession);
+ * double deltaMass = MoleculeUtilities.calculateDeltaMz(...);
+ * span.close();
+ * </pre>
+ */
+public final class PipelineProfiler {
+
+    /**
+     * Phases of the processing, the value of the phase field of the events.
+     */
+    public enum Phase {
+        SPECTRUM_READ("spectrumRead"),
+        USI_ENCODING("usiEncoding"),
+        DELTA_MASS("deltaMass"),
+        BACKUP_WRITE("backupWrite"),
+        MONGODB_BULK_INSERT("mongodbBulkInsert"),
+        S3_PUT("s3Put"),
+        PROTEIN_PEPTIDE_INDEX("proteinPeptideIndex"),
+        PROJECT_TRANSFORM("projectTransform"),
+        PROJECT_WRITE("projectWrite"),
+        MONGODB_CALL("mongodbCall"),
+        SOLR_CALL("solrCall"),
+        ORACLE_CALL("oracleCall");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        /**
+         * Phase of the calls to a dependency timed by {@link DependencyTimingPostProcessor}.
+         */
+        public static Phase callOf(PipelineMetrics.Dependency dependency) {
+            switch (dependency) {
+                case MONGODB:
+                    return MONGODB_CALL;
+                case SOLR:
+                    return SOLR_CALL;
+                case S3:
+                    return S3_PUT;
+                default:
+                    return ORACLE_CALL;
+            }
+        }
+    }
+
+    /**
+     * Running phase, {@link #close()} ends it and commits its event.
+     */
+    public interface Span extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+
+    private static final Span NOOP = () -> {
+    };
+
+    /**
+     * JFR recording of a job, {@link #stop()} writes it into its file.
+     */
+    public interface Recording {
+
+        /**
+         * @return file of the recording
+         */
+        File stop();
+    }
+
+    private static final AtomicInteger RECORDINGS = new AtomicInteger();
+
+    private static final JfrSupport JFR = loadJfrSupport();
+
+    private PipelineProfiler() {
+    }
+
+    public static Span start(Phase phase) {
+        return start(phase, null, null, 0);
+    }
+
+    /**
+     * @param subject accession of the assay or the project being processed, can be null
+     */
+    public static Span start(Phase phase, String subject) {
+        return start(phase, null, subject, 0);
+    }
+
+    /**
+     * @param operation class and method called, can be null
+     * @param subject   accession of the assay or the project being processed, can be null
+     * @param items     records processed in the phase, e.g. the documents of a bulk insert
+     */
+    public static Span start(Phase phase, String operation, String subject, long items) {
+        if (RECORDINGS.get() == 0)
+            return NOOP;
+        return JFR.start(phase, operation, subject, items);
+    }
+
+    /**
+     * Start a JFR recording with the events of the phases, only if {@link #isAvailable()}.
+     *
+     * @param name          name of the recording
+     * @param configuration JFR configuration to add to the pipeline events (e.g. {@code default}), null for only the
+     *                      pipeline events and the garbage collections
+     * @param destination   file of the recording
+     */
+    public static Recording startRecording(String name, String configuration, File destination)
+            throws IOException, ParseException {
+        if (JFR == null)
+            throw new IllegalStateException("Java Flight Recorder is not available");
+        return JFR.startRecording(name, configuration, destination);
+    }
+
+    /**
+     * @return true if the JVM supports the JFR events API
+     */
+    public static boolean isAvailable() {
+        return JFR != null;
+    }
+
+    /**
+     * @return true if a recording of a job is running and the spans are committed
+     */
+    public static boolean isRecording() {
+        return RECORDINGS.get() > 0;
+    }
+
+    static void recordingStarted() {
+        RECORDINGS.incrementAndGet();
+    }
+
+    static void recordingStopped() {
+        RECORDINGS.decrementAndGet();
+    }
+
+    /**
+     * The JFR classes are loaded by name, so the pipeline still builds and runs without them.
+     *
+     * @return JFR support, null if the JFR classes were not built or the JVM doesn't support the JFR events
+     */
+    private static JfrSupport loadJfrSupport() {
+        try {
+            Class.forName("jdk.jfr.FlightRecorder");
+            JfrSupport support = (JfrSupport) Class.forName(JfrSupport.IMPLEMENTATION)
+                    .getDeclaredConstructor().newInstance();
+            return support.isAvailable() ? support : null;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package uk.ac.ebi.pride.archive.pipeline.metrics;
+
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write the metrics of a {@link PrometheusMeterRegistry} in a text file with the Prometheus exposition format, so the
+ * jobs running in the LSF nodes don't need a metrics server: the file can be read by the textfile collector of the node
+ * exporter or just copied with the logs of the job.
+ *
+ * The file is written periodically, at the end of every job and when the application is closed. It is written in a
+ * temporary file and moved, the readers never see a partial file.
+ */
+@Slf4j
+public class PrometheusTextFileExporter implements AutoCloseable {
+
+    private final PrometheusMeterRegistry registry;
+    private final Path file;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Create the exporter.
+     *
+     * @param registry       Prometheus registry
+     * @param file           metrics file
+     * @param intervalMillis interval between two exports, 0 to export only at the end of the jobs
+     */
+    public PrometheusTextFileExporter(PrometheusMeterRegistry registry, File file, long intervalMillis) {
+        this.registry = registry;
+        this.file = file.toPath().toAbsolutePath();
+        if (intervalMillis > 0) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("metrics-export-"));
+            this.scheduler.scheduleWithFixedDelay(this::exportQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.scheduler = null;
+        }
+        log.info("The metrics are exported to " + this.file);
+    }
+
+    /**
+     * Write the current value of the metrics.
+     *
+     * @throws IOException if the file can't be written
+     */
+    public synchronized void export() throws IOException {
+        Path parent = file.getParent();
+        if (parent != null)
+            Files.createDirectories(parent);
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            writer.write(registry.scrape());
+        }
+        try {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    public void exportQuietly() {
+        try {
+            export();
+        } catch (IOException | RuntimeException e) {
+            log.warn("The metrics can't be exported to " + file + " -- " + e.getMessage());
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null)
+            scheduler.shutdownNow();
+        exportQuietly();
+    }
+}
@@ -0,0 +1,131 @@
+package uk.ac.ebi.pride.archive.pipeline.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Usage of the JVM and of the external systems at a point in time: wall time, CPU time of the process, GC
+ * collections and the calls recorded in {@link PipelineMetrics#IO_TIMER}. The usage of a job or a step is the
+ * difference between the snapshots taken before and after it.
+ */
+public class ResourceSnapshot {
+
+    private final long wallTime;
+    private final long cpuTime;
+    private final long gcCount;
+    private final long gcTime;
+    private final double psms;
+    private final Map<String, CallTime> calls;
+
+    private ResourceSnapshot(long wallTime, long cpuTime, long gcCount, long gcTime, double psms,
+                             Map<String, CallTime> calls) {
+        this.wallTime = wallTime;
+        this.cpuTime = cpuTime;
+        this.gcCount = gcCount;
+        this.gcTime = gcTime;
+        this.psms = psms;
+        this.calls = calls;
+    }
+
+    public static ResourceSnapshot take() {
+        long gcCount = 0;
+        long gcTime = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount += Math.max(0, collector.getCollectionCount());
+            gcTime += Math.max(0, collector.getCollectionTime());
+        }
+
+        Map<String, CallTime> calls = new HashMap<>();
+        for (Timer timer : PipelineMetrics.registry().find(PipelineMetrics.IO_TIMER).timers()) {
+            String dependency = timer.getId().getTag("dependency");
+            String operation = timer.getId().getTag("operation");
+            calls.put(dependency + "/" + operation, new CallTime(dependency, operation, timer.count(),
+                    timer.totalTime(TimeUnit.MILLISECONDS)));
+        }
+
+        double psms = 0;
+        for (Counter counter : PipelineMetrics.registry().find(PipelineMetrics.PSM_COUNTER).counters())
+            psms += counter.count();
+
+        return new ResourceSnapshot(System.currentTimeMillis(), getProcessCpuTime(), gcCount, gcTime, psms, calls);
+    }
+
+    public long getWallTimeSince(ResourceSnapshot start) {
+        return wallTime - start.wallTime;
+    }
+
+    /**
+     * CPU time of the process since the start snapshot in milliseconds, -1 if the JVM doesn't provide it.
+     */
+    public long getCpuTimeSince(ResourceSnapshot start) {
+        if (cpuTime < 0 || start.cpuTime < 0)
+            return -1;
+        return TimeUnit.NANOSECONDS.toMillis(cpuTime - start.cpuTime);
+    }
+
+    public long getGcCountSince(ResourceSnapshot start) {
+        return gcCount - start.gcCount;
+    }
+
+    public long getGcTimeSince(ResourceSnapshot start) {
+        return gcTime - start.gcTime;
+    }
+
+    public long getPsmsSince(ResourceSnapshot start) {
+        return (long) (psms - start.psms);
+    }
+
+    /**
+     * Calls to the external systems since the start snapshot, only the operations that have been called.
+     */
+    public List<PerformanceReport.CallReport> getCallsSince(ResourceSnapshot start) {
+        List<PerformanceReport.CallReport> reports = new ArrayList<>();
+        calls.forEach((key, call) -> {
+            CallTime previous = start.calls.get(key);
+            long count = call.count - ((previous != null) ? previous.count : 0);
+            if (count <= 0)
+                return;
+            double totalTime = call.totalTime - ((previous != null) ? previous.totalTime : 0);
+            PerformanceReport.CallReport report = new PerformanceReport.CallReport();
+            report.setDependency(call.dependency);
+            report.setOperation(call.operation);
+            report.setCount(count);
+            report.setTotalTimeMillis(totalTime);
+            report.setMeanTimeMillis(totalTime / count);
+            reports.add(report);
+        });
+        reports.sort((a, b) -> Double.compare(b.getTotalTimeMillis(), a.getTotalTimeMillis()));
+        return reports;
+    }
+
+    private static long getProcessCpuTime() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean)
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        return -1;
+    }
+
+    private static class CallTime {
+
+        private final String dependency;
+        private final String operation;
+        private final long count;
+        private final double totalTime;
+
+        CallTime(String dependency, String operation, long count, double totalTime) {
+            this.dependency = dependency;
+            this.operation = operation;
+            this.count = count;
+            this.totalTime = totalTime;
+        }
+    }
+}
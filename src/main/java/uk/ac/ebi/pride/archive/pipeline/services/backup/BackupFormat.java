@@ -0,0 +1,60 @@
+package uk.ac.ebi.pride.archive.pipeline.services.backup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.module.paranamer.ParanamerModule;
+
+import java.util.Locale;
+
+/**
+ * Formats of the backup files of the assays:
+ * <ul>
+ *     <li>JSON: one JSON document per line, the original format ({@link JsonBackupWriter}, {@link JsonBackupReader})</li>
+ *     <li>BINARY: CBOR documents in deflate compressed blocks, with a versioned header that has the type and the
+ *     number of records ({@link BinaryBackupWriter}, {@link BinaryBackupReader})</li>
+ * </ul>
+ * Both formats are always readable, the format of a file is given by its extension.
+ */
+public enum BackupFormat {
+
+    JSON(".json", new ObjectMapper()),
+    BINARY(".bin", new ObjectMapper(new CBORFactory()));
+
+    private final String extension;
+    private final ObjectMapper objectMapper;
+
+    BackupFormat(String extension, ObjectMapper objectMapper) {
+        this.extension = extension;
+        // the evidences are immutable, they are created through their constructors
+        this.objectMapper = objectMapper.registerModule(new ParanamerModule());
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Mapper of the records, shared by all the readers and writers of the format.
+     */
+    public ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
+    /**
+     * @return format of a backup file, null if the file name has no backup extension
+     */
+    public static BackupFormat fromFileName(String fileName) {
+        for (BackupFormat format : values()) {
+            if (fileName.endsWith(format.extension))
+                return format;
+        }
+        return null;
+    }
+
+    /**
+     * Format of a configuration property, e.g. {@code pride.data.backup.format=binary}.
+     */
+    public static BackupFormat fromProperty(String value) {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+}
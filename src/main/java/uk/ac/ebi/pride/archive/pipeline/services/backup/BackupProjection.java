@@ -0,0 +1,99 @@
+package uk.ac.ebi.pride.archive.pipeline.services.backup;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Projection of the backup records on a list of paths, e.g. {@code proteinAccession} or {@code $.usi}. The records
+ * are read with the streaming parser, without binding them to their classes: the fields out of the paths are skipped
+ * with their whole subtree, and the parsing of a record stops when all the values have been read.
+ *
+ * The paths are the names of the fields separated by dots, starting from the record; the fields inside arrays can't be
+ * selected. A record is decoded as the values of the paths, in the order of the paths: scalar values as text, objects
+ * and arrays as JSON text, and null if the field is null or missing.
+ */
+public class BackupProjection implements BackupRecordDecoder<String[]> {
+
+    private final List<String> paths;
+    private final PathNode root = new PathNode();
+
+    /**
+     * @param paths paths of the values, an optional {@code $.} prefix is ignored
+     */
+    public BackupProjection(String... paths) {
+        if (paths.length == 0)
+            throw new IllegalArgumentException("The projection has no path");
+        this.paths = Collections.unmodifiableList(Arrays.asList(paths.clone()));
+        for (int i = 0; i < paths.length; i++) {
+            String path = paths[i].startsWith("$.") ? paths[i].substring(2) : paths[i];
+            PathNode node = root;
+            for (String field : path.split("\\.")) {
+                if (field.isEmpty() || node.index >= 0)
+                    throw new IllegalArgumentException("Invalid projection path -- " + paths[i]);
+                node = node.children.computeIfAbsent(field, name -> new PathNode());
+            }
+            if (node.index >= 0 || !node.children.isEmpty())
+                throw new IllegalArgumentException("Invalid projection path -- " + paths[i]);
+            node.index = i;
+        }
+    }
+
+    public List<String> getPaths() {
+        return paths;
+    }
+
+    @Override
+    public String[] decode(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT)
+            throw new JsonParseException(parser, "The backup record is not an object");
+        String[] values = new String[paths.size()];
+        readObject(parser, root, values, values.length);
+        return values;
+    }
+
+    /**
+     * Read the fields of an object, up to its end or until all the values have been read.
+     *
+     * @param missing number of values not read yet
+     * @return number of values not read yet
+     */
+    private static int readObject(JsonParser parser, PathNode node, String[] values, int missing) throws IOException {
+        while (missing > 0 && parser.nextToken() == JsonToken.FIELD_NAME) {
+            PathNode child = node.children.get(parser.getCurrentName());
+            JsonToken token = parser.nextToken();
+            if (child == null) {
+                parser.skipChildren();
+            } else if (child.index >= 0) {
+                values[child.index] = readValue(parser, token);
+                missing--;
+            } else if (token == JsonToken.START_OBJECT) {
+                missing = readObject(parser, child, values, missing);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return missing;
+    }
+
+    private static String readValue(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL)
+            return null;
+        if (token.isStructStart())
+            return parser.readValueAsTree().toString();
+        return parser.getValueAsString();
+    }
+
+    private static class PathNode {
+
+        private final Map<String, PathNode> children = new HashMap<>();
+        private int index = -1;
+    }
+}
@@ -0,0 +1,18 @@
+package uk.ac.ebi.pride.archive.pipeline.services.backup;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * Streaming reader of a backup file, the records are read one at a time and the file is never loaded in memory.
+ * {@link #next()} and {@link #hasNext()} throw {@link java.io.UncheckedIOException} if the file can't be read.
+ *
+ * @param <T> type of the records
+ */
+public interface BackupReader<T> extends Iterator<T>, Closeable {
+
+    /**
+     * @return records of the file, -1 if the format doesn't store it or the file was not closed by its writer
+     */
+    long getRecordCount();
+}
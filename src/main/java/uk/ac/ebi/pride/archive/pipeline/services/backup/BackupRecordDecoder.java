@@ -0,0 +1,29 @@
+package uk.ac.ebi.pride.archive.pipeline.services.backup;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.IOException;
+
+/**
+ * Decoder of the records of the backup files. The parser is created for a single record, by the reader of the
+ * format, and closed after the decoding, so a decoder can stop before the end of the record.
+ *
+ * @param <T> type of the decoded records
+ */
+@FunctionalInterface
+public interface BackupRecordDecoder<T> {
+
+    /**
+     * @param parser parser of the record, before its first token
+     * @return decoded record
+     */
+    T decode(JsonParser parser) throws IOException;
+
+    /**
+     * @return decoder that binds the whole record to its class
+     */
+    static <T> BackupRecordDecoder<T> binding(ObjectReader objectReader) {
+        return objectReader::readValue;
+    }
+}
@@ -0,0 +1,19 @@
+package uk.ac.ebi.pride.archive.pipeline.services.backup;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Writer of a backup file. The records are written in the order of the calls, the writers are thread safe.
+ *
+ * @param <T> type of the records
+ */
+public interface BackupWriter<T> extends Closeable {
+
+    void write(T record) throws IOException;
+
+    /**
+     * @return records written so far
+     */
+    long getRecordCount();
+}
@@ -0,0 +1,118 @@
+package uk.ac.ebi.pride.archive.pipeline.services.backup;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Header of a binary backup file:
+ * <pre>
+ * offset  size  content
+ * 0       4     magic "PRBK"
+ * 4       4     version of the format
+ * 8       4     codec of the blocks, 1 = deflate (zlib)
+ * 12      8     number of records, -1 until the writer is closed
+ * 20      4     number of blocks, -1 until the writer is closed
+ * 24      2+n   class name of the records, length and UTF-8 bytes
+ * </pre>
+ * Every block is made of its uncompressed size, compressed size and number of records (3 x 4 bytes) and the
+ * compressed records; an uncompressed block is a sequence of records, each one the length (4 bytes) and the CBOR
+ * document. All the numbers are big endian.
+ */
+final class BinaryBackupHeader {
+
+    static final int VERSION = 1;
+    static final int CODEC_DEFLATE = 1;
+    static final int BLOCK_HEADER_SIZE = 12;
+
+    private static final byte[] MAGIC = {'P', 'R', 'B', 'K'};
+    private static final int COUNTS_OFFSET = 12;
+
+    private final int version;
+    private final int codec;
+    private final long recordCount;
+    private final int blockCount;
+    private final String recordType;
+
+    private BinaryBackupHeader(int version, int codec, long recordCount, int blockCount, String recordType) {
+        this.version = version;
+        this.codec = codec;
+        this.recordCount = recordCount;
+        this.blockCount = blockCount;
+        this.recordType = recordType;
+    }
+
+    /**
+     * Write the header of a new file, without counts, at the current position of the channel.
+     */
+    static void write(FileChannel channel, String recordType) throws IOException {
+        byte[] type = recordType.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer header = ByteBuffer.allocate(26 + type.length);
+        header.put(MAGIC).putInt(VERSION).putInt(CODEC_DEFLATE).putLong(-1).putInt(-1)
+                .putShort((short) type.length).put(type);
+        header.flip();
+        writeFully(channel, header);
+    }
+
+    /**
+     * Write the counts of the records and the blocks when the file is complete.
+     */
+    static void writeCounts(FileChannel channel, long recordCount, int blockCount) throws IOException {
+        ByteBuffer counts = ByteBuffer.allocate(12);
+        counts.putLong(recordCount).putInt(blockCount);
+        counts.flip();
+        while (counts.hasRemaining())
+            channel.write(counts, COUNTS_OFFSET + counts.position());
+    }
+
+    static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    /**
+     * Read the header at the start of a file.
+     *
+     * @throws IOException if the file is not a binary backup file or its version is not supported
+     */
+    static BinaryBackupHeader read(DataInput in) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC))
+            throw new IOException("Not a binary backup file");
+        int version = in.readInt();
+        if (version < 1 || version > VERSION)
+            throw new IOException("Unsupported version of the binary backup format -- " + version);
+        int codec = in.readInt();
+        if (codec != CODEC_DEFLATE)
+            throw new IOException("Unsupported codec of the binary backup format -- " + codec);
+        long recordCount = in.readLong();
+        int blockCount = in.readInt();
+        byte[] type = new byte[in.readUnsignedShort()];
+        in.readFully(type);
+        return new BinaryBackupHeader(version, codec, recordCount, blockCount, new String(type, StandardCharsets.UTF_8));
+    }
+
+    int getVersion() {
+        return version;
+    }
+
+    int getCodec() {
+        return codec;
+    }
+
+    long getRecordCount() {
+        return recordCount;
+    }
+
+    int getBlockCount() {
+        return blockCount;
+    }
+
+    String getRecordType() {
+        return recordType;
+    }
+}
@@ -0,0 +1,165 @@
+package uk.ac.ebi.pride.archive.pipeline.services.backup;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.NoSuchElementException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Streaming reader of the binary backup files ({@link BinaryBackupWriter}). Only the current block is in memory, its
+ * records are decoded one at a time by {@link #next()}: bound to their class, or decoded by a
+ * {@link BackupRecordDecoder}.
+ *
+ * A file that was not closed by its writer (no counts in the header) is read up to its last complete block; a file
+ * that has fewer records than its header is truncated and fails with an {@link UncheckedIOException}.
+ *
+ * The reader is not thread safe.
+ *
+ * @param <T> type of the records
+ */
+public class BinaryBackupReader<T> implements BackupReader<T> {
+
+    private static final int INPUT_BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+    private final DataInputStream in;
+    private final BinaryBackupHeader header;
+    private final JsonFactory factory;
+    private final BackupRecordDecoder<T> decoder;
+    private final Inflater inflater = new Inflater();
+
+    private byte[] compressed = new byte[0];
+    private byte[] block = new byte[0];
+    private int blockLength;
+    private int position;
+    private long readRecords;
+    private boolean ended;
+
+    public BinaryBackupReader(File file, Class<T> type) throws IOException {
+        this(file, BackupRecordDecoder.binding(BackupFormat.BINARY.getObjectMapper().readerFor(type)));
+    }
+
+    public BinaryBackupReader(File file, BackupRecordDecoder<T> decoder) throws IOException {
+        this.file = file;
+        this.factory = BackupFormat.BINARY.getObjectMapper().getFactory();
+        this.decoder = decoder;
+        this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), INPUT_BUFFER_SIZE));
+        try {
+            this.header = BinaryBackupHeader.read(in);
+        } catch (IOException e) {
+            close();
+            throw new IOException(e.getMessage() + " -- " + file, e);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (position < blockLength)
+            return true;
+        if (ended)
+            return false;
+        try {
+            return readBlock();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        int length = ((block[position] & 0xff) << 24) | ((block[position + 1] & 0xff) << 16)
+                | ((block[position + 2] & 0xff) << 8) | (block[position + 3] & 0xff);
+        position += 4;
+        try (JsonParser parser = factory.createParser(block, position, length)) {
+            T record = decoder.decode(parser);
+            position += length;
+            readRecords++;
+            return record;
+        } catch (IOException e) {
+            throw new UncheckedIOException("The record " + readRecords + " can't be read -- " + file, e);
+        }
+    }
+
+    @Override
+    public long getRecordCount() {
+        return header.getRecordCount();
+    }
+
+    /**
+     * @return class name of the records written in the file
+     */
+    public String getRecordType() {
+        return header.getRecordType();
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+
+    /**
+     * Read and inflate the next block.
+     *
+     * @return false at the end of the file
+     */
+    private boolean readBlock() throws IOException {
+        int first = in.read();
+        if (first < 0) {
+            ended = true;
+            if (header.getRecordCount() >= 0 && readRecords != header.getRecordCount())
+                throw new IOException("The backup file is truncated, " + readRecords + " of "
+                        + header.getRecordCount() + " records -- " + file);
+            return false;
+        }
+        int uncompressedSize;
+        int compressedSize;
+        try {
+            uncompressedSize = (first << 24) | (in.readUnsignedByte() << 16) | (in.readUnsignedShort());
+            compressedSize = in.readInt();
+            // records of the block, they are delimited by their lengths
+            in.readInt();
+            if (compressed.length < compressedSize)
+                compressed = new byte[compressedSize];
+            in.readFully(compressed, 0, compressedSize);
+        } catch (EOFException e) {
+            // the last block of a file that was not closed
+            ended = true;
+            if (header.getRecordCount() >= 0)
+                throw new IOException("The backup file is truncated -- " + file, e);
+            return false;
+        }
+
+        if (block.length < uncompressedSize)
+            block = new byte[uncompressedSize];
+        inflater.reset();
+        inflater.setInput(compressed, 0, compressedSize);
+        try {
+            int inflated = 0;
+            while (inflated < uncompressedSize && !inflater.finished()) {
+                int count = inflater.inflate(block, inflated, uncompressedSize - inflated);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+                inflated += count;
+            }
+            if (inflated != uncompressedSize)
+                throw new IOException("Corrupted block in the backup file -- " + file);
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted block in the backup file -- " + file, e);
+        }
+        blockLength = uncompressedSize;
+        position = 0;
+        return uncompressedSize > 0 || readBlock();
+    }
+}
@@ -0,0 +1,164 @@
+package uk.ac.ebi.pride.archive.pipeline.services.backup;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import uk.ac.ebi.pride.archive.pipeline.metrics.PipelineProfiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * Writer of the binary backup files ({@link BinaryBackupHeader}). The records are encoded as CBOR, which keeps the
+ * peak arrays of the spectra as binary doubles, and collected into blocks that are compressed with deflate when they
+ * reach the block size. The counts of the header are written when the writer is closed, a file without counts was
+ * not completed.
+ *
+ * A record is serialized into a buffer reused by the calling thread, only the copy into the block and the compression
+ * of the full blocks are synchronized.
+ *
+ * @param <T> type of the records
+ */
+public class BinaryBackupWriter<T> implements BackupWriter<T> {
+
+    public static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+
+    private static final int RECORD_BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_RETAINED_BUFFER_SIZE = 4 * 1024 * 1024;
+    private static final ThreadLocal<RecordBuffer> RECORD_BUFFER =
+            ThreadLocal.withInitial(() -> new RecordBuffer(RECORD_BUFFER_SIZE));
+
+    private final FileChannel channel;
+    private final ObjectWriter objectWriter;
+    private final int blockSize;
+    private final Deflater deflater;
+
+    private final RecordBuffer block;
+    private final ByteBuffer blockHeader = ByteBuffer.allocate(BinaryBackupHeader.BLOCK_HEADER_SIZE);
+    private byte[] compressed = new byte[0];
+    private int blockRecords;
+    private long records;
+    private int blocks;
+    private boolean closed;
+
+    public BinaryBackupWriter(File file, Class<T> type) throws IOException {
+        this(file, type, DEFAULT_BLOCK_SIZE, Deflater.BEST_SPEED);
+    }
+
+    /**
+     * @param file             backup file, replaced if it exists
+     * @param type             type of the records
+     * @param blockSize        uncompressed size of the blocks in bytes
+     * @param compressionLevel deflate level, from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}
+     */
+    public BinaryBackupWriter(File file, Class<T> type, int blockSize, int compressionLevel) throws IOException {
+        this.objectWriter = BackupFormat.BINARY.getObjectMapper().writerFor(type);
+        this.blockSize = blockSize;
+        this.block = new RecordBuffer(blockSize + RECORD_BUFFER_SIZE);
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            BinaryBackupHeader.write(channel, type.getName());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        this.deflater = new Deflater(compressionLevel);
+    }
+
+    @Override
+    public void write(T record) throws IOException {
+        PipelineProfiler.Span span = PipelineProfiler.start(PipelineProfiler.Phase.BACKUP_WRITE);
+        RecordBuffer buffer = RECORD_BUFFER.get();
+        buffer.reset();
+        try {
+            objectWriter.writeValue(buffer, record);
+            synchronized (this) {
+                if (closed)
+                    throw new IOException("The backup writer is closed");
+                block.writeInt(buffer.size());
+                block.write(buffer.array(), 0, buffer.size());
+                blockRecords++;
+                records++;
+                if (block.size() >= blockSize)
+                    writeBlock();
+            }
+        } finally {
+            // don't keep the buffer of an unusually large record for the life of the thread
+            if (buffer.size() > MAX_RETAINED_BUFFER_SIZE)
+                RECORD_BUFFER.remove();
+            span.close();
+        }
+    }
+
+    @Override
+    public synchronized long getRecordCount() {
+        return records;
+    }
+
+    /**
+     * Write the last block and the counts of the header.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            if (blockRecords > 0)
+                writeBlock();
+            BinaryBackupHeader.writeCounts(channel, records, blocks);
+        } finally {
+            deflater.end();
+            channel.close();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        deflater.reset();
+        deflater.setInput(block.array(), 0, block.size());
+        deflater.finish();
+        if (compressed.length < block.size() + 64)
+            compressed = new byte[block.size() + block.size() / 8 + 64];
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == compressed.length)
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+
+        blockHeader.clear();
+        blockHeader.putInt(block.size()).putInt(length).putInt(blockRecords);
+        blockHeader.flip();
+        BinaryBackupHeader.writeFully(channel, blockHeader);
+        BinaryBackupHeader.writeFully(channel, ByteBuffer.wrap(compressed, 0, length));
+        blocks++;
+        block.reset();
+        blockRecords = 0;
+    }
+
+    /**
+     * Byte array output stream that gives access to its array.
+     */
+    static class RecordBuffer extends ByteArrayOutputStream {
+
+        RecordBuffer(int size) {
+            super(size);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+
+        void writeInt(int value) {
+            write(value >>> 24);
+            write(value >>> 16);
+            write(value >>> 8);
+            write(value);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package uk.ac.ebi.pride.archive.pipeline.services.backup;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.NoSuchElementException;
+
+/**
+ * Streaming reader of the JSON backup files, one record per line. The empty lines are skipped. The records are bound
+ * to their class, or decoded by a {@link BackupRecordDecoder}.
+ *
+ * The reader is not thread safe.
+ *
+ * @param <T> type of the records
+ */
+public class JsonBackupReader<T> implements BackupReader<T> {
+
+    private final File file;
+    private final BufferedReader reader;
+    private final JsonFactory factory;
+    private final BackupRecordDecoder<T> decoder;
+
+    private String nextLine;
+    private long lineNumber;
+
+    public JsonBackupReader(File file, Class<T> type) throws IOException {
+        this(file, BackupRecordDecoder.binding(BackupFormat.JSON.getObjectMapper().readerFor(type)));
+    }
+
+    public JsonBackupReader(File file, BackupRecordDecoder<T> decoder) throws IOException {
+        this.file = file;
+        this.factory = BackupFormat.JSON.getObjectMapper().getFactory();
+        this.decoder = decoder;
+        this.reader = new BufferedReader(new FileReader(file));
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            while (nextLine == null) {
+                String line = reader.readLine();
+                if (line == null)
+                    return false;
+                lineNumber++;
+                if (!line.trim().isEmpty())
+                    nextLine = line;
+            }
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        String line = nextLine;
+        nextLine = null;
+        try (JsonParser parser = factory.createParser(line)) {
+            return decoder.decode(parser);
+        } catch (IOException e) {
+            throw new UncheckedIOException("The line " + lineNumber + " can't be read -- " + file, e);
+        }
+    }
+
+    /**
+     * @return -1, the JSON files don't store their number of records
+     */
+    @Override
+    public long getRecordCount() {
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,75 @@
+package uk.ac.ebi.pride.archive.pipeline.services.backup;
+
+import uk.ac.ebi.pride.archive.pipeline.metrics.PipelineProfiler;
+
+import java.io.BufferedWriter;
+import java.io.CharArrayWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writer of the JSON backup files, one JSON document per line.
+ *
+ * @param <T> type of the records
+ */
+public class JsonBackupWriter<T> implements BackupWriter<T> {
+
+    private static final int WRITE_BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_RETAINED_BUFFER_SIZE = 4 * 1024 * 1024;
+    private static final ThreadLocal<CharArrayWriter> WRITE_BUFFER =
+            ThreadLocal.withInitial(() -> new CharArrayWriter(WRITE_BUFFER_SIZE));
+
+    private final BufferedWriter writer;
+    private final AtomicLong records = new AtomicLong();
+
+    public JsonBackupWriter(File file) throws IOException {
+        this.writer = new BufferedWriter(new FileWriter(file, false));
+    }
+
+    @Override
+    public void write(T record) throws IOException {
+        writeLine(record, writer);
+        records.incrementAndGet();
+    }
+
+    @Override
+    public long getRecordCount() {
+        return records.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (writer) {
+            writer.close();
+        }
+    }
+
+    /**
+     * Write an object as one JSON line. The object is serialized into a buffer reused by the calling thread,
+     * so large objects (e.g. spectra with thousands of peaks) don't create an intermediate {@link String}.
+     * Only the copy of the buffer into the writer is synchronized. The serialization and the copy are the backupWrite
+     * phase of the {@link PipelineProfiler}.
+     *
+     * @param obj Object to be written
+     * @param bw  Backup file writer
+     */
+    public static void writeLine(Object obj, BufferedWriter bw) throws IOException {
+        PipelineProfiler.Span span = PipelineProfiler.start(PipelineProfiler.Phase.BACKUP_WRITE);
+        CharArrayWriter buffer = WRITE_BUFFER.get();
+        buffer.reset();
+        try {
+            BackupFormat.JSON.getObjectMapper().writeValue(buffer, obj);
+            synchronized (bw) {
+                buffer.writeTo(bw);
+                bw.newLine();
+            }
+        } finally {
+            // don't keep the buffer of an unusually large object for the life of the thread
+            if (buffer.size() > MAX_RETAINED_BUFFER_SIZE)
+                WRITE_BUFFER.remove();
+            span.close();
+        }
+    }
+}
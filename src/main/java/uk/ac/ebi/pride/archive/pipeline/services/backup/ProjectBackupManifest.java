@@ -0,0 +1,352 @@
+package uk.ac.ebi.pride.archive.pipeline.services.backup;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Manifest of the backup files of a project, {@code <backupPath>/<project>/<project>_manifest.json.gz}. The manifest
+ * has an entry for every analysed assay, updated when the analysis of the assay finishes, with:
+ * <ul>
+ *     <li>the backup files of the assay: name, format, number of records, size, modification time and CRC32;</li>
+ *     <li>the sorted, deduplicated protein accessions and peptide sequences of its peptide evidences.</li>
+ * </ul>
+ * An entry is only valid for the files it describes: the readers compare the size and the modification time of
+ * a file with its entry ({@link FileEntry#matches(File)}) and read the file itself if it has changed.
+ *
+ * The manifest is replaced atomically, and the updates of the assays of a project are serialized with a lock file,
+ * so the assays of a project can be analysed at the same time by several processes.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ProjectBackupManifest {
+
+    public static final int VERSION = 1;
+    public static final String FILE_SUFFIX = "_manifest.json.gz";
+
+    private static final String LOCK_SUFFIX = "_manifest.lock";
+    private static final Object UPDATE_LOCK = new Object();
+
+    private int version = VERSION;
+    private String projectAccession;
+    private Map<String, AssayEntry> assays = new TreeMap<>();
+
+    public ProjectBackupManifest() {
+    }
+
+    public ProjectBackupManifest(String projectAccession) {
+        this.projectAccession = projectAccession;
+    }
+
+    public static File getManifestFile(String backupPath, String projectAccession) {
+        return new File(new File(backupPath, projectAccession), projectAccession + FILE_SUFFIX);
+    }
+
+    /**
+     * @return manifest of the project, null if the project has no manifest
+     */
+    public static ProjectBackupManifest read(String backupPath, String projectAccession) throws IOException {
+        return read(getManifestFile(backupPath, projectAccession));
+    }
+
+    /**
+     * @return manifest, null if the file doesn't exist
+     */
+    public static ProjectBackupManifest read(File file) throws IOException {
+        if (!file.isFile())
+            return null;
+        try (InputStream in = new GZIPInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            ProjectBackupManifest manifest = BackupFormat.JSON.getObjectMapper().readValue(in, ProjectBackupManifest.class);
+            if (manifest.getVersion() > VERSION)
+                throw new IOException("Unsupported version of the backup manifest -- " + manifest.getVersion());
+            return manifest;
+        } catch (IOException e) {
+            throw new IOException("The backup manifest can't be read -- " + file, e);
+        }
+    }
+
+    /**
+     * Add or replace the entry of an assay in the manifest of its project.
+     */
+    public static void update(String backupPath, String projectAccession, AssayEntry assay) throws IOException {
+        File file = getManifestFile(backupPath, projectAccession);
+        File lockFile = new File(file.getParentFile(), projectAccession + LOCK_SUFFIX);
+        // the file lock is held by the JVM, the threads of the JVM are serialized before taking it
+        synchronized (UPDATE_LOCK) {
+            try (FileChannel lockChannel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE);
+                 FileLock ignored = lockChannel.lock()) {
+                ProjectBackupManifest manifest = read(file);
+                if (manifest == null)
+                    manifest = new ProjectBackupManifest(projectAccession);
+                manifest.getAssays().put(assay.getAssayAccession(), assay);
+                manifest.setVersion(VERSION);
+                manifest.write(file);
+            }
+        }
+    }
+
+    private void write(File file) throws IOException {
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            BackupFormat.JSON.getObjectMapper().writeValue(out, this);
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return assays of the manifest by the name of their backup file of the type
+     */
+    public Map<String, AssayEntry> getAssaysByFile(Class<?> type) {
+        Map<String, AssayEntry> assaysByFile = new HashMap<>();
+        for (AssayEntry assay : assays.values()) {
+            FileEntry fileEntry = assay.getFiles().get(type.getSimpleName());
+            if (fileEntry != null)
+                assaysByFile.put(fileEntry.getFileName(), assay);
+        }
+        return assaysByFile;
+    }
+
+    /**
+     * @return protein accessions of all the assays
+     */
+    @JsonIgnore
+    public SortedSet<String> getProteinAccessions() {
+        SortedSet<String> proteinAccessions = new TreeSet<>();
+        assays.values().forEach(assay -> proteinAccessions.addAll(assay.getProteinAccessions()));
+        return proteinAccessions;
+    }
+
+    /**
+     * @return peptide sequences of all the assays
+     */
+    @JsonIgnore
+    public SortedSet<String> getPeptideSequences() {
+        SortedSet<String> peptideSequences = new TreeSet<>();
+        assays.values().forEach(assay -> peptideSequences.addAll(assay.getPeptideSequences()));
+        return peptideSequences;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
+    public String getProjectAccession() {
+        return projectAccession;
+    }
+
+    public void setProjectAccession(String projectAccession) {
+        this.projectAccession = projectAccession;
+    }
+
+    public Map<String, AssayEntry> getAssays() {
+        return assays;
+    }
+
+    public void setAssays(Map<String, AssayEntry> assays) {
+        this.assays = new TreeMap<>(assays);
+    }
+
+    /**
+     * Backup files and protein and peptide sets of an assay.
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class AssayEntry {
+
+        private String assayAccession;
+        private long updated;
+        private Map<String, FileEntry> files = new TreeMap<>();
+        private List<String> proteinAccessions = new ArrayList<>();
+        private List<String> peptideSequences = new ArrayList<>();
+
+        public AssayEntry() {
+        }
+
+        public AssayEntry(String assayAccession) {
+            this.assayAccession = assayAccession;
+            this.updated = System.currentTimeMillis();
+        }
+
+        /**
+         * Add a closed backup file of the assay, its checksum is computed from the file.
+         *
+         * @param type    type of the records
+         * @param file    backup file
+         * @param records number of records in the file
+         */
+        public void addFile(Class<?> type, File file, long records) throws IOException {
+            files.put(type.getSimpleName(), FileEntry.of(file, records));
+        }
+
+        public String getAssayAccession() {
+            return assayAccession;
+        }
+
+        public void setAssayAccession(String assayAccession) {
+            this.assayAccession = assayAccession;
+        }
+
+        public long getUpdated() {
+            return updated;
+        }
+
+        public void setUpdated(long updated) {
+            this.updated = updated;
+        }
+
+        public Map<String, FileEntry> getFiles() {
+            return files;
+        }
+
+        public void setFiles(Map<String, FileEntry> files) {
+            this.files = new TreeMap<>(files);
+        }
+
+        public List<String> getProteinAccessions() {
+            return proteinAccessions;
+        }
+
+        /**
+         * @param proteinAccessions protein accessions, sorted and deduplicated
+         */
+        public void setProteinAccessions(Collection<String> proteinAccessions) {
+            this.proteinAccessions = new ArrayList<>(new TreeSet<>(proteinAccessions));
+        }
+
+        public List<String> getPeptideSequences() {
+            return peptideSequences;
+        }
+
+        /**
+         * @param peptideSequences peptide sequences, sorted and deduplicated
+         */
+        public void setPeptideSequences(Collection<String> peptideSequences) {
+            this.peptideSequences = new ArrayList<>(new TreeSet<>(peptideSequences));
+        }
+    }
+
+    /**
+     * Backup file of an assay.
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class FileEntry {
+
+        private static final int CHECKSUM_BUFFER_SIZE = 64 * 1024;
+
+        private String fileName;
+        private String format;
+        private long records;
+        private long size;
+        private long lastModified;
+        private String crc32;
+
+        static FileEntry of(File file, long records) throws IOException {
+            FileEntry entry = new FileEntry();
+            entry.setFileName(file.getName());
+            BackupFormat format = BackupFormat.fromFileName(file.getName());
+            entry.setFormat(format == null ? null : format.name());
+            entry.setRecords(records);
+            entry.setSize(file.length());
+            entry.setLastModified(file.lastModified());
+            entry.setCrc32(checksum(file));
+            return entry;
+        }
+
+        /**
+         * @return true if the file has the size and the modification time of the entry
+         */
+        public boolean matches(File file) {
+            return file.getName().equals(fileName) && file.length() == size && file.lastModified() == lastModified;
+        }
+
+        /**
+         * @return CRC32 of the content of a file, in hexadecimal
+         */
+        public static String checksum(File file) throws IOException {
+            CRC32 crc = new CRC32();
+            byte[] buffer = new byte[CHECKSUM_BUFFER_SIZE];
+            try (InputStream in = new FileInputStream(file)) {
+                int read;
+                while ((read = in.read(buffer)) > 0)
+                    crc.update(buffer, 0, read);
+            }
+            return String.format("%08x", crc.getValue());
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public void setFileName(String fileName) {
+            this.fileName = fileName;
+        }
+
+        public String getFormat() {
+            return format;
+        }
+
+        public void setFormat(String format) {
+            this.format = format;
+        }
+
+        public long getRecords() {
+            return records;
+        }
+
+        public void setRecords(long records) {
+            this.records = records;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public void setSize(long size) {
+            this.size = size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public void setLastModified(long lastModified) {
+            this.lastModified = lastModified;
+        }
+
+        public String getCrc32() {
+            return crc32;
+        }
+
+        public void setCrc32(String crc32) {
+            this.crc32 = crc32;
+        }
+    }
+}
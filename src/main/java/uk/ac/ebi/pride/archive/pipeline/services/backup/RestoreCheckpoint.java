@@ -0,0 +1,142 @@
+package uk.ac.ebi.pride.archive.pipeline.services.backup;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Checkpoint of a restore of the backup files. Every restored file is appended to the checkpoint file as one line,
+ * the path of the file relative to the backup directory, its size and its last modification time. A file is
+ * restored again if it has changed since it was checkpointed, e.g. when the assay has been analysed again.
+ *
+ * The lines are flushed to the disk when they are written, so the checkpoint of an interrupted restore has all the
+ * files completed before the interruption; an incomplete last line is removed when the
+ * checkpoint is opened.
+ *
+ * Each scope of restore has its own checkpoint file ({@link #getCheckpointFile}): the restore of the whole backup
+ * directory and the restore of every project, so a restore started from scratch never clears the progress of another
+ * scope.
+ */
+@Slf4j
+public class RestoreCheckpoint implements Closeable {
+
+    private static final char SEPARATOR = '\t';
+    private static final String CHECKPOINT_NAME = "restore-checkpoint";
+    private static final String CHECKPOINT_EXTENSION = ".txt";
+
+    private final File file;
+    private final Path backupDirectory;
+    private final Set<String> restoredFiles = new HashSet<>();
+    private final FileOutputStream output;
+    private final Writer writer;
+
+    /**
+     * Open a checkpoint, the files recorded by a previous restore are loaded.
+     *
+     * @param file            checkpoint file, created if it doesn't exist
+     * @param backupDirectory root directory of the backup files
+     * @param resume          false to clear the files of the previous restores
+     */
+    public RestoreCheckpoint(File file, Path backupDirectory, boolean resume) throws IOException {
+        this.file = file;
+        this.backupDirectory = backupDirectory.toAbsolutePath().normalize();
+        if (resume && file.isFile()) {
+            // the last line of an interrupted restore may be incomplete
+            truncateIncompleteLine(file);
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+                    StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isEmpty())
+                        restoredFiles.add(line);
+                }
+            }
+            log.info("Restore checkpoint loaded, " + restoredFiles.size() + " restored files -- " + file);
+        }
+        this.output = new FileOutputStream(file, resume);
+        this.writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Checkpoint file of a scope of restore.
+     *
+     * @param directory         directory of the checkpoint files
+     * @param projectAccession  project restored, null for the restore of the whole backup directory
+     * @return {@code restore-checkpoint.txt} for the whole backup directory, {@code restore-checkpoint-<project>.txt}
+     * for a project
+     */
+    public static File getCheckpointFile(File directory, String projectAccession) {
+        String name = (projectAccession == null) ? CHECKPOINT_NAME : CHECKPOINT_NAME + "-" + projectAccession;
+        return new File(directory, name + CHECKPOINT_EXTENSION);
+    }
+
+    /**
+     * @return true if the file, in its current version, was restored by a previous restore
+     */
+    public synchronized boolean isRestored(Path backupFile) throws IOException {
+        return restoredFiles.contains(key(backupFile));
+    }
+
+    /**
+     * Record a restored file.
+     */
+    public synchronized void markRestored(Path backupFile) throws IOException {
+        String key = key(backupFile);
+        if (restoredFiles.add(key))
+            append(key);
+    }
+
+    public synchronized int getRestoredFiles() {
+        return restoredFiles.size();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    private void append(String line) throws IOException {
+        writer.write(line);
+        writer.write('\n');
+        writer.flush();
+        output.getFD().sync();
+    }
+
+    private static void truncateIncompleteLine(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long length = raf.length();
+            while (length > 0) {
+                raf.seek(length - 1);
+                if (raf.read() == '\n')
+                    break;
+                length--;
+            }
+            if (length < raf.length())
+                raf.setLength(length);
+        }
+    }
+
+    private String key(Path backupFile) throws IOException {
+        Path path = backupFile.toAbsolutePath().normalize();
+        String name = path.startsWith(backupDirectory) ? backupDirectory.relativize(path).toString() : path.toString();
+        return name + SEPARATOR + Files.size(path) + SEPARATOR + Files.getLastModifiedTime(path).toMillis();
+    }
+}
@@ -0,0 +1,90 @@
+package uk.ac.ebi.pride.archive.pipeline.services.molecules;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import uk.ac.ebi.pride.archive.pipeline.services.pia.PIAModelerService;
+import uk.ac.ebi.pride.archive.pipeline.services.pia.SpectrumReaderPool;
+import uk.ac.ebi.pride.archive.spectra.services.S3SpectralArchive;
+import uk.ac.ebi.pride.mongodb.archive.service.projects.PrideProjectMongoService;
+import uk.ac.ebi.pride.mongodb.molecules.service.molecules.PrideMoleculesMongoService;
+
+/**
+ * Stateless entry point of the assay analysis. The engine only holds the services, the pool of spectrum readers and
+ * the settings shared by all the analyses; the state of each assay is kept by its own {@link AssayAnalysisExecution}, so the same engine can be
+ * used by the batch jobs, the tests and several analyses running at the same time.
+ */
+@Slf4j
+public class AssayAnalysisEngine {
+
+    private final PrideProjectMongoService prideProjectMongoService;
+    private final PIAModelerService piaModellerService;
+    private final S3SpectralArchive spectralArchive;
+    private final PrideMoleculesMongoService moleculesService;
+    private final MongoTemplate moleculesMongoTemplate;
+    private final SpectrumReaderPool spectrumReaderPool;
+    private final AssayAnalysisSettings settings;
+
+    public AssayAnalysisEngine(PrideProjectMongoService prideProjectMongoService, PIAModelerService piaModellerService,
+                               S3SpectralArchive spectralArchive, PrideMoleculesMongoService moleculesService,
+                               MongoTemplate moleculesMongoTemplate, SpectrumReaderPool spectrumReaderPool,
+                               AssayAnalysisSettings settings) {
+        this.prideProjectMongoService = prideProjectMongoService;
+        this.piaModellerService = piaModellerService;
+        this.spectralArchive = spectralArchive;
+        this.moleculesService = moleculesService;
+        this.moleculesMongoTemplate = moleculesMongoTemplate;
+        this.spectrumReaderPool = spectrumReaderPool;
+        this.settings = settings;
+    }
+
+    /**
+     * Create the execution of the analysis of an assay. The caller runs the steps and closes the execution.
+     *
+     * @param projectAccession project accession
+     * @param assayAccession   assay accession
+     * @return {@link AssayAnalysisExecution}
+     */
+    public AssayAnalysisExecution newExecution(String projectAccession, String assayAccession) {
+        return new AssayAnalysisExecution(this, projectAccession, assayAccession);
+    }
+
+    /**
+     * Analyse an assay in the calling thread. The method returns when the analysis has finished.
+     *
+     * @param projectAccession project accession
+     * @param assayAccession   assay accession
+     * @throws Exception if the analysis failed
+     */
+    public void analyse(String projectAccession, String assayAccession) throws Exception {
+        log.info("Analysing project -- " + projectAccession + " and Assay -- " + assayAccession);
+        newExecution(projectAccession, assayAccession).run();
+    }
+
+    PrideProjectMongoService getPrideProjectMongoService() {
+        return prideProjectMongoService;
+    }
+
+    PIAModelerService getPiaModellerService() {
+        return piaModellerService;
+    }
+
+    S3SpectralArchive getSpectralArchive() {
+        return spectralArchive;
+    }
+
+    PrideMoleculesMongoService getMoleculesService() {
+        return moleculesService;
+    }
+
+    MongoTemplate getMoleculesMongoTemplate() {
+        return moleculesMongoTemplate;
+    }
+
+    SpectrumReaderPool getSpectrumReaderPool() {
+        return spectrumReaderPool;
+    }
+
+    public AssayAnalysisSettings getSettings() {
+        return settings;
+    }
+}
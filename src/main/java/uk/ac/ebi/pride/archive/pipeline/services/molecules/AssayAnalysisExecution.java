@@ -0,0 +1,1499 @@
+package uk.ac.ebi.pride.archive.pipeline.services.molecules;
+
+import de.mpc.pia.intermediate.Accession;
+import de.mpc.pia.intermediate.AccessionOccurrence;
+import de.mpc.pia.intermediate.Modification;
+import de.mpc.pia.intermediate.PeptideSpectrumMatch;
+import de.mpc.pia.modeller.PIAModeller;
+import de.mpc.pia.modeller.peptide.ReportPeptide;
+import de.mpc.pia.modeller.protein.ReportProtein;
+import de.mpc.pia.modeller.psm.PSMReportItem;
+import de.mpc.pia.modeller.psm.ReportPSM;
+import de.mpc.pia.modeller.report.filter.AbstractFilter;
+import de.mpc.pia.modeller.report.filter.FilterComparator;
+import de.mpc.pia.modeller.report.filter.RegisteredFilters;
+import de.mpc.pia.modeller.report.filter.impl.PSMScoreFilter;
+import de.mpc.pia.modeller.score.ScoreModelEnum;
+import de.mpc.pia.tools.pride.PRIDETools;
+import io.micrometer.core.instrument.Counter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import uk.ac.ebi.jmzidml.model.mzidml.AbstractParam;
+import uk.ac.ebi.jmzidml.model.mzidml.SpectraData;
+import uk.ac.ebi.pride.archive.dataprovider.common.Tuple;
+import uk.ac.ebi.pride.archive.dataprovider.data.peptide.PeptideSpectrumOverview;
+import uk.ac.ebi.pride.archive.dataprovider.data.ptm.IdentifiedModification;
+import uk.ac.ebi.pride.archive.dataprovider.data.ptm.IdentifiedModificationProvider;
+import uk.ac.ebi.pride.archive.dataprovider.param.CvParam;
+import uk.ac.ebi.pride.archive.dataprovider.param.CvParamProvider;
+import uk.ac.ebi.pride.archive.pipeline.metrics.PipelineMetrics;
+import uk.ac.ebi.pride.archive.pipeline.metrics.PipelineProfiler;
+import uk.ac.ebi.pride.archive.pipeline.services.backup.BackupFormat;
+import uk.ac.ebi.pride.archive.pipeline.services.backup.BackupWriter;
+import uk.ac.ebi.pride.archive.pipeline.services.backup.ProjectBackupManifest;
+import uk.ac.ebi.pride.archive.pipeline.services.pia.JmzReaderSpectrumService;
+import uk.ac.ebi.pride.archive.pipeline.services.pia.PIAModelerService;
+import uk.ac.ebi.pride.archive.pipeline.services.pia.SpectrumReaderPool;
+import uk.ac.ebi.pride.archive.pipeline.services.pia.SpectrumReferenceIndex;
+import uk.ac.ebi.pride.archive.pipeline.services.pia.UsiEncoder;
+import uk.ac.ebi.pride.archive.pipeline.services.spectra.AsyncSpectrumUploader;
+import uk.ac.ebi.pride.archive.pipeline.services.spectra.SpectrumPeaks;
+import uk.ac.ebi.pride.archive.pipeline.utility.BackupUtil;
+import uk.ac.ebi.pride.archive.pipeline.utility.SubmissionPipelineConstants;
+import uk.ac.ebi.pride.archive.spectra.model.ArchiveSpectrum;
+import uk.ac.ebi.pride.archive.spectra.services.S3SpectralArchive;
+import uk.ac.ebi.pride.mongodb.archive.model.assay.MongoAssayFile;
+import uk.ac.ebi.pride.mongodb.archive.model.assay.MongoPrideAssay;
+import uk.ac.ebi.pride.mongodb.archive.model.projects.MongoPrideProject;
+import uk.ac.ebi.pride.mongodb.archive.service.projects.PrideProjectMongoService;
+import uk.ac.ebi.pride.mongodb.molecules.model.peptide.PrideMongoPeptideEvidence;
+import uk.ac.ebi.pride.mongodb.molecules.model.protein.PrideMongoProteinEvidence;
+import uk.ac.ebi.pride.mongodb.molecules.model.psm.PrideMongoPsmSummaryEvidence;
+import uk.ac.ebi.pride.mongodb.molecules.service.molecules.PrideMoleculesMongoService;
+import uk.ac.ebi.pride.tools.jmzreader.JMzReaderException;
+import uk.ac.ebi.pride.tools.jmzreader.model.Spectrum;
+import uk.ac.ebi.pride.utilities.term.CvTermReference;
+import uk.ac.ebi.pride.utilities.util.MoleculeUtilities;
+import uk.ac.ebi.pride.utilities.util.Triple;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.AccessDeniedException;
+import java.text.DateFormat;
+import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Analysis of one assay: protein inference, update of the assay, indexing of the PSMs (spectra archive, MongoDB and
+ * backup files) and of the proteins and peptides. All the state of the analysis (modeller, reported items, validation,
+ * writers) belongs to this object, so several assays can be analysed at the same time by different executions of the
+ * same {@link AssayAnalysisEngine}.
+ *
+ * The steps are run in order by {@link #run()}, or one by one by the steps of PRIDEAnalyzeAssayJob. The PSMs and the
+ * proteins can also be processed in chunks (see {@link #openPsmChunks()} and {@link #openProteinChunks()}) by the
+ * chunk-oriented job. An execution is not thread safe and it is meant to be used once, {@link #close()} releases the
+ * data of the assay.
+ */
+@Slf4j
+public class AssayAnalysisExecution implements Closeable {
+
+    private static final Long MERGE_FILE_ID = 1L;
+    private static final Long FILE_ID = 1L;
+    private static final int PIPELINE_RETRY_LIMIT = 20;
+    private static final long S3_INITIAL_BACKOFF = 500;
+    private static final long S3_MAX_BACKOFF = 60000;
+    private static final int PSM_PENDING_RESULTS_PER_WORKER = 16;
+    private static final String PEPTIDE_SPECTRUM_STORE_SUFFIX = "_peptide_spectra.tmp";
+
+    private final PrideProjectMongoService prideProjectMongoService;
+    private final PIAModelerService piaModellerService;
+    private final S3SpectralArchive spectralArchive;
+    private final PrideMoleculesMongoService moleculesService;
+    private final MongoTemplate moleculesMongoTemplate;
+    private final SpectrumReaderPool spectrumReaderPool;
+    private final UsiEncoder usiEncoder = new UsiEncoder();
+    private final Counter processedPsms = PipelineMetrics.psmCounter();
+
+    private final String productionPath;
+    private final String backupPath;
+    private final BackupFormat backupFormat;
+    private final Double qValueThreshold;
+    private final Double qFilterProteinFDR;
+    private final Integer psmProcessingWorkers;
+    private final Integer mongoBulkSize;
+    private final Long mongoBulkFlushInterval;
+    private final Integer s3ConcurrentUploads;
+    private final Integer s3UploadQueueSize;
+    private final Long s3UploadProgressInterval;
+
+    private final String projectAccession;
+    private final String assayAccession;
+
+    private PIAModeller modeller;
+    private MongoPrideAssay assay;
+
+    private boolean isValid;
+    private final Set<CvParam> validationMethods = new HashSet<>();
+
+    /**
+     * List of reported Peptides
+     **/
+    private List<ReportPeptide> highQualityPeptides = new ArrayList<>();
+    private List<ReportPeptide> allPeptides = new ArrayList<>();
+
+
+    /**
+     * Reported Proteins
+     **/
+    private List<ReportProtein> highQualityProteins = new ArrayList<>();
+    private List<ReportProtein> allProteins = new ArrayList<>();
+
+
+    private final Map<Long, List<PeptideSpectrumOverview>> peptideUsi = new ConcurrentHashMap<>();
+    /**
+     * PSM overviews of the peptides spilled to disk by the chunk-oriented processing, used instead of peptideUsi.
+     */
+    private PeptideSpectrumStore peptideSpectrumStore;
+    private int highQualityPsms = 0;
+
+
+    private long nrDecoys = 0;
+
+    private String buildPath;
+
+    private final DecimalFormat df = new DecimalFormat("###.#####");
+
+    private BackupWriter<PrideMongoProteinEvidence> proteinEvidenceBackupWriter;
+    private BackupWriter<PrideMongoPeptideEvidence> peptideEvidenceBackupWriter;
+    private BackupWriter<ArchiveSpectrum> archiveSpectrumBackupWriter;
+    private BackupWriter<PrideMongoPsmSummaryEvidence> psmSummaryEvidenceBackupWriter;
+
+    /**
+     * Protein accessions and peptide sequences of the peptide evidences written into the backup, for the manifest
+     * of the project.
+     */
+    private final Set<String> backupProteinAccessions = ConcurrentHashMap.newKeySet();
+    private final Set<String> backupPeptideSequences = ConcurrentHashMap.newKeySet();
+
+    private BulkEvidenceWriter<PrideMongoProteinEvidence> proteinEvidenceWriter;
+    private BulkEvidenceWriter<PrideMongoPeptideEvidence> peptideEvidenceWriter;
+    private BulkEvidenceWriter<PrideMongoPsmSummaryEvidence> psmEvidenceWriter;
+    private AsyncSpectrumUploader spectrumUploader;
+
+    /**
+     * State of the chunk-oriented processing of the PSMs and the proteins.
+     */
+    private Iterator<ReportPeptide> chunkPeptides = Collections.emptyIterator();
+    private ReportPeptide chunkPeptide;
+    private Iterator<PSMReportItem> chunkPsms = Collections.emptyIterator();
+    private SpectrumReferenceIndex chunkSpectrumIndex;
+    private final AtomicInteger chunkTotalPSM = new AtomicInteger();
+    private final AtomicInteger chunkErrorDeltaPSM = new AtomicInteger();
+    private long initSpectraChunks;
+
+    private Iterator<ReportProtein> chunkProteins = Collections.emptyIterator();
+    private PeptideIndex chunkPeptideIndex;
+    private long initProteinChunks;
+
+    AssayAnalysisExecution(AssayAnalysisEngine engine, String projectAccession, String assayAccession) {
+        this.prideProjectMongoService = engine.getPrideProjectMongoService();
+        this.piaModellerService = engine.getPiaModellerService();
+        this.spectralArchive = engine.getSpectralArchive();
+        this.moleculesService = engine.getMoleculesService();
+        this.moleculesMongoTemplate = engine.getMoleculesMongoTemplate();
+        this.spectrumReaderPool = engine.getSpectrumReaderPool();
+
+        AssayAnalysisSettings settings = engine.getSettings();
+        this.productionPath = settings.getProductionPath();
+        this.backupPath = settings.getBackupPath();
+        this.backupFormat = settings.getBackupFormat();
+        this.qValueThreshold = settings.getQValueThreshold();
+        this.qFilterProteinFDR = settings.getQFilterProteinFDR();
+        this.psmProcessingWorkers = settings.getPsmProcessingWorkers();
+        this.mongoBulkSize = settings.getMongoBulkSize();
+        this.mongoBulkFlushInterval = settings.getMongoBulkFlushInterval();
+        this.s3ConcurrentUploads = settings.getS3ConcurrentUploads();
+        this.s3UploadQueueSize = settings.getS3UploadQueueSize();
+        this.s3UploadProgressInterval = settings.getS3UploadProgressInterval();
+
+        this.projectAccession = projectAccession;
+        this.assayAccession = assayAccession;
+    }
+
+    /**
+     * Run all the steps of the analysis and release the data of the assay.
+     */
+    public void run() throws Exception {
+        try {
+            analyzeAssay();
+            updateAssay();
+            indexSpectra();
+            indexProteinsAndPeptides();
+            finish();
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Create the backup files and perform the protein inference of the assay.
+     */
+    public void analyzeAssay() throws Exception {
+        long initAnalysisAssay = System.currentTimeMillis();
+
+        log.info("Analyzing project -- " + projectAccession + " and Assay -- " + assayAccession);
+        log.info("creating backup files");
+        createBackupFiles();
+        log.info("creating backup files: finished");
+
+        Optional<MongoPrideProject> project = prideProjectMongoService.findByAccession(projectAccession);
+        Optional<MongoPrideAssay> assay = prideProjectMongoService.findAssayByAccession(assayAccession);
+        if (assay.isPresent() && project.isPresent()) {
+            Optional<MongoAssayFile> assayResultFile = assay.get().getAssayFiles()
+                    .stream().filter(x -> x.getFileCategory()
+                            .getValue().equalsIgnoreCase("RESULT"))
+                    .findFirst();
+            DateFormat dateFormat = new SimpleDateFormat("yyyy-MM");
+            String allDate = dateFormat.format(project.get().getPublicationDate());
+            String[] allDateString = allDate.split("-");
+            String year = null, month = null;
+
+            SubmissionPipelineConstants.FileType fileType = SubmissionPipelineConstants.FileType.getFileTypeFromPRIDEFileName(assayResultFile.get().getFileName());
+
+            if (allDateString.length == 2) {
+                year = allDateString[0];
+                month = allDateString[1];
+            }
+            if (year != null && month != null) {
+                buildPath = SubmissionPipelineConstants.buildInternalPath(productionPath,
+                        projectAccession, year, month);
+
+                // the compressed peak lists are decompressed while the result file is compiled
+                assayResultFile.get().getRelatedFiles().forEach(relatedFile -> spectrumReaderPool.prefetch(
+                        SubmissionPipelineConstants.returnUnCompressPath(buildPath + relatedFile.getFileName()),
+                        SubmissionPipelineConstants.FileType.getFileTypeFromPRIDEFileName(relatedFile.getFileName())));
+
+                /**
+                 * The PSM level FDR doesn't depend on the protein inference, it is computed only once
+                 * without threshold. The protein inference is performed with the thresholds and, only
+                 * if the assay doesn't pass the validation, again without threshold to report all the
+                 * peptides and proteins.
+                 */
+                modeller = piaModellerService.performPSMLevelInference(assayAccession,
+                        SubmissionPipelineConstants.returnUnCompressPath(buildPath + assayResultFile.get().getFileName()),
+                        fileType, 1.0);
+                this.assay = assay.get();
+
+
+                nrDecoys = modeller.getPSMModeller().getReportPSMSets().entrySet().stream()
+                        .filter(entry -> entry.getValue().getIsDecoy())
+                        .count();
+
+                List<AbstractFilter> filters = new ArrayList<>();
+                filters.add(RegisteredFilters.PSM_SOURCE_ID_FILTER
+                        .newInstanceOf(FilterComparator.equal,"index=null" ,true));
+
+                // setting filter for peptide level filtering
+                modeller = piaModellerService.performProteinLevelInference(modeller, qValueThreshold, qFilterProteinFDR);
+
+                List<AbstractFilter> highQualityFilters = new ArrayList<>(filters);
+                highQualityFilters.add(new PSMScoreFilter(FilterComparator.less_equal, false,
+                        qValueThreshold, ScoreModelEnum.PSM_LEVEL_Q_VALUE.getShortName()));              // you can also use fdr score here
+
+                // get the FDR filtered highQualityPeptides, only the number of PSMs is reported
+                highQualityPsms = modeller.getPSMModeller()
+                        .getFilteredReportPSMs(MERGE_FILE_ID, highQualityFilters).size();
+                highQualityPeptides = modeller.getPeptideModeller()
+                        .getFilteredReportPeptides(MERGE_FILE_ID, highQualityFilters);
+                highQualityProteins = modeller.getProteinModeller()
+                        .getFilteredReportProteins(highQualityFilters);
+
+
+                if (!(nrDecoys > 0 && highQualityProteins.size() > 0 && highQualityPeptides.size() > 0 && highQualityPsms > 0 && highQualityPsms >= highQualityPeptides.size())) {
+                    highQualityPeptides = new ArrayList<>();
+                    highQualityProteins = new ArrayList<>();
+                    highQualityPsms = 0;
+
+                    // all the peptides and proteins are only reported for the assays that don't pass the validation
+                    modeller = piaModellerService.performProteinLevelInference(modeller, 1.0, 1.0);
+                    allPeptides = modeller.getPeptideModeller()
+                            .getFilteredReportPeptides(MERGE_FILE_ID, filters);
+                    allProteins = modeller.getProteinModeller()
+                            .getFilteredReportProteins(filters);
+                } else {
+                    allPeptides = new ArrayList<>();
+                    allProteins = new ArrayList<>();
+                }
+
+            } else {
+                String errorMessage = "The Year and Month for Project Accession can't be found -- " + project.get().getAccession();
+                log.error(errorMessage);
+                throw new IOException(errorMessage);
+            }
+        }
+
+        PipelineMetrics.recordTask(SubmissionPipelineConstants.PrideArchiveStepNames.PRIDE_ARCHIVE_MONGODB_ASSAY_INFERENCE.getName(),
+                initAnalysisAssay);
+    }
+
+    /**
+     * Update the summary, the validation and the PTMs of the assay.
+     */
+    public void updateAssay() {
+        if (modeller != null && assay != null) {
+
+            List<ReportPeptide> modifiedPeptides = highQualityPeptides.
+                    stream().filter(x -> x.getModifications().size() > 0)
+                    .collect(Collectors.toList());
+
+            //Update reported highQualityPeptides
+            Set<CvParam> summaryResults = assay.getSummaryResults();
+            Set<CvParam> newValues = new HashSet<>(summaryResults.size());
+
+            for (CvParam param : summaryResults) {
+                param = updateValueOfMongoParamter(param,
+                        CvTermReference.PRIDE_NUMBER_ID_PEPTIDES, highQualityPeptides.size());
+                param = updateValueOfMongoParamter(param,
+                        CvTermReference.PRIDE_NUMBER_ID_PROTEINS, highQualityProteins.size());
+                param = updateValueOfMongoParamter(param,
+                        CvTermReference.PRIDE_NUMBER_ID_PSMS, highQualityPsms);
+                param = updateValueOfMongoParamter(param,
+                        CvTermReference.PRIDE_NUMBER_MODIFIED_PEPTIDES, modifiedPeptides.size());
+                newValues.add(param);
+            }
+
+            List<Tuple<CvParam, Integer>> modificationCount = modifiedPeptides.stream()
+                    .flatMap(x -> x.getModifications().values().stream())
+                    .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()))
+                    .entrySet().stream()
+                    .map(entry -> new Tuple<>(new CvParam(entry.getKey().getCvLabel(), entry.getKey().getAccession(), entry.getKey().getDescription(), String.valueOf(entry.getKey().getMass())), entry.getValue().intValue()))
+                    .collect(Collectors.toList());
+
+
+            if (highQualityPeptides.size() > 0 && highQualityProteins.size() > 0 && highQualityPsms > 0)
+                isValid = true;
+            else
+                isValid = false;
+
+            if (isValid) {
+                validationMethods.add(new CvParam(CvTermReference.MS_DECOY_VALIDATION_METHOD.getCvLabel(),
+                        CvTermReference.MS_DECOY_VALIDATION_METHOD.getAccession(), CvTermReference.MS_DECOY_VALIDATION_METHOD.getName(), String.valueOf(true)));
+            } else
+                validationMethods.add(new CvParam(CvTermReference.MS_DECOY_VALIDATION_METHOD.getCvLabel(),
+                        CvTermReference.MS_DECOY_VALIDATION_METHOD.getAccession(), CvTermReference.MS_DECOY_VALIDATION_METHOD.getName(), String.valueOf(false)));
+
+
+            assay.setSummaryResults(newValues);
+            assay.setIsValid(isValid);
+            assay.setQualityEstimationMethods(validationMethods);
+            assay.setPtmsResults(modificationCount);
+            // prideProjectMongoService.updateAssay(assay);
+
+        }
+    }
+
+    /**
+     * Read the spectra of the reported PSMs and store the PSMs in the spectra archive, MongoDB and the backup files.
+     */
+    public void indexSpectra() throws Exception {
+        long initSpectraStep = System.currentTimeMillis();
+        AtomicInteger totalPSM = new AtomicInteger();
+
+        List<ReportPeptide> peptides;
+        if (highQualityPeptides.size() > 0)
+            peptides = highQualityPeptides;
+        else
+            peptides = allPeptides;
+
+        if (modeller != null && assay != null && peptides.size() > 0) {
+
+            AtomicInteger errorDeltaPSM = new AtomicInteger();
+
+            SpectrumReferenceIndex spectrumIndex = createSpectrumIndex();
+            if (spectrumIndex != null) {
+
+                /*
+                 * The PSMs are built by a pool of workers, but the results are consumed in the original
+                 * peptide/PSM order on this thread, so the backup files, the Mongo inserts and the
+                 * peptideUsi map are the same as in a single thread run.
+                 */
+                ExecutorService executor = (psmProcessingWorkers > 1) ?
+                        Executors.newFixedThreadPool(psmProcessingWorkers, new CustomizableThreadFactory("psm-worker-")) : null;
+                Deque<Future<PsmProcessingResult>> pendingResults = new ArrayDeque<>();
+                psmEvidenceWriter = createBulkEvidenceWriter(PrideMongoPsmSummaryEvidence.class,
+                        MoleculeEvidenceKeys::psmSummaryEvidence, moleculesService::savePsmSummaryEvidence);
+                spectrumUploader = new AsyncSpectrumUploader(spectralArchive, s3ConcurrentUploads,
+                        s3UploadQueueSize, PIPELINE_RETRY_LIMIT, S3_INITIAL_BACKOFF, S3_MAX_BACKOFF,
+                        s3UploadProgressInterval);
+                try {
+                    for (ReportPeptide peptide : peptides) {
+                        for (PSMReportItem psm : peptide.getPSMs()) {
+                            Callable<PsmProcessingResult> task = () -> processPsm(peptide, psm, spectrumIndex,
+                                    totalPSM, errorDeltaPSM);
+                            if (executor == null) {
+                                storePsmResult(task.call());
+                            } else {
+                                pendingResults.add(executor.submit(task));
+                                if (pendingResults.size() >= psmProcessingWorkers * PSM_PENDING_RESULTS_PER_WORKER)
+                                    storePsmResult(awaitPsmResult(pendingResults.poll()));
+                            }
+                        }
+                    }
+                    while (!pendingResults.isEmpty())
+                        storePsmResult(awaitPsmResult(pendingResults.poll()));
+                    spectrumUploader.awaitCompletion();
+                } finally {
+                    if (executor != null)
+                        executor.shutdownNow();
+                    spectrumUploader.shutdownNow();
+                    psmEvidenceWriter.close();
+                }
+            }
+            if (totalPSM.get() > 0)
+                log.info("Delta Mass Rate -- " + ((double) errorDeltaPSM.get() / totalPSM.get()));
+        }
+
+        logPsmRate(totalPSM.get(), PipelineMetrics.recordTask(
+                SubmissionPipelineConstants.PrideArchiveStepNames.PRIDE_ARCHIVE_MONGODB_SPECTRUM_UPDATE.getName(),
+                initSpectraStep));
+    }
+
+    /**
+     * Store the reported proteins and their peptides in MongoDB and the backup files.
+     */
+    public void indexProteinsAndPeptides() throws Exception {
+        long initInsertPeptides = System.currentTimeMillis();
+
+        List<ReportPeptide> peptides;
+        List<ReportProtein> proteins;
+
+        if (reportHighQualityItems()) {
+            peptides = highQualityPeptides;
+            proteins = highQualityProteins;
+        } else {
+            peptides = allPeptides;
+            proteins = allProteins;
+        }
+
+        PeptideIndex peptideIndex = new PeptideIndex(peptides);
+
+        proteinEvidenceWriter = createBulkEvidenceWriter(PrideMongoProteinEvidence.class,
+                MoleculeEvidenceKeys::proteinEvidence, moleculesService::saveProteinEvidences);
+        peptideEvidenceWriter = createBulkEvidenceWriter(PrideMongoPeptideEvidence.class,
+                MoleculeEvidenceKeys::peptideEvidence, moleculesService::savePeptideEvidence);
+
+        try {
+            for (ReportProtein protein : proteins) {
+                storeProteinEvidences(buildProteinEvidences(protein, peptideIndex));
+            }
+        } finally {
+            proteinEvidenceWriter.close();
+            peptideEvidenceWriter.close();
+        }
+
+        PipelineMetrics.recordTask("InsertPeptidesProteinsIntoMongoDB", initInsertPeptides);
+    }
+
+    /**
+     * Close the backup files and record them in the manifest of the project.
+     */
+    public void finish() throws IOException {
+        proteinEvidenceBackupWriter.close();
+        peptideEvidenceBackupWriter.close();
+        archiveSpectrumBackupWriter.close();
+        psmSummaryEvidenceBackupWriter.close();
+        updateBackupManifest();
+    }
+
+    /**
+     * Add the assay to the manifest of the project. The manifest is only a shortcut for the readers of the backup
+     * files, which check it against the files, so a failed update doesn't fail the analysis.
+     */
+    private void updateBackupManifest() {
+        try {
+            long initManifest = System.currentTimeMillis();
+            ProjectBackupManifest.AssayEntry assay = new ProjectBackupManifest.AssayEntry(assayAccession);
+            addBackupFile(assay, PrideMongoProteinEvidence.class, proteinEvidenceBackupWriter);
+            addBackupFile(assay, PrideMongoPeptideEvidence.class, peptideEvidenceBackupWriter);
+            addBackupFile(assay, ArchiveSpectrum.class, archiveSpectrumBackupWriter);
+            addBackupFile(assay, PrideMongoPsmSummaryEvidence.class, psmSummaryEvidenceBackupWriter);
+            assay.setProteinAccessions(backupProteinAccessions);
+            assay.setPeptideSequences(backupPeptideSequences);
+            ProjectBackupManifest.update(backupPath, projectAccession, assay);
+            log.info("Backup manifest updated -- proteins: " + backupProteinAccessions.size() + " peptides: "
+                    + backupPeptideSequences.size() + " time: " + (System.currentTimeMillis() - initManifest) + " ms");
+        } catch (IOException e) {
+            log.warn("The backup manifest of the project can't be updated -- " + e.getMessage());
+        }
+    }
+
+    private void addBackupFile(ProjectBackupManifest.AssayEntry assay, Class<?> type, BackupWriter<?> writer)
+            throws IOException {
+        assay.addFile(type, new File(BackupUtil.getBackupFile(backupPath, projectAccession, assayAccession, type,
+                backupFormat)), writer.getRecordCount());
+    }
+
+    /**
+     * Close the backup files if they are still open and release the modeller and the reported items of the assay.
+     */
+    @Override
+    public void close() {
+        closeQuietly(proteinEvidenceBackupWriter);
+        closeQuietly(peptideEvidenceBackupWriter);
+        closeQuietly(archiveSpectrumBackupWriter);
+        closeQuietly(psmSummaryEvidenceBackupWriter);
+
+        closePeptideSpectrumStore();
+
+        modeller = null;
+        assay = null;
+        allPeptides = new ArrayList<>();
+        allProteins = new ArrayList<>();
+        highQualityPsms = 0;
+        highQualityPeptides = new ArrayList<>();
+        highQualityProteins = new ArrayList<>();
+        peptideUsi.clear();
+        chunkPeptides = Collections.emptyIterator();
+        chunkPsms = Collections.emptyIterator();
+        chunkPeptide = null;
+        chunkSpectrumIndex = null;
+        chunkProteins = Collections.emptyIterator();
+        chunkPeptideIndex = null;
+    }
+
+    private void closePeptideSpectrumStore() {
+        if (peptideSpectrumStore == null)
+            return;
+        try {
+            peptideSpectrumStore.close();
+        } catch (IOException e) {
+            log.warn("The PSM overviews file can't be deleted -- " + e.getMessage());
+        }
+        peptideSpectrumStore = null;
+    }
+
+    private static void logPsmRate(int psms, long time) {
+        if (psms > 0 && time > 0)
+            log.info(String.format("PSMs processed -- %d in %d ms (%.1f PSMs/s)", psms, time, psms * 1000.0 / time));
+    }
+
+    private static void closeQuietly(BackupWriter<?> writer) {
+        if (writer == null)
+            return;
+        try {
+            writer.close();
+        } catch (IOException e) {
+            log.warn("The backup file can't be closed -- " + e.getMessage());
+        }
+    }
+
+    /**
+     * Open the spectrum files, the Mongo writer, the S3 uploader and the file of the PSM overviews before the PSMs are
+     * processed in chunks.
+     */
+    public void openPsmChunks() {
+        initSpectraChunks = System.currentTimeMillis();
+        chunkTotalPSM.set(0);
+        chunkErrorDeltaPSM.set(0);
+        chunkPeptides = Collections.emptyIterator();
+        chunkPsms = Collections.emptyIterator();
+
+        List<ReportPeptide> reportedPeptides = (highQualityPeptides.size() > 0) ? highQualityPeptides : allPeptides;
+        try {
+            chunkSpectrumIndex = (modeller != null && assay != null && reportedPeptides.size() > 0) ? createSpectrumIndex() : null;
+        } catch (Exception e) {
+            throw new IllegalStateException("The spectrum files of the assay can't be opened -- " + assayAccession, e);
+        }
+        if (chunkSpectrumIndex != null)
+            chunkPeptides = reportedPeptides.iterator();
+
+        closePeptideSpectrumStore();
+        try {
+            createBackupDir();
+            peptideSpectrumStore = new PeptideSpectrumStore(new File(getBackupDir(),
+                    projectAccession + "_" + assayAccession + PEPTIDE_SPECTRUM_STORE_SUFFIX));
+        } catch (IOException e) {
+            throw new IllegalStateException("The PSM overviews file of the assay can't be created -- " + assayAccession, e);
+        }
+
+        psmEvidenceWriter = createBulkEvidenceWriter(PrideMongoPsmSummaryEvidence.class,
+                MoleculeEvidenceKeys::psmSummaryEvidence, moleculesService::savePsmSummaryEvidence);
+        spectrumUploader = new AsyncSpectrumUploader(spectralArchive, s3ConcurrentUploads,
+                s3UploadQueueSize, PIPELINE_RETRY_LIMIT, S3_INITIAL_BACKOFF, S3_MAX_BACKOFF,
+                s3UploadProgressInterval);
+    }
+
+    /**
+     * Next PSM of the reported peptides, read from the modeller without copying them.
+     *
+     * @return {@link PsmItem}, null if all the PSMs have been read.
+     */
+    public PsmItem readPsm() {
+        while (!chunkPsms.hasNext()) {
+            if (!chunkPeptides.hasNext())
+                return null;
+            chunkPeptide = chunkPeptides.next();
+            chunkPsms = chunkPeptide.getPSMs().iterator();
+        }
+        return new PsmItem(chunkPeptide, chunkPsms.next());
+    }
+
+    public PsmProcessingResult processPsm(PsmItem item) throws Exception {
+        return processPsm(item.peptide, item.psm, chunkSpectrumIndex, chunkTotalPSM, chunkErrorDeltaPSM);
+    }
+
+    public void writePsmResults(List<? extends PsmProcessingResult> results) throws Exception {
+        for (PsmProcessingResult result : results)
+            storePsmResult(result);
+        psmEvidenceWriter.flush();
+    }
+
+    /**
+     * Wait for the spectra still being uploaded, if all the chunks have been processed, and close the writers.
+     *
+     * @param completed true if all the chunks have been processed
+     * @throws Exception if any spectrum can't be uploaded
+     */
+    public void closePsmChunks(boolean completed) throws Exception {
+        try {
+            if (completed)
+                spectrumUploader.awaitCompletion();
+        } finally {
+            spectrumUploader.shutdownNow();
+            psmEvidenceWriter.close();
+            chunkPeptides = Collections.emptyIterator();
+            chunkPsms = Collections.emptyIterator();
+            chunkPeptide = null;
+            chunkSpectrumIndex = null;
+
+            if (chunkTotalPSM.get() > 0)
+                log.info("Delta Mass Rate -- " + ((double) chunkErrorDeltaPSM.get() / chunkTotalPSM.get()));
+            logPsmRate(chunkTotalPSM.get(), PipelineMetrics.recordTask(
+                    SubmissionPipelineConstants.PrideArchiveStepNames.PRIDE_ARCHIVE_MONGODB_SPECTRUM_CHUNK_UPDATE.getName(),
+                    initSpectraChunks));
+        }
+    }
+
+    /**
+     * Index the reported peptides and open the Mongo writers before the proteins are processed in chunks.
+     */
+    public void openProteinChunks() {
+        initProteinChunks = System.currentTimeMillis();
+        chunkProteins = Collections.emptyIterator();
+        if (modeller != null && assay != null) {
+            boolean highQuality = reportHighQualityItems();
+            chunkPeptideIndex = new PeptideIndex(highQuality ? highQualityPeptides : allPeptides);
+            chunkProteins = (highQuality ? highQualityProteins : allProteins).iterator();
+        }
+
+        proteinEvidenceWriter = createBulkEvidenceWriter(PrideMongoProteinEvidence.class,
+                MoleculeEvidenceKeys::proteinEvidence, moleculesService::saveProteinEvidences);
+        peptideEvidenceWriter = createBulkEvidenceWriter(PrideMongoPeptideEvidence.class,
+                MoleculeEvidenceKeys::peptideEvidence, moleculesService::savePeptideEvidence);
+    }
+
+    /**
+     * Next reported protein.
+     *
+     * @return {@link ReportProtein}, null if all the proteins have been read.
+     */
+    public ReportProtein readProtein() {
+        return chunkProteins.hasNext() ? chunkProteins.next() : null;
+    }
+
+    public ProteinEvidences processProtein(ReportProtein protein) {
+        return buildProteinEvidences(protein, chunkPeptideIndex);
+    }
+
+    public void writeProteinEvidences(List<? extends ProteinEvidences> evidences) throws Exception {
+        for (ProteinEvidences proteinEvidences : evidences)
+            storeProteinEvidences(proteinEvidences);
+        proteinEvidenceWriter.flush();
+        peptideEvidenceWriter.flush();
+    }
+
+    /**
+     * Close the writers and the file of the PSM overviews, each of them is closed even if the previous one fails.
+     */
+    public void closeProteinChunks() {
+        try {
+            proteinEvidenceWriter.close();
+        } finally {
+            try {
+                peptideEvidenceWriter.close();
+            } finally {
+                chunkProteins = Collections.emptyIterator();
+                chunkPeptideIndex = null;
+                closePeptideSpectrumStore();
+                PipelineMetrics.recordTask("InsertPeptidesProteinsIntoMongoDB", initProteinChunks);
+            }
+        }
+    }
+
+    public String getProjectAccession() {
+        return projectAccession;
+    }
+
+    public String getAssayAccession() {
+        return assayAccession;
+    }
+
+    private void createBackupFiles() throws IOException {
+        createBackupDir();
+        peptideEvidenceBackupWriter = BackupUtil.createBackupWriter(backupPath, projectAccession, assayAccession,
+                PrideMongoPeptideEvidence.class, backupFormat);
+        proteinEvidenceBackupWriter = BackupUtil.createBackupWriter(backupPath, projectAccession, assayAccession,
+                PrideMongoProteinEvidence.class, backupFormat);
+        archiveSpectrumBackupWriter = BackupUtil.createBackupWriter(backupPath, projectAccession, assayAccession,
+                ArchiveSpectrum.class, backupFormat);
+        psmSummaryEvidenceBackupWriter = BackupUtil.createBackupWriter(backupPath, projectAccession, assayAccession,
+                PrideMongoPsmSummaryEvidence.class, backupFormat);
+    }
+
+    private <T> BulkEvidenceWriter<T> createBulkEvidenceWriter(Class<T> evidenceClass, Function<T, Query> naturalKey,
+                                                               Consumer<T> duplicateHandler) {
+        return new BulkEvidenceWriter<>(moleculesMongoTemplate, evidenceClass, naturalKey, duplicateHandler,
+                mongoBulkSize, mongoBulkFlushInterval);
+    }
+
+    private File getBackupDir() {
+        String path = backupPath;
+        if (!path.endsWith(File.separator)) {
+            path = backupPath + File.separator;
+        }
+        return new File(path + projectAccession);
+    }
+
+    private void createBackupDir() throws AccessDeniedException {
+        File file = getBackupDir();
+        if (file.exists() && file.isDirectory()) {
+            return;
+        }
+        boolean mkdirs = file.mkdirs();
+        // another execution of the same project can create the directory at the same time
+        if (!mkdirs && !file.isDirectory()) {
+            throw new AccessDeniedException("Failed to create Dir : " + backupPath);
+        }
+    }
+
+    /**
+     * The FDR filtered items are reported if the assay passed the decoy validation, otherwise all the items are reported.
+     */
+    private boolean reportHighQualityItems() {
+        return highQualityPeptides.size() > 0 && highQualityPsms > 0 && highQualityProteins.size() > 0;
+    }
+
+    /**
+     * Build the evidence of a protein and the evidences of its peptides.
+     *
+     * @param protein      Identified Protein
+     * @param peptideIndex Index of the reported peptides of the assay
+     * @return {@link ProteinEvidences}, null if the protein is not valid and didn't pass the submitter threshold.
+     */
+    private ProteinEvidences buildProteinEvidences(ReportProtein protein, PeptideIndex peptideIndex) {
+        try (PipelineProfiler.Span ignored = PipelineProfiler.start(PipelineProfiler.Phase.PROTEIN_PEPTIDE_INDEX,
+                assayAccession)) {
+            return doBuildProteinEvidences(protein, peptideIndex);
+        }
+    }
+
+    private ProteinEvidences doBuildProteinEvidences(ReportProtein protein, PeptideIndex peptideIndex) {
+        String proteinSequence = protein.getRepresentative().getDbSequence();
+        String proteinAccession = protein.getRepresentative().getAccession();
+        Set<String> proteinGroups = protein.getAccessions()
+                .stream().map(Accession::getAccession)
+                .collect(Collectors.toSet());
+
+        List<IdentifiedModificationProvider> proteinPTMs = new ArrayList<>(convertProteinModifications(
+                proteinAccession, protein.getPeptides()));
+
+        log.debug("Protein {} -- q-value {}", proteinAccession, protein.getQValue());
+
+        CvParam scoreParam = null;
+        Set<CvParam> attributes = new HashSet<>();
+
+        if (!Double.isFinite(protein.getQValue()) && !Double.isNaN(protein.getQValue())) {
+
+            String value = df.format(protein.getQValue());
+
+            scoreParam = new CvParam(CvTermReference.MS_PIA_PROTEIN_GROUP_QVALUE.getCvLabel(),
+                    CvTermReference.MS_PIA_PROTEIN_GROUP_QVALUE.getAccession(),
+                    CvTermReference.MS_PIA_PROTEIN_GROUP_QVALUE.getName(), value);
+            attributes.add(scoreParam);
+        }
+
+        if (protein.getScore() != null && !protein.getScore().isNaN()) {
+            String value = df.format(protein.getScore());
+            scoreParam = new CvParam(CvTermReference.MS_PIA_PROTEIN_SCORE.getCvLabel(),
+                    CvTermReference.MS_PIA_PROTEIN_SCORE.getAccession(),
+                    CvTermReference.MS_PIA_PROTEIN_SCORE.getName(), value);
+            attributes.add(scoreParam);
+        }
+
+        boolean submitterValid = protein.getPeptides().stream()
+                .anyMatch(peptideIndex::isSubmitterValid);
+
+        attributes.add(submitterThresholdParam(submitterValid));
+
+        if (!(isValid || submitterValid))
+            return null;
+
+        PrideMongoProteinEvidence proteinEvidence = PrideMongoProteinEvidence
+                .builder()
+                .reportedAccession(proteinAccession)
+                .isDecoy(protein.getIsDecoy())
+                .proteinGroupMembers(proteinGroups)
+                .ptms(proteinPTMs)
+                .projectAccession(projectAccession)
+                .proteinSequence(proteinSequence)
+                .bestSearchEngineScore(scoreParam)
+                .additionalAttributes(attributes)
+                .assayAccession(assay.getAccession())
+                .isValid(isValid)
+                .qualityEstimationMethods(validationMethods)
+                .numberPeptides(protein.getPeptides().size())
+                .numberPSMs(protein.getNrPSMs())
+                .sequenceCoverage(protein.getCoverage(proteinAccession))
+                .build();
+
+        return new ProteinEvidences(proteinEvidence,
+                buildPeptideEvidences(protein, peptideIndex, peptideIndex.isAnySubmitterValid()));
+    }
+
+    /**
+     * Write the evidences of a protein and its peptides into the backup files and MongoDB.
+     *
+     * @param evidences {@link ProteinEvidences} of the protein, nothing is written if null.
+     */
+    private void storeProteinEvidences(ProteinEvidences evidences) throws Exception {
+        if (evidences == null)
+            return;
+        try {
+            proteinEvidenceBackupWriter.write(evidences.proteinEvidence);
+            proteinEvidenceWriter.write(evidences.proteinEvidence);
+            for (PrideMongoPeptideEvidence peptideEvidence : evidences.peptideEvidences) {
+                peptideEvidenceBackupWriter.write(peptideEvidence);
+                peptideEvidenceWriter.write(peptideEvidence);
+                backupProteinAccessions.add(peptideEvidence.getProteinAccession());
+                backupPeptideSequences.add(peptideEvidence.getPeptideSequence());
+            }
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+            throw new Exception(e);
+        }
+    }
+
+    /**
+     * This method builds the evidences of all the highQualityPeptides that identified a protein
+     *
+     * @param protein        Identified Protein
+     * @param peptideIndex   Index of the reported peptides of the assay
+     * @param submitterValid true if any peptide of the experiment passed the submitter threshold
+     * @return Peptide evidences to be stored, empty if the peptides are not valid and didn't pass the submitter threshold.
+     */
+    private List<PrideMongoPeptideEvidence> buildPeptideEvidences(ReportProtein protein, PeptideIndex peptideIndex,
+                                                                  boolean submitterValid) {
+
+        List<PrideMongoPeptideEvidence> peptideEvidences = new ArrayList<>();
+        if (!(isValid || submitterValid))
+            return peptideEvidences;
+
+        for (ReportPeptide peptide : protein.getPeptides()) {
+            Optional<ReportPeptide> firstPeptide = Optional.ofNullable(peptideIndex.getPeptide(peptide.getStringID()));
+
+            if (firstPeptide.isPresent()) {
+
+                Set<CvParam> peptideAttributes = new HashSet<>();
+                if (!Double.isInfinite(firstPeptide.get().getQValue()) && !Double.isNaN(firstPeptide.get().getQValue())) {
+
+                    String value = df.format(firstPeptide.get().getQValue());
+
+                    CvParam peptideScore = new CvParam(CvTermReference.MS_PIA_PEPTIDE_QVALUE
+                            .getCvLabel(),
+                            CvTermReference.MS_PIA_PEPTIDE_QVALUE.getAccession(),
+                            CvTermReference.MS_PIA_PEPTIDE_QVALUE.getName(), value);
+                    peptideAttributes.add(peptideScore);
+                }
+
+
+                if (!Double.isInfinite(firstPeptide.get().getScore("peptide_fdr_score"))
+                        && !Double.isNaN(firstPeptide.get().getScore("peptide_fdr_score"))) {
+
+                    String value = df.format(firstPeptide.get().getScore("peptide_fdr_score"));
+
+                    CvParam peptideScore = new CvParam(CvTermReference.MS_PIA_PEPTIDE_FDR
+                            .getCvLabel(),
+                            CvTermReference.MS_PIA_PEPTIDE_FDR.getAccession(),
+                            CvTermReference.MS_PIA_PEPTIDE_FDR.getName(), value);
+                    peptideAttributes.add(peptideScore);
+                }
+
+                List<PeptideSpectrumOverview> usiList = getPeptideSpectra(firstPeptide.get().getPeptide().getID());
+
+                int startPosition = 0;
+                int endPosition = 0;
+
+                Optional<AccessionOccurrence> occurrence = firstPeptide.get().getPeptide().getAccessionOccurrences().stream()
+                        .filter(x -> x.getAccession().getAccession().equalsIgnoreCase(protein.getRepresentative().getAccession()))
+                        .findFirst();
+                if (occurrence.isPresent()) {
+                    startPosition = occurrence.get().getStart();
+                    endPosition = occurrence.get().getEnd();
+                } else {
+                    log.info("Position of the corresponding peptide is not present -- " + protein.getRepresentative().getAccession());
+                }
+
+                peptideAttributes.add(submitterThresholdParam(submitterValid));
+
+                PrideMongoPeptideEvidence peptideEvidence = PrideMongoPeptideEvidence
+                        .builder()
+                        .assayAccession(assay.getAccession())
+                        .proteinAccession(protein.getRepresentative().getAccession())
+                        .isDecoy(firstPeptide.get().getIsDecoy())
+                        .peptideAccession(usiEncoder.encodePeptide(peptide, peptide.getSequence(),
+                                peptide.getModifications()))
+                        .peptideSequence(peptide.getSequence())
+                        .additionalAttributes(peptideAttributes)
+                        .projectAccession(projectAccession)
+                        .psmAccessions(usiList)
+                        .startPosition(startPosition)
+                        .endPosition(endPosition)
+                        .missedCleavages(firstPeptide.get().getMissedCleavages())
+                        .ptmList(convertPeptideModifications(firstPeptide.get().getModifications()))
+                        .isValid(isValid)
+                        .qualityEstimationMethods(validationMethods)
+                        .build();
+
+                peptideEvidences.add(peptideEvidence);
+            }
+        }
+        return peptideEvidences;
+    }
+
+    /**
+     * @return PSM overviews of a peptide, null if the peptide has no stored PSM
+     */
+    private List<PeptideSpectrumOverview> getPeptideSpectra(Long peptideId) {
+        if (peptideSpectrumStore == null)
+            return peptideUsi.get(peptideId);
+        try {
+            return peptideSpectrumStore.getOverviews(peptideId);
+        } catch (IOException e) {
+            throw new UncheckedIOException("The PSM overviews of the peptide can't be read -- " + peptideId, e);
+        }
+    }
+
+    private static CvParam submitterThresholdParam(boolean submitterValid) {
+        return new CvParam(PRIDETools.PrideOntologyConstants.PRIDE_SUBMITTERS_THERSHOLD.getCvLabel(),
+                PRIDETools.PrideOntologyConstants.PRIDE_SUBMITTERS_THERSHOLD.getAccession(),
+                PRIDETools.PrideOntologyConstants.PRIDE_SUBMITTERS_THERSHOLD.getName(),
+                Boolean.toString(submitterValid));
+    }
+
+    /**
+     * Convert Peptide Modifications from PIA modeller to PeptideEvidence modifications
+     *
+     * @param modifications Modifications Map
+     * @return List if {@link IdentifiedModificationProvider}
+     */
+    private Collection<? extends IdentifiedModificationProvider> convertPeptideModifications(Map<Integer, Modification> modifications) {
+
+        Map<String, IdentifiedModification> ptms = new LinkedHashMap<>();
+
+        for (Map.Entry<Integer, Modification> ptmEntry : modifications.entrySet()) {
+            Modification ptm = ptmEntry.getValue();
+            Integer position = ptmEntry.getKey();
+            Set<CvParam> probabilities = ptm.getProbability()
+                    .stream().map(oldProbability -> new CvParam(oldProbability.getCvLabel(),
+                            oldProbability.getAccession(),
+                            oldProbability.getName(),
+                            String.valueOf(oldProbability.getValue())))
+                    .collect(Collectors.toSet());
+            // ignore modifications that can't be processed correctly (can not be mapped to the protein)
+            if (ptm.getAccession() == null) {
+                continue;
+            }
+
+            ptms.computeIfAbsent(ptm.getAccession().toLowerCase(Locale.ROOT), key -> newModification(ptm))
+                    .addPosition(position, probabilities);
+        }
+        return new ArrayList<>(ptms.values());
+
+    }
+
+    /**
+     * Convert peptide modifications to Protein modifications. Adjust the localization using the start and end positions.
+     *
+     * @param proteinAccession Protein Accession
+     * @param peptides         List of highQualityPeptides
+     * @return List of {@link IdentifiedModificationProvider}
+     */
+    private Collection<? extends IdentifiedModificationProvider> convertProteinModifications(String proteinAccession, List<ReportPeptide> peptides) {
+
+        Map<String, IdentifiedModification> ptms = new LinkedHashMap<>();
+
+        for (ReportPeptide item : peptides) {
+
+            for (Map.Entry<Integer, Modification> ptmEntry : item.getModifications().entrySet()) {
+
+                Modification ptm = ptmEntry.getValue();
+                Integer position = ptmEntry.getKey();
+                Set<CvParam> probabilities = ptm.getProbability()
+                        .stream().map(oldProbability -> new CvParam(oldProbability.getCvLabel(),
+                                oldProbability.getAccession(),
+                                oldProbability.getName(),
+                                String.valueOf(oldProbability.getValue())))
+                        .collect(Collectors.toSet());
+                // ignore modifications that can't be processed correctly (can not be mapped to the protein)
+                if (ptm.getAccession() == null) {
+                    continue;
+                }
+
+                // if we can calculate the position, we add it to the modification
+                // -1 to calculate properly the modification offset
+                item.getPeptide().getAccessionOccurrences().forEach(peptideEvidence -> {
+
+                    if (peptideEvidence.getAccession().getAccession() == proteinAccession) {
+
+                        if (peptideEvidence.getStart() != null && peptideEvidence.getStart() >= 0 && position >= 0) {
+
+                            int startPos = peptideEvidence.getStart();
+                            // n-term and c-term mods are not propagated to the protein except the case that the start
+                            // position is 1 (beginning of the protein)
+                            int proteinPosition = startPos + position - 1;
+
+                            ptms.computeIfAbsent(ptm.getAccession().toLowerCase(Locale.ROOT), key -> newModification(ptm))
+                                    .addPosition(proteinPosition, probabilities);
+
+                            if (position > 0 && position < (item.getSequence().length() + 1)) {
+//                                mod.addPosition(position, null);
+//                                modifications.add(mod);
+//                                log.info(String.valueOf(proteinPosition));
+//                                log.info(ptm.getAccession());
+                            } else if (position == 0) { //n-term for protein
+//                                mod.addPosition(position, null);
+//                                modifications.add(mod);
+//                                log.info(String.valueOf(proteinPosition));
+//                                log.info(ptm.getAccession());
+
+                            }
+                        } else {
+//                            modifications.add(mod);
+                            //if position is not set null is reported
+                        }
+
+                    }
+
+                });
+
+            }
+        }
+        return new ArrayList<>(ptms.values());
+
+    }
+
+    private static IdentifiedModification newModification(Modification ptm) {
+        CvParam ptmName = new CvParam(ptm.getCvLabel(),
+                ptm.getAccession(), ptm.getDescription(),
+                String.valueOf(ptm.getMass()));
+        return new IdentifiedModification(null, null, ptmName, null);
+    }
+
+    /**
+     * Index of the reported peptides of an assay, shared by all the proteins. The peptides of a protein are resolved
+     * by string ID and the submitter threshold (PRIDE:0000511) of each intermediate peptide is computed only once.
+     */
+    private static class PeptideIndex {
+
+        private final Map<String, ReportPeptide> peptidesById = new HashMap<>();
+        private final Map<Long, Boolean> submitterValidPeptides = new HashMap<>();
+        private final boolean anySubmitterValid;
+
+        PeptideIndex(List<ReportPeptide> peptides) {
+            for (ReportPeptide peptide : peptides) {
+                peptidesById.putIfAbsent(peptide.getStringID().toLowerCase(Locale.ROOT), peptide);
+            }
+            anySubmitterValid = peptides.stream().anyMatch(this::isSubmitterValid);
+        }
+
+        ReportPeptide getPeptide(String stringId) {
+            return peptidesById.get(stringId.toLowerCase(Locale.ROOT));
+        }
+
+        /**
+         * Check if any spectrum of the peptide passed the submitter threshold (PRIDE:0000511).
+         */
+        boolean isSubmitterValid(ReportPeptide peptide) {
+            return submitterValidPeptides.computeIfAbsent(peptide.getPeptide().getID(), id -> {
+                for (PeptideSpectrumMatch spectrum : peptide.getPeptide().getSpectra()) {
+                    for (AbstractParam abstractParam : spectrum.getParams()) {
+                        if (abstractParam instanceof uk.ac.ebi.jmzidml.model.mzidml.CvParam) {
+                            uk.ac.ebi.jmzidml.model.mzidml.CvParam cv = (uk.ac.ebi.jmzidml.model.mzidml.CvParam) abstractParam;
+                            if (cv.getAccession().equalsIgnoreCase("PRIDE:0000511") && cv.getValue().equalsIgnoreCase("true")) {
+                                return true;
+                            }
+                        }
+                    }
+                }
+                return false;
+            });
+        }
+
+        /**
+         * true if any peptide of the assay passed the submitter threshold.
+         */
+        boolean isAnySubmitterValid() {
+            return anySubmitterValid;
+        }
+    }
+
+    /**
+     * Evidence of a protein and the evidences of its peptides, built by {@link #buildProteinEvidences}.
+     */
+    public static class ProteinEvidences {
+
+        private final PrideMongoProteinEvidence proteinEvidence;
+        private final List<PrideMongoPeptideEvidence> peptideEvidences;
+
+        ProteinEvidences(PrideMongoProteinEvidence proteinEvidence, List<PrideMongoPeptideEvidence> peptideEvidences) {
+            this.proteinEvidence = proteinEvidence;
+            this.peptideEvidences = peptideEvidences;
+        }
+    }
+
+    /**
+     * Open the spectrum files of the assay and build the index used to resolve the spectrum of each PSM.
+     *
+     * @return {@link SpectrumReferenceIndex}, null if the assay has no result file or no spectrum files.
+     */
+    private SpectrumReferenceIndex createSpectrumIndex() throws Exception {
+        Optional<MongoAssayFile> assayResultFile = assay.getAssayFiles()
+                .stream().filter(x -> x.getFileCategory()
+                        .getValue().equalsIgnoreCase("RESULT")).findFirst();
+
+        List<SpectraData> spectrumFiles = modeller.getSpectraData()
+                .entrySet().stream().map(Map.Entry::getValue)
+                .collect(Collectors.toList());
+
+        if (!(assayResultFile.isPresent() && (spectrumFiles.size() > 0
+                || assayResultFile.get().getFileCategory().getAccession().equalsIgnoreCase("PRIDE:1002848"))))
+            return null;
+
+        JmzReaderSpectrumService service;
+        SpectrumReferenceIndex spectrumIndex;
+
+        if (spectrumFiles.size() > 0) {
+            List<Triple<String, SpectraData, SubmissionPipelineConstants.FileType>> mongoRelatedFiles =
+                    (assayResultFile.get().getRelatedFiles().size() == 0) ?
+                    SubmissionPipelineConstants.combineSpectraControllers(buildPath,
+                            Collections.singletonList(SubmissionPipelineConstants
+                                    .returnUnCompressPath(assayResultFile.get().getFileName())), spectrumFiles) :
+                    SubmissionPipelineConstants.combineSpectraControllers(buildPath, assayResultFile.get()
+                            .getRelatedFiles().stream().map(x -> SubmissionPipelineConstants.returnUnCompressPath(x.getFileName()))
+                            .collect(Collectors.toList()), spectrumFiles);
+
+            service = JmzReaderSpectrumService.getInstance(mongoRelatedFiles, spectrumReaderPool);
+            spectrumIndex = SpectrumReferenceIndex.build(projectAccession, mongoRelatedFiles, service);
+        } else {
+            Triple<String, SpectraData, SubmissionPipelineConstants.FileType> prideSpectraFile = new Triple<>(SubmissionPipelineConstants.returnUnCompressPath(buildPath + assayResultFile.get().getFileName()), null, SubmissionPipelineConstants.FileType.PRIDE);
+            service = JmzReaderSpectrumService.getInstance(Collections.singletonList(prideSpectraFile), spectrumReaderPool);
+            spectrumIndex = SpectrumReferenceIndex.buildForResultFile(projectAccession, prideSpectraFile.getFirst(),
+                    SubmissionPipelineConstants.returnUnCompressPath(assayResultFile.get().getFileName()), service);
+        }
+        log.info("Spectrum reference index with " + spectrumIndex.size() + " spectrum files");
+        return spectrumIndex;
+    }
+
+    /**
+     * Wait for the result of a PSM submitted to the worker pool. Exceptions thrown by the worker are
+     * re-thrown as they were, not wrapped in an {@link ExecutionException}.
+     *
+     * @param future result of the worker
+     * @return {@link PsmProcessingResult} of the PSM, null if the spectrum can't be read.
+     */
+    private PsmProcessingResult awaitPsmResult(Future<PsmProcessingResult> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception)
+                throw (Exception) e.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Read the spectrum of a PSM and build the {@link ArchiveSpectrum} and the {@link PrideMongoPsmSummaryEvidence}.
+     * This method doesn't modify any state of the job and can be called from multiple workers at the same time.
+     *
+     * @param peptide        Peptide of the PSM
+     * @param psm            PSM to be processed
+     * @param spectrumIndex  Index of the spectrum files of the assay
+     * @param totalPSM       Counter of processed PSMs
+     * @param errorDeltaPSM  Counter of PSMs with a delta mass bigger than 0.9
+     * @return {@link PsmProcessingResult}, null if the spectrum can't be read.
+     */
+    private PsmProcessingResult processPsm(ReportPeptide peptide, PSMReportItem psm, SpectrumReferenceIndex spectrumIndex,
+                                           AtomicInteger totalPSM, AtomicInteger errorDeltaPSM) throws Exception {
+        try {
+            PeptideSpectrumMatch spectrum = null;
+            if (psm instanceof ReportPSM)
+                spectrum = ((ReportPSM) psm).getSpectrum();
+
+            totalPSM.incrementAndGet();
+            processedPsms.increment();
+
+            PeptideSpectrumMatch finalSpectrum = spectrum;
+
+            SpectrumReferenceIndex.SpectrumFileReference reference;
+            String spectrumId;
+            Spectrum fileSpectrum;
+            SpectrumPeaks peaks;
+            try (PipelineProfiler.Span ignored = PipelineProfiler.start(PipelineProfiler.Phase.SPECTRUM_READ,
+                    assayAccession)) {
+                reference = spectrumIndex.getReference((ReportPSM) psm);
+                if (reference == null)
+                    throw new IllegalStateException("The spectrum file of the PSM can't be found -- " + finalSpectrum.getSourceID());
+
+                spectrumId = reference.getSpectrumId((ReportPSM) psm);
+                fileSpectrum = reference.getSpectrum(spectrumId);
+                peaks = new SpectrumPeaks().load(fileSpectrum);
+            }
+
+            String modifiedSequence;
+            String usi;
+            try (PipelineProfiler.Span ignored = PipelineProfiler.start(PipelineProfiler.Phase.USI_ENCODING,
+                    assayAccession)) {
+                // the encoded sequence is shared by the PSMs of the peptide and used for the USI and the PSM summary
+                modifiedSequence = usiEncoder.encodePeptide(peptide, psm.getSequence(), psm.getModifications());
+                usi = reference.buildUsi((ReportPSM) psm, spectrumId, modifiedSequence);
+            }
+            String spectrumFile = reference.getSpectrumFile();
+            String fileName = reference.getFileName();
+
+            // called by every worker for every PSM, the assay summary is logged at info level by the step; the
+            // precursor m/z is missing from some spectra (e.g. MGF spectra without PEPMASS)
+            if (log.isDebugEnabled() && fileSpectrum.getPrecursorMZ() != null)
+                log.debug("Spectrum {} -- precursor m/z difference {}", fileSpectrum.getId(),
+                        psm.getMassToCharge() - fileSpectrum.getPrecursorMZ());
+
+            Set<CvParam> properties = new HashSet<>();
+            Set<CvParam> psmAttributes = new HashSet<>();
+
+            for (ScoreModelEnum scoreModel : ScoreModelEnum.values()) {
+                Double scoreValue = psm.getScore(scoreModel.getShortName());
+                if (scoreValue != null && !scoreValue.isNaN()) {
+                    for (CvTermReference ref : CvTermReference.values()) {
+                        if (ref.getAccession().equalsIgnoreCase(scoreModel.getCvAccession())) {
+                            CvParam cv = new CvParam(ref.getCvLabel(), ref.getAccession(),
+                                    ref.getName(), String.valueOf(scoreValue));
+                            properties.add(cv);
+                            if (ref.getAccession().equalsIgnoreCase("MS:1002355")) {
+                                CvParam bestSearchEngine = new CvParam(cv.getCvLabel(), cv.getAccession(), cv.getName(), cv.getValue());
+                                psmAttributes.add(bestSearchEngine);
+                            }
+
+                        }
+
+                    }
+                }
+            }
+
+            // Capturing additional parameters provided by the user.
+            boolean submitterValid = false;
+            for (AbstractParam abstractParam : spectrum.getParams()) {
+                if (abstractParam != null) {
+                    if (abstractParam instanceof uk.ac.ebi.jmzidml.model.mzidml.CvParam) {
+                        uk.ac.ebi.jmzidml.model.mzidml.CvParam cvParam = (uk.ac.ebi.jmzidml.model.mzidml.CvParam) abstractParam;
+                        if (cvParam.getAccession() != null) {
+                            CvParam cv = new CvParam(cvParam.getCvRef(),
+                                    cvParam.getAccession(), cvParam.getName(), cvParam.getValue());
+                            if (cv.getAccession().equalsIgnoreCase("PRIDE:0000511")) {
+                                psmAttributes.add(cv);
+                                if (cv.getValue().equalsIgnoreCase("true"))
+                                    submitterValid = true;
+                            }
+                            properties.add(cv);
+                        }
+                    }
+                }
+            }
+            properties.add(new CvParam(CvTermReference.MS_PIA_PEPTIDE_QVALUE.getCvLabel(),
+                    CvTermReference.MS_PIA_PEPTIDE_QVALUE.getAccession(),
+                    CvTermReference.MS_PIA_PEPTIDE_QVALUE.getName(),
+                    String.valueOf(peptide.getQValue())));
+
+            double retentionTime = Double.NaN;
+            if (psm.getRetentionTime() != null)
+                retentionTime = psm.getRetentionTime();
+
+            double deltaMass;
+            try (PipelineProfiler.Span ignored = PipelineProfiler.start(PipelineProfiler.Phase.DELTA_MASS,
+                    assayAccession)) {
+                List<Double> ptmMasses = peptide.getModifications().entrySet()
+                        .stream().map(x -> x.getValue().getMass()).collect(Collectors.toList());
+                deltaMass = MoleculeUtilities
+                        .calculateDeltaMz(peptide.getSequence(),
+                                spectrum.getMassToCharge(),
+                                spectrum.getCharge(),
+                                ptmMasses);
+            }
+
+            log.debug("Delta Mass -- {}", deltaMass);
+
+            if (deltaMass > 0.9) {
+                errorDeltaPSM.incrementAndGet();
+            }
+            properties.add(new CvParam(CvTermReference.MS_DELTA_MASS.getCvLabel(),
+                    CvTermReference.MS_DELTA_MASS.getAccession(),
+                    CvTermReference.MS_DELTA_MASS.getName(),
+                    String.valueOf(deltaMass))
+            );
+
+            List<IdentifiedModification> mods = new ArrayList<>();
+            if (psm.getModifications() != null && psm.getModifications().size() > 0)
+                mods = convertPeptideModifications(psm.getModifications()).stream().map(x -> {
+
+                    CvParam neutralLoss = null;
+                    if (x.getNeutralLoss() != null)
+                        neutralLoss = new CvParam(x.getNeutralLoss().getCvLabel(),
+                                x.getNeutralLoss().getAccession(),
+                                x.getNeutralLoss().getName(), x.getNeutralLoss().getValue());
+
+                    List<Tuple<Integer, Set<? extends CvParamProvider>>> positionMap = new ArrayList<>();
+                    if (x.getPositionMap() != null && x.getPositionMap().size() > 0)
+                        positionMap = x.getPositionMap().stream()
+                                .map(y -> new Tuple<Integer, Set<? extends CvParamProvider>>(y.getKey(),
+                                        y.getValue().stream()
+                                                .map(z -> new CvParam(z.getCvLabel(),
+                                                        z.getAccession(), z.getName(), z.getValue()))
+                                                .collect(Collectors.toSet())))
+                                .collect(Collectors.toList());
+
+                    CvParam modCv = null;
+                    if (x.getModificationCvTerm() != null)
+                        modCv = new CvParam(x.getModificationCvTerm().getCvLabel(),
+                                x.getModificationCvTerm().getAccession(),
+                                x.getModificationCvTerm().getName(),
+                                x.getModificationCvTerm().getValue());
+
+                    Set<CvParamProvider> modProperties = new HashSet<>();
+
+                    return new IdentifiedModification(neutralLoss, positionMap, modCv, modProperties);
+                }).collect(Collectors.toList());
+
+            ArchiveSpectrum archivePSM = ArchiveSpectrum
+                    .builder()
+                    .projectAccession(projectAccession)
+                    .assayAccession(assayAccession)
+                    .peptideSequence(psm.getSequence())
+                    .isDecoy(psm.getIsDecoy())
+                    .retentionTime(retentionTime)
+                    .msLevel(fileSpectrum.getMsLevel())
+                    .precursorCharge(fileSpectrum.getPrecursorCharge())
+                    .masses(peaks.toMzObjectArray())
+                    .numPeaks(peaks.size())
+                    .intensities(peaks.toIntensityObjectArray())
+                    .properties(properties)
+                    .spectrumFile(spectrumFile)
+                    .modifications(mods)
+                    .precursorMz(fileSpectrum.getPrecursorMZ())
+                    .usi(usi)
+                    .spectrumFile(spectrumFile)
+                    .isValid(isValid)
+                    .missedCleavages(((ReportPSM) psm).getMissedCleavages())
+                    .qualityEstimationMethods(validationMethods.stream()
+                            .map(x -> new CvParam(x.getCvLabel(),
+                                    x.getAccession(), x.getName(), x.getValue()))
+                            .collect(Collectors.toSet()))
+                    .build();
+
+            PrideMongoPsmSummaryEvidence psmMongo = PrideMongoPsmSummaryEvidence
+                    .builder()
+                    .usi(usi)
+                    .peptideSequence(psm.getSequence())
+                    .assayAccession(assayAccession)
+                    .isDecoy(psm.getIsDecoy())
+                    .charge(psm.getCharge())
+                    .isValid(isValid)
+                    .projectAccession(projectAccession)
+                    .fileName(fileName)
+                    .additionalAttributes(psmAttributes)
+                    .precursorMass(psm.getMassToCharge())
+                    .modifiedPeptideSequence(modifiedSequence)
+                    .build();
+
+            return new PsmProcessingResult(peptide.getPeptide().getID(), archivePSM, psmMongo, psm.getCharge(),
+                    psm.getMassToCharge(), submitterValid);
+
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+            if (!(e instanceof JMzReaderException))
+                throw e;
+        }
+        return null;
+    }
+
+    /**
+     * Write a processed PSM into the backup files, MongoDB and S3, and register its USI for the peptide.
+     * This method must be called in the original order of the PSMs to keep the backup files deterministic.
+     *
+     * @param result {@link PsmProcessingResult} of a PSM
+     */
+    private void storePsmResult(PsmProcessingResult result) throws Exception {
+        if (result == null)
+            return;
+        if (isValid || result.submitterValid) {
+            archiveSpectrumBackupWriter.write(result.archivePSM);
+            psmSummaryEvidenceBackupWriter.write(result.psmMongo);
+            psmEvidenceWriter.write(result.psmMongo);
+
+            spectrumUploader.submit(result.archivePSM.getUsi(), result.archivePSM);
+
+            String usi = result.psmMongo.getUsi();
+            if (peptideSpectrumStore != null)
+                peptideSpectrumStore.add(result.peptideId, result.charge, result.precursorMz, usi);
+            else
+                peptideUsi.computeIfAbsent(result.peptideId, id -> new ArrayList<>())
+                        .add(new PeptideSpectrumOverview(result.charge, result.precursorMz, usi));
+        }
+    }
+
+    /**
+     * Result of the processing of one PSM by {@link #processPsm}.
+     */
+    public static class PsmProcessingResult {
+
+        private final Long peptideId;
+        private final ArchiveSpectrum archivePSM;
+        private final PrideMongoPsmSummaryEvidence psmMongo;
+        private final int charge;
+        private final double precursorMz;
+        private final boolean submitterValid;
+
+        PsmProcessingResult(Long peptideId, ArchiveSpectrum archivePSM, PrideMongoPsmSummaryEvidence psmMongo,
+                            int charge, double precursorMz, boolean submitterValid) {
+            this.peptideId = peptideId;
+            this.archivePSM = archivePSM;
+            this.psmMongo = psmMongo;
+            this.charge = charge;
+            this.precursorMz = precursorMz;
+            this.submitterValid = submitterValid;
+        }
+    }
+
+    /**
+     * PSM of a reported peptide, item of the chunk-oriented processing of the PSMs.
+     */
+    public static class PsmItem {
+
+        private final ReportPeptide peptide;
+        private final PSMReportItem psm;
+
+        PsmItem(ReportPeptide peptide, PSMReportItem psm) {
+            this.peptide = peptide;
+            this.psm = psm;
+        }
+    }
+
+    private CvParam updateValueOfMongoParamter(CvParam param, CvTermReference cvTerm, Integer value) {
+        if (param.getAccession().equalsIgnoreCase(cvTerm.getAccession())) {
+            param.setValue(String.valueOf(value));
+        }
+        return param;
+    }
+}
@@ -0,0 +1,136 @@
+package uk.ac.ebi.pride.archive.pipeline.services.molecules;
+
+import uk.ac.ebi.pride.archive.pipeline.services.backup.BackupFormat;
+
+/**
+ * Paths and tuning parameters of the assay analysis, shared by all the executions of an {@link AssayAnalysisEngine}
+ * and by the {@link BackupRestoreEngine}. The defaults are the defaults of the PRIDEAnalyzeAssayJob properties.
+ */
+public class AssayAnalysisSettings {
+
+    private String productionPath;
+    private String backupPath;
+    private BackupFormat backupFormat = BackupFormat.BINARY;
+
+    private Double qValueThreshold = 0.01;
+    private Double qFilterProteinFDR = 1.0;
+
+    /**
+     * Number of workers used to read the spectra and build the PSMs, 1 means the PSMs are processed in the
+     * thread of the execution.
+     **/
+    private Integer psmProcessingWorkers = 1;
+
+    private Integer mongoBulkSize = 1000;
+    private Long mongoBulkFlushInterval = 10000L;
+
+    private Integer s3ConcurrentUploads = 8;
+    private Integer s3UploadQueueSize = 500;
+    private Long s3UploadProgressInterval = 60L;
+
+    /**
+     * Number of backup files restored at the same time by the {@link BackupRestoreEngine}.
+     **/
+    private Integer restoreConcurrentFiles = 4;
+
+    public AssayAnalysisSettings(String productionPath, String backupPath) {
+        this.productionPath = productionPath;
+        this.backupPath = backupPath;
+    }
+
+    public String getProductionPath() {
+        return productionPath;
+    }
+
+    public void setProductionPath(String productionPath) {
+        this.productionPath = productionPath;
+    }
+
+    public String getBackupPath() {
+        return backupPath;
+    }
+
+    public void setBackupPath(String backupPath) {
+        this.backupPath = backupPath;
+    }
+
+    public BackupFormat getBackupFormat() {
+        return backupFormat;
+    }
+
+    public void setBackupFormat(BackupFormat backupFormat) {
+        this.backupFormat = backupFormat;
+    }
+
+    public Double getQValueThreshold() {
+        return qValueThreshold;
+    }
+
+    public void setQValueThreshold(Double qValueThreshold) {
+        this.qValueThreshold = qValueThreshold;
+    }
+
+    public Double getQFilterProteinFDR() {
+        return qFilterProteinFDR;
+    }
+
+    public void setQFilterProteinFDR(Double qFilterProteinFDR) {
+        this.qFilterProteinFDR = qFilterProteinFDR;
+    }
+
+    public Integer getPsmProcessingWorkers() {
+        return psmProcessingWorkers;
+    }
+
+    public void setPsmProcessingWorkers(Integer psmProcessingWorkers) {
+        this.psmProcessingWorkers = psmProcessingWorkers;
+    }
+
+    public Integer getMongoBulkSize() {
+        return mongoBulkSize;
+    }
+
+    public void setMongoBulkSize(Integer mongoBulkSize) {
+        this.mongoBulkSize = mongoBulkSize;
+    }
+
+    public Long getMongoBulkFlushInterval() {
+        return mongoBulkFlushInterval;
+    }
+
+    public void setMongoBulkFlushInterval(Long mongoBulkFlushInterval) {
+        this.mongoBulkFlushInterval = mongoBulkFlushInterval;
+    }
+
+    public Integer getS3ConcurrentUploads() {
+        return s3ConcurrentUploads;
+    }
+
+    public void setS3ConcurrentUploads(Integer s3ConcurrentUploads) {
+        this.s3ConcurrentUploads = s3ConcurrentUploads;
+    }
+
+    public Integer getS3UploadQueueSize() {
+        return s3UploadQueueSize;
+    }
+
+    public void setS3UploadQueueSize(Integer s3UploadQueueSize) {
+        this.s3UploadQueueSize = s3UploadQueueSize;
+    }
+
+    public Long getS3UploadProgressInterval() {
+        return s3UploadProgressInterval;
+    }
+
+    public void setS3UploadProgressInterval(Long s3UploadProgressInterval) {
+        this.s3UploadProgressInterval = s3UploadProgressInterval;
+    }
+
+    public Integer getRestoreConcurrentFiles() {
+        return restoreConcurrentFiles;
+    }
+
+    public void setRestoreConcurrentFiles(Integer restoreConcurrentFiles) {
+        this.restoreConcurrentFiles = restoreConcurrentFiles;
+    }
+}
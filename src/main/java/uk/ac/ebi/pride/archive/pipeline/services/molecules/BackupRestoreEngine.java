@@ -0,0 +1,249 @@
+package uk.ac.ebi.pride.archive.pipeline.services.molecules;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import uk.ac.ebi.pride.archive.pipeline.services.backup.BackupReader;
+import uk.ac.ebi.pride.archive.pipeline.services.backup.RestoreCheckpoint;
+import uk.ac.ebi.pride.archive.pipeline.services.spectra.AsyncSpectrumUploader;
+import uk.ac.ebi.pride.archive.pipeline.utility.BackupUtil;
+import uk.ac.ebi.pride.archive.spectra.model.ArchiveSpectrum;
+import uk.ac.ebi.pride.archive.spectra.services.S3SpectralArchive;
+import uk.ac.ebi.pride.mongodb.molecules.model.peptide.PrideMongoPeptideEvidence;
+import uk.ac.ebi.pride.mongodb.molecules.model.protein.PrideMongoProteinEvidence;
+import uk.ac.ebi.pride.mongodb.molecules.model.psm.PrideMongoPsmSummaryEvidence;
+import uk.ac.ebi.pride.mongodb.molecules.service.molecules.PrideMoleculesMongoService;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Restore of the backup files of the assay analysis into MongoDB and the S3 spectra archive.
+ *
+ * <ul>
+ *     <li>The files are restored in parallel, {@link AssayAnalysisSettings#getRestoreConcurrentFiles()} at a time.
+ *     {@link #submit(Path)} blocks when all the restore threads are busy, so the backup directories can be walked
+ *     lazily by the caller.</li>
+ *     <li>The records are streamed from the files: the evidences are upserted with a {@link BulkEvidenceWriter} and
+ *     the spectra are uploaded by an {@link AsyncSpectrumUploader}, one writer or uploader per file.</li>
+ *     <li>Every restored file is recorded in the {@link RestoreCheckpoint}, the files already restored by an
+ *     interrupted restore are skipped. A file that failed is restored again from its first record, the evidences
+ *     already in the database are updated and the spectra are overwritten.</li>
+ * </ul>
+ * The failed files don't stop the restore of the others, they are reported together by {@link #awaitCompletion()}.
+ */
+@Slf4j
+public class BackupRestoreEngine {
+
+    private static final int MAX_REPORTED_FAILURES = 20;
+    private static final int S3_RETRY_LIMIT = 20;
+    private static final long S3_INITIAL_BACKOFF = 500;
+    private static final long S3_MAX_BACKOFF = 60000;
+
+    private final PrideMoleculesMongoService moleculesService;
+    private final MongoTemplate moleculesMongoTemplate;
+    private final S3SpectralArchive spectralArchive;
+    private final AssayAnalysisSettings settings;
+    private final RestoreCheckpoint checkpoint;
+
+    private final ExecutorService restoreExecutor;
+    private final Semaphore pendingFiles;
+
+    private final AtomicLong submittedFiles = new AtomicLong();
+    private final AtomicLong restoredFiles = new AtomicLong();
+    private final AtomicLong skippedFiles = new AtomicLong();
+    private final AtomicLong restoredRecords = new AtomicLong();
+    private final List<String> failedFiles = Collections.synchronizedList(new ArrayList<>());
+    private volatile Exception lastFailure;
+
+    private final long startTime = System.currentTimeMillis();
+
+    /**
+     * Create the restore.
+     *
+     * @param moleculesService       Molecules service, used for the evidences already in the database
+     * @param moleculesMongoTemplate Molecules {@link MongoTemplate}, used for the bulk inserts
+     * @param spectralArchive        S3 spectra archive
+     * @param settings               bulk sizes, S3 uploads and number of files restored at the same time
+     * @param checkpoint             checkpoint of the restored files, null to restore all the files
+     */
+    public BackupRestoreEngine(PrideMoleculesMongoService moleculesService, MongoTemplate moleculesMongoTemplate,
+                               S3SpectralArchive spectralArchive, AssayAnalysisSettings settings,
+                               RestoreCheckpoint checkpoint) {
+        this.moleculesService = moleculesService;
+        this.moleculesMongoTemplate = moleculesMongoTemplate;
+        this.spectralArchive = spectralArchive;
+        this.settings = settings;
+        this.checkpoint = checkpoint;
+
+        int threads = Math.max(1, settings.getRestoreConcurrentFiles());
+        this.pendingFiles = new Semaphore(threads);
+        this.restoreExecutor = Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("backup-restore-"));
+    }
+
+    /**
+     * Queue a file to be restored. This method blocks if all the restore threads are busy.
+     *
+     * @param file backup file
+     * @return false if the file is not a backup file or it has already been restored
+     */
+    public boolean submit(Path file) throws IOException, InterruptedException {
+        if (!isRestorable(file))
+            return false;
+        if (checkpoint != null && checkpoint.isRestored(file)) {
+            skippedFiles.incrementAndGet();
+            log.debug("The backup file has already been restored -- " + file);
+            return false;
+        }
+        pendingFiles.acquire();
+        submittedFiles.incrementAndGet();
+        try {
+            restoreExecutor.execute(() -> {
+                try {
+                    restore(file);
+                } finally {
+                    pendingFiles.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pendingFiles.release();
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * Wait until all the submitted files have been restored. The engine can't be used after this call.
+     *
+     * @throws Exception if one or more files can't be restored
+     */
+    public void awaitCompletion() throws Exception {
+        restoreExecutor.shutdown();
+        while (!restoreExecutor.awaitTermination(1, TimeUnit.MINUTES)) {
+            reportProgress();
+        }
+
+        long totalTime = System.currentTimeMillis() - startTime;
+        log.info("Restore finished -- restored files: " + restoredFiles.get() + " records: " + restoredRecords.get()
+                + " already restored: " + skippedFiles.get() + " failed: " + failedFiles.size()
+                + " time: " + totalTime + " ms");
+
+        if (!failedFiles.isEmpty()) {
+            List<String> reported;
+            synchronized (failedFiles) {
+                reported = new ArrayList<>(failedFiles.subList(0, Math.min(MAX_REPORTED_FAILURES, failedFiles.size())));
+            }
+            throw new Exception(failedFiles.size() + " backup files can't be restored -- "
+                    + String.join(", ", reported), lastFailure);
+        }
+    }
+
+    /**
+     * Stop the restore without waiting for the submitted files, used when the step fails. The files being restored
+     * are not checkpointed.
+     */
+    public void shutdownNow() {
+        restoreExecutor.shutdownNow();
+    }
+
+    public long getRestoredFiles() {
+        return restoredFiles.get();
+    }
+
+    public long getSkippedFiles() {
+        return skippedFiles.get();
+    }
+
+    public long getRestoredRecords() {
+        return restoredRecords.get();
+    }
+
+    private static boolean isRestorable(Path file) {
+        return BackupUtil.isBackupFile(file, PrideMongoPsmSummaryEvidence.class)
+                || BackupUtil.isBackupFile(file, PrideMongoPeptideEvidence.class)
+                || BackupUtil.isBackupFile(file, PrideMongoProteinEvidence.class)
+                || BackupUtil.isBackupFile(file, ArchiveSpectrum.class);
+    }
+
+    private void restore(Path file) {
+        long initFile = System.currentTimeMillis();
+        try {
+            long records;
+            if (BackupUtil.isBackupFile(file, PrideMongoPsmSummaryEvidence.class)) {
+                records = restoreEvidences(file, PrideMongoPsmSummaryEvidence.class,
+                        MoleculeEvidenceKeys::psmSummaryEvidence, moleculesService::savePsmSummaryEvidence);
+            } else if (BackupUtil.isBackupFile(file, PrideMongoPeptideEvidence.class)) {
+                records = restoreEvidences(file, PrideMongoPeptideEvidence.class,
+                        MoleculeEvidenceKeys::peptideEvidence, moleculesService::savePeptideEvidence);
+            } else if (BackupUtil.isBackupFile(file, PrideMongoProteinEvidence.class)) {
+                records = restoreEvidences(file, PrideMongoProteinEvidence.class,
+                        MoleculeEvidenceKeys::proteinEvidence, moleculesService::saveProteinEvidences);
+            } else {
+                records = restoreSpectra(file);
+            }
+            if (checkpoint != null)
+                checkpoint.markRestored(file);
+            restoredFiles.incrementAndGet();
+            restoredRecords.addAndGet(records);
+            log.info("Restored backup file " + file.getFileName() + " -- records: " + records + " time: "
+                    + (System.currentTimeMillis() - initFile) + " ms");
+        } catch (Exception e) {
+            log.error("The backup file can't be restored -- " + file, e);
+            failedFiles.add(file.getFileName().toString());
+            lastFailure = e;
+        }
+    }
+
+    private <T> long restoreEvidences(Path file, Class<T> evidenceClass, Function<T, Query> naturalKey,
+                                      Consumer<T> duplicateHandler) throws IOException {
+        long records = 0;
+        try (BackupReader<T> evidences = BackupUtil.openBackupReader(file, evidenceClass);
+             BulkEvidenceWriter<T> writer = new BulkEvidenceWriter<>(moleculesMongoTemplate, evidenceClass,
+                     naturalKey, duplicateHandler, settings.getMongoBulkSize(), settings.getMongoBulkFlushInterval())) {
+            while (evidences.hasNext()) {
+                writer.write(evidences.next());
+                records++;
+            }
+        }
+        return records;
+    }
+
+    private long restoreSpectra(Path file) throws Exception {
+        long records = 0;
+        AsyncSpectrumUploader uploader = new AsyncSpectrumUploader(spectralArchive, settings.getS3ConcurrentUploads(),
+                settings.getS3UploadQueueSize(), S3_RETRY_LIMIT, S3_INITIAL_BACKOFF, S3_MAX_BACKOFF,
+                settings.getS3UploadProgressInterval());
+        try (BackupReader<ArchiveSpectrum> spectra = BackupUtil.openBackupReader(file, ArchiveSpectrum.class)) {
+            while (spectra.hasNext()) {
+                ArchiveSpectrum spectrum = spectra.next();
+                uploader.submit(spectrum.getUsi(), spectrum);
+                records++;
+            }
+        } catch (Exception e) {
+            uploader.shutdownNow();
+            throw e;
+        }
+        uploader.awaitCompletion();
+        return records;
+    }
+
+    private void reportProgress() {
+        long time = System.currentTimeMillis() - startTime;
+        long records = restoredRecords.get();
+        log.info(String.format("Restore -- submitted files: %d restored: %d (%d records, %.1f records/s) "
+                        + "already restored: %d failed: %d", submittedFiles.get(), restoredFiles.get(), records,
+                (time > 0) ? records * 1000.0 / time : 0, skippedFiles.get(), failedFiles.size()));
+    }
+}
@@ -0,0 +1,230 @@
+package uk.ac.ebi.pride.archive.pipeline.services.molecules;
+
+import com.mongodb.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import uk.ac.ebi.pride.archive.pipeline.metrics.PipelineMetrics;
+import uk.ac.ebi.pride.archive.pipeline.metrics.PipelineProfiler;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Buffered writer for the molecules evidences (proteins, peptides and PSMs). The evidences are collected and
+ * upserted into MongoDB as unordered bulk operations, keyed on the natural key of the evidence
+ * ({@link MoleculeEvidenceKeys}): an evidence that is already in the database is updated in the same bulk operation,
+ * so the analysis of an assay and the restore of its backup files can be run again without a round trip per
+ * document. A batch is flushed when it reaches the configured size, when the writer is closed at the end of the
+ * step and, in the background, when the flush interval has passed since the last flush.
+ *
+ * Two writers upserting the same new evidence at the same time can still fail on the unique index (duplicate key),
+ * these evidences are handed to the duplicate handler, usually the corresponding save method of
+ * {@link uk.ac.ebi.pride.mongodb.molecules.service.molecules.PrideMoleculesMongoService}.
+ *
+ * A batch that fails with any other error is dropped and the error is thrown by the flush; an error of a background
+ * flush is thrown by the next call to {@link #write} or {@link #close()}.
+ *
+ * The bulk operations are recorded in the MongoDB timer of {@link PipelineMetrics#IO_TIMER}.
+ *
+ * @param <T> Evidence class
+ */
+@Slf4j
+public class BulkEvidenceWriter<T> implements Closeable {
+
+    private static final int DUPLICATE_KEY_ERROR_CODE = 11000;
+    private static final String ID_FIELD = "_id";
+
+    private static final ScheduledExecutorService FLUSH_SCHEDULER = createFlushScheduler();
+
+    private final MongoTemplate mongoTemplate;
+    private final Class<T> evidenceClass;
+    private final Function<T, Query> naturalKey;
+    private final Consumer<T> duplicateHandler;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final Timer bulkUpsertTimer;
+    private final ScheduledFuture<?> scheduledFlush;
+
+    private final List<T> buffer;
+    private long lastFlushTime;
+    private RuntimeException backgroundFailure;
+
+    private long insertedEvidences = 0;
+    private long updatedEvidences = 0;
+    private long duplicateEvidences = 0;
+    private long batches = 0;
+    private long totalBatchTime = 0;
+
+    /**
+     * Create a writer for an evidence class.
+     *
+     * @param mongoTemplate       Molecules {@link MongoTemplate}
+     * @param evidenceClass       Evidence class, used to resolve the collection
+     * @param naturalKey          Query of the natural key of an evidence, see {@link MoleculeEvidenceKeys}
+     * @param duplicateHandler    Handler for the evidences inserted by another writer at the same time
+     * @param batchSize           Maximum number of evidences in one bulk operation
+     * @param flushIntervalMillis Maximum time in milliseconds between two flushes, 0 to flush only full batches
+     */
+    public BulkEvidenceWriter(MongoTemplate mongoTemplate, Class<T> evidenceClass, Function<T, Query> naturalKey,
+                              Consumer<T> duplicateHandler, int batchSize, long flushIntervalMillis) {
+        this.mongoTemplate = mongoTemplate;
+        this.evidenceClass = evidenceClass;
+        this.naturalKey = naturalKey;
+        this.duplicateHandler = duplicateHandler;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.buffer = new ArrayList<>(this.batchSize);
+        this.bulkUpsertTimer = PipelineMetrics.ioTimer(PipelineMetrics.Dependency.MONGODB,
+                evidenceClass.getSimpleName() + ".bulkUpsert");
+        this.lastFlushTime = System.currentTimeMillis();
+        this.scheduledFlush = (flushIntervalMillis > 0)
+                ? FLUSH_SCHEDULER.scheduleWithFixedDelay(this::flushIfDue, flushIntervalMillis, flushIntervalMillis,
+                TimeUnit.MILLISECONDS)
+                : null;
+    }
+
+    private static ScheduledExecutorService createFlushScheduler() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("mongodb-bulk-flush-");
+        threadFactory.setDaemon(true);
+        return Executors.newSingleThreadScheduledExecutor(threadFactory);
+    }
+
+    /**
+     * Add an evidence to the current batch, the batch is flushed if it is full.
+     *
+     * @param evidence Evidence to be written
+     */
+    public synchronized void write(T evidence) {
+        throwBackgroundFailure();
+        buffer.add(evidence);
+        if (buffer.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Flush the current batch if the flush interval has passed since the last flush, called by the flush scheduler.
+     */
+    private synchronized void flushIfDue() {
+        if (backgroundFailure != null || System.currentTimeMillis() - lastFlushTime < flushIntervalMillis)
+            return;
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Background bulk write of " + evidenceClass.getSimpleName() + " failed", e);
+            backgroundFailure = e;
+        }
+    }
+
+    /**
+     * Write the current batch into MongoDB. The batch is cleared even if the bulk operation fails, so a failed batch
+     * is not written again by the next flush.
+     */
+    public synchronized void flush() {
+        if (buffer.isEmpty()) {
+            lastFlushTime = System.currentTimeMillis();
+            return;
+        }
+
+        long initBatch = System.currentTimeMillis();
+        int batchEvidences = buffer.size();
+        int batchDuplicates = 0;
+        try {
+            BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, evidenceClass);
+            for (T evidence : buffer)
+                bulkOperations.upsert(naturalKey.apply(evidence), toUpdate(evidence));
+            PipelineProfiler.Span span = PipelineProfiler.start(PipelineProfiler.Phase.MONGODB_BULK_INSERT,
+                    evidenceClass.getSimpleName(), null, batchEvidences);
+            long initExecute = System.nanoTime();
+            try {
+                BulkWriteResult result = bulkOperations.execute();
+                insertedEvidences += result.getUpserts().size();
+                updatedEvidences += result.getMatchedCount();
+            } catch (BulkOperationException e) {
+                insertedEvidences += e.getResult().getUpserts().size();
+                updatedEvidences += e.getResult().getMatchedCount();
+                for (BulkWriteError error : e.getErrors()) {
+                    if (error.getCode() != DUPLICATE_KEY_ERROR_CODE)
+                        throw e;
+                }
+                for (BulkWriteError error : e.getErrors()) {
+                    batchDuplicates++;
+                    duplicateHandler.accept(buffer.get(error.getIndex()));
+                }
+            } finally {
+                bulkUpsertTimer.record(System.nanoTime() - initExecute, TimeUnit.NANOSECONDS);
+                span.close();
+            }
+        } finally {
+            buffer.clear();
+            lastFlushTime = System.currentTimeMillis();
+        }
+        duplicateEvidences += batchDuplicates;
+
+        long batchTime = System.currentTimeMillis() - initBatch;
+        batches++;
+        totalBatchTime += batchTime;
+        log.info("Bulk write of " + batchEvidences + " " + evidenceClass.getSimpleName() + " in " + batchTime
+                + " ms -- duplicate keys: " + batchDuplicates);
+    }
+
+    /**
+     * Update that sets all the fields of the evidence, the id of an existing document is kept.
+     */
+    private Update toUpdate(T evidence) {
+        Document document = new Document();
+        mongoTemplate.getConverter().write(evidence, document);
+        Update update = new Update();
+        document.forEach((field, value) -> {
+            if (!ID_FIELD.equals(field))
+                update.set(field, value);
+        });
+        return update;
+    }
+
+    private void throwBackgroundFailure() {
+        if (backgroundFailure != null)
+            throw backgroundFailure;
+    }
+
+    /**
+     * Stop the background flushes, flush the last batch and report the totals of the writer.
+     */
+    @Override
+    public synchronized void close() {
+        if (scheduledFlush != null)
+            scheduledFlush.cancel(false);
+        throwBackgroundFailure();
+        flush();
+        log.info(evidenceClass.getSimpleName() + " bulk writer -- inserted: " + insertedEvidences
+                + " updated: " + updatedEvidences + " duplicate keys: " + duplicateEvidences + " batches: " + batches
+                + " average batch time: " + ((batches > 0) ? totalBatchTime / batches : 0) + " ms");
+    }
+
+    public long getInsertedEvidences() {
+        return insertedEvidences;
+    }
+
+    public long getUpdatedEvidences() {
+        return updatedEvidences;
+    }
+
+    public long getDuplicateEvidences() {
+        return duplicateEvidences;
+    }
+}
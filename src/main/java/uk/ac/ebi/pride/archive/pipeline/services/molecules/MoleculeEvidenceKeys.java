@@ -0,0 +1,34 @@
+package uk.ac.ebi.pride.archive.pipeline.services.molecules;
+
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import uk.ac.ebi.pride.mongodb.molecules.model.peptide.PrideMongoPeptideEvidence;
+import uk.ac.ebi.pride.mongodb.molecules.model.protein.PrideMongoProteinEvidence;
+import uk.ac.ebi.pride.mongodb.molecules.model.psm.PrideMongoPsmSummaryEvidence;
+
+/**
+ * Natural keys of the molecules evidences, the properties used by the save methods of
+ * {@link uk.ac.ebi.pride.mongodb.molecules.service.molecules.PrideMoleculesMongoService} to find an existing evidence.
+ * The queries use the property names of the evidence classes, they are mapped to the document fields by the bulk
+ * operations of the class.
+ */
+public final class MoleculeEvidenceKeys {
+
+    private MoleculeEvidenceKeys() {
+    }
+
+    public static Query proteinEvidence(PrideMongoProteinEvidence evidence) {
+        return Query.query(Criteria.where("reportedAccession").is(evidence.getReportedAccession())
+                .and("assayAccession").is(evidence.getAssayAccession()));
+    }
+
+    public static Query peptideEvidence(PrideMongoPeptideEvidence evidence) {
+        return Query.query(Criteria.where("peptideAccession").is(evidence.getPeptideAccession())
+                .and("proteinAccession").is(evidence.getProteinAccession())
+                .and("assayAccession").is(evidence.getAssayAccession()));
+    }
+
+    public static Query psmSummaryEvidence(PrideMongoPsmSummaryEvidence evidence) {
+        return Query.query(Criteria.where("usi").is(evidence.getUsi()));
+    }
+}
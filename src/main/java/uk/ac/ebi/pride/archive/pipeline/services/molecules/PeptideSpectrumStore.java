@@ -0,0 +1,209 @@
+package uk.ac.ebi.pride.archive.pipeline.services.molecules;
+
+import uk.ac.ebi.pride.archive.dataprovider.data.peptide.PeptideSpectrumOverview;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * PSM overviews of the reported peptides ({@link PeptideSpectrumOverview}: charge, precursor m/z and USI), spilled to
+ * a temporary file by the chunk-oriented analysis, so the overviews of the whole assay are not kept in memory until
+ * the peptide evidences are built.
+ *
+ * The overviews are appended in the order of the PSMs. The PSMs of a peptide are processed one after the other, so
+ * the overviews of a peptide are a contiguous segment of the file; only the segments are indexed in memory, in
+ * primitive arrays (about 60 bytes per peptide). A peptide whose PSMs are not contiguous has several segments,
+ * they are read in order.
+ *
+ * This class is not thread safe: the overviews are added by the writer of the PSM chunks and read by the processor
+ * of the protein chunks, on the step thread.
+ */
+public class PeptideSpectrumStore implements Closeable {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int NO_SEGMENT = -1;
+
+    private final File file;
+    private final DataOutputStream out;
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+    private final DataOutputStream recordData = new DataOutputStream(record);
+    private RandomAccessFile in;
+    private long position;
+    private boolean flushed = true;
+
+    /* segments of the file, in write order */
+    private long[] segmentPeptides = new long[INITIAL_CAPACITY];
+    private long[] segmentOffsets = new long[INITIAL_CAPACITY];
+    private int[] segmentLengths = new int[INITIAL_CAPACITY];
+    private int[] segmentCounts = new int[INITIAL_CAPACITY];
+    private int[] nextSegments = new int[INITIAL_CAPACITY];
+    private int segments;
+
+    /* open addressing table of the peptides: first and last segment of each peptide */
+    private long[] tablePeptides = new long[INITIAL_CAPACITY * 2];
+    private int[] tableFirstSegments = newTable(INITIAL_CAPACITY * 2);
+    private int[] tableLastSegments = new int[INITIAL_CAPACITY * 2];
+    private int peptides;
+
+    /**
+     * @param file temporary file, replaced if it exists and deleted by {@link #close()}
+     */
+    public PeptideSpectrumStore(File file) throws IOException {
+        this.file = file;
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, false)));
+    }
+
+    /**
+     * Append the overview of a PSM of a peptide.
+     */
+    public void add(long peptideId, int charge, double precursorMz, String usi) throws IOException {
+        if (segments == 0 || segmentPeptides[segments - 1] != peptideId)
+            openSegment(peptideId);
+        record.reset();
+        recordData.writeInt(charge);
+        recordData.writeDouble(precursorMz);
+        recordData.writeUTF(usi);
+        record.writeTo(out);
+        position += record.size();
+        segmentLengths[segments - 1] += record.size();
+        segmentCounts[segments - 1]++;
+        flushed = false;
+    }
+
+    /**
+     * @return overviews of the PSMs of a peptide in the order they were added, null if the peptide has no PSM
+     */
+    public List<PeptideSpectrumOverview> getOverviews(long peptideId) throws IOException {
+        List<PeptideSpectrumOverview> overviews = new ArrayList<>();
+        if (!read(peptideId, (charge, precursorMz, usi) ->
+                overviews.add(new PeptideSpectrumOverview(charge, precursorMz, usi))))
+            return null;
+        return overviews;
+    }
+
+    /**
+     * Read the overviews of the PSMs of a peptide in the order they were added.
+     *
+     * @return false if the peptide has no PSM
+     */
+    boolean read(long peptideId, OverviewConsumer consumer) throws IOException {
+        int slot = findSlot(peptideId);
+        if (tableFirstSegments[slot] == NO_SEGMENT)
+            return false;
+        if (!flushed) {
+            out.flush();
+            flushed = true;
+        }
+        if (in == null)
+            in = new RandomAccessFile(file, "r");
+        for (int segment = tableFirstSegments[slot]; segment != NO_SEGMENT; segment = nextSegments[segment]) {
+            byte[] bytes = new byte[segmentLengths[segment]];
+            in.seek(segmentOffsets[segment]);
+            in.readFully(bytes);
+            DataInputStream data = new DataInputStream(new ByteArrayInputStream(bytes));
+            for (int i = 0; i < segmentCounts[segment]; i++)
+                consumer.accept(data.readInt(), data.readDouble(), data.readUTF());
+        }
+        return true;
+    }
+
+    /**
+     * @return number of peptides with PSMs
+     */
+    public int getPeptides() {
+        return peptides;
+    }
+
+    private void openSegment(long peptideId) {
+        if (segments == segmentPeptides.length) {
+            int capacity = segments * 2;
+            segmentPeptides = Arrays.copyOf(segmentPeptides, capacity);
+            segmentOffsets = Arrays.copyOf(segmentOffsets, capacity);
+            segmentLengths = Arrays.copyOf(segmentLengths, capacity);
+            segmentCounts = Arrays.copyOf(segmentCounts, capacity);
+            nextSegments = Arrays.copyOf(nextSegments, capacity);
+        }
+        int segment = segments++;
+        segmentPeptides[segment] = peptideId;
+        segmentOffsets[segment] = position;
+        nextSegments[segment] = NO_SEGMENT;
+
+        int slot = findSlot(peptideId);
+        if (tableFirstSegments[slot] == NO_SEGMENT) {
+            tablePeptides[slot] = peptideId;
+            tableFirstSegments[slot] = segment;
+            tableLastSegments[slot] = segment;
+            if (++peptides * 2 > tablePeptides.length)
+                growTable();
+        } else {
+            nextSegments[tableLastSegments[slot]] = segment;
+            tableLastSegments[slot] = segment;
+        }
+    }
+
+    /**
+     * @return slot of the peptide in the table, or the empty slot where it would be inserted
+     */
+    private int findSlot(long peptideId) {
+        int mask = tablePeptides.length - 1;
+        int slot = Long.hashCode(peptideId * 0x9E3779B97F4A7C15L) & mask;
+        while (tableFirstSegments[slot] != NO_SEGMENT && tablePeptides[slot] != peptideId)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private void growTable() {
+        long[] oldPeptides = tablePeptides;
+        int[] oldFirstSegments = tableFirstSegments;
+        int[] oldLastSegments = tableLastSegments;
+        tablePeptides = new long[oldPeptides.length * 2];
+        tableFirstSegments = newTable(oldPeptides.length * 2);
+        tableLastSegments = new int[oldPeptides.length * 2];
+        for (int i = 0; i < oldPeptides.length; i++) {
+            if (oldFirstSegments[i] == NO_SEGMENT)
+                continue;
+            int slot = findSlot(oldPeptides[i]);
+            tablePeptides[slot] = oldPeptides[i];
+            tableFirstSegments[slot] = oldFirstSegments[i];
+            tableLastSegments[slot] = oldLastSegments[i];
+        }
+    }
+
+    private static int[] newTable(int capacity) {
+        int[] table = new int[capacity];
+        Arrays.fill(table, NO_SEGMENT);
+        return table;
+    }
+
+    /**
+     * Close and delete the file.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            out.close();
+            if (in != null)
+                in.close();
+        } finally {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    @FunctionalInterface
+    interface OverviewConsumer {
+
+        void accept(int charge, double precursorMz, String usi);
+    }
+}
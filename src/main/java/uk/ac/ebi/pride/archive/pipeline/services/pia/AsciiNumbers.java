@@ -0,0 +1,119 @@
+package uk.ac.ebi.pride.archive.pipeline.services.pia;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parsing of the numbers written as ASCII text in the spectrum files, directly from the bytes of the file.
+ */
+final class AsciiNumbers {
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    private AsciiNumbers() {
+    }
+
+    /**
+     * Parse a decimal number (sign, digits, decimal point and exponent) from ASCII bytes. The numbers with up to
+     * 18 significant digits and a small exponent are computed exactly from the digits, which covers the values written
+     * in peak lists; the others are parsed by {@link Double#parseDouble(String)}.
+     *
+     * @return the number, NaN if the bytes are not a number
+     */
+    static double parseDouble(ByteBuffer bytes, int start, int end) {
+        if (start >= end)
+            return Double.NaN;
+        int i = start;
+        boolean negative = false;
+        byte value = bytes.get(i);
+        if (value == '-' || value == '+') {
+            negative = value == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int significantDigits = 0;
+        int exponent = 0;
+        boolean digits = false;
+        boolean point = false;
+        for (; i < end; i++) {
+            value = bytes.get(i);
+            if (value >= '0' && value <= '9') {
+                digits = true;
+                if (significantDigits == 18) {
+                    // digits beyond the precision of the mantissa, the exact parser decides the rounding
+                    return parseSlow(bytes, start, end);
+                }
+                mantissa = mantissa * 10 + (value - '0');
+                if (mantissa > 0)
+                    significantDigits++;
+                if (point)
+                    exponent--;
+            } else if (value == '.' && !point) {
+                point = true;
+            } else {
+                break;
+            }
+        }
+        if (!digits)
+            return Double.NaN;
+        if (i < end) {
+            if (value != 'e' && value != 'E')
+                return Double.NaN;
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (bytes.get(i) == '-' || bytes.get(i) == '+')) {
+                negativeExponent = bytes.get(i) == '-';
+                i++;
+            }
+            int exponentValue = 0;
+            boolean exponentDigits = false;
+            for (; i < end; i++) {
+                value = bytes.get(i);
+                if (value < '0' || value > '9')
+                    return Double.NaN;
+                exponentDigits = true;
+                if (exponentValue < 10000)
+                    exponentValue = exponentValue * 10 + (value - '0');
+            }
+            if (!exponentDigits)
+                return Double.NaN;
+            exponent += negativeExponent ? -exponentValue : exponentValue;
+        }
+
+        double result;
+        if (mantissa == 0) {
+            result = 0;
+        } else if (mantissa < (1L << 53) && exponent >= -22 && exponent <= 22) {
+            // both values are exact doubles, so a single multiplication or division is correctly rounded
+            result = (exponent >= 0) ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+        } else {
+            return parseSlow(bytes, start, end);
+        }
+        return negative ? -result : result;
+    }
+
+    private static double parseSlow(ByteBuffer bytes, int start, int end) {
+        byte[] number = new byte[end - start];
+        for (int i = 0; i < number.length; i++)
+            number[i] = bytes.get(start + i);
+        try {
+            return Double.parseDouble(new String(number, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Parse a decimal integer from ASCII bytes.
+     *
+     * @return the number, null if the bytes are not an integer
+     */
+    static Integer parseInt(ByteBuffer bytes, int start, int end) {
+        double value = parseDouble(bytes, start, end);
+        if (Double.isNaN(value) || value != Math.rint(value) || Math.abs(value) > Integer.MAX_VALUE)
+            return null;
+        return (int) value;
+    }
+}
@@ -0,0 +1,318 @@
+package uk.ac.ebi.pride.archive.pipeline.services.pia;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Random access to the uncompressed bytes of a block gzip (BGZF) file, the gzip variant written by bgzip and htslib.
+ * A BGZF file is a series of gzip members of at most 64 KB that store their compressed size in the BC extra field, so
+ * the blocks can be indexed by reading their headers and a region of the file is read by inflating only the blocks
+ * that contain it. The other gzip files can only be read sequentially, see {@link #isBlockGzip(File)}.
+ *
+ * Indexing the blocks reads the header of every block, so the block index can be stored in a file
+ * ({@code <file>.psbi}, next to the {@link SpectrumOffsetIndex} of the file) and reused while the size and the
+ * modification time of the file don't change. Layout of the index file (big endian): magic, version, file size, file
+ * modification time, number of blocks and the compressed and uncompressed offsets of each block and of the end of the
+ * file.
+ *
+ * The reader is not thread safe.
+ */
+@Slf4j
+class BlockGzipReader implements SpectrumByteSource {
+
+    static final String EXTENSION = ".psbi";
+    static final int MAGIC = 0x50534249;
+    static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 12;
+    private static final int TRAILER_SIZE = 8;
+    private static final int MAX_BLOCK_SIZE = 65536;
+
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+
+    /**
+     * Compressed offset and uncompressed offset of the start of each block; the last entries are the sizes of the
+     * file.
+     */
+    private final long[] compressedOffsets;
+    private final long[] uncompressedOffsets;
+    private final int blocks;
+
+    private final Inflater inflater = new Inflater(true);
+    private final ByteBuffer compressedBlock = ByteBuffer.allocate(MAX_BLOCK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final byte[] uncompressedBlock = new byte[MAX_BLOCK_SIZE];
+    private int currentBlock = -1;
+    private int currentBlockSize;
+    private byte[] region = new byte[MAX_BLOCK_SIZE];
+
+    /**
+     * Open a block gzip file and index its blocks.
+     *
+     * @param file block gzip file
+     * @throws IOException if the file is not a block gzip file or it can't be read
+     */
+    BlockGzipReader(File file) throws IOException {
+        this(file, null);
+    }
+
+    /**
+     * Open a block gzip file with a stored block index. The blocks are indexed again, and the index stored, if the
+     * index file doesn't exist or it is not valid for the file; if the index can't be stored the index built in memory
+     * is used.
+     *
+     * @param file      block gzip file
+     * @param indexFile file of the block index, null to index the blocks without storing the index
+     * @throws IOException if the file is not a block gzip file or it can't be read
+     */
+    BlockGzipReader(File file, File indexFile) throws IOException {
+        this.randomAccessFile = new RandomAccessFile(file, "r");
+        this.channel = randomAccessFile.getChannel();
+        try {
+            long size = channel.size();
+            long lastModified = file.lastModified();
+            long[][] stored = indexFile != null && indexFile.isFile()
+                    ? readIndex(indexFile, size, lastModified) : null;
+            if (stored != null) {
+                this.compressedOffsets = stored[0];
+                this.uncompressedOffsets = stored[1];
+                this.blocks = stored[0].length - 1;
+                return;
+            }
+            long[] compressed = new long[1024];
+            long[] uncompressed = new long[1024];
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer trailer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            int count = 0;
+            long compressedOffset = 0;
+            long uncompressedOffset = 0;
+            while (compressedOffset < size) {
+                int blockSize = readBlockSize(channel, compressedOffset, header);
+                if (blockSize < 0)
+                    throw new IOException("Not a block gzip file -- " + file);
+                trailer.clear();
+                readFully(channel, trailer, compressedOffset + blockSize - 4);
+                if (count + 1 == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                    uncompressed = Arrays.copyOf(uncompressed, uncompressed.length * 2);
+                }
+                compressed[count] = compressedOffset;
+                uncompressed[count] = uncompressedOffset;
+                count++;
+                compressedOffset += blockSize;
+                uncompressedOffset += trailer.getInt(0) & 0xffffffffL;
+            }
+            compressed[count] = compressedOffset;
+            uncompressed[count] = uncompressedOffset;
+            this.compressedOffsets = compressed;
+            this.uncompressedOffsets = uncompressed;
+            this.blocks = count;
+            if (indexFile != null)
+                storeIndex(indexFile, size, lastModified);
+        } catch (IOException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Offsets of a stored block index, compressed and uncompressed.
+     *
+     * @return offsets, null if the index is not valid for the file
+     */
+    private static long[][] readIndex(File indexFile, long fileSize, long lastModified) {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION)
+                throw new IOException("Invalid block gzip index");
+            if (input.readLong() != fileSize || input.readLong() != lastModified) {
+                log.info("Block gzip index out of date -- " + indexFile);
+                return null;
+            }
+            int count = input.readInt();
+            if (count < 0 || indexFile.length() != 4 + 4 + 8 + 8 + 4 + (count + 1) * 16L)
+                throw new IOException("Truncated block gzip index");
+            long[] compressed = new long[count + 1];
+            long[] uncompressed = new long[count + 1];
+            for (int i = 0; i <= count; i++) {
+                compressed[i] = input.readLong();
+                uncompressed[i] = input.readLong();
+            }
+            if (compressed[count] != fileSize)
+                throw new IOException("Block gzip index of another file");
+            return new long[][]{compressed, uncompressed};
+        } catch (IOException e) {
+            log.warn("Invalid block gzip index -- " + indexFile + " " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void storeIndex(File indexFile, long fileSize, long lastModified) {
+        try {
+            File temporary = File.createTempFile(indexFile.getName(), ".tmp", indexFile.getAbsoluteFile().getParentFile());
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeLong(fileSize);
+                output.writeLong(lastModified);
+                output.writeInt(blocks);
+                for (int i = 0; i <= blocks; i++) {
+                    output.writeLong(compressedOffsets[i]);
+                    output.writeLong(uncompressedOffsets[i]);
+                }
+            } catch (IOException e) {
+                Files.deleteIfExists(temporary.toPath());
+                throw e;
+            }
+            Files.move(temporary.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("The block gzip index can't be stored -- " + indexFile + " " + e.getMessage());
+        }
+    }
+
+    /**
+     * Whether a file is a block gzip file, only the header of the first block is read.
+     */
+    static boolean isBlockGzip(File file) {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            return readBlockSize(randomAccessFile.getChannel(), 0, header) > 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public ByteBuffer read(long offset, int length) throws IOException {
+        if (offset < 0 || offset + length > uncompressedOffsets[blocks])
+            throw new IOException("Region out of the file: " + offset + "+" + length + " > " + uncompressedOffsets[blocks]);
+        if (region.length < length)
+            region = new byte[Math.max(length, region.length * 2)];
+        int block = findBlock(offset);
+        int copied = 0;
+        while (copied < length) {
+            inflateBlock(block);
+            int start = (int) (offset + copied - uncompressedOffsets[block]);
+            int bytes = Math.min(currentBlockSize - start, length - copied);
+            System.arraycopy(uncompressedBlock, start, region, copied, bytes);
+            copied += bytes;
+            block++;
+        }
+        return ByteBuffer.wrap(region, 0, length);
+    }
+
+    /**
+     * Uncompressed size of the file.
+     */
+    long getUncompressedSize() {
+        return uncompressedOffsets[blocks];
+    }
+
+    int getBlocks() {
+        return blocks;
+    }
+
+    @Override
+    public long getHeapSize() {
+        return (long) compressedOffsets.length * 16 + 2 * MAX_BLOCK_SIZE + region.length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        randomAccessFile.close();
+    }
+
+    /**
+     * Last block that starts at or before an uncompressed offset.
+     */
+    private int findBlock(long offset) {
+        int position = Arrays.binarySearch(uncompressedOffsets, 0, blocks, offset);
+        if (position < 0)
+            return -position - 2;
+        // empty blocks share the offset of the next block
+        while (position + 1 < blocks && uncompressedOffsets[position + 1] == offset)
+            position++;
+        return position;
+    }
+
+    private void inflateBlock(int block) throws IOException {
+        if (block == currentBlock)
+            return;
+        currentBlock = -1;
+        int blockSize = (int) (compressedOffsets[block + 1] - compressedOffsets[block]);
+        compressedBlock.clear();
+        compressedBlock.limit(blockSize);
+        readFully(channel, compressedBlock, compressedOffsets[block]);
+        int extraLength = compressedBlock.getShort(10) & 0xffff;
+        int dataStart = HEADER_SIZE + extraLength;
+        inflater.reset();
+        inflater.setInput(compressedBlock.array(), dataStart, blockSize - dataStart - TRAILER_SIZE);
+        try {
+            int size = 0;
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(uncompressedBlock, size, uncompressedBlock.length - size);
+                if (inflated == 0 && (inflater.needsInput() || size == uncompressedBlock.length))
+                    throw new IOException("Corrupted block gzip block at " + compressedOffsets[block]);
+                size += inflated;
+            }
+            currentBlock = block;
+            currentBlockSize = size;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted block gzip block at " + compressedOffsets[block] + " -- " + e.getMessage());
+        }
+    }
+
+    /**
+     * Total size of the block that starts at an offset, from the BC extra field of its header.
+     *
+     * @return size of the block, -1 if the header is not a BGZF header
+     */
+    private static int readBlockSize(FileChannel channel, long offset, ByteBuffer header) throws IOException {
+        header.clear();
+        readFully(channel, header, offset);
+        if ((header.get(0) & 0xff) != 0x1f || (header.get(1) & 0xff) != 0x8b || header.get(2) != 8
+                || (header.get(3) & 4) == 0)
+            return -1;
+        int extraLength = header.getShort(10) & 0xffff;
+        ByteBuffer extra = ByteBuffer.allocate(extraLength).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, extra, offset + HEADER_SIZE);
+        int position = 0;
+        while (position + 4 <= extraLength) {
+            int subfieldLength = extra.getShort(position + 2) & 0xffff;
+            if (extra.get(position) == 'B' && extra.get(position + 1) == 'C' && subfieldLength == 2
+                    && position + 6 <= extraLength)
+                return (extra.getShort(position + 4) & 0xffff) + 1;
+            position += 4 + subfieldLength;
+        }
+        return -1;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                throw new EOFException("Unexpected end of the block gzip file at " + position);
+            position += read;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package uk.ac.ebi.pride.archive.pipeline.services.pia;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Local cache of the decompressed copies of the submitted files. The pipeline refers to the files by their
+ * uncompressed path ({@link uk.ac.ebi.pride.archive.pipeline.utility.SubmissionPipelineConstants#returnUnCompressPath});
+ * when only the {@code .gz} or {@code .zip} file exists, it is decompressed into the cache directory and the cached
+ * copy is used instead. The files of an assay can be decompressed in the background with {@link #prefetch(String)}
+ * while the result file is being compiled.
+ *
+ * The cached files are named by a hash of the path, the size and the modification time of the compressed file, so
+ * a new version of the file is decompressed again. When the total size of the cache goes over the limit, the least
+ * recently used files are removed, except the files pinned by {@link #acquire(String)} until they are released and
+ * the ones used in the last minutes, which may still be open by another JVM. The files are written under a temporary
+ * name and moved into place, so different jobs can share the same directory.
+ */
+@Slf4j
+public class DecompressionCache implements AutoCloseable {
+
+    static final String[] COMPRESSED_EXTENSIONS = {".gz", ".zip"};
+
+    private static final String TEMP_FILE_EXTENSION = ".tmp";
+
+    /**
+     * Files used in this period are not evicted, they may be open by a reader or a compiler of another JVM.
+     */
+    private static final long MIN_EVICTION_AGE = TimeUnit.MINUTES.toMillis(10);
+
+    private final File directory;
+    private final long maxSizeBytes;
+    private final ExecutorService executor;
+
+    /**
+     * Decompressions started and not yet collected by {@link #resolve(String)}, by cached file path.
+     */
+    private final Map<String, Future<File>> decompressions = new ConcurrentHashMap<>();
+
+    /**
+     * Number of users of the pinned files, by cached file. Guarded by the cache.
+     */
+    private final Map<File, Integer> pins = new HashMap<>();
+
+    /**
+     * Create a cache.
+     *
+     * @param directory    directory of the cache, created if it doesn't exist
+     * @param maxSizeBytes maximum size of the cache in bytes
+     * @param threads      number of files decompressed at the same time
+     */
+    public DecompressionCache(File directory, long maxSizeBytes, int threads) throws IOException {
+        this.directory = directory;
+        this.maxSizeBytes = maxSizeBytes;
+        Files.createDirectories(directory.toPath());
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("decompression-");
+        threadFactory.setDaemon(true);
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), threadFactory);
+    }
+
+    /**
+     * Compressed version of a file that doesn't exist uncompressed.
+     *
+     * @param filePath uncompressed path of the file
+     * @return the {@code .gz} or {@code .zip} file, null if the file exists or there is no compressed version
+     */
+    public static File findCompressed(String filePath) {
+        if (new File(filePath).isFile())
+            return null;
+        for (String extension : COMPRESSED_EXTENSIONS) {
+            File compressed = new File(filePath + extension);
+            if (compressed.isFile())
+                return compressed;
+        }
+        return null;
+    }
+
+    /**
+     * Readable uncompressed file of a path: the file itself if it exists, otherwise the decompressed copy of its
+     * compressed version, which is decompressed if it is not in the cache. If a decompression of the file is already
+     * running the method waits for it.
+     *
+     * @param filePath uncompressed path of the file
+     * @return file to read, the original file if there is no compressed version
+     * @throws IOException if the file can't be decompressed
+     */
+    public File resolve(String filePath) throws IOException {
+        File compressed = findCompressed(filePath);
+        if (compressed == null)
+            return new File(filePath);
+        String name = new File(filePath).getName();
+        File cachedFile = getCachedFile(compressed, name);
+        for (int attempt = 0; attempt < 2; attempt++) {
+            if (cachedFile.isFile()) {
+                // the decompressions started by prefetch are only collected here
+                Future<File> prefetched = decompressions.get(cachedFile.getPath());
+                if (prefetched != null && prefetched.isDone())
+                    decompressions.remove(cachedFile.getPath(), prefetched);
+                touch(cachedFile);
+                return cachedFile;
+            }
+            Future<File> decompression = submit(compressed, cachedFile, name);
+            try {
+                File file = decompression.get();
+                if (file.isFile())
+                    return file;
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException)
+                    throw (IOException) e.getCause();
+                throw new IOException("Error decompressing " + compressed + " -- " + e.getCause(), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while decompressing " + compressed);
+            } finally {
+                decompressions.remove(cachedFile.getPath(), decompression);
+            }
+        }
+        throw new IOException("The decompressed file has been removed from the cache -- " + cachedFile);
+    }
+
+    /**
+     * Readable uncompressed file of a path, as {@link #resolve(String)}, pinned in the cache so it is not evicted while
+     * it is open. Every call must be followed by a {@link #release(File)} of the returned file.
+     *
+     * @param filePath uncompressed path of the file
+     * @return file to read, the original file if there is no compressed version
+     * @throws IOException if the file can't be decompressed
+     */
+    public File acquire(String filePath) throws IOException {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            File file = resolve(filePath);
+            if (!directory.equals(file.getParentFile()))
+                return file;
+            synchronized (this) {
+                // the file can be evicted between the resolution and the pin
+                if (file.isFile()) {
+                    pins.merge(file, 1, Integer::sum);
+                    touch(file);
+                    return file;
+                }
+            }
+        }
+        throw new IOException("The decompressed file has been removed from the cache -- " + filePath);
+    }
+
+    /**
+     * Release a file returned by {@link #acquire(String)}, it can be evicted when it has no other user.
+     *
+     * @param file file returned by {@link #acquire(String)}
+     */
+    public synchronized void release(File file) {
+        Integer users = pins.get(file);
+        if (users == null)
+            return;
+        if (users > 1)
+            pins.put(file, users - 1);
+        else
+            pins.remove(file);
+        touch(file);
+    }
+
+    /**
+     * Start the decompression of a file in the background if it only exists compressed and it is not in the cache.
+     *
+     * @param filePath uncompressed path of the file
+     */
+    public void prefetch(String filePath) {
+        File compressed = findCompressed(filePath);
+        if (compressed == null)
+            return;
+        String name = new File(filePath).getName();
+        File cachedFile = getCachedFile(compressed, name);
+        if (!cachedFile.isFile())
+            submit(compressed, cachedFile, name);
+    }
+
+    /**
+     * Stop the decompressions, the cached files are kept.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    File getCachedFile(File compressed, String uncompressedName) {
+        String key = compressed.getAbsolutePath() + ":" + compressed.length() + ":" + compressed.lastModified();
+        return new File(directory, DigestUtils.sha256Hex(key).substring(0, 16) + "-" + uncompressedName);
+    }
+
+    private Future<File> submit(File compressed, File cachedFile, String name) {
+        return decompressions.computeIfAbsent(cachedFile.getPath(),
+                path -> executor.submit(() -> decompress(compressed, cachedFile, name)));
+    }
+
+    private File decompress(File compressed, File cachedFile, String name) throws IOException {
+        if (cachedFile.isFile())
+            return cachedFile;
+        long initDecompression = System.currentTimeMillis();
+        File tempFile = File.createTempFile(cachedFile.getName(), TEMP_FILE_EXTENSION, directory);
+        try {
+            if (compressed.getName().toLowerCase(Locale.ROOT).endsWith(".zip")) {
+                try (ZipFile zipFile = new ZipFile(compressed)) {
+                    ZipEntry entry = findEntry(zipFile, name);
+                    if (entry == null)
+                        throw new IOException("Empty zip file -- " + compressed);
+                    try (InputStream inputStream = zipFile.getInputStream(entry)) {
+                        copy(inputStream, tempFile);
+                    }
+                }
+            } else {
+                try (InputStream inputStream = new GZIPInputStream(new FileInputStream(compressed), 65536)) {
+                    copy(inputStream, tempFile);
+                }
+            }
+            try {
+                Files.move(tempFile.toPath(), cachedFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile.toPath(), cachedFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+        log.info("File decompressed in " + (System.currentTimeMillis() - initDecompression) + " ms -- " + compressed
+                + " (" + cachedFile.length() / 1024 / 1024 + " MB)");
+        evict(cachedFile);
+        return cachedFile;
+    }
+
+    /**
+     * Entry of a zip file with the name of the uncompressed file, or the first file if there is none.
+     */
+    private static ZipEntry findEntry(ZipFile zipFile, String name) {
+        ZipEntry first = null;
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            if (entry.isDirectory())
+                continue;
+            if (name.equals(new File(entry.getName()).getName()))
+                return entry;
+            if (first == null)
+                first = entry;
+        }
+        return first;
+    }
+
+    private static void copy(InputStream inputStream, File file) throws IOException {
+        byte[] buffer = new byte[1 << 20];
+        try (OutputStream outputStream = new FileOutputStream(file)) {
+            int read;
+            while ((read = inputStream.read(buffer)) > 0)
+                outputStream.write(buffer, 0, read);
+        }
+    }
+
+    private static void touch(File file) {
+        if (!file.setLastModified(System.currentTimeMillis()))
+            log.warn("The access time of the decompressed file can't be updated -- " + file);
+    }
+
+    /**
+     * Remove the least recently used files until the cache fits in its maximum size. The file that has just been
+     * added, the pinned files and the files used recently are never removed. The finished decompressions that have
+     * not been collected by {@link #resolve(String)}, prefetched files that were never read or failed decompressions,
+     * are removed as well.
+     */
+    private synchronized void evict(File keep) {
+        decompressions.values().removeIf(Future::isDone);
+
+        File[] files = directory.listFiles((dir, name) -> !name.endsWith(TEMP_FILE_EXTENSION));
+        if (files == null)
+            return;
+
+        long totalSize = Arrays.stream(files).mapToLong(File::length).sum();
+        if (totalSize <= maxSizeBytes)
+            return;
+
+        long minLastModified = System.currentTimeMillis() - MIN_EVICTION_AGE;
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (totalSize <= maxSizeBytes || file.lastModified() > minLastModified)
+                break;
+            if (file.equals(keep) || pins.containsKey(file))
+                continue;
+            long length = file.length();
+            if (file.delete()) {
+                totalSize -= length;
+                log.info("Decompressed file removed from the cache -- " + file.getName());
+            }
+        }
+    }
+}
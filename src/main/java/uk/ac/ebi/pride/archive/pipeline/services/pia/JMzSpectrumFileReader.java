@@ -0,0 +1,56 @@
+package uk.ac.ebi.pride.archive.pipeline.services.pia;
+
+import lombok.extern.slf4j.Slf4j;
+import uk.ac.ebi.pride.tools.jmzreader.JMzReader;
+import uk.ac.ebi.pride.tools.jmzreader.JMzReaderException;
+import uk.ac.ebi.pride.tools.jmzreader.model.Spectrum;
+
+/**
+ * {@link SpectrumFileReader} of a jmzReader reader, which keeps the index of the file in the heap.
+ */
+@Slf4j
+public class JMzSpectrumFileReader implements SpectrumFileReader {
+
+    /**
+     * Estimate of the memory used by the index of each spectrum of a reader (id, offsets and map entry).
+     */
+    static final long INDEX_BYTES_PER_SPECTRUM = 200;
+
+    private final String filePath;
+    private final JMzReader reader;
+
+    public JMzSpectrumFileReader(String filePath, JMzReader reader) {
+        this.filePath = filePath;
+        this.reader = reader;
+    }
+
+    @Override
+    public Spectrum getSpectrumById(String id) throws JMzReaderException {
+        return reader.getSpectrumById(id);
+    }
+
+    @Override
+    public int getSpectraCount() {
+        return reader.getSpectraCount();
+    }
+
+    @Override
+    public long getIndexMemory() {
+        return (long) reader.getSpectraCount() * INDEX_BYTES_PER_SPECTRUM;
+    }
+
+    public JMzReader getReader() {
+        return reader;
+    }
+
+    @Override
+    public void close() {
+        if (reader instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) reader).close();
+            } catch (Exception e) {
+                log.warn("The spectrum file can't be closed -- " + filePath + " " + e.getMessage());
+            }
+        }
+    }
+}
@@ -11,19 +11,10 @@ import com.amazonaws.services.s3.model.S3ObjectInputStream;
 import lombok.extern.slf4j.Slf4j;
 import uk.ac.ebi.jmzidml.model.mzidml.SpectraData;
 import uk.ac.ebi.pride.archive.pipeline.utility.SubmissionPipelineConstants;
-import uk.ac.ebi.pride.tools.jmzreader.JMzReader;
 import uk.ac.ebi.pride.tools.jmzreader.JMzReaderException;
 import uk.ac.ebi.pride.tools.jmzreader.model.Spectrum;
-import uk.ac.ebi.pride.tools.mgf_parser.MgfFile;
-import uk.ac.ebi.pride.tools.mzdata_wrapper.MzMlWrapper;
-import uk.ac.ebi.pride.tools.mzxml_parser.MzXMLFile;
-import uk.ac.ebi.pride.tools.mzxml_parser.MzXMLParsingException;
-import uk.ac.ebi.pride.tools.pkl_parser.PklFile;
-import uk.ac.ebi.pride.tools.pride_wrapper.PRIDEXmlWrapper;
 import uk.ac.ebi.pride.utilities.util.Triple;
 
-import java.io.File;
-import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -32,9 +23,11 @@ import java.util.Map;
 public class JmzReaderSpectrumService {
 
     /**
-     * Map of all readers containing the spectra
+     * Type of each spectrum file of the assay, the readers are opened by the pool on the first access.
      */
-    Map<String, JMzReader> readers = new HashMap<>();
+    Map<String, SubmissionPipelineConstants.FileType> fileTypes = new HashMap<>();
+
+    private final SpectrumReaderPool readerPool;
 
     String clientRegion = "*** Client region ***";
     String bucketName = "*** Bucket name ***";
@@ -42,44 +35,53 @@ public class JmzReaderSpectrumService {
 
     AmazonS3 s3Client;
 
-    private JmzReaderSpectrumService(List<Triple<String, SpectraData, SubmissionPipelineConstants.FileType>> spectrumFileList) throws JMzReaderException, MzXMLParsingException {
-        this.readers = new HashMap<>();
+    private JmzReaderSpectrumService(List<Triple<String, SpectraData, SubmissionPipelineConstants.FileType>> spectrumFileList,
+                                     SpectrumReaderPool readerPool) {
+        this.readerPool = readerPool;
         for (Triple<String, SpectraData, SubmissionPipelineConstants.FileType> entry : spectrumFileList) {
-            String key = (String) entry.getFirst();
-            SubmissionPipelineConstants.FileType value = entry.getThird();
-            if (value == SubmissionPipelineConstants.FileType.MGF) {
-                this.readers.put(key, new MgfFile(new File(key), true));
-            }
-            if (value == SubmissionPipelineConstants.FileType.PRIDE) {
-                this.readers.put(key, new PRIDEXmlWrapper(new File(key)));
-            }
-            if( value == SubmissionPipelineConstants.FileType.MZML){
-                this.readers.put(key, new MzMlWrapper(new File(key)));
-            }
-            if( value == SubmissionPipelineConstants.FileType.PKL){
-                this.readers.put(key, new PklFile(new File(key)));
-            }
-            if( value == SubmissionPipelineConstants.FileType.MZXML){
-                this.readers.put(key, new MzXMLFile(new File(key)));
-            }
+            this.fileTypes.putIfAbsent(entry.getFirst(), entry.getThird());
         }
     }
 
     /**
-     * Return an instance that allow to read the spectra from the original file.
+     * Return an instance that allow to read the spectra from the original file. The files are opened when the
+     * first spectrum is read and the readers are kept by a pool of this instance.
      *
      * @param spectrumFileList
      * @return
-     * @throws JMzReaderException
      */
-    public static JmzReaderSpectrumService getInstance(List<Triple<String, SpectraData, SubmissionPipelineConstants.FileType>> spectrumFileList) throws JMzReaderException, MzXMLParsingException {
-        return new JmzReaderSpectrumService(spectrumFileList);
+    public static JmzReaderSpectrumService getInstance(List<Triple<String, SpectraData, SubmissionPipelineConstants.FileType>> spectrumFileList) {
+        return new JmzReaderSpectrumService(spectrumFileList, new SpectrumReaderPool(Integer.MAX_VALUE, Long.MAX_VALUE));
     }
 
+    /**
+     * Return an instance that allow to read the spectra from the original file, using the readers of a pool shared
+     * with the other assays.
+     *
+     * @param spectrumFileList spectrum files of the assay
+     * @param readerPool       pool of the spectrum readers
+     * @return JmzReaderSpectrumService
+     */
+    public static JmzReaderSpectrumService getInstance(List<Triple<String, SpectraData, SubmissionPipelineConstants.FileType>> spectrumFileList,
+                                                       SpectrumReaderPool readerPool) {
+        return new JmzReaderSpectrumService(spectrumFileList, readerPool);
+    }
+
+    /**
+     * Read a spectrum from a file. The jmzReader readers keep the file position, so the access to each reader
+     * is serialized; different files can be read at the same time by different threads.
+     *
+     * @param filePath file path of the spectrum file
+     * @param id spectrum id
+     * @return Spectrum
+     * @throws JMzReaderException
+     */
     public Spectrum getSpectrum(String filePath, String id) throws JMzReaderException {
-        JMzReader reader = readers.get(filePath);
+        SubmissionPipelineConstants.FileType fileType = fileTypes.get(filePath);
+        if (fileType == null)
+            throw new JMzReaderException("The spectrum file is not part of the assay -- " + filePath);
         try{
-            return reader.getSpectrumById(id);
+            return readerPool.read(filePath, fileType, reader -> reader.getSpectrumById(id));
         }catch (java.lang.NumberFormatException e){
             throw new JMzReaderException("Error parsing the following Accession -- " + id);
         }
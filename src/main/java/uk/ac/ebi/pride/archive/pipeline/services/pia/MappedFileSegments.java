@@ -0,0 +1,67 @@
+package uk.ac.ebi.pride.archive.pipeline.services.pia;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only memory mapping of a spectrum file in segments, so files bigger than 2 GB can be mapped. Consecutive
+ * segments overlap, so a spectrum smaller than the overlap is always inside one segment; a bigger spectrum that
+ * crosses the end of a segment is mapped on its own. The segments are mapped on the first access.
+ */
+class MappedFileSegments implements SpectrumByteSource {
+
+    static final long SEGMENT_SIZE = 1L << 30;
+    static final long SEGMENT_OVERLAP = 64L << 20;
+
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final long size;
+    private final ByteBuffer[] segments;
+
+    MappedFileSegments(File file) throws IOException {
+        this.randomAccessFile = new RandomAccessFile(file, "r");
+        this.channel = randomAccessFile.getChannel();
+        this.size = channel.size();
+        this.segments = new ByteBuffer[(int) Math.max(1, (size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+    }
+
+    /**
+     * Bytes of a region of the file, a view of the mapped segment that contains it.
+     */
+    @Override
+    public ByteBuffer read(long offset, int length) throws IOException {
+        if (offset < 0 || offset + length > size)
+            throw new IOException("Region out of the file: " + offset + "+" + length + " > " + size);
+        int segment = (int) (offset / SEGMENT_SIZE);
+        long segmentStart = segment * SEGMENT_SIZE;
+        if (offset + length > segmentStart + SEGMENT_SIZE + SEGMENT_OVERLAP)
+            return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        if (segments[segment] == null) {
+            long segmentLength = Math.min(SEGMENT_SIZE + SEGMENT_OVERLAP, size - segmentStart);
+            segments[segment] = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, segmentLength);
+        }
+        ByteBuffer bytes = segments[segment].duplicate();
+        int start = (int) (offset - segmentStart);
+        bytes.limit(start + length);
+        bytes.position(start);
+        return bytes;
+    }
+
+    @Override
+    public long getHeapSize() {
+        return 0;
+    }
+
+    /**
+     * Close the file, the mapped segments are released when they are garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        for (int i = 0; i < segments.length; i++)
+            segments[i] = null;
+        randomAccessFile.close();
+    }
+}
@@ -0,0 +1,223 @@
+package uk.ac.ebi.pride.archive.pipeline.services.pia;
+
+import io.micrometer.core.instrument.Counter;
+import lombok.extern.slf4j.Slf4j;
+import uk.ac.ebi.pride.archive.pipeline.metrics.PipelineMetrics;
+import uk.ac.ebi.pride.archive.pipeline.services.spectra.PeakArraySpectrum;
+import uk.ac.ebi.pride.tools.jmzreader.JMzReaderException;
+import uk.ac.ebi.pride.tools.jmzreader.model.Spectrum;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * MGF {@link SpectrumFileReader} that memory-maps the file and parses a spectrum directly from the mapped bytes: the
+ * spectrum is found with the {@link SpectrumOffsetIndex} of the file and the m/z and intensity values are parsed into
+ * primitive arrays, without building a {@link String} per line or a boxed peak list as {@code MgfFile} does.
+ *
+ * The spectrum ids are the ones of {@code MgfFile}: the 1-based position of the spectrum in the file; an id that is
+ * not a position is looked up as a TITLE. As with {@code MgfFile(file, true)}, the peak lines that can't be parsed
+ * are ignored.
+ *
+ * The file is mapped in segments, so files bigger than 2 GB can be read; a block gzip file is read by inflating only
+ * the blocks of the spectrum. The reader is not thread safe.
+ */
+@Slf4j
+public class MappedMgfFileReader implements SpectrumFileReader {
+
+    private static final int MS_LEVEL = 2;
+
+    private final File file;
+    private final SpectrumOffsetIndex index;
+    private final SpectrumByteSource source;
+    private final Counter bytesRead = PipelineMetrics.spectraBytesCounter("mgf");
+
+    /**
+     * Peaks of the spectrum being parsed, the spectrum gets a copy of the exact size.
+     */
+    private double[] mzBuffer = new double[1024];
+    private double[] intensityBuffer = new double[1024];
+
+    public MappedMgfFileReader(File file, SpectrumOffsetIndex index) throws IOException {
+        this(file, index, new MappedFileSegments(file));
+    }
+
+    /**
+     * Create a reader of the spectra of a file read from a {@link SpectrumByteSource}, e.g. a {@link BlockGzipReader}
+     * of a compressed file.
+     */
+    MappedMgfFileReader(File file, SpectrumOffsetIndex index, SpectrumByteSource source) {
+        this.file = file;
+        this.index = index;
+        this.source = source;
+    }
+
+    /**
+     * Read a spectrum.
+     *
+     * @param id 1-based position of the spectrum in the file or TITLE of the spectrum
+     * @return {@link PeakArraySpectrum}
+     * @throws JMzReaderException if the spectrum can't be found or read
+     */
+    @Override
+    public Spectrum getSpectrumById(String id) throws JMzReaderException {
+        int position = index.findById(id);
+        if (position < 0)
+            position = index.findByTitle(id);
+        if (position < 0)
+            throw new JMzReaderException("Spectrum not found in " + file + " -- " + id);
+        try {
+            int length = index.getLength(position);
+            ByteBuffer bytes = source.read(index.getOffset(position), length);
+            bytesRead.increment(length);
+            return parse(id, bytes);
+        } catch (IOException e) {
+            throw new JMzReaderException("Error reading the spectrum " + id + " of " + file + " -- " + e.getMessage());
+        }
+    }
+
+    @Override
+    public int getSpectraCount() {
+        return index.size();
+    }
+
+    @Override
+    public long getIndexMemory() {
+        return index.getHeapSize() + source.getHeapSize();
+    }
+
+    @Override
+    public void close() {
+        try {
+            source.close();
+            index.close();
+        } catch (IOException e) {
+            log.warn("The MGF file can't be closed -- " + file + " " + e.getMessage());
+        }
+    }
+
+    /**
+     * Parse the block of a spectrum, from BEGIN IONS to END IONS.
+     */
+    PeakArraySpectrum parse(String id, ByteBuffer bytes) {
+        Double precursorMz = null;
+        Double precursorIntensity = null;
+        Integer precursorCharge = null;
+        int peaks = 0;
+
+        int limit = bytes.limit();
+        int lineStart = bytes.position();
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && bytes.get(lineEnd) != '\n')
+                lineEnd++;
+            int start = skipBlanks(bytes, lineStart, lineEnd);
+            int end = trimEnd(bytes, start, lineEnd);
+
+            if (start < end) {
+                byte first = bytes.get(start);
+                if (isNumberStart(first)) {
+                    int mzEnd = numberEnd(bytes, start, end);
+                    int intensityStart = skipBlanks(bytes, mzEnd, end);
+                    int intensityEnd = numberEnd(bytes, intensityStart, end);
+                    double mz = AsciiNumbers.parseDouble(bytes, start, mzEnd);
+                    double intensity = (intensityStart < intensityEnd)
+                            ? AsciiNumbers.parseDouble(bytes, intensityStart, intensityEnd) : 0;
+                    if (!Double.isNaN(mz) && !Double.isNaN(intensity)) {
+                        if (peaks == mzBuffer.length) {
+                            mzBuffer = Arrays.copyOf(mzBuffer, peaks * 2);
+                            intensityBuffer = Arrays.copyOf(intensityBuffer, peaks * 2);
+                        }
+                        mzBuffer[peaks] = mz;
+                        intensityBuffer[peaks] = intensity;
+                        peaks++;
+                    }
+                } else if (startsWith(bytes, start, end, "PEPMASS=")) {
+                    int mzStart = start + 8;
+                    int mzEnd = numberEnd(bytes, mzStart, end);
+                    double mz = AsciiNumbers.parseDouble(bytes, mzStart, mzEnd);
+                    precursorMz = Double.isNaN(mz) ? null : mz;
+                    int intensityStart = skipBlanks(bytes, mzEnd, end);
+                    if (intensityStart < end) {
+                        int intensityEnd = numberEnd(bytes, intensityStart, end);
+                        double intensity = AsciiNumbers.parseDouble(bytes, intensityStart, intensityEnd);
+                        precursorIntensity = Double.isNaN(intensity) ? null : intensity;
+                    }
+                } else if (startsWith(bytes, start, end, "CHARGE=")) {
+                    precursorCharge = parseCharge(bytes, start + 7, end);
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+
+        return new PeakArraySpectrum(id, MS_LEVEL, precursorCharge, precursorMz, precursorIntensity,
+                Arrays.copyOf(mzBuffer, peaks), Arrays.copyOf(intensityBuffer, peaks), peaks);
+    }
+
+    /**
+     * First charge of a CHARGE line (2+, 3-, +2 or 2), null if there is no charge.
+     */
+    static Integer parseCharge(ByteBuffer bytes, int start, int end) {
+        start = skipBlanks(bytes, start, end);
+        int sign = 1;
+        int charge = 0;
+        boolean digits = false;
+        for (int i = start; i < end; i++) {
+            byte value = bytes.get(i);
+            if (value >= '0' && value <= '9') {
+                charge = charge * 10 + (value - '0');
+                digits = true;
+            } else if (value == '-') {
+                sign = -1;
+                if (digits)
+                    break;
+            } else if (value == '+') {
+                if (digits)
+                    break;
+            } else {
+                break;
+            }
+        }
+        return digits ? sign * charge : null;
+    }
+
+    private static boolean isNumberStart(byte value) {
+        return (value >= '0' && value <= '9') || value == '-' || value == '+' || value == '.';
+    }
+
+    private static int numberEnd(ByteBuffer bytes, int start, int end) {
+        int i = start;
+        while (i < end && !isBlank(bytes.get(i)))
+            i++;
+        return i;
+    }
+
+    private static int skipBlanks(ByteBuffer bytes, int start, int end) {
+        int i = start;
+        while (i < end && isBlank(bytes.get(i)))
+            i++;
+        return i;
+    }
+
+    private static int trimEnd(ByteBuffer bytes, int start, int end) {
+        int i = end;
+        while (i > start && isBlank(bytes.get(i - 1)))
+            i--;
+        return i;
+    }
+
+    private static boolean isBlank(byte value) {
+        return value == ' ' || value == '\t' || value == '\r';
+    }
+
+    private static boolean startsWith(ByteBuffer bytes, int start, int end, String prefix) {
+        if (end - start < prefix.length())
+            return false;
+        for (int i = 0; i < prefix.length(); i++)
+            if (bytes.get(start + i) != prefix.charAt(i))
+                return false;
+        return true;
+    }
+}
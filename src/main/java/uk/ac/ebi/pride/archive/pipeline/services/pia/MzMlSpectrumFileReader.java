@@ -0,0 +1,444 @@
+package uk.ac.ebi.pride.archive.pipeline.services.pia;
+
+import io.micrometer.core.instrument.Counter;
+import lombok.extern.slf4j.Slf4j;
+import uk.ac.ebi.pride.archive.pipeline.metrics.PipelineMetrics;
+import uk.ac.ebi.pride.archive.pipeline.services.spectra.PeakArraySpectrum;
+import uk.ac.ebi.pride.tools.jmzreader.JMzReaderException;
+import uk.ac.ebi.pride.tools.jmzreader.model.Spectrum;
+import uk.ac.ebi.pride.tools.mzdata_wrapper.MzMlWrapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * mzML {@link SpectrumFileReader} that reads a spectrum from the memory-mapped file without unmarshalling it: the
+ * {@code <spectrum>} element is found with the {@link SpectrumOffsetIndex} of the file, its tags are scanned for the
+ * ms level, the first selected ion and the binary data arrays, and the m/z and intensity arrays are decoded from
+ * base64 and zlib into reusable buffers and then into primitive arrays.
+ *
+ * The arrays of 32 and 64-bit floats, with or without zlib compression, are supported. A spectrum with other
+ * encodings (numpress, integers or referenceable param groups in the arrays) is read with the {@link MzMlWrapper} of
+ * jmzReader, which is only opened when it is needed. The spectrum ids are the id attributes of the spectra, as in
+ * {@link MzMlWrapper}. The reader is not thread safe.
+ */
+@Slf4j
+public class MzMlSpectrumFileReader implements SpectrumFileReader {
+
+    private static final String MS_LEVEL = "MS:1000511";
+    private static final String SELECTED_ION_MZ = "MS:1000744";
+    private static final String CHARGE_STATE = "MS:1000041";
+    private static final String PEAK_INTENSITY = "MS:1000042";
+    private static final String MZ_ARRAY = "MS:1000514";
+    private static final String INTENSITY_ARRAY = "MS:1000515";
+    private static final String FLOAT_32 = "MS:1000521";
+    private static final String FLOAT_64 = "MS:1000523";
+    private static final String NO_COMPRESSION = "MS:1000576";
+    private static final String ZLIB_COMPRESSION = "MS:1000574";
+
+    private static final int[] BASE64 = new int[256];
+
+    static {
+        Arrays.fill(BASE64, -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++)
+            BASE64[alphabet.charAt(i)] = i;
+    }
+
+    private final File file;
+    private final SpectrumOffsetIndex index;
+    private final SpectrumByteSource source;
+    private final Counter bytesRead = PipelineMetrics.spectraBytesCounter("mzml");
+    private final Inflater inflater = new Inflater();
+
+    /**
+     * jmzReader reader of the spectra with unsupported encodings, opened on the first one.
+     */
+    private JMzSpectrumFileReader fallbackReader;
+
+    /**
+     * Reusable buffers of the spectrum being read: base64 decoded bytes, inflated bytes and decoded arrays.
+     */
+    private byte[] decoded = new byte[16384];
+    private byte[] inflated = new byte[16384];
+    private double[] mzBuffer = new double[1024];
+    private double[] intensityBuffer = new double[1024];
+
+    public MzMlSpectrumFileReader(File file, SpectrumOffsetIndex index) throws IOException {
+        this.file = file;
+        this.index = index;
+        this.source = new MappedFileSegments(file);
+    }
+
+    /**
+     * Read a spectrum.
+     *
+     * @param id id attribute of the spectrum
+     * @return {@link PeakArraySpectrum}, or the spectrum of jmzReader if the arrays are not supported
+     * @throws JMzReaderException if the spectrum can't be found or read
+     */
+    @Override
+    public Spectrum getSpectrumById(String id) throws JMzReaderException {
+        int position = index.findById(id);
+        if (position < 0)
+            throw new JMzReaderException("Spectrum not found in " + file + " -- " + id);
+        Spectrum spectrum;
+        try {
+            int length = index.getLength(position);
+            ByteBuffer bytes = source.read(index.getOffset(position), length);
+            bytesRead.increment(length);
+            spectrum = parse(id, bytes);
+        } catch (IOException e) {
+            throw new JMzReaderException("Error reading the spectrum " + id + " of " + file + " -- " + e.getMessage());
+        }
+        if (spectrum == null)
+            spectrum = getFallbackReader().getSpectrumById(id);
+        return spectrum;
+    }
+
+    @Override
+    public int getSpectraCount() {
+        return index.size();
+    }
+
+    @Override
+    public long getIndexMemory() {
+        return index.getHeapSize() + source.getHeapSize();
+    }
+
+    @Override
+    public void close() {
+        inflater.end();
+        if (fallbackReader != null)
+            fallbackReader.close();
+        try {
+            source.close();
+            index.close();
+        } catch (IOException e) {
+            log.warn("The mzML file can't be closed -- " + file + " " + e.getMessage());
+        }
+    }
+
+    private JMzSpectrumFileReader getFallbackReader() throws JMzReaderException {
+        if (fallbackReader == null) {
+            log.info("Binary data arrays not supported by the streaming reader, opening the mzML file with jmzReader -- "
+                    + file);
+            fallbackReader = new JMzSpectrumFileReader(file.getAbsolutePath(), new MzMlWrapper(file));
+        }
+        return fallbackReader;
+    }
+
+    /**
+     * Parse a {@code <spectrum>} element.
+     *
+     * @return the spectrum, null if its binary data arrays are not supported
+     * @throws IOException if a binary data array is corrupted
+     */
+    PeakArraySpectrum parse(String id, ByteBuffer bytes) throws IOException {
+        Integer msLevel = null;
+        Double precursorMz = null;
+        Double precursorIntensity = null;
+        Integer precursorCharge = null;
+        int defaultArrayLength = -1;
+        int mzCount = -1;
+        int intensityCount = -1;
+
+        int selectedIons = 0;
+        boolean inSelectedIon = false;
+        boolean inArray = false;
+        String arrayType = null;
+        String precision = null;
+        String compression = null;
+        boolean unsupported = false;
+
+        int limit = bytes.limit();
+        int i = bytes.position();
+        while ((i = indexOf(bytes, '<', i, limit)) >= 0) {
+            int tagEnd = indexOf(bytes, '>', i, limit);
+            if (tagEnd < 0)
+                break;
+            boolean closing = bytes.get(i + 1) == '/';
+            int nameStart = closing ? i + 2 : i + 1;
+            int nameEnd = nameStart;
+            while (nameEnd < tagEnd && !isNameEnd(bytes.get(nameEnd)))
+                nameEnd++;
+
+            if (closing) {
+                if (equals(bytes, nameStart, nameEnd, "selectedIon"))
+                    inSelectedIon = false;
+                else if (equals(bytes, nameStart, nameEnd, "binaryDataArray"))
+                    inArray = false;
+            } else if (equals(bytes, nameStart, nameEnd, "cvParam")) {
+                String accession = attribute(bytes, nameEnd, tagEnd, "accession");
+                if (inArray) {
+                    if (MZ_ARRAY.equals(accession) || INTENSITY_ARRAY.equals(accession))
+                        arrayType = accession;
+                    else if (FLOAT_32.equals(accession) || FLOAT_64.equals(accession))
+                        precision = accession;
+                    else if (NO_COMPRESSION.equals(accession) || ZLIB_COMPRESSION.equals(accession))
+                        compression = accession;
+                    else if (isEncoding(accession))
+                        unsupported = true;
+                } else if (inSelectedIon) {
+                    if (SELECTED_ION_MZ.equals(accession))
+                        precursorMz = doubleAttribute(bytes, nameEnd, tagEnd);
+                    else if (PEAK_INTENSITY.equals(accession))
+                        precursorIntensity = doubleAttribute(bytes, nameEnd, tagEnd);
+                    else if (CHARGE_STATE.equals(accession))
+                        precursorCharge = intAttribute(bytes, nameEnd, tagEnd);
+                } else if (MS_LEVEL.equals(accession)) {
+                    msLevel = intAttribute(bytes, nameEnd, tagEnd);
+                }
+            } else if (equals(bytes, nameStart, nameEnd, "binary")) {
+                int contentStart = tagEnd + 1;
+                int contentEnd = (bytes.get(tagEnd - 1) == '/') ? contentStart : indexOf(bytes, '<', contentStart, limit);
+                if (contentEnd < 0)
+                    throw new IOException("Binary data array not closed");
+                if (MZ_ARRAY.equals(arrayType) || INTENSITY_ARRAY.equals(arrayType)) {
+                    if (unsupported || precision == null)
+                        return null;
+                    boolean mz = MZ_ARRAY.equals(arrayType);
+                    int count = decodeArray(bytes, contentStart, contentEnd, ZLIB_COMPRESSION.equals(compression),
+                            FLOAT_64.equals(precision), mz);
+                    if (mz)
+                        mzCount = count;
+                    else
+                        intensityCount = count;
+                }
+                tagEnd = contentEnd - 1;
+            } else if (equals(bytes, nameStart, nameEnd, "binaryDataArray")) {
+                inArray = true;
+                arrayType = null;
+                precision = null;
+                compression = null;
+                unsupported = false;
+            } else if (equals(bytes, nameStart, nameEnd, "referenceableParamGroupRef")) {
+                if (inArray)
+                    unsupported = true;
+            } else if (equals(bytes, nameStart, nameEnd, "selectedIon")) {
+                inSelectedIon = selectedIons == 0;
+                selectedIons++;
+            } else if (equals(bytes, nameStart, nameEnd, "spectrum")) {
+                Integer length = intAttribute(bytes, nameEnd, tagEnd, "defaultArrayLength");
+                defaultArrayLength = (length == null) ? -1 : length;
+            }
+            i = tagEnd + 1;
+        }
+
+        // arrays that were not recognized, e.g. described by a referenceable param group
+        if ((mzCount < 0 || intensityCount < 0) && defaultArrayLength > 0)
+            return null;
+        int peaks = Math.max(0, Math.min(mzCount, intensityCount));
+        return new PeakArraySpectrum(id, msLevel, precursorCharge, precursorMz, precursorIntensity,
+                Arrays.copyOf(mzBuffer, peaks), Arrays.copyOf(intensityBuffer, peaks), peaks);
+    }
+
+    /**
+     * Decode a binary data array into the m/z or the intensity buffer.
+     *
+     * @return number of values
+     */
+    private int decodeArray(ByteBuffer bytes, int start, int end, boolean zlib, boolean float64, boolean mz)
+            throws IOException {
+        int length = decodeBase64(bytes, start, end);
+        byte[] data = decoded;
+        if (zlib) {
+            length = inflate(length);
+            data = inflated;
+        }
+        int valueSize = float64 ? 8 : 4;
+        if (length % valueSize != 0)
+            throw new IOException("Binary data array of " + length + " bytes with values of " + valueSize + " bytes");
+        int count = length / valueSize;
+        double[] values = mz ? mzBuffer : intensityBuffer;
+        if (values.length < count) {
+            values = new double[Math.max(count, values.length * 2)];
+            if (mz)
+                mzBuffer = values;
+            else
+                intensityBuffer = values;
+        }
+        // the values are little-endian
+        for (int i = 0, offset = 0; i < count; i++, offset += valueSize) {
+            if (float64) {
+                long value = (data[offset] & 0xffL)
+                        | (data[offset + 1] & 0xffL) << 8
+                        | (data[offset + 2] & 0xffL) << 16
+                        | (data[offset + 3] & 0xffL) << 24
+                        | (data[offset + 4] & 0xffL) << 32
+                        | (data[offset + 5] & 0xffL) << 40
+                        | (data[offset + 6] & 0xffL) << 48
+                        | (data[offset + 7] & 0xffL) << 56;
+                values[i] = Double.longBitsToDouble(value);
+            } else {
+                int value = (data[offset] & 0xff)
+                        | (data[offset + 1] & 0xff) << 8
+                        | (data[offset + 2] & 0xff) << 16
+                        | (data[offset + 3] & 0xff) << 24;
+                values[i] = Float.intBitsToFloat(value);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Decode base64 text into the decoded buffer, ignoring the whitespace.
+     *
+     * @return number of decoded bytes
+     */
+    private int decodeBase64(ByteBuffer bytes, int start, int end) throws IOException {
+        int maxLength = (end - start) / 4 * 3 + 3;
+        if (decoded.length < maxLength)
+            decoded = new byte[Math.max(maxLength, decoded.length * 2)];
+        int length = 0;
+        int bits = 0;
+        int accumulated = 0;
+        for (int i = start; i < end; i++) {
+            int value = bytes.get(i) & 0xff;
+            if (value == '=')
+                break;
+            int sextet = BASE64[value];
+            if (sextet < 0) {
+                if (value == ' ' || value == '\n' || value == '\r' || value == '\t')
+                    continue;
+                throw new IOException("Invalid base64 character in a binary data array: " + (char) value);
+            }
+            accumulated = (accumulated << 6) | sextet;
+            bits += 6;
+            if (bits >= 8) {
+                bits -= 8;
+                decoded[length++] = (byte) (accumulated >> bits);
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Inflate the decoded buffer into the inflated buffer.
+     *
+     * @return number of inflated bytes
+     */
+    private int inflate(int decodedLength) throws IOException {
+        if (decodedLength == 0)
+            return 0;
+        inflater.reset();
+        inflater.setInput(decoded, 0, decodedLength);
+        int length = 0;
+        try {
+            while (!inflater.finished()) {
+                if (length == inflated.length)
+                    inflated = Arrays.copyOf(inflated, inflated.length * 2);
+                int inflatedBytes = inflater.inflate(inflated, length, inflated.length - length);
+                if (inflatedBytes == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    throw new IOException("Truncated zlib binary data array");
+                length += inflatedBytes;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid zlib binary data array -- " + e.getMessage());
+        }
+        return length;
+    }
+
+    /**
+     * Whether a cvParam of a binary data array is an encoding that this reader doesn't decode: numpress, other
+     * compressions or integer values.
+     */
+    private static boolean isEncoding(String accession) {
+        switch (accession == null ? "" : accession) {
+            case "MS:1000519": // 32-bit integer
+            case "MS:1000522": // 64-bit integer
+            case "MS:1002312": // MS-Numpress linear prediction compression
+            case "MS:1002313": // MS-Numpress positive integer compression
+            case "MS:1002314": // MS-Numpress short logged float compression
+            case "MS:1002746": // MS-Numpress linear prediction compression followed by zlib compression
+            case "MS:1002747": // MS-Numpress positive integer compression followed by zlib compression
+            case "MS:1002748": // MS-Numpress short logged float compression followed by zlib compression
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static Double doubleAttribute(ByteBuffer bytes, int start, int end) {
+        int valueStart = attributeStart(bytes, start, end, "value");
+        if (valueStart < 0)
+            return null;
+        int valueEnd = indexOf(bytes, bytes.get(valueStart - 1), valueStart, end);
+        double value = AsciiNumbers.parseDouble(bytes, valueStart, valueEnd);
+        return Double.isNaN(value) ? null : value;
+    }
+
+    private static Integer intAttribute(ByteBuffer bytes, int start, int end) {
+        return intAttribute(bytes, start, end, "value");
+    }
+
+    private static Integer intAttribute(ByteBuffer bytes, int start, int end, String name) {
+        int valueStart = attributeStart(bytes, start, end, name);
+        if (valueStart < 0)
+            return null;
+        int valueEnd = indexOf(bytes, bytes.get(valueStart - 1), valueStart, end);
+        return AsciiNumbers.parseInt(bytes, valueStart, valueEnd);
+    }
+
+    private static String attribute(ByteBuffer bytes, int start, int end, String name) {
+        int valueStart = attributeStart(bytes, start, end, name);
+        if (valueStart < 0)
+            return null;
+        int valueEnd = indexOf(bytes, bytes.get(valueStart - 1), valueStart, end);
+        char[] value = new char[valueEnd - valueStart];
+        for (int i = 0; i < value.length; i++)
+            value[i] = (char) (bytes.get(valueStart + i) & 0xff);
+        return new String(value);
+    }
+
+    /**
+     * Start of the value of an attribute of a tag, -1 if the tag doesn't have the attribute.
+     */
+    private static int attributeStart(ByteBuffer bytes, int start, int end, String name) {
+        int nameLength = name.length();
+        for (int i = start; i + nameLength + 2 < end; i++) {
+            if (isNameEnd(bytes.get(i)) && equals(bytes, i + 1, i + 1 + nameLength, name)) {
+                int j = i + 1 + nameLength;
+                while (j < end && isNameEnd(bytes.get(j)) && bytes.get(j) != '=')
+                    j++;
+                if (j < end && bytes.get(j) == '=') {
+                    j++;
+                    while (j < end && bytes.get(j) != '"' && bytes.get(j) != '\'')
+                        j++;
+                    if (j < end && indexOf(bytes, bytes.get(j), j + 1, end) > 0)
+                        return j + 1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(ByteBuffer bytes, byte value, int start, int end) {
+        for (int i = start; i < end; i++)
+            if (bytes.get(i) == value)
+                return i;
+        return -1;
+    }
+
+    private static int indexOf(ByteBuffer bytes, char value, int start, int end) {
+        return indexOf(bytes, (byte) value, start, end);
+    }
+
+    private static boolean isNameEnd(byte value) {
+        return value == ' ' || value == '\t' || value == '\n' || value == '\r' || value == '/' || value == '>'
+                || value == '=';
+    }
+
+    private static boolean equals(ByteBuffer bytes, int start, int end, String name) {
+        if (end - start != name.length())
+            return false;
+        for (int i = 0; i < name.length(); i++)
+            if (bytes.get(start + i) != name.charAt(i))
+                return false;
+        return true;
+    }
+}
@@ -0,0 +1,151 @@
+package uk.ac.ebi.pride.archive.pipeline.services.pia;
+
+import de.mpc.pia.modeller.PIAModeller;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Persistent cache of the PIA intermediate files compiled from the assay result files. The compilation of a
+ * result file (parsing, clustering and writing of the intermediate XML) is the most expensive part of the
+ * inference, and it is repeated every time an assay is re-analysed after a failure in a later step.
+ *
+ * The intermediate files are stored in one directory, named by a key computed from the SHA-256 checksum of the
+ * result file and the settings used to compile it. When the total size of the cache goes over the limit, the
+ * least recently used files are removed. The files are written under a temporary name and moved into place, so
+ * different jobs can share the same directory.
+ */
+@Slf4j
+public class PIAIntermediateFileCache {
+
+    private static final String INTERMEDIATE_FILE_EXTENSION = ".pia.xml";
+    private static final String TEMP_FILE_EXTENSION = ".tmp";
+
+    /**
+     * Version of the cache layout, change it when the content of the intermediate files changes.
+     */
+    private static final String CACHE_VERSION = "1";
+
+    private final File directory;
+    private final long maxSizeBytes;
+
+    /**
+     * Writer of an intermediate file into the cache.
+     */
+    public interface IntermediateFileWriter {
+        void write(File file) throws IOException;
+    }
+
+    /**
+     * Create a cache.
+     *
+     * @param directory    directory of the cache, created if it doesn't exist
+     * @param maxSizeBytes maximum size of the cache in bytes
+     */
+    public PIAIntermediateFileCache(File directory, long maxSizeBytes) throws IOException {
+        this.directory = directory;
+        this.maxSizeBytes = maxSizeBytes;
+        Files.createDirectories(directory.toPath());
+    }
+
+    /**
+     * Key of a result file compiled with the given settings.
+     *
+     * @param resultFile result file (mzIdentML, PRIDE XML or mzTab)
+     * @param fileType   PIA input file type
+     * @param assayKey   name of the input file in the intermediate file
+     * @return cache key
+     */
+    public String getKey(File resultFile, String fileType, String assayKey) throws IOException {
+        long initChecksum = System.currentTimeMillis();
+        String checksum;
+        try (InputStream inputStream = new FileInputStream(resultFile)) {
+            checksum = DigestUtils.sha256Hex(inputStream);
+        }
+        log.info("Checksum of " + resultFile.getName() + " computed in " + (System.currentTimeMillis() - initChecksum) + " ms");
+
+        String settings = String.join(":", CACHE_VERSION, checksum, fileType, assayKey,
+                String.valueOf(PIAModeller.class.getPackage().getImplementationVersion()));
+        return DigestUtils.sha256Hex(settings);
+    }
+
+    /**
+     * Get the intermediate file of a key. The access time of the file is updated for the LRU eviction.
+     *
+     * @param key cache key
+     * @return intermediate file, null if the key is not in the cache
+     */
+    public File get(String key) {
+        File file = getFile(key);
+        if (!file.isFile())
+            return null;
+        if (!file.setLastModified(System.currentTimeMillis()))
+            log.warn("The access time of the cached intermediate file can't be updated -- " + file);
+        return file;
+    }
+
+    /**
+     * Write a new intermediate file into the cache and evict the least recently used files if the cache is full.
+     *
+     * @param key    cache key
+     * @param writer writer of the intermediate file
+     * @return intermediate file in the cache
+     */
+    public File put(String key, IntermediateFileWriter writer) throws IOException {
+        File file = getFile(key);
+        File tempFile = File.createTempFile(key, TEMP_FILE_EXTENSION, directory);
+        try {
+            writer.write(tempFile);
+            try {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+        evict(file);
+        return file;
+    }
+
+    /**
+     * Remove the least recently used intermediate files until the cache fits in its maximum size. The file
+     * that has just been added is never removed.
+     */
+    private synchronized void evict(File keep) {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(INTERMEDIATE_FILE_EXTENSION));
+        if (files == null)
+            return;
+
+        long totalSize = Arrays.stream(files).mapToLong(File::length).sum();
+        if (totalSize <= maxSizeBytes)
+            return;
+
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (totalSize <= maxSizeBytes)
+                break;
+            if (file.equals(keep))
+                continue;
+            long length = file.length();
+            if (file.delete()) {
+                totalSize -= length;
+                log.info("Intermediate file removed from the PIA cache -- " + file.getName());
+            }
+        }
+    }
+
+    private File getFile(String key) {
+        return new File(directory, key + INTERMEDIATE_FILE_EXTENSION);
+    }
+}
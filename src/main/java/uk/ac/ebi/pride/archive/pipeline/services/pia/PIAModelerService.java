@@ -35,8 +35,27 @@ public class PIAModelerService {
 
     private static final Long MERGE_FILE_ID = 1L;
 
+    /**
+     * Cache of the compiled intermediate files, null if the cache is disabled.
+     */
+    private final PIAIntermediateFileCache intermediateFileCache;
+
+    /**
+     * Cache of the decompressed result files, null if only uncompressed files are read.
+     */
+    private final DecompressionCache decompressionCache;
 
     public PIAModelerService() {
+        this(null);
+    }
+
+    public PIAModelerService(PIAIntermediateFileCache intermediateFileCache) {
+        this(intermediateFileCache, null);
+    }
+
+    public PIAModelerService(PIAIntermediateFileCache intermediateFileCache, DecompressionCache decompressionCache) {
+        this.intermediateFileCache = intermediateFileCache;
+        this.decompressionCache = decompressionCache;
     }
 
     /**
@@ -55,24 +74,45 @@ public class PIAModelerService {
 
     }
 
+    /**
+     * Perform the PSM level and the protein level inference on a compiled modeller with the given thresholds.
+     * @param piaModeller PIA modeller
+     * @param psmQThreshold q-value threshold
+     * @param proteinQThreshold q-value threshold
+     */
     public PIAModeller performFilteringInference(PIAModeller piaModeller, double psmQThreshold, double proteinQThreshold){
 
-        if (piaModeller != null){
-
-            piaModeller.setCreatePSMSets(true);
+        calculatePSMLevelFDR(piaModeller, psmQThreshold);
+        return performProteinLevelInference(piaModeller, psmQThreshold, proteinQThreshold);
+    }
 
-            piaModeller.getPSMModeller().setAllDecoyPattern("searchengine");
-            piaModeller.getPSMModeller().setAllTopIdentifications(0);
+    /**
+     * Compile the assay file and compute the PSM level FDR and the combined FDR score. The PSM scores don't depend on
+     * the protein inference, so they are computed only once and the protein inference can be performed afterwards
+     * with different thresholds using {@link #performProteinLevelInference}.
+     * @param filePath assay file path, pride xml, mzidentml
+     * @param psmQThreshold q-value threshold of the PSM filters of the file
+     */
+    public PIAModeller performPSMLevelInference(String assayId,
+                                                String filePath, SubmissionPipelineConstants.FileType fileType,
+                                                double psmQThreshold) throws IOException {
 
-            piaModeller.getPSMModeller().addFilter(1L, new PSMScoreFilter(FilterComparator.less_equal,
-                    false, psmQThreshold, ScoreModelEnum.PSM_LEVEL_FDR_SCORE.getShortName()));
+        PIAModeller piaModeller = computeFDRPSMLevel(assayId, filePath, fileType);
+        calculatePSMLevelFDR(piaModeller, psmQThreshold);
+        return piaModeller;
+    }
 
-            piaModeller.getPSMModeller().addFilter(1L, RegisteredFilters.PSM_SOURCE_ID_FILTER
-                    .newInstanceOf(FilterComparator.equal,"index=null" ,true));
+    /**
+     * Perform the protein inference (Occam's razor) and compute the protein and peptide FDR on a modeller with the
+     * PSM level FDR already computed. The PSM filters of the file are the ones set by the PSM level inference, the
+     * threshold only applies to the PSMs used for this inference, so it can be called again with other thresholds.
+     * @param piaModeller PIA modeller
+     * @param psmQThreshold q-value threshold of the PSMs used for the inference
+     * @param proteinQThreshold q-value threshold
+     */
+    public PIAModeller performProteinLevelInference(PIAModeller piaModeller, double psmQThreshold, double proteinQThreshold){
 
-            piaModeller.getPSMModeller().calculateAllFDR();
-            piaModeller.getPSMModeller().calculateCombinedFDRScore();
-            piaModeller.setConsiderModifications(true);
+        if (piaModeller != null){
 
             // protein level
             OccamsRazorInference seInference = new OccamsRazorInference();
@@ -104,6 +144,38 @@ public class PIAModelerService {
         return piaModeller;
     }
 
+    private void calculatePSMLevelFDR(PIAModeller piaModeller, double psmQThreshold) {
+
+        if (piaModeller != null){
+
+            piaModeller.setCreatePSMSets(true);
+
+            piaModeller.getPSMModeller().setAllDecoyPattern("searchengine");
+            piaModeller.getPSMModeller().setAllTopIdentifications(0);
+
+            setPSMFilters(piaModeller, psmQThreshold);
+
+            piaModeller.getPSMModeller().calculateAllFDR();
+            piaModeller.getPSMModeller().calculateCombinedFDRScore();
+            piaModeller.setConsiderModifications(true);
+        }
+    }
+
+    /**
+     * Replace the PSM filters of the file, the filters of a previous PSM level inference are removed so they don't
+     * pile up on the same modeller.
+     */
+    private void setPSMFilters(PIAModeller piaModeller, double psmQThreshold) {
+        for (int i = piaModeller.getPSMModeller().getFilters(MERGE_FILE_ID).size() - 1; i >= 0; i--)
+            piaModeller.getPSMModeller().removeFilter(MERGE_FILE_ID, i);
+
+        piaModeller.getPSMModeller().addFilter(1L, new PSMScoreFilter(FilterComparator.less_equal,
+                false, psmQThreshold, ScoreModelEnum.PSM_LEVEL_FDR_SCORE.getShortName()));
+
+        piaModeller.getPSMModeller().addFilter(1L, RegisteredFilters.PSM_SOURCE_ID_FILTER
+                .newInstanceOf(FilterComparator.equal,"index=null" ,true));
+    }
+
     /**
      * Compute the PSM FDR as PSM and Protein level
      * @param assayKey Assay Key
@@ -114,8 +186,19 @@ public class PIAModelerService {
      */
     private PIAModeller computeFDRPSMLevel(String assayKey, String filePath, SubmissionPipelineConstants.FileType fileType) throws IOException {
 
-        PIAModeller piaModeller = null;
-        PIACompiler piaCompiler = new PIASimpleCompiler();
+        if (decompressionCache == null)
+            return compileFDRPSMLevel(assayKey, filePath, fileType);
+
+        // the decompressed file is pinned in the cache while it is compiled
+        File file = decompressionCache.acquire(filePath);
+        try {
+            return compileFDRPSMLevel(assayKey, file.getAbsolutePath(), fileType);
+        } finally {
+            decompressionCache.release(file);
+        }
+    }
+
+    private PIAModeller compileFDRPSMLevel(String assayKey, String filePath, SubmissionPipelineConstants.FileType fileType) throws IOException {
 
         String type = InputFileParserFactory.InputFileTypes.MZTAB_INPUT.getFileTypeShort();
         if(fileType == SubmissionPipelineConstants.FileType.PRIDE)
@@ -123,6 +206,33 @@ public class PIAModelerService {
         else if (fileType == SubmissionPipelineConstants.FileType.MZID)
            type = InputFileParserFactory.InputFileTypes.MZIDENTML_INPUT.getFileTypeShort();
 
+        if (intermediateFileCache == null)
+            return compileIntermediateFile(assayKey, filePath, type, null);
+
+        String cacheKey = intermediateFileCache.getKey(new File(filePath), type, assayKey);
+        File cachedFile = intermediateFileCache.get(cacheKey);
+        if (cachedFile != null) {
+            log.info("Using the cached PIA intermediate file of " + filePath + " -- " + cachedFile.getName());
+            return new PIAModeller(cachedFile.getAbsolutePath());
+        }
+        return compileIntermediateFile(assayKey, filePath, type, cacheKey);
+    }
+
+    /**
+     * Compile a result file into a PIA intermediate file and load it.
+     *
+     * @param assayKey Assay Key
+     * @param filePath File path of the assay
+     * @param type     PIA input file type
+     * @param cacheKey Key of the intermediate file in the cache, null if it is not cached
+     * @return PIAModeller, null if the file doesn't contain PSMs
+     * @throws IOException
+     */
+    private PIAModeller compileIntermediateFile(String assayKey, String filePath, String type, String cacheKey) throws IOException {
+
+        PIAModeller piaModeller = null;
+        PIACompiler piaCompiler = new PIASimpleCompiler();
+
         piaCompiler.getDataFromFile(assayKey, filePath, null, type);
 
 
@@ -133,13 +243,19 @@ public class PIAModelerService {
         if (piaCompiler.getAllPeptideSpectrumMatcheIDs() != null
                 && !piaCompiler.getAllPeptideSpectrumMatcheIDs().isEmpty()) {
 
-            File inferenceTempFile = File.createTempFile(assayKey, ".tmp");
-            piaCompiler.writeOutXML(inferenceTempFile);
-            piaCompiler.finish();
-            piaModeller = new PIAModeller(inferenceTempFile.getAbsolutePath());
-
-            if (inferenceTempFile.exists()) {
-                inferenceTempFile.deleteOnExit();
+            if (cacheKey != null) {
+                File cachedFile = intermediateFileCache.put(cacheKey, piaCompiler::writeOutXML);
+                piaCompiler.finish();
+                piaModeller = new PIAModeller(cachedFile.getAbsolutePath());
+            } else {
+                File inferenceTempFile = File.createTempFile(assayKey, ".tmp");
+                piaCompiler.writeOutXML(inferenceTempFile);
+                piaCompiler.finish();
+                piaModeller = new PIAModeller(inferenceTempFile.getAbsolutePath());
+
+                if (inferenceTempFile.exists()) {
+                    inferenceTempFile.deleteOnExit();
+                }
             }
         }
         return piaModeller;
@@ -0,0 +1,26 @@
+package uk.ac.ebi.pride.archive.pipeline.services.pia;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Random access to the uncompressed bytes of a spectrum file, used by the readers that parse the spectra directly
+ * from the bytes located by the {@link SpectrumOffsetIndex}.
+ */
+interface SpectrumByteSource extends Closeable {
+
+    /**
+     * Bytes of a region of the uncompressed file. The buffer is only valid until the next read.
+     *
+     * @param offset offset of the region
+     * @param length length of the region
+     * @return buffer with the position and the limit of the region
+     */
+    ByteBuffer read(long offset, int length) throws IOException;
+
+    /**
+     * Estimate of the heap memory used by the source in bytes.
+     */
+    long getHeapSize();
+}
@@ -0,0 +1,30 @@
+package uk.ac.ebi.pride.archive.pipeline.services.pia;
+
+import uk.ac.ebi.pride.tools.jmzreader.JMzReaderException;
+import uk.ac.ebi.pride.tools.jmzreader.model.Spectrum;
+
+/**
+ * Open spectrum file of the {@link SpectrumReaderPool}. The readers are not thread safe, the pool serializes the
+ * access to each reader.
+ */
+public interface SpectrumFileReader extends AutoCloseable {
+
+    /**
+     * Read a spectrum.
+     *
+     * @param id spectrum id
+     * @return Spectrum
+     * @throws JMzReaderException if the spectrum can't be found or read
+     */
+    Spectrum getSpectrumById(String id) throws JMzReaderException;
+
+    int getSpectraCount();
+
+    /**
+     * Estimate of the heap memory of the index of the reader in bytes.
+     */
+    long getIndexMemory();
+
+    @Override
+    void close();
+}
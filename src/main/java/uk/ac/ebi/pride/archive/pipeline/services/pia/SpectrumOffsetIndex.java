@@ -0,0 +1,547 @@
+package uk.ac.ebi.pride.archive.pipeline.services.pia;
+
+import uk.ac.ebi.pride.archive.pipeline.utility.SubmissionPipelineConstants;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Offset index of the spectra of a peak list file (MGF or mzML): for each spectrum, in file order, the byte
+ * offset and length of the spectrum in the file, its id and its title.
+ *
+ * <ul>
+ *     <li>MGF: the spectrum is the block from BEGIN IONS to END IONS, the id is the 1-based position of the spectrum
+ *     in the file (the id used by jmzReader) and the title is the TITLE of the block.</li>
+ *     <li>mzML: the spectrum is the spectrum element, the id is its id attribute.</li>
+ * </ul>
+ *
+ * The index is stored in a binary file that is memory-mapped when it is loaded, so the index of a huge file doesn't
+ * need to be in the heap. The file records the size and the modification time of the peak list file, an index is
+ * only valid if they haven't changed. Layout of the file (big endian):
+ *
+ * <pre>
+ * header   magic, version, file size, file modification time, number of spectra, size of the keys
+ * entries  offset (long), length (int), id position, id length, title position, title length (int)
+ * ids      hash of the id (long), position of the spectrum (int), sorted by hash
+ * titles   hash of the title (long), position of the spectrum (int), sorted by hash
+ * keys     UTF-8 ids and titles
+ * </pre>
+ *
+ * An index is immutable and thread safe.
+ */
+public class SpectrumOffsetIndex implements Closeable {
+
+    static final int MAGIC = 0x50534f49;
+    static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4;
+    private static final int ENTRY_SIZE = 8 + 4 + 4 + 4 + 4 + 4;
+    private static final int HASH_ENTRY_SIZE = 8 + 4;
+
+    private static final byte[] MGF_BEGIN = "BEGIN IONS".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MGF_END = "END IONS".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MGF_TITLE = "TITLE=".getBytes(StandardCharsets.US_ASCII);
+
+    private final ByteBuffer buffer;
+    private final RandomAccessFile indexFile;
+    private final int size;
+    private final int idsPosition;
+    private final int titlesPosition;
+    private final int keysPosition;
+
+    private SpectrumOffsetIndex(ByteBuffer buffer, RandomAccessFile indexFile) throws IOException {
+        this.buffer = buffer;
+        this.indexFile = indexFile;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+            throw new IOException("Invalid spectrum offset index");
+        this.size = buffer.getInt(24);
+        int keysSize = buffer.getInt(28);
+        if (size < 0 || keysSize < 0 || HEADER_SIZE + (long) size * (ENTRY_SIZE + 2 * HASH_ENTRY_SIZE) + keysSize != buffer.capacity())
+            throw new IOException("Truncated spectrum offset index");
+        this.idsPosition = HEADER_SIZE + size * ENTRY_SIZE;
+        this.titlesPosition = idsPosition + size * HASH_ENTRY_SIZE;
+        this.keysPosition = titlesPosition + size * HASH_ENTRY_SIZE;
+    }
+
+    /**
+     * Build the index of a peak list file, reading the whole file once. The offsets of the index of a gzip file are
+     * offsets in the uncompressed file.
+     *
+     * @param file     peak list file, optionally gzip compressed
+     * @param fileType type of the file, MGF or MZML
+     * @return SpectrumOffsetIndex held in the heap
+     * @throws IOException if the file can't be read
+     */
+    public static SpectrumOffsetIndex build(File file, SubmissionPipelineConstants.FileType fileType) throws IOException {
+        long fileSize = file.length();
+        long lastModified = file.lastModified();
+        List<Entry> entries;
+        try (InputStream inputStream = open(file)) {
+            switch (fileType) {
+                case MGF:
+                    entries = scanMgf(new ByteScanner(inputStream));
+                    break;
+                case MZML:
+                    entries = scanXml(new ByteScanner(inputStream), "spectrum", "id");
+                    break;
+                default:
+                    throw new IOException("Spectrum offset index not supported for " + fileType + " files -- " + file);
+            }
+        }
+        return new SpectrumOffsetIndex(serialize(entries, fileSize, lastModified), null);
+    }
+
+    /**
+     * Load a stored index, the index file is memory-mapped.
+     *
+     * @param indexFile index file
+     * @return SpectrumOffsetIndex
+     * @throws IOException if the file can't be read or it is not a valid index
+     */
+    public static SpectrumOffsetIndex load(File indexFile) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(indexFile, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new SpectrumOffsetIndex(buffer, randomAccessFile);
+        } catch (IOException | RuntimeException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Store the index, the file is written next to the target and renamed, so a reader never sees a partial index.
+     *
+     * @param target index file
+     * @throws IOException if the file can't be written
+     */
+    public void write(File target) throws IOException {
+        File temporary = File.createTempFile(target.getName(), ".tmp", target.getAbsoluteFile().getParentFile());
+        try (RandomAccessFile output = new RandomAccessFile(temporary, "rw")) {
+            output.setLength(0);
+            ByteBuffer content = buffer.duplicate();
+            content.clear();
+            FileChannel channel = output.getChannel();
+            while (content.hasRemaining())
+                channel.write(content);
+        }
+        Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * An index is valid for a file if the size and the modification time of the file haven't changed.
+     */
+    public boolean isValidFor(File file) {
+        return file.length() == getFileSize() && file.lastModified() == getFileLastModified();
+    }
+
+    public long getFileSize() {
+        return buffer.getLong(8);
+    }
+
+    public long getFileLastModified() {
+        return buffer.getLong(16);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getOffset(int position) {
+        return buffer.getLong(entryPosition(position));
+    }
+
+    public int getLength(int position) {
+        return buffer.getInt(entryPosition(position) + 8);
+    }
+
+    public String getId(int position) {
+        int entry = entryPosition(position);
+        return key(buffer.getInt(entry + 12), buffer.getInt(entry + 16));
+    }
+
+    public String getTitle(int position) {
+        int entry = entryPosition(position);
+        return key(buffer.getInt(entry + 20), buffer.getInt(entry + 24));
+    }
+
+    /**
+     * Position of the spectrum with the id, -1 if there is no spectrum with the id.
+     */
+    public int findById(String id) {
+        return find(idsPosition, id, 12);
+    }
+
+    /**
+     * Position of the first spectrum with the title, -1 if there is no spectrum with the title.
+     */
+    public int findByTitle(String title) {
+        return find(titlesPosition, title, 20);
+    }
+
+    /**
+     * Memory of the index in the heap, 0 if the index is memory-mapped.
+     */
+    public long getHeapSize() {
+        return (indexFile == null) ? buffer.capacity() : 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (indexFile != null)
+            indexFile.close();
+    }
+
+    private int entryPosition(int position) {
+        if (position < 0 || position >= size)
+            throw new IndexOutOfBoundsException("Spectrum " + position + " of " + size);
+        return HEADER_SIZE + position * ENTRY_SIZE;
+    }
+
+    private String key(int keyPosition, int keyLength) {
+        if (keyLength == 0)
+            return null;
+        byte[] bytes = new byte[keyLength];
+        ByteBuffer keys = buffer.duplicate();
+        keys.position(keysPosition + keyPosition);
+        keys.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int find(int tablePosition, String key, int keyField) {
+        if (key == null || size == 0)
+            return -1;
+        long hash = hash(key);
+        int low = 0;
+        int high = size - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (buffer.getLong(tablePosition + middle * HASH_ENTRY_SIZE) < hash)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        for (int i = low; i < size && buffer.getLong(tablePosition + i * HASH_ENTRY_SIZE) == hash; i++) {
+            int position = buffer.getInt(tablePosition + i * HASH_ENTRY_SIZE + 8);
+            int entry = entryPosition(position);
+            if (key.equals(key(buffer.getInt(entry + keyField), buffer.getInt(entry + keyField + 4))))
+                return position;
+        }
+        return -1;
+    }
+
+    private static InputStream open(File file) throws IOException {
+        InputStream inputStream = new FileInputStream(file);
+        if (!file.getName().toLowerCase(Locale.ROOT).endsWith(".gz"))
+            return inputStream;
+        try {
+            return new GZIPInputStream(inputStream, 65536);
+        } catch (IOException e) {
+            inputStream.close();
+            throw e;
+        }
+    }
+
+    /**
+     * FNV-1a hash of the characters of a key.
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static ByteBuffer serialize(List<Entry> entries, long fileSize, long lastModified) throws IOException {
+        ByteArrayOutputStream keys = new ByteArrayOutputStream();
+        int count = entries.size();
+        long[][] idHashes = new long[count][];
+        long[][] titleHashes = new long[count][];
+        int[] keyPositions = new int[count * 4];
+        for (int i = 0; i < count; i++) {
+            Entry entry = entries.get(i);
+            byte[] id = (entry.id != null) ? entry.id.getBytes(StandardCharsets.UTF_8) : new byte[0];
+            byte[] title = (entry.title != null) ? entry.title.getBytes(StandardCharsets.UTF_8) : new byte[0];
+            keyPositions[i * 4] = keys.size();
+            keyPositions[i * 4 + 1] = id.length;
+            keys.write(id);
+            keyPositions[i * 4 + 2] = keys.size();
+            keyPositions[i * 4 + 3] = title.length;
+            keys.write(title);
+            // the spectra without id or title get the largest hash, they are never found
+            idHashes[i] = new long[]{(entry.id != null) ? hash(entry.id) : Long.MAX_VALUE, i};
+            titleHashes[i] = new long[]{(entry.title != null) ? hash(entry.title) : Long.MAX_VALUE, i};
+        }
+        Arrays.sort(idHashes, SpectrumOffsetIndex::compareHashes);
+        Arrays.sort(titleHashes, SpectrumOffsetIndex::compareHashes);
+
+        long totalSize = HEADER_SIZE + (long) count * (ENTRY_SIZE + 2 * HASH_ENTRY_SIZE) + keys.size();
+        if (totalSize > Integer.MAX_VALUE)
+            throw new IOException("Spectrum offset index too large -- " + count + " spectra");
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) totalSize).order(ByteOrder.BIG_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(fileSize).putLong(lastModified).putInt(count).putInt(keys.size());
+        for (int i = 0; i < count; i++) {
+            Entry entry = entries.get(i);
+            buffer.putLong(entry.offset).putInt(entry.length)
+                    .putInt(keyPositions[i * 4]).putInt(keyPositions[i * 4 + 1])
+                    .putInt(keyPositions[i * 4 + 2]).putInt(keyPositions[i * 4 + 3]);
+        }
+        for (long[] idHash : idHashes)
+            buffer.putLong(idHash[0]).putInt((int) idHash[1]);
+        for (long[] titleHash : titleHashes)
+            buffer.putLong(titleHash[0]).putInt((int) titleHash[1]);
+        buffer.put(keys.toByteArray());
+        buffer.clear();
+        return buffer;
+    }
+
+    private static int compareHashes(long[] first, long[] second) {
+        int comparison = Long.compare(first[0], second[0]);
+        return (comparison != 0) ? comparison : Long.compare(first[1], second[1]);
+    }
+
+    private static List<Entry> scanMgf(ByteScanner scanner) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        LineBuffer line = new LineBuffer();
+        Entry current = null;
+        long lineStart;
+        while ((lineStart = scanner.readLine(line)) >= 0) {
+            if (line.equalsTrimmed(MGF_BEGIN)) {
+                current = new Entry(lineStart);
+                current.id = String.valueOf(entries.size() + 1);
+            } else if (current != null && line.equalsTrimmed(MGF_END)) {
+                current.length = toLength(scanner.position() - current.offset);
+                entries.add(current);
+                current = null;
+            } else if (current != null && current.title == null && line.startsWithTrimmed(MGF_TITLE)) {
+                current.title = line.trimmedString(MGF_TITLE.length);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Scan the elements of an XML peak list. The start tags are found by their name, so the index doesn't depend on
+     * the index of the file (indexedmzML), which is often missing or wrong.
+     *
+     * @param element     name of the spectrum element
+     * @param idAttribute attribute with the id of the spectrum
+     */
+    private static List<Entry> scanXml(ByteScanner scanner, String element, String idAttribute) throws IOException {
+        byte[] startTag = ("<" + element).getBytes(StandardCharsets.US_ASCII);
+        byte[] endTag = ("</" + element + ">").getBytes(StandardCharsets.US_ASCII);
+        List<Entry> entries = new ArrayList<>();
+        Entry current = null;
+        ByteArrayOutputStream tag = new ByteArrayOutputStream();
+        int value;
+        while ((value = scanner.read()) >= 0) {
+            if (value != '<')
+                continue;
+            long tagStart = scanner.position() - 1;
+            tag.reset();
+            tag.write(value);
+            // name of the tag
+            int next;
+            while ((next = scanner.read()) >= 0 && next != '>' && !Character.isWhitespace(next) && tag.size() <= endTag.length) {
+                tag.write(next);
+            }
+            byte[] name = tag.toByteArray();
+            if (Arrays.equals(name, startTag) && next >= 0 && next != '>' && Character.isWhitespace(next)) {
+                current = new Entry(tagStart);
+                current.id = attribute(readStartTag(scanner), idAttribute);
+            } else if (current != null && next == '>' && Arrays.equals(concat(name, (byte) '>'), endTag)) {
+                current.length = toLength(scanner.position() - current.offset);
+                entries.add(current);
+                current = null;
+            }
+        }
+        return entries;
+    }
+
+    private static String readStartTag(ByteScanner scanner) throws IOException {
+        ByteArrayOutputStream attributes = new ByteArrayOutputStream();
+        int value;
+        while ((value = scanner.read()) >= 0 && value != '>')
+            attributes.write(value);
+        return new String(attributes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String attribute(String tag, String name) {
+        int position = 0;
+        while ((position = tag.indexOf(name, position)) >= 0) {
+            int end = position + name.length();
+            boolean startsName = position == 0 || Character.isWhitespace(tag.charAt(position - 1));
+            int equals = end;
+            while (equals < tag.length() && Character.isWhitespace(tag.charAt(equals)))
+                equals++;
+            if (startsName && equals < tag.length() && tag.charAt(equals) == '=') {
+                int quote = equals + 1;
+                while (quote < tag.length() && Character.isWhitespace(tag.charAt(quote)))
+                    quote++;
+                if (quote < tag.length()) {
+                    char quoteChar = tag.charAt(quote);
+                    int close = tag.indexOf(quoteChar, quote + 1);
+                    if (close > quote)
+                        return tag.substring(quote + 1, close);
+                }
+            }
+            position = end;
+        }
+        return null;
+    }
+
+    private static byte[] concat(byte[] bytes, byte last) {
+        byte[] result = Arrays.copyOf(bytes, bytes.length + 1);
+        result[bytes.length] = last;
+        return result;
+    }
+
+    private static int toLength(long length) throws IOException {
+        if (length > Integer.MAX_VALUE)
+            throw new IOException("Spectrum too large to be indexed -- " + length + " bytes");
+        return (int) length;
+    }
+
+    private static class Entry {
+
+        private final long offset;
+        private int length;
+        private String id;
+        private String title;
+
+        Entry(long offset) {
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * Buffered reader of bytes that keeps the position in the file.
+     */
+    private static class ByteScanner {
+
+        private final InputStream inputStream;
+        private final byte[] buffer = new byte[64 * 1024];
+        private int limit;
+        private int index;
+        private long bufferStart;
+
+        ByteScanner(InputStream inputStream) {
+            this.inputStream = inputStream;
+        }
+
+        int read() throws IOException {
+            if (index == limit) {
+                bufferStart += limit;
+                limit = inputStream.read(buffer);
+                index = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[index++] & 0xff;
+        }
+
+        /**
+         * Position of the next byte.
+         */
+        long position() {
+            return bufferStart + index;
+        }
+
+        /**
+         * Read a line, without the line terminator.
+         *
+         * @return position of the line, -1 at the end of the file
+         */
+        long readLine(LineBuffer line) throws IOException {
+            line.clear();
+            long start = position();
+            int value = read();
+            if (value < 0)
+                return -1;
+            while (value >= 0 && value != '\n') {
+                line.add((byte) value);
+                value = read();
+            }
+            return start;
+        }
+    }
+
+    /**
+     * Bytes of a line, reused for all the lines of the file.
+     */
+    private static class LineBuffer {
+
+        private byte[] bytes = new byte[256];
+        private int size;
+
+        void clear() {
+            size = 0;
+        }
+
+        void add(byte value) {
+            if (size == bytes.length)
+                bytes = Arrays.copyOf(bytes, size * 2);
+            bytes[size++] = value;
+        }
+
+        private int start() {
+            int start = 0;
+            while (start < size && bytes[start] <= ' ')
+                start++;
+            return start;
+        }
+
+        private int end() {
+            int end = size;
+            while (end > 0 && bytes[end - 1] <= ' ')
+                end--;
+            return end;
+        }
+
+        boolean equalsTrimmed(byte[] value) {
+            int start = start();
+            int end = end();
+            return end - start == value.length && startsWith(start, value);
+        }
+
+        boolean startsWithTrimmed(byte[] prefix) {
+            int start = start();
+            return end() - start >= prefix.length && startsWith(start, prefix);
+        }
+
+        private boolean startsWith(int start, byte[] prefix) {
+            for (int i = 0; i < prefix.length; i++)
+                if (bytes[start + i] != prefix[i])
+                    return false;
+            return true;
+        }
+
+        String trimmedString(int skip) {
+            int start = start() + skip;
+            return new String(bytes, start, Math.max(0, end() - start), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package uk.ac.ebi.pride.archive.pipeline.services.pia;
+
+import lombok.extern.slf4j.Slf4j;
+import uk.ac.ebi.pride.archive.pipeline.utility.SubmissionPipelineConstants;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Persistent store of the {@link SpectrumOffsetIndex} of the peak list files, and of the block index of the block gzip
+ * files ({@link BlockGzipReader}). The index of a file is stored next to the file ({@code <file>.psoi}) or, if a cache
+ * directory is configured, in the cache directory. A stored index is only used if the size and the modification time
+ * of the file haven't changed, otherwise the file is indexed again and the index replaced.
+ */
+@Slf4j
+public class SpectrumOffsetIndexStore {
+
+    static final String EXTENSION = ".psoi";
+
+    private final File cacheDirectory;
+
+    /**
+     * Create a store.
+     *
+     * @param cacheDirectory directory of the indexes, null to store each index next to its file
+     */
+    public SpectrumOffsetIndexStore(File cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+        if (cacheDirectory != null && !cacheDirectory.isDirectory() && !cacheDirectory.mkdirs())
+            log.warn("The spectrum offset index directory can't be created -- " + cacheDirectory);
+    }
+
+    /**
+     * Index of a peak list file, loaded from the store or built and stored if there isn't a valid one. If the index
+     * can't be stored the index built in memory is returned.
+     *
+     * @param file     peak list file
+     * @param fileType type of the file
+     * @return SpectrumOffsetIndex
+     * @throws IOException if the file can't be indexed
+     */
+    public SpectrumOffsetIndex getIndex(File file, SubmissionPipelineConstants.FileType fileType) throws IOException {
+        File indexFile = getIndexFile(file);
+        if (indexFile.isFile()) {
+            try {
+                SpectrumOffsetIndex index = SpectrumOffsetIndex.load(indexFile);
+                if (index.isValidFor(file))
+                    return index;
+                index.close();
+                log.info("Spectrum offset index out of date -- " + indexFile);
+            } catch (IOException e) {
+                log.warn("Invalid spectrum offset index -- " + indexFile + " " + e.getMessage());
+            }
+        }
+
+        long initIndex = System.currentTimeMillis();
+        SpectrumOffsetIndex index = SpectrumOffsetIndex.build(file, fileType);
+        log.info("Spectrum offset index of " + file + " built in " + (System.currentTimeMillis() - initIndex)
+                + " ms (" + index.size() + " spectra)");
+        try {
+            index.write(indexFile);
+            return SpectrumOffsetIndex.load(indexFile);
+        } catch (IOException e) {
+            log.warn("The spectrum offset index can't be stored -- " + indexFile + " " + e.getMessage());
+            return index;
+        }
+    }
+
+    /**
+     * Reader of a block gzip file, with the block index stored next to the offset index of the file.
+     *
+     * @param file block gzip file
+     * @return BlockGzipReader
+     * @throws IOException if the file is not a block gzip file or it can't be read
+     */
+    BlockGzipReader getBlockGzipReader(File file) throws IOException {
+        return new BlockGzipReader(file, getIndexFile(file, BlockGzipReader.EXTENSION));
+    }
+
+    File getIndexFile(File file) {
+        return getIndexFile(file, EXTENSION);
+    }
+
+    private File getIndexFile(File file, String extension) {
+        if (cacheDirectory == null)
+            return new File(file.getPath() + extension);
+        // files with the same name in different projects get different indexes
+        String pathHash = Long.toHexString(SpectrumOffsetIndex.hash(file.getAbsolutePath())).toLowerCase(Locale.ROOT);
+        return new File(cacheDirectory, file.getName() + "." + pathHash + extension);
+    }
+}
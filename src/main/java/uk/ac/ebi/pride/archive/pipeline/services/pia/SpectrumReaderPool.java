@@ -0,0 +1,376 @@
+package uk.ac.ebi.pride.archive.pipeline.services.pia;
+
+import lombok.extern.slf4j.Slf4j;
+import uk.ac.ebi.pride.archive.pipeline.utility.SubmissionPipelineConstants;
+import uk.ac.ebi.pride.tools.jmzreader.JMzReader;
+import uk.ac.ebi.pride.tools.jmzreader.JMzReaderException;
+import uk.ac.ebi.pride.tools.jmzreader.model.Spectrum;
+import uk.ac.ebi.pride.tools.mgf_parser.MgfFile;
+import uk.ac.ebi.pride.tools.mzdata_wrapper.MzMlWrapper;
+import uk.ac.ebi.pride.tools.mzxml_parser.MzXMLFile;
+import uk.ac.ebi.pride.tools.mzxml_parser.MzXMLParsingException;
+import uk.ac.ebi.pride.tools.pkl_parser.PklFile;
+import uk.ac.ebi.pride.tools.pride_wrapper.PRIDEXmlWrapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Pool of the jmzReader readers of the spectrum files, shared by all the assays analysed in the JVM. Opening a
+ * reader indexes the whole file, so the readers are only opened when the first spectrum of the file is read and
+ * they are kept open for the next assays of the project, which usually share the same peak lists.
+ *
+ * The pool is bounded by the number of open readers and by an estimate of the heap memory of their indexes. When a
+ * limit is exceeded the least recently used readers that are not being read are closed. With a
+ * {@link SpectrumOffsetIndexStore} the MGF and mzML files are memory-mapped and read with their stored offset index
+ * by the {@link MappedMgfFileReader} and the {@link MzMlSpectrumFileReader}.
+ *
+ * With a {@link DecompressionCache} the files that only exist compressed are read from their decompressed copy, which
+ * is pinned in the cache while its reader is open; the block gzip MGF files are read without decompressing them when
+ * they have an offset index.
+ */
+@Slf4j
+public class SpectrumReaderPool implements AutoCloseable {
+
+    private final int maxOpenReaders;
+    private final long maxIndexMemory;
+    private final ReaderFactory readerFactory;
+    private final SpectrumOffsetIndexStore indexStore;
+    private final DecompressionCache decompressionCache;
+
+    /**
+     * Readers in access order, the first one is the least recently used.
+     */
+    private final LinkedHashMap<String, PooledReader> readers = new LinkedHashMap<>(16, 0.75f, true);
+    private long indexMemory;
+    private long openedReaders;
+    private long evictedReaders;
+
+    /**
+     * Create a pool.
+     *
+     * @param maxOpenReaders maximum number of open readers
+     * @param maxIndexMemory maximum memory in bytes of the indexes of the open readers
+     */
+    public SpectrumReaderPool(int maxOpenReaders, long maxIndexMemory) {
+        this(maxOpenReaders, maxIndexMemory, (SpectrumOffsetIndexStore) null);
+    }
+
+    /**
+     * Create a pool that opens the MGF and mzML files with their stored offset index instead of scanning them.
+     *
+     * @param maxOpenReaders maximum number of open readers
+     * @param maxIndexMemory maximum memory in bytes of the indexes of the open readers
+     * @param indexStore     store of the offset indexes, null to index the files in memory with jmzReader
+     */
+    public SpectrumReaderPool(int maxOpenReaders, long maxIndexMemory, SpectrumOffsetIndexStore indexStore) {
+        this(maxOpenReaders, maxIndexMemory, indexStore, null);
+    }
+
+    /**
+     * Create a pool that reads the compressed spectrum files.
+     *
+     * @param maxOpenReaders     maximum number of open readers
+     * @param maxIndexMemory     maximum memory in bytes of the indexes of the open readers
+     * @param indexStore         store of the offset indexes, null to index the files in memory with jmzReader
+     * @param decompressionCache cache of the decompressed files, null to read only uncompressed files
+     */
+    public SpectrumReaderPool(int maxOpenReaders, long maxIndexMemory, SpectrumOffsetIndexStore indexStore,
+                              DecompressionCache decompressionCache) {
+        this.maxOpenReaders = Math.max(1, maxOpenReaders);
+        this.maxIndexMemory = Math.max(1, maxIndexMemory);
+        this.indexStore = indexStore;
+        this.decompressionCache = decompressionCache;
+        this.readerFactory = this::openReader;
+    }
+
+    SpectrumReaderPool(int maxOpenReaders, long maxIndexMemory, ReaderFactory readerFactory) {
+        this.maxOpenReaders = Math.max(1, maxOpenReaders);
+        this.maxIndexMemory = Math.max(1, maxIndexMemory);
+        this.indexStore = null;
+        this.decompressionCache = null;
+        this.readerFactory = readerFactory;
+    }
+
+    /**
+     * Read from the reader of a file, the reader is opened if it is not in the pool. The jmzReader readers keep the
+     * file position, so the access to each reader is serialized; different files can be read at the same time by
+     * different threads.
+     *
+     * @param filePath file path of the spectrum file
+     * @param fileType type of the spectrum file
+     * @param action   read from the reader
+     * @return the value returned by the action
+     * @throws JMzReaderException if the file can't be opened or read
+     */
+    public <T> T read(String filePath, SubmissionPipelineConstants.FileType fileType, ReaderAction<T> action)
+            throws JMzReaderException {
+        PooledReader pooledReader;
+        synchronized (this) {
+            pooledReader = readers.computeIfAbsent(filePath, path -> new PooledReader(path, fileType));
+            pooledReader.users++;
+        }
+        try {
+            synchronized (pooledReader) {
+                if (pooledReader.reader == null)
+                    open(pooledReader);
+                return action.read(pooledReader.reader);
+            }
+        } finally {
+            synchronized (this) {
+                pooledReader.users--;
+                evict();
+            }
+        }
+    }
+
+    /**
+     * Start the decompression of a spectrum file that only exists compressed, so it is ready when the file is
+     * opened. The block gzip files that are read without decompressing them are skipped.
+     *
+     * @param filePath uncompressed path of the spectrum file
+     * @param fileType type of the spectrum file
+     */
+    public void prefetch(String filePath, SubmissionPipelineConstants.FileType fileType) {
+        if (decompressionCache == null)
+            return;
+        File compressed = DecompressionCache.findCompressed(filePath);
+        if (compressed != null && !isReadCompressed(compressed, fileType))
+            decompressionCache.prefetch(filePath);
+    }
+
+    /**
+     * Close all the readers of the pool.
+     */
+    @Override
+    public synchronized void close() {
+        for (PooledReader pooledReader : readers.values())
+            closeReader(pooledReader);
+        readers.clear();
+        indexMemory = 0;
+    }
+
+    public synchronized int getOpenReaders() {
+        int open = 0;
+        for (PooledReader pooledReader : readers.values())
+            if (pooledReader.reader != null)
+                open++;
+        return open;
+    }
+
+    public synchronized long getIndexMemory() {
+        return indexMemory;
+    }
+
+    public synchronized long getOpenedReaders() {
+        return openedReaders;
+    }
+
+    public synchronized long getEvictedReaders() {
+        return evictedReaders;
+    }
+
+    private void open(PooledReader pooledReader) throws JMzReaderException {
+        long initOpen = System.currentTimeMillis();
+        // if the file can't be opened the entry stays empty and it is evicted as any other reader
+        SpectrumFileReader reader = readerFactory.open(pooledReader.filePath, pooledReader.fileType);
+        long memory = reader.getIndexMemory();
+        synchronized (this) {
+            pooledReader.reader = reader;
+            pooledReader.indexMemory = memory;
+            indexMemory += memory;
+            openedReaders++;
+        }
+        log.info("Spectrum file opened in " + (System.currentTimeMillis() - initOpen) + " ms -- "
+                + pooledReader.filePath + " (" + reader.getSpectraCount() + " spectra)");
+    }
+
+    /**
+     * Close the least recently used readers that are not being read until the pool is within its limits.
+     */
+    private void evict() {
+        if (readers.size() <= maxOpenReaders && indexMemory <= maxIndexMemory)
+            return;
+        List<PooledReader> evicted = new ArrayList<>();
+        Iterator<PooledReader> iterator = readers.values().iterator();
+        while (iterator.hasNext() && (readers.size() > maxOpenReaders || indexMemory > maxIndexMemory)) {
+            PooledReader pooledReader = iterator.next();
+            if (pooledReader.users > 0)
+                continue;
+            iterator.remove();
+            indexMemory -= pooledReader.indexMemory;
+            evicted.add(pooledReader);
+        }
+        for (PooledReader pooledReader : evicted) {
+            closeReader(pooledReader);
+            evictedReaders++;
+            log.debug("Spectrum file closed by the reader pool -- " + pooledReader.filePath);
+        }
+    }
+
+    private static void closeReader(PooledReader pooledReader) {
+        SpectrumFileReader reader = pooledReader.reader;
+        pooledReader.reader = null;
+        pooledReader.indexMemory = 0;
+        if (reader != null)
+            reader.close();
+    }
+
+    private SpectrumFileReader openReader(String filePath, SubmissionPipelineConstants.FileType fileType)
+            throws JMzReaderException {
+        File file = new File(filePath);
+        if (decompressionCache != null) {
+            File compressed = DecompressionCache.findCompressed(filePath);
+            if (compressed != null && isReadCompressed(compressed, fileType))
+                return openBlockGzipReader(compressed, fileType);
+            try {
+                file = decompressionCache.acquire(filePath);
+            } catch (IOException e) {
+                throw new JMzReaderException("Error decompressing the spectrum file -- " + filePath + " " + e.getMessage());
+            }
+            boolean opened = false;
+            try {
+                SpectrumFileReader reader = new DecompressedFileReader(openFileReader(filePath, file, fileType),
+                        decompressionCache, file);
+                opened = true;
+                return reader;
+            } finally {
+                if (!opened)
+                    decompressionCache.release(file);
+            }
+        }
+        return openFileReader(filePath, file, fileType);
+    }
+
+    private SpectrumFileReader openFileReader(String filePath, File file, SubmissionPipelineConstants.FileType fileType)
+            throws JMzReaderException {
+        if (indexStore != null && fileType == SubmissionPipelineConstants.FileType.MGF) {
+            try {
+                return new MappedMgfFileReader(file, indexStore.getIndex(file, fileType));
+            } catch (IOException e) {
+                throw new JMzReaderException("Error indexing the MGF file -- " + filePath + " " + e.getMessage());
+            }
+        }
+        if (indexStore != null && fileType == SubmissionPipelineConstants.FileType.MZML) {
+            try {
+                return new MzMlSpectrumFileReader(file, indexStore.getIndex(file, fileType));
+            } catch (IOException e) {
+                throw new JMzReaderException("Error indexing the mzML file -- " + filePath + " " + e.getMessage());
+            }
+        }
+        return new JMzSpectrumFileReader(filePath, openJMzReader(file, fileType));
+    }
+
+    /**
+     * Whether a compressed file is read without decompressing it: a block gzip MGF file with an offset index. The
+     * mzML files are always decompressed, the spectra that the streaming reader can't decode are read with jmzReader.
+     */
+    private boolean isReadCompressed(File compressed, SubmissionPipelineConstants.FileType fileType) {
+        return indexStore != null && fileType == SubmissionPipelineConstants.FileType.MGF
+                && BlockGzipReader.isBlockGzip(compressed);
+    }
+
+    private SpectrumFileReader openBlockGzipReader(File compressed, SubmissionPipelineConstants.FileType fileType)
+            throws JMzReaderException {
+        try {
+            // the offsets of the index of a gzip file are offsets in the uncompressed file
+            SpectrumOffsetIndex index = indexStore.getIndex(compressed, fileType);
+            return new MappedMgfFileReader(compressed, index, indexStore.getBlockGzipReader(compressed));
+        } catch (IOException e) {
+            throw new JMzReaderException("Error indexing the block gzip file -- " + compressed + " " + e.getMessage());
+        }
+    }
+
+    private static JMzReader openJMzReader(File file, SubmissionPipelineConstants.FileType fileType)
+            throws JMzReaderException {
+        switch (fileType) {
+            case MGF:
+                return new MgfFile(file, true);
+            case PRIDE:
+                return new PRIDEXmlWrapper(file);
+            case MZML:
+                return new MzMlWrapper(file);
+            case PKL:
+                return new PklFile(file);
+            case MZXML:
+                try {
+                    return new MzXMLFile(file);
+                } catch (MzXMLParsingException e) {
+                    throw new JMzReaderException("Error parsing the mzXML file -- " + file + " " + e.getMessage());
+                }
+            default:
+                throw new JMzReaderException("Spectrum file type not supported -- " + fileType + " " + file);
+        }
+    }
+
+    /**
+     * Read from an open reader.
+     */
+    @FunctionalInterface
+    public interface ReaderAction<T> {
+        T read(SpectrumFileReader reader) throws JMzReaderException;
+    }
+
+    @FunctionalInterface
+    interface ReaderFactory {
+        SpectrumFileReader open(String filePath, SubmissionPipelineConstants.FileType fileType) throws JMzReaderException;
+    }
+
+    /**
+     * Reader of a decompressed file, the file is released in the {@link DecompressionCache} when the reader is closed.
+     */
+    private static class DecompressedFileReader implements SpectrumFileReader {
+
+        private final SpectrumFileReader reader;
+        private final DecompressionCache decompressionCache;
+        private final File file;
+
+        DecompressedFileReader(SpectrumFileReader reader, DecompressionCache decompressionCache, File file) {
+            this.reader = reader;
+            this.decompressionCache = decompressionCache;
+            this.file = file;
+        }
+
+        @Override
+        public Spectrum getSpectrumById(String id) throws JMzReaderException {
+            return reader.getSpectrumById(id);
+        }
+
+        @Override
+        public int getSpectraCount() {
+            return reader.getSpectraCount();
+        }
+
+        @Override
+        public long getIndexMemory() {
+            return reader.getIndexMemory();
+        }
+
+        @Override
+        public void close() {
+            try {
+                reader.close();
+            } finally {
+                decompressionCache.release(file);
+            }
+        }
+    }
+
+    private static class PooledReader {
+
+        private final String filePath;
+        private final SubmissionPipelineConstants.FileType fileType;
+        private SpectrumFileReader reader;
+        private long indexMemory;
+        private int users;
+
+        PooledReader(String filePath, SubmissionPipelineConstants.FileType fileType) {
+            this.filePath = filePath;
+            this.fileType = fileType;
+        }
+    }
+}
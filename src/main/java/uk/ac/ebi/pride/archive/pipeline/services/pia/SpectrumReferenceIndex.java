@@ -0,0 +1,177 @@
+package uk.ac.ebi.pride.archive.pipeline.services.pia;
+
+import de.mpc.pia.modeller.psm.ReportPSM;
+import uk.ac.ebi.jmzidml.model.mzidml.SpectraData;
+import uk.ac.ebi.pride.archive.pipeline.utility.SubmissionPipelineConstants;
+import uk.ac.ebi.pride.archive.spectra.utils.Constants;
+import uk.ac.ebi.pride.tools.jmzreader.JMzReaderException;
+import uk.ac.ebi.pride.tools.jmzreader.model.Spectrum;
+import uk.ac.ebi.pride.utilities.util.Triple;
+
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Index of the spectrum files of an assay. It is built once after the inference and maps each {@link SpectraData} id
+ * to the spectrum file, the file name and the spectrum id format, so every PSM resolves its spectrum
+ * file, spectrum id and USI with hash lookups.
+ *
+ * For PRIDE XML assays, where the spectra are in the result file, the index contains only the result file and the
+ * source id of the PSM is used as spectrum id.
+ */
+public class SpectrumReferenceIndex {
+
+    private final Map<String, SpectrumFileReference> references = new HashMap<>();
+    private SpectrumFileReference resultFileReference;
+
+    private SpectrumReferenceIndex() {
+    }
+
+    /**
+     * Build the index for the spectrum files related with the result file of the assay.
+     *
+     * @param projectAccession Project accession
+     * @param relatedFiles     Relation between spectrum files and {@link SpectraData}
+     * @param service          Spectrum service of the assay
+     * @return SpectrumReferenceIndex
+     */
+    public static SpectrumReferenceIndex build(String projectAccession,
+                                               List<Triple<String, SpectraData, SubmissionPipelineConstants.FileType>> relatedFiles,
+                                               JmzReaderSpectrumService service) {
+        SpectrumReferenceIndex index = new SpectrumReferenceIndex();
+        for (Triple<String, SpectraData, SubmissionPipelineConstants.FileType> relatedFile : relatedFiles) {
+            SubmissionPipelineConstants.SpecIdFormat idFormat = SubmissionPipelineConstants
+                    .getSpectraDataIdFormat(relatedFile.getSecond().getSpectrumIDFormat().getCvParam().getAccession());
+            String fileName = Paths.get(relatedFile.getFirst()).getFileName().toString();
+            SpectrumFileReference reference = new SpectrumFileReference(service, relatedFile.getFirst(),
+                    relatedFile.getFirst(), fileName, relatedFile.getThird(), idFormat, projectAccession);
+            // the first file that matches the SpectraData is used, as the previous linear search did.
+            index.references.putIfAbsent(key(relatedFile.getSecond().getId()), reference);
+        }
+        return index;
+    }
+
+    /**
+     * Build the index for an assay where the spectra are in the result file (PRIDE XML).
+     *
+     * @param projectAccession Project accession
+     * @param filePath         Path of the uncompressed result file
+     * @param fileName         Name of the uncompressed result file
+     * @param service          Spectrum service of the assay
+     * @return SpectrumReferenceIndex
+     */
+    public static SpectrumReferenceIndex buildForResultFile(String projectAccession, String filePath, String fileName,
+                                                            JmzReaderSpectrumService service) {
+        SpectrumReferenceIndex index = new SpectrumReferenceIndex();
+        index.resultFileReference = new SpectrumFileReference(service, filePath, fileName, fileName,
+                SubmissionPipelineConstants.FileType.PRIDE, null, projectAccession);
+        return index;
+    }
+
+    /**
+     * Spectrum file of a PSM.
+     *
+     * @param psm PSM
+     * @return {@link SpectrumFileReference}, null if the SpectraData of the PSM is not in the index.
+     */
+    public SpectrumFileReference getReference(ReportPSM psm) {
+        if (resultFileReference != null)
+            return resultFileReference;
+        return references.get(key(psm.getSpectrum().getSpectrumIdentification()
+                .getInputSpectra().get(0).getSpectraDataRef()));
+    }
+
+    public int size() {
+        return (resultFileReference != null) ? 1 : references.size();
+    }
+
+    private static String key(String spectraDataId) {
+        return spectraDataId.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Spectrum file resolved for a {@link SpectraData}, including the strategy to compute the spectrum id
+     * and the precomputed beginning of the USIs of the file.
+     */
+    public static class SpectrumFileReference {
+
+        private final JmzReaderSpectrumService service;
+        private final String filePath;
+        private final String spectrumFile;
+        private final String fileName;
+        private final SubmissionPipelineConstants.FileType fileType;
+        private final SubmissionPipelineConstants.SpecIdFormat idFormat;
+        private final String usiPrefix;
+
+        SpectrumFileReference(JmzReaderSpectrumService service, String filePath, String spectrumFile, String fileName,
+                              SubmissionPipelineConstants.FileType fileType,
+                              SubmissionPipelineConstants.SpecIdFormat idFormat, String projectAccession) {
+            this.service = service;
+            this.filePath = filePath;
+            this.spectrumFile = spectrumFile;
+            this.fileName = fileName;
+            this.fileType = fileType;
+            this.idFormat = idFormat;
+            Constants.ScanType scanType = (idFormat != null) ? SubmissionPipelineConstants.getUsiScanType(idFormat)
+                    : Constants.ScanType.INDEX;
+            this.usiPrefix = SubmissionPipelineConstants.buildUsiPrefix(projectAccession, fileName, scanType);
+        }
+
+        /**
+         * Spectrum id of the PSM in this file, the source id of the PSM when the spectra are in the result file.
+         */
+        public String getSpectrumId(ReportPSM psm) {
+            if (idFormat == null)
+                return psm.getSourceID();
+            return SubmissionPipelineConstants.getSpectrumId(idFormat, psm);
+        }
+
+        /**
+         * USI of the PSM, the same value as {@link SubmissionPipelineConstants#buildUsi}.
+         */
+        public String buildUsi(ReportPSM psm, String spectrumId) {
+            return buildUsi(psm, spectrumId,
+                    SubmissionPipelineConstants.encodePeptide(psm.getSequence(), psm.getModifications()));
+        }
+
+        /**
+         * USI of the PSM with its already encoded sequence ({@link UsiEncoder#encodePeptide}).
+         */
+        public String buildUsi(ReportPSM psm, String spectrumId, String modifiedSequence) {
+            String usiSpectrumId = (idFormat != null) ? SubmissionPipelineConstants.getUsiSpectrumId(idFormat, spectrumId)
+                    : spectrumId;
+            return UsiEncoder.buildUsi(usiPrefix, usiSpectrumId, modifiedSequence, psm);
+        }
+
+        public Spectrum getSpectrum(String spectrumId) throws JMzReaderException {
+            return service.getSpectrum(filePath, spectrumId);
+        }
+
+        public String getFilePath() {
+            return filePath;
+        }
+
+        public String getSpectrumFile() {
+            return spectrumFile;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public SubmissionPipelineConstants.FileType getFileType() {
+            return fileType;
+        }
+
+        public SubmissionPipelineConstants.SpecIdFormat getIdFormat() {
+            return idFormat;
+        }
+
+        public String getUsiPrefix() {
+            return usiPrefix;
+        }
+    }
+}
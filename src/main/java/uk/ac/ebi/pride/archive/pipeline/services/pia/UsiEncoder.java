@@ -0,0 +1,119 @@
+package uk.ac.ebi.pride.archive.pipeline.services.pia;
+
+import de.mpc.pia.intermediate.Modification;
+import de.mpc.pia.modeller.peptide.ReportPeptide;
+import de.mpc.pia.modeller.psm.ReportPSM;
+import uk.ac.ebi.pride.archive.pipeline.utility.SubmissionPipelineConstants;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Encoder of the USIs and the modified sequences of the PSMs of an assay. The encoded peptide
+ * ({@link SubmissionPipelineConstants#encodePeptide}) is computed once per {@link ReportPeptide} and reused by all its
+ * PSMs, for the USI and for the modified sequence of the PSM summary; a PSM with other modifications than the one that
+ * was memoized (the peptides don't always consider the modifications) is encoded again. The USIs are built in a
+ * {@link StringBuilder} reused by the calling thread, the result is the same as
+ * {@link SubmissionPipelineConstants#buildUsi}.
+ *
+ * The encoder is thread safe, one instance is used for all the workers of an assay.
+ */
+public class UsiEncoder {
+
+    private static final int BUILDER_CAPACITY = 256;
+
+    private static final ThreadLocal<StringBuilder> BUILDERS =
+            ThreadLocal.withInitial(() -> new StringBuilder(BUILDER_CAPACITY));
+
+    private final Map<Long, EncodedPeptide> peptides = new ConcurrentHashMap<>();
+
+    /**
+     * Encoded sequence of a PSM or a peptide, memoized for the peptide.
+     *
+     * @param peptide       peptide of the PSM, the key of the memoized value
+     * @param sequence      sequence of the PSM
+     * @param modifications modifications of the PSM by position
+     * @return the same value as {@link SubmissionPipelineConstants#encodePeptide}
+     */
+    public String encodePeptide(ReportPeptide peptide, String sequence, Map<Integer, Modification> modifications) {
+        Long peptideId = peptide.getPeptide().getID();
+        EncodedPeptide encoded = peptides.get(peptideId);
+        if (encoded != null && encoded.matches(sequence, modifications))
+            return encoded.value;
+
+        StringBuilder builder = builder();
+        SubmissionPipelineConstants.appendEncodedPeptide(builder, sequence, modifications);
+        EncodedPeptide newEncoded = new EncodedPeptide(sequence, modifications, builder.toString());
+        if (encoded == null)
+            peptides.putIfAbsent(peptideId, newEncoded);
+        return newEncoded.value;
+    }
+
+    /**
+     * USI of a PSM.
+     *
+     * @param usiPrefix        USI prefix of the spectrum file ({@link SubmissionPipelineConstants#buildUsiPrefix})
+     * @param usiSpectrumId    spectrum identifier of the USI
+     * @param modifiedSequence encoded sequence of the PSM ({@link #encodePeptide})
+     * @param psm              PSM
+     * @return USI
+     */
+    public static String buildUsi(String usiPrefix, String usiSpectrumId, String modifiedSequence, ReportPSM psm) {
+        return builder()
+                .append(usiPrefix).append(usiSpectrumId).append(':')
+                .append(modifiedSequence).append('/').append(psm.getCharge())
+                .toString();
+    }
+
+    /**
+     * Number of memoized peptides.
+     */
+    public int size() {
+        return peptides.size();
+    }
+
+    private static StringBuilder builder() {
+        StringBuilder builder = BUILDERS.get();
+        builder.setLength(0);
+        return builder;
+    }
+
+    /**
+     * Encoded sequence and the inputs that are part of it: the sequence and the accessions of the modifications by
+     * position.
+     */
+    private static class EncodedPeptide {
+
+        private final String sequence;
+        private final Map<Integer, String> accessions;
+        private final String value;
+
+        EncodedPeptide(String sequence, Map<Integer, Modification> modifications, String value) {
+            this.sequence = sequence;
+            this.accessions = new HashMap<>();
+            if (modifications != null)
+                modifications.forEach((position, modification) -> accessions.put(position,
+                        (modification != null) ? modification.getAccession() : null));
+            this.value = value;
+        }
+
+        boolean matches(String otherSequence, Map<Integer, Modification> modifications) {
+            if (!sequence.equals(otherSequence))
+                return false;
+            int size = (modifications != null) ? modifications.size() : 0;
+            if (size != accessions.size())
+                return false;
+            if (size == 0)
+                return true;
+            for (Map.Entry<Integer, Modification> entry : modifications.entrySet()) {
+                Modification modification = entry.getValue();
+                if (!accessions.containsKey(entry.getKey()) || !Objects.equals(accessions.get(entry.getKey()),
+                        (modification != null) ? modification.getAccession() : null))
+                    return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package uk.ac.ebi.pride.archive.pipeline.services.redis;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.ListOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.util.Assert;
+import uk.ac.ebi.pride.integration.message.model.impl.AssayDataGenerationPayload;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reliable consumer of the assay analysis queue ({@code redis.assay.analyse.queue}). The messages are pushed by
+ * {@link RedisMessageNotifier#sendNotification} (LPUSH), so they are taken from the other end of the list to
+ * keep the FIFO order.
+ *
+ * A message taken from the queue is atomically moved (BRPOPLPUSH) to the processing list of the worker and it is
+ * only removed from there when the analysis is acknowledged, so the messages of a worker that dies are not lost:
+ * {@link #recover()} moves them back to the queue when the worker starts again. The messages that can't be
+ * analysed are moved to the failed list.
+ *
+ * The processing and failed lists use the queue name as hash tag, so they are in the same slot of the
+ * Redis cluster as the queue and the moves between them are atomic.
+ */
+@Slf4j
+public class RedisAssayAnalysisQueue {
+
+    private static final String PROCESSING_SUFFIX = ".processing.";
+    private static final String FAILED_SUFFIX = ".failed";
+
+    private final String queueName;
+    private final String processingListName;
+    private final String failedListName;
+    private final ListOperations<String, String> listOperations;
+    private final Jackson2JsonRedisSerializer<AssayDataGenerationPayload> payloadSerializer =
+            new Jackson2JsonRedisSerializer<>(AssayDataGenerationPayload.class);
+
+    /**
+     * Create a consumer of the queue.
+     *
+     * @param redisConnectionFactory Redis connection factory
+     * @param queueName              name of the queue
+     * @param workerId               identifier of the worker, unique for each worker that consumes the queue
+     */
+    public RedisAssayAnalysisQueue(RedisConnectionFactory redisConnectionFactory, String queueName, String workerId) {
+        Assert.notNull(redisConnectionFactory, "Redis connection factory cannot be null");
+        Assert.hasText(queueName, "The name of the queue cannot be empty");
+        Assert.hasText(workerId, "The worker id cannot be empty");
+        this.queueName = queueName;
+        this.processingListName = "{" + queueName + "}" + PROCESSING_SUFFIX + workerId;
+        this.failedListName = "{" + queueName + "}" + FAILED_SUFFIX;
+
+        RedisTemplate<String, String> redisTemplate = new RedisTemplate<>();
+        redisTemplate.setConnectionFactory(redisConnectionFactory);
+        redisTemplate.setKeySerializer(new StringRedisSerializer());
+        redisTemplate.setValueSerializer(new StringRedisSerializer());
+        redisTemplate.afterPropertiesSet();
+        this.listOperations = redisTemplate.opsForList();
+    }
+
+    /**
+     * Take the next message of the queue and move it to the processing list of the worker.
+     *
+     * @param timeoutSeconds maximum time to wait for a message
+     * @return message, null if the queue is empty after the timeout
+     */
+    public String take(long timeoutSeconds) {
+        return listOperations.rightPopAndLeftPush(queueName, processingListName, timeoutSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Acknowledge a message, the analysis of the assay has finished.
+     */
+    public void ack(String message) {
+        listOperations.remove(processingListName, 1, message);
+    }
+
+    /**
+     * Move a message that can't be analysed to the failed list.
+     */
+    public void fail(String message) {
+        listOperations.leftPush(failedListName, message);
+        listOperations.remove(processingListName, 1, message);
+    }
+
+    /**
+     * Give back a message that has been taken but not analysed, it will be the next message of the queue.
+     */
+    public void requeue(String message) {
+        listOperations.rightPush(queueName, message);
+        listOperations.remove(processingListName, 1, message);
+    }
+
+    /**
+     * Move back to the queue the messages left in the processing list of the worker by a previous run that
+     * didn't finish.
+     *
+     * @return number of messages recovered
+     */
+    public int recover() {
+        int recovered = 0;
+        while (listOperations.rightPopAndLeftPush(processingListName, queueName) != null) {
+            recovered++;
+        }
+        if (recovered > 0)
+            log.info("Recovered " + recovered + " unfinished assays from " + processingListName);
+        return recovered;
+    }
+
+    /**
+     * Parse the {@link AssayDataGenerationPayload} of a message.
+     *
+     * @return payload, null if the message is not a valid payload
+     */
+    public AssayDataGenerationPayload parse(String message) {
+        try {
+            AssayDataGenerationPayload payload = payloadSerializer.deserialize(message.getBytes(StandardCharsets.UTF_8));
+            if (payload == null || payload.getProjectAccession() == null || payload.getAssayAccession() == null)
+                return null;
+            return payload;
+        } catch (SerializationException e) {
+            log.error("The message can't be parsed -- " + message, e);
+            return null;
+        }
+    }
+
+    public long size() {
+        Long size = listOperations.size(queueName);
+        return (size != null) ? size : 0;
+    }
+
+    public long processingSize() {
+        Long size = listOperations.size(processingListName);
+        return (size != null) ? size : 0;
+    }
+
+    public long failedSize() {
+        Long size = listOperations.size(failedListName);
+        return (size != null) ? size : 0;
+    }
+
+    public String getQueueName() {
+        return queueName;
+    }
+
+    public String getProcessingListName() {
+        return processingListName;
+    }
+
+    public String getFailedListName() {
+        return failedListName;
+    }
+}
@@ -0,0 +1,217 @@
+package uk.ac.ebi.pride.archive.pipeline.services.spectra;
+
+import com.amazonaws.SdkClientException;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import uk.ac.ebi.pride.archive.dataprovider.data.peptide.PSMProvider;
+import uk.ac.ebi.pride.archive.pipeline.metrics.PipelineMetrics;
+import uk.ac.ebi.pride.archive.pipeline.metrics.PipelineProfiler;
+import uk.ac.ebi.pride.archive.spectra.services.S3SpectralArchive;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Upload stage for the spectra pushed to the S3 spectra archive. The uploads run in a pool of upload threads,
+ * away from the thread that builds the PSMs. The number of spectra waiting to be uploaded is bounded, so
+ * {@link #submit(String, PSMProvider)} blocks when S3 is slower than the producer.
+ *
+ * Failed uploads ({@link SdkClientException}) are retried with a jittered exponential backoff. The uploads that
+ * failed after all the retries are collected and reported together by {@link #awaitCompletion()}. Every upload attempt
+ * is recorded in the S3 timer of {@link PipelineMetrics#IO_TIMER}.
+ */
+@Slf4j
+public class AsyncSpectrumUploader {
+
+    private static final int MAX_REPORTED_FAILURES = 20;
+
+    private final S3SpectralArchive spectralArchive;
+    private final int maxRetries;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final Timer uploadTimer = PipelineMetrics.ioTimer(PipelineMetrics.Dependency.S3, "S3SpectralArchive.writePSM");
+
+    private final ThreadPoolExecutor uploadExecutor;
+    private final ScheduledExecutorService progressReporter;
+    private final Semaphore pendingUploads;
+
+    private final AtomicLong submittedSpectra = new AtomicLong();
+    private final AtomicLong uploadedSpectra = new AtomicLong();
+    private final AtomicLong retriedUploads = new AtomicLong();
+    private final List<String> failedUsis = Collections.synchronizedList(new ArrayList<>());
+    private volatile Exception lastFailure;
+
+    private final long startTime = System.currentTimeMillis();
+    private long lastReportTime = startTime;
+    private long lastReportUploaded = 0;
+
+    /**
+     * Create the upload stage.
+     *
+     * @param spectralArchive        S3 spectra archive
+     * @param concurrentUploads      number of uploads running at the same time
+     * @param queueCapacity          maximum number of spectra waiting to be uploaded
+     * @param maxRetries             number of retries of a failed upload
+     * @param initialBackoffMillis   backoff before the first retry, doubled for every following retry
+     * @param maxBackoffMillis       maximum backoff between two retries
+     * @param progressIntervalSeconds interval between two progress reports in the log, 0 or less for no periodic
+     *                                report
+     */
+    public AsyncSpectrumUploader(S3SpectralArchive spectralArchive, int concurrentUploads, int queueCapacity,
+                                 int maxRetries, long initialBackoffMillis, long maxBackoffMillis,
+                                 long progressIntervalSeconds) {
+        this.spectralArchive = spectralArchive;
+        this.maxRetries = maxRetries;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+
+        int threads = Math.max(1, concurrentUploads);
+        int capacity = Math.max(1, queueCapacity);
+        this.pendingUploads = new Semaphore(threads + capacity);
+        this.uploadExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), new CustomizableThreadFactory("s3-upload-"));
+
+        // the thread of the reporter is only started when the reports are scheduled
+        this.progressReporter = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("s3-upload-progress-"));
+        if (progressIntervalSeconds > 0)
+            this.progressReporter.scheduleAtFixedRate(this::reportProgress, progressIntervalSeconds,
+                    progressIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Queue a spectrum to be uploaded. This method blocks if the queue of pending uploads is full.
+     *
+     * @param usi USI of the spectrum
+     * @param psm Spectrum to be uploaded
+     */
+    public void submit(String usi, PSMProvider psm) throws InterruptedException {
+        pendingUploads.acquire();
+        submittedSpectra.incrementAndGet();
+        try {
+            uploadExecutor.execute(() -> {
+                try {
+                    upload(usi, psm);
+                } finally {
+                    pendingUploads.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pendingUploads.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Wait until all the submitted spectra have been uploaded. The uploader can't be used after this call.
+     *
+     * @throws Exception if one or more spectra can't be uploaded after all the retries
+     */
+    public void awaitCompletion() throws Exception {
+        uploadExecutor.shutdown();
+        try {
+            while (!uploadExecutor.awaitTermination(1, TimeUnit.MINUTES)) {
+                reportProgress();
+            }
+        } finally {
+            progressReporter.shutdownNow();
+        }
+
+        long totalTime = System.currentTimeMillis() - startTime;
+        log.info("S3 upload finished -- uploaded: " + uploadedSpectra.get() + " retries: " + retriedUploads.get()
+                + " failed: " + failedUsis.size() + " time: " + totalTime + " ms");
+
+        if (!failedUsis.isEmpty()) {
+            List<String> reported;
+            synchronized (failedUsis) {
+                reported = new ArrayList<>(failedUsis.subList(0, Math.min(MAX_REPORTED_FAILURES, failedUsis.size())));
+            }
+            throw new Exception("The S3 is not working properly, " + failedUsis.size()
+                    + " spectra failed after multiple retries -- " + String.join(", ", reported), lastFailure);
+        }
+    }
+
+    /**
+     * Stop the uploads without waiting for the pending spectra, used when the step fails.
+     */
+    public void shutdownNow() {
+        uploadExecutor.shutdownNow();
+        progressReporter.shutdownNow();
+    }
+
+    public int getQueueDepth() {
+        return uploadExecutor.getQueue().size();
+    }
+
+    public long getUploadedSpectra() {
+        return uploadedSpectra.get();
+    }
+
+    private void upload(String usi, PSMProvider psm) {
+        int retry = 0;
+        while (true) {
+            try {
+                PipelineProfiler.Span span = PipelineProfiler.start(PipelineProfiler.Phase.S3_PUT);
+                long initUpload = System.nanoTime();
+                try {
+                    spectralArchive.writePSM(usi, psm);
+                } finally {
+                    uploadTimer.record(System.nanoTime() - initUpload, TimeUnit.NANOSECONDS);
+                    span.close();
+                }
+                uploadedSpectra.incrementAndGet();
+                return;
+            } catch (SdkClientException e) {
+                if (retry >= maxRetries) {
+                    log.error("The spectrum can't be pushed to S3 after " + retry + " retries -- " + usi, e);
+                    failedUsis.add(usi);
+                    lastFailure = e;
+                    return;
+                }
+                retriedUploads.incrementAndGet();
+                try {
+                    Thread.sleep(backoff(retry));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    failedUsis.add(usi);
+                    lastFailure = e;
+                    return;
+                }
+                retry++;
+            } catch (Exception e) {
+                log.error("The spectrum can't be pushed to S3 -- " + usi, e);
+                failedUsis.add(usi);
+                lastFailure = e;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Exponential backoff with jitter, the value is between half and the full exponential backoff of the retry.
+     *
+     * @param retry number of the retry, starting at 0
+     * @return time to wait in milliseconds
+     */
+    long backoff(int retry) {
+        long backoff = initialBackoffMillis << Math.min(retry, 30);
+        if (backoff <= 0 || backoff > maxBackoffMillis)
+            backoff = maxBackoffMillis;
+        long half = backoff / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+
+    private synchronized void reportProgress() {
+        long now = System.currentTimeMillis();
+        long uploaded = uploadedSpectra.get();
+        double rate = (now > lastReportTime) ? (uploaded - lastReportUploaded) * 1000.0 / (now - lastReportTime) : 0;
+        log.info(String.format("S3 upload -- submitted: %d uploaded: %d (%.1f spectra/s) queue depth: %d active: %d retries: %d failed: %d",
+                submittedSpectra.get(), uploaded, rate, getQueueDepth(), uploadExecutor.getActiveCount(),
+                retriedUploads.get(), failedUsis.size()));
+        lastReportTime = now;
+        lastReportUploaded = uploaded;
+    }
+}
@@ -0,0 +1,95 @@
+package uk.ac.ebi.pride.archive.pipeline.services.spectra;
+
+import uk.ac.ebi.pride.tools.jmzreader.model.Spectrum;
+import uk.ac.ebi.pride.tools.jmzreader.model.impl.ParamGroup;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * jmzReader {@link Spectrum} with the peaks in primitive arrays, returned by the readers of the pipeline that parse
+ * the peaks without boxing them. {@link SpectrumPeaks} boxes the peaks straight from the arrays; the boxed peak list
+ * is only built if {@link #getPeakList()} is called.
+ */
+public class PeakArraySpectrum implements Spectrum {
+
+    private final String id;
+    private final Integer msLevel;
+    private final Integer precursorCharge;
+    private final Double precursorMz;
+    private final Double precursorIntensity;
+    private final double[] mz;
+    private final double[] intensities;
+    private final int size;
+
+    public PeakArraySpectrum(String id, Integer msLevel, Integer precursorCharge, Double precursorMz,
+                             Double precursorIntensity, double[] mz, double[] intensities, int size) {
+        this.id = id;
+        this.msLevel = msLevel;
+        this.precursorCharge = precursorCharge;
+        this.precursorMz = precursorMz;
+        this.precursorIntensity = precursorIntensity;
+        this.mz = mz;
+        this.intensities = intensities;
+        this.size = size;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public Integer getPrecursorCharge() {
+        return precursorCharge;
+    }
+
+    @Override
+    public Double getPrecursorMZ() {
+        return precursorMz;
+    }
+
+    @Override
+    public Double getPrecursorIntensity() {
+        return precursorIntensity;
+    }
+
+    /**
+     * Boxed copy of the peaks in file order.
+     */
+    @Override
+    public Map<Double, Double> getPeakList() {
+        Map<Double, Double> peakList = new LinkedHashMap<>(size * 2);
+        for (int i = 0; i < size; i++)
+            peakList.put(mz[i], intensities[i]);
+        return peakList;
+    }
+
+    @Override
+    public Integer getMsLevel() {
+        return msLevel;
+    }
+
+    @Override
+    public ParamGroup getAdditional() {
+        return new ParamGroup();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Backing array of the m/z values, only the first {@link #size()} values are valid.
+     */
+    public double[] mzArray() {
+        return mz;
+    }
+
+    /**
+     * Backing array of the intensities, only the first {@link #size()} values are valid.
+     */
+    public double[] intensityArray() {
+        return intensities;
+    }
+}
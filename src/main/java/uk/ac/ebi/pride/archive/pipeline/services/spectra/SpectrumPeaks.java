@@ -0,0 +1,111 @@
+package uk.ac.ebi.pride.archive.pipeline.services.spectra;
+
+import uk.ac.ebi.pride.tools.jmzreader.model.Spectrum;
+
+import java.util.Map;
+
+/**
+ * Peaks of a spectrum, for the models that only accept {@code Double[]}
+ * (e.g. {@link uk.ac.ebi.pride.archive.spectra.model.ArchiveSpectrum}). The peaks are not copied when they are
+ * loaded, the boxed arrays are built from the source of the peaks:
+ *
+ * <ul>
+ *     <li>a peak list (the jmzReader readers): its {@link Double} objects are reused, nothing is boxed again.</li>
+ *     <li>primitive arrays (the readers of the pipeline, {@link PeakArraySpectrum}): every peak is boxed once,
+ *     straight from the arrays of the spectrum.</li>
+ * </ul>
+ *
+ * The source of the peaks must not be modified until the boxed arrays have been built. This class is not thread safe.
+ */
+public class SpectrumPeaks {
+
+    private double[] mz;
+    private double[] intensities;
+    private int size;
+    private Map<Double, Double> peakList;
+
+    /**
+     * Load the peaks of a jmzReader {@link Spectrum}, replacing the current peaks.
+     *
+     * @param spectrum Spectrum read from a peak list file
+     * @return this object
+     */
+    public SpectrumPeaks load(Spectrum spectrum) {
+        if (spectrum instanceof PeakArraySpectrum) {
+            PeakArraySpectrum peakArraySpectrum = (PeakArraySpectrum) spectrum;
+            return load(peakArraySpectrum.mzArray(), peakArraySpectrum.intensityArray(), peakArraySpectrum.size());
+        }
+        return load(spectrum.getPeakList());
+    }
+
+    /**
+     * Load the first peaks of two arrays, replacing the current peaks. The arrays are not copied.
+     *
+     * @param peakMz          m/z values
+     * @param peakIntensities intensities
+     * @param count           number of peaks
+     * @return this object
+     */
+    public SpectrumPeaks load(double[] peakMz, double[] peakIntensities, int count) {
+        clear();
+        mz = peakMz;
+        intensities = peakIntensities;
+        size = count;
+        return this;
+    }
+
+    /**
+     * Load a peak list (m/z to intensity), replacing the current peaks. The peak list is not copied.
+     *
+     * @param peakList Peak list
+     * @return this object
+     */
+    public SpectrumPeaks load(Map<Double, Double> peakList) {
+        clear();
+        if (peakList == null)
+            return this;
+        this.peakList = peakList;
+        size = peakList.size();
+        return this;
+    }
+
+    /**
+     * Release the source of the peaks.
+     */
+    public void clear() {
+        mz = null;
+        intensities = null;
+        peakList = null;
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Boxed copy of the m/z values. The values of a loaded peak list are not boxed again.
+     */
+    public Double[] toMzObjectArray() {
+        if (peakList != null)
+            return peakList.keySet().toArray(new Double[size]);
+        return box(mz, size);
+    }
+
+    /**
+     * Boxed copy of the intensities. The values of a loaded peak list are not boxed again.
+     */
+    public Double[] toIntensityObjectArray() {
+        if (peakList != null)
+            return peakList.values().toArray(new Double[size]);
+        return box(intensities, size);
+    }
+
+    private static Double[] box(double[] values, int size) {
+        Double[] boxed = new Double[size];
+        for (int i = 0; i < size; i++) {
+            boxed[i] = values[i];
+        }
+        return boxed;
+    }
+}
@@ -0,0 +1,21 @@
+package uk.ac.ebi.pride.archive.pipeline.services.worker;
+
+/**
+ * Analysis of one assay, run by the {@link AssayAnalysisWorker} in one of its slots.
+ */
+public interface AssayAnalysisRunner {
+
+    /**
+     * Analyse an assay. The method returns when the analysis has finished.
+     *
+     * @param projectAccession project accession
+     * @param assayAccession   assay accession
+     * @throws Exception if the analysis failed
+     */
+    void analyse(String projectAccession, String assayAccession) throws Exception;
+
+    /**
+     * Maximum number of analyses this runner can run at the same time in the JVM.
+     */
+    int getMaxConcurrentAnalyses();
+}
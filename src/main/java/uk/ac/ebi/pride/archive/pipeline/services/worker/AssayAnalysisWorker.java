@@ -0,0 +1,229 @@
+package uk.ac.ebi.pride.archive.pipeline.services.worker;
+
+import lombok.extern.slf4j.Slf4j;
+import uk.ac.ebi.pride.archive.pipeline.services.redis.RedisAssayAnalysisQueue;
+import uk.ac.ebi.pride.integration.message.model.impl.AssayDataGenerationPayload;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Long-running consumer of the assay analysis queue. The assays are analysed in the JVM of the worker, so the
+ * Spring context and the connections to the databases and S3 are created only once for all of them.
+ *
+ * <ul>
+ *     <li>The worker has a number of slots, each slot analyses one assay at a time. The number of slots is limited
+ *     by {@link AssayAnalysisRunner#getMaxConcurrentAnalyses()}.</li>
+ *     <li>Every assay reserves an estimate of its memory from the memory budget of the worker before it starts,
+ *     a new assay waits in the processing list until enough memory has been released by the running ones.</li>
+ *     <li>A message is acknowledged only when the analysis has finished, the messages of the failed analyses are
+ *     moved to the failed list and the messages left by a previous run are recovered when the worker starts.</li>
+ *     <li>{@link #stop()} stops taking new assays and waits for the running ones.</li>
+ * </ul>
+ */
+@Slf4j
+public class AssayAnalysisWorker {
+
+    private final RedisAssayAnalysisQueue queue;
+    private final AssayAnalysisRunner runner;
+    private final int slots;
+    private final int memoryBudget;
+    private final int assayMemory;
+    private final long pollTimeout;
+    private final long shutdownTimeout;
+
+    private final Semaphore freeSlots;
+    private final Semaphore freeMemory;
+    private final ExecutorService executor;
+    private final AtomicInteger runningAnalyses = new AtomicInteger();
+    private final CountDownLatch terminated = new CountDownLatch(1);
+
+    private volatile boolean running;
+    private Thread consumer;
+
+    /**
+     * Create a worker.
+     *
+     * @param queue           queue of the assays
+     * @param runner          runner of the analyses
+     * @param slots           number of assays analysed at the same time
+     * @param memoryBudget    memory available for the analyses in MB
+     * @param assayMemory     memory reserved for each analysis in MB
+     * @param pollTimeout     maximum time in seconds waiting for a message, and for memory, before checking if the
+     *                        worker has been stopped
+     * @param shutdownTimeout maximum time in seconds waiting for the running analyses when the worker is stopped
+     */
+    public AssayAnalysisWorker(RedisAssayAnalysisQueue queue, AssayAnalysisRunner runner, int slots,
+                               int memoryBudget, int assayMemory, long pollTimeout, long shutdownTimeout) {
+        this.queue = queue;
+        this.runner = runner;
+        int maxSlots = Math.max(1, runner.getMaxConcurrentAnalyses());
+        if (slots > maxSlots)
+            log.warn("The assay analysis runner supports " + maxSlots + " concurrent analyses, using " + maxSlots
+                    + " slots instead of " + slots);
+        this.slots = Math.max(1, Math.min(slots, maxSlots));
+        this.memoryBudget = Math.max(1, memoryBudget);
+        // an assay bigger than the budget runs alone
+        this.assayMemory = Math.max(1, Math.min(assayMemory, this.memoryBudget));
+        this.pollTimeout = Math.max(1, pollTimeout);
+        this.shutdownTimeout = shutdownTimeout;
+
+        this.freeSlots = new Semaphore(this.slots);
+        this.freeMemory = new Semaphore(this.memoryBudget);
+        this.executor = Executors.newFixedThreadPool(this.slots);
+    }
+
+    /**
+     * Recover the unfinished messages of the previous run and start consuming the queue.
+     */
+    public synchronized void start() {
+        if (running)
+            return;
+        queue.recover();
+        running = true;
+        consumer = new Thread(this::consume, "assay-analysis-worker");
+        consumer.start();
+        log.info("Assay analysis worker started on " + queue.getQueueName() + " -- slots: " + slots
+                + ", memory budget: " + memoryBudget + " MB, memory per assay: " + assayMemory + " MB");
+    }
+
+    /**
+     * Stop taking new assays and wait for the running analyses. The analyses that don't finish before the shutdown
+     * timeout are not acknowledged, their messages are recovered when the worker starts again.
+     */
+    public synchronized void stop() throws InterruptedException {
+        if (consumer == null) {
+            terminated.countDown();
+            return;
+        }
+        running = false;
+        consumer.join();
+        consumer = null;
+
+        log.info("Stopping the assay analysis worker, waiting for " + runningAnalyses.get() + " running analyses");
+        executor.shutdown();
+        if (!executor.awaitTermination(shutdownTimeout, TimeUnit.SECONDS)) {
+            log.warn(runningAnalyses.get() + " analyses didn't finish in " + shutdownTimeout
+                    + " seconds, they will be analysed again when the worker restarts");
+            executor.shutdownNow();
+        }
+        terminated.countDown();
+        log.info("Assay analysis worker stopped");
+    }
+
+    /**
+     * Wait until the worker is stopped.
+     */
+    public void awaitTermination() throws InterruptedException {
+        terminated.await();
+    }
+
+    public int getSlots() {
+        return slots;
+    }
+
+    public int getRunningAnalyses() {
+        return runningAnalyses.get();
+    }
+
+    private void consume() {
+        while (running) {
+            try {
+                if (!freeSlots.tryAcquire(pollTimeout, TimeUnit.SECONDS))
+                    continue;
+                boolean submitted = false;
+                try {
+                    submitted = submitNext();
+                } finally {
+                    if (!submitted)
+                        freeSlots.release();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                log.error("Error consuming the queue " + queue.getQueueName(), e);
+                sleepAfterError();
+            }
+        }
+    }
+
+    /**
+     * Take the next message and submit its analysis.
+     *
+     * @return true if an analysis has been submitted to a slot
+     */
+    private boolean submitNext() throws InterruptedException {
+        String message = queue.take(pollTimeout);
+        if (message == null)
+            return false;
+
+        AssayDataGenerationPayload payload = queue.parse(message);
+        if (payload == null) {
+            log.error("Invalid assay analysis message moved to " + queue.getFailedListName() + " -- " + message);
+            queue.fail(message);
+            return false;
+        }
+
+        while (!freeMemory.tryAcquire(assayMemory, pollTimeout, TimeUnit.SECONDS)) {
+            if (!running) {
+                queue.requeue(message);
+                return false;
+            }
+        }
+
+        try {
+            executor.submit(() -> analyse(message, payload));
+        } catch (RuntimeException e) {
+            freeMemory.release(assayMemory);
+            queue.requeue(message);
+            throw e;
+        }
+        return true;
+    }
+
+    private void analyse(String message, AssayDataGenerationPayload payload) {
+        String assay = payload.getProjectAccession() + " - " + payload.getAssayAccession();
+        long initAnalysis = System.currentTimeMillis();
+        runningAnalyses.incrementAndGet();
+        try {
+            boolean analysed = false;
+            try {
+                log.info("Analysing assay " + assay);
+                runner.analyse(payload.getProjectAccession(), payload.getAssayAccession());
+                analysed = true;
+                log.info("Assay " + assay + " analysed in " + (System.currentTimeMillis() - initAnalysis) / 1000
+                        + " seconds");
+            } catch (Exception e) {
+                log.error("The analysis of the assay " + assay + " failed, message moved to "
+                        + queue.getFailedListName(), e);
+            }
+
+            try {
+                if (analysed)
+                    queue.ack(message);
+                else
+                    queue.fail(message);
+            } catch (RuntimeException e) {
+                log.error("The message of the assay " + assay + " can't be removed from "
+                        + queue.getProcessingListName() + ", it will be recovered when the worker restarts", e);
+            }
+        } finally {
+            runningAnalyses.decrementAndGet();
+            freeMemory.release(assayMemory);
+            freeSlots.release();
+        }
+    }
+
+    private void sleepAfterError() {
+        try {
+            TimeUnit.SECONDS.sleep(pollTimeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package uk.ac.ebi.pride.archive.pipeline.services.worker;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.launch.JobLauncher;
+
+import java.util.UUID;
+
+/**
+ * Runs the assay analysis job (analyzeAssayInformationJob) with the same parameters as runAssayAnalyse.sh, in the
+ * thread of the worker slot.
+ *
+ * Every job execution has its own state (see AssayAnalysisExecution), so the number of concurrent analyses is only
+ * limited by the slots and the memory budget of the worker.
+ */
+@Slf4j
+public class BatchJobAssayAnalysisRunner implements AssayAnalysisRunner {
+
+    private final JobLauncher jobLauncher;
+    private final Job job;
+
+    public BatchJobAssayAnalysisRunner(JobLauncher jobLauncher, Job job) {
+        this.jobLauncher = jobLauncher;
+        this.job = job;
+    }
+
+    @Override
+    public void analyse(String projectAccession, String assayAccession) throws Exception {
+        JobParameters parameters = new JobParametersBuilder()
+                .addString("project", projectAccession)
+                .addString("assay", assayAccession)
+                // an assay can be analysed again after a completed execution
+                .addString("run.id", UUID.randomUUID().toString())
+                .toJobParameters();
+
+        JobExecution execution = jobLauncher.run(job, parameters);
+        if (execution.getStatus() != BatchStatus.COMPLETED) {
+            throw new IllegalStateException("The analysis of the assay " + assayAccession + " finished with status "
+                    + execution.getStatus() + " -- " + execution.getAllFailureExceptions());
+        }
+    }
+
+    @Override
+    public int getMaxConcurrentAnalyses() {
+        return Integer.MAX_VALUE;
+    }
+}
@@ -15,15 +15,11 @@ import uk.ac.ebi.pride.archive.pipeline.utility.BackupUtil;
 import uk.ac.ebi.pride.data.io.SubmissionFileParser;
 import uk.ac.ebi.pride.mongodb.archive.model.projects.MongoPrideProject;
 import uk.ac.ebi.pride.mongodb.archive.service.projects.PrideProjectMongoService;
-import uk.ac.ebi.pride.mongodb.molecules.model.peptide.PrideMongoPeptideEvidence;
 import uk.ac.ebi.pride.tools.protein_details_fetcher.ProteinDetailFetcher;
 import uk.ac.ebi.pride.tools.protein_details_fetcher.model.Protein;
 import uk.ac.ebi.pride.tools.utils.AccessionResolver;
 
 import java.io.File;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.*;
 
 import static uk.ac.ebi.pride.archive.pipeline.tasklets.LaunchIndividualEbeyeXmlTasklet.launchIndividualEbeyeXmlGenerationForProjectAcc;
@@ -97,18 +93,9 @@ public class GenerateEbeyeXmlTasklet extends AbstractTasklet {
 
     public Map<String, String> restoreFromFile(String projectAccession) throws Exception {
         backupPath = backupPath.endsWith(File.separator) ? backupPath : backupPath + File.separator;
-        String dir = backupPath + projectAccession;
         Set<String> proteinAccessions = new HashSet<>();
         Map<String, String> mappedAccessions = new HashMap<>();
-        for (Path f : Files.newDirectoryStream(Paths.get(dir), path -> path.toFile().isFile())) {
-            if (f.getFileName().toString().endsWith(PrideMongoPeptideEvidence.class.getSimpleName() + BackupUtil.JSON_EXT)) {
-                List<PrideMongoPeptideEvidence> objs = BackupUtil
-                        .getObjectsFromFile(f, PrideMongoPeptideEvidence.class);
-                objs.forEach(o -> {
-                    proteinAccessions.add(o.getProteinAccession());
-                });
-            }
-        }
+        BackupUtil.collectProteinsAndPeptides(backupPath, projectAccession, proteinAccessions, null);
 
         proteinAccessions.parallelStream().forEach(accession -> {
             ProteinDetailFetcher.AccessionType type = ProteinDetailFetcher.getAccessionType(accession);
@@ -1,134 +1,248 @@
 package uk.ac.ebi.pride.archive.pipeline.utility;
 
-import com.fasterxml.jackson.databind.JavaType;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.module.paranamer.ParanamerModule;
+import lombok.extern.slf4j.Slf4j;
+import uk.ac.ebi.pride.archive.pipeline.services.backup.BackupFormat;
+import uk.ac.ebi.pride.archive.pipeline.services.backup.BackupProjection;
+import uk.ac.ebi.pride.archive.pipeline.services.backup.BackupReader;
+import uk.ac.ebi.pride.archive.pipeline.services.backup.BackupRecordDecoder;
+import uk.ac.ebi.pride.archive.pipeline.services.backup.BackupWriter;
+import uk.ac.ebi.pride.archive.pipeline.services.backup.BinaryBackupReader;
+import uk.ac.ebi.pride.archive.pipeline.services.backup.BinaryBackupWriter;
+import uk.ac.ebi.pride.archive.pipeline.services.backup.JsonBackupReader;
+import uk.ac.ebi.pride.archive.pipeline.services.backup.JsonBackupWriter;
+import uk.ac.ebi.pride.archive.pipeline.services.backup.ProjectBackupManifest;
 import uk.ac.ebi.pride.archive.spectra.model.ArchiveSpectrum;
 import uk.ac.ebi.pride.mongodb.molecules.model.peptide.PrideMongoPeptideEvidence;
 import uk.ac.ebi.pride.mongodb.molecules.model.protein.PrideMongoProteinEvidence;
 import uk.ac.ebi.pride.mongodb.molecules.model.psm.PrideMongoPsmSummaryEvidence;
 
 import java.io.*;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Names, writers and readers of the backup files of the assays, one file by assay and type of record:
+ * {@code <backupPath>/<project>/<project>_<assay>_<type><extension>}. The files are written in the format configured
+ * by {@code pride.data.backup.format} ({@link BackupFormat}); the readers open both formats, the binary file of an
+ * assay is read if it exists and the JSON file otherwise.
+ */
+@Slf4j
 public class BackupUtil {
 
-    private static final ObjectMapper objectMapper;
-    public static final String JSON_EXT = ".json";
+    public static final String JSON_EXT = BackupFormat.JSON.getExtension();
+    public static final String BINARY_EXT = BackupFormat.BINARY.getExtension();
 
-    static {
-        objectMapper = new ObjectMapper();
-        objectMapper.registerModule(new ParanamerModule());
-    }
+    private static final String PROTEIN_ACCESSION_PATH = "proteinAccession";
+    private static final String PEPTIDE_SEQUENCE_PATH = "peptideSequence";
 
-    public static void write(Object obj, BufferedWriter bw) throws Exception {
-        String s = objectMapper.writeValueAsString(obj);
-        bw.write(s);
-        bw.newLine();
+    /**
+     * Write an object as one JSON line, see {@link JsonBackupWriter#writeLine(Object, BufferedWriter)}.
+     *
+     * @param obj Object to be written
+     * @param bw  Backup file writer
+     */
+    public static void write(Object obj, BufferedWriter bw) throws IOException {
+        JsonBackupWriter.writeLine(obj, bw);
     }
 
-    public static String getPrideMongoProteinEvidenceFile(String backupPath, String projectAccession, String assayAccession) {
+    /**
+     * Backup file of an assay.
+     *
+     * @param type   type of the records
+     * @param format format of the file
+     */
+    public static String getBackupFile(String backupPath, String projectAccession, String assayAccession,
+                                       Class<?> type, BackupFormat format) {
         if (!backupPath.endsWith(File.separator)) {
             backupPath = backupPath + File.separator;
         }
         return backupPath + projectAccession + File.separator + projectAccession + "_" + assayAccession +
-                "_" + PrideMongoProteinEvidence.class.getSimpleName() + JSON_EXT;
+                "_" + type.getSimpleName() + format.getExtension();
+    }
+
+    /**
+     * Existing backup file of an assay: the binary file if it exists, the JSON file otherwise.
+     */
+    public static String findBackupFile(String backupPath, String projectAccession, String assayAccession,
+                                        Class<?> type) {
+        String binaryFile = getBackupFile(backupPath, projectAccession, assayAccession, type, BackupFormat.BINARY);
+        if (new File(binaryFile).isFile())
+            return binaryFile;
+        return getBackupFile(backupPath, projectAccession, assayAccession, type, BackupFormat.JSON);
+    }
+
+    /**
+     * @return true if the file is a backup file, in any format, of the records of the type
+     */
+    public static boolean isBackupFile(Path file, Class<?> type) {
+        String fileName = file.getFileName().toString();
+        BackupFormat format = BackupFormat.fromFileName(fileName);
+        return format != null && fileName.endsWith(type.getSimpleName() + format.getExtension());
+    }
+
+    public static String getPrideMongoProteinEvidenceFile(String backupPath, String projectAccession, String assayAccession) {
+        return getBackupFile(backupPath, projectAccession, assayAccession, PrideMongoProteinEvidence.class, BackupFormat.JSON);
     }
 
     public static String getArchiveSpectrumFile(String backupPath, String projectAccession, String assayAccession) {
-        if (!backupPath.endsWith(File.separator)) {
-            backupPath = backupPath + File.separator;
-        }
-        return backupPath + projectAccession + File.separator + projectAccession + "_" + assayAccession +
-                "_" + ArchiveSpectrum.class.getSimpleName() + JSON_EXT;
+        return getBackupFile(backupPath, projectAccession, assayAccession, ArchiveSpectrum.class, BackupFormat.JSON);
     }
 
     public static String getPrideMongoPeptideEvidenceFile(String backupPath, String projectAccession, String assayAccession) {
-        if (!backupPath.endsWith(File.separator)) {
-            backupPath = backupPath + File.separator;
-        }
-        return backupPath + projectAccession + File.separator + projectAccession + "_" + assayAccession +
-                "_" + PrideMongoPeptideEvidence.class.getSimpleName() + JSON_EXT;
+        return getBackupFile(backupPath, projectAccession, assayAccession, PrideMongoPeptideEvidence.class, BackupFormat.JSON);
     }
 
     public static String getPrideMongoPsmSummaryEvidenceFile(String backupPath, String projectAccession, String assayAccession) {
-        if (!backupPath.endsWith(File.separator)) {
-            backupPath = backupPath + File.separator;
-        }
-        return backupPath + projectAccession + File.separator + projectAccession + "_" + assayAccession +
-                "_" + PrideMongoPsmSummaryEvidence.class.getSimpleName() + JSON_EXT;
+        return getBackupFile(backupPath, projectAccession, assayAccession, PrideMongoPsmSummaryEvidence.class, BackupFormat.JSON);
     }
 
-    public static List<PrideMongoProteinEvidence> getPrideMongoProteinEvidenceFromBackup(String backupPath, String projectAccession, String assayAccession) throws IOException {
-        List<PrideMongoProteinEvidence> prideMongoProteinEvidences = new ArrayList<>();
-        BufferedReader reader;
-        reader = new BufferedReader(new FileReader(getPrideMongoProteinEvidenceFile(backupPath, projectAccession, assayAccession)));
-        String line = reader.readLine();
-        while (line != null) {
-            prideMongoProteinEvidences.add(objectMapper.readValue(line, PrideMongoProteinEvidence.class));
-            line = reader.readLine();
+    /**
+     * Create the backup file of an assay. The file of the assay in the other format, from a previous analysis, is
+     * deleted so the readers of the project directory don't read the records twice.
+     */
+    public static <T> BackupWriter<T> createBackupWriter(String backupPath, String projectAccession, String assayAccession,
+                                                         Class<T> type, BackupFormat format) throws IOException {
+        for (BackupFormat other : BackupFormat.values()) {
+            if (other != format)
+                Files.deleteIfExists(new File(getBackupFile(backupPath, projectAccession, assayAccession,
+                        type, other)).toPath());
         }
-        reader.close();
+        File file = new File(getBackupFile(backupPath, projectAccession, assayAccession, type, format));
+        if (format == BackupFormat.BINARY)
+            return new BinaryBackupWriter<>(file, type);
+        return new JsonBackupWriter<>(file);
+    }
 
-        return prideMongoProteinEvidences;
+    /**
+     * Open a streaming reader of a backup file, the format is given by the extension of the file.
+     */
+    public static <T> BackupReader<T> openBackupReader(Path file, Class<T> type) throws IOException {
+        if (BackupFormat.fromFileName(file.getFileName().toString()) == BackupFormat.BINARY)
+            return new BinaryBackupReader<>(file.toFile(), type);
+        return new JsonBackupReader<>(file.toFile(), type);
     }
 
-    public static List<PrideMongoPeptideEvidence> getPrideMongoPeptideEvidenceFromBackup(String backupPath, String projectAccession, String assayAccession) throws IOException {
-        List<PrideMongoPeptideEvidence> prideMongoPeptideEvidences = new ArrayList<>();
-        BufferedReader reader;
-        reader = new BufferedReader(new FileReader(getPrideMongoPeptideEvidenceFile(backupPath, projectAccession, assayAccession)));
-        String line = reader.readLine();
-        while (line != null) {
-            prideMongoPeptideEvidences.add(objectMapper.readValue(line, PrideMongoPeptideEvidence.class));
-            line = reader.readLine();
-        }
-        reader.close();
+    /**
+     * Open a streaming reader of a backup file that decodes only the values of some paths of the records, without
+     * binding the records to their class, see {@link BackupProjection}.
+     *
+     * @param paths paths of the values, e.g. {@code proteinAccession}
+     * @return reader of the values of the paths, in the order of the paths
+     */
+    public static BackupReader<String[]> openProjectionReader(Path file, String... paths) throws IOException {
+        return openBackupReader(file, new BackupProjection(paths));
+    }
 
-        return prideMongoPeptideEvidences;
+    /**
+     * Open a streaming reader of a backup file with a decoder of the records, the format is given by the extension of
+     * the file.
+     */
+    public static <T> BackupReader<T> openBackupReader(Path file, BackupRecordDecoder<T> decoder) throws IOException {
+        if (BackupFormat.fromFileName(file.getFileName().toString()) == BackupFormat.BINARY)
+            return new BinaryBackupReader<>(file.toFile(), decoder);
+        return new JsonBackupReader<>(file.toFile(), decoder);
     }
 
-    public static List<PrideMongoPsmSummaryEvidence> getPrideMongoPsmSummaryEvidenceFromBackup(String backupPath, String projectAccession, String assayAccession) throws IOException {
-        List<PrideMongoPsmSummaryEvidence> list = new ArrayList<>();
-        BufferedReader reader;
-        reader = new BufferedReader(new FileReader(getPrideMongoPsmSummaryEvidenceFile(backupPath, projectAccession, assayAccession)));
-        String line = reader.readLine();
-        while (line != null) {
-            list.add(objectMapper.readValue(line, PrideMongoPsmSummaryEvidence.class));
-            line = reader.readLine();
-        }
-        reader.close();
+    /**
+     * Open a streaming reader of the backup file of an assay, see {@link #findBackupFile}.
+     */
+    public static <T> BackupReader<T> openBackupReader(String backupPath, String projectAccession, String assayAccession,
+                                                       Class<T> type) throws IOException {
+        return openBackupReader(new File(findBackupFile(backupPath, projectAccession, assayAccession, type)).toPath(), type);
+    }
 
-        return list;
+    public static List<PrideMongoProteinEvidence> getPrideMongoProteinEvidenceFromBackup(String backupPath, String projectAccession, String assayAccession) throws IOException {
+        return readAll(openBackupReader(backupPath, projectAccession, assayAccession, PrideMongoProteinEvidence.class));
+    }
+
+    public static List<PrideMongoPeptideEvidence> getPrideMongoPeptideEvidenceFromBackup(String backupPath, String projectAccession, String assayAccession) throws IOException {
+        return readAll(openBackupReader(backupPath, projectAccession, assayAccession, PrideMongoPeptideEvidence.class));
+    }
+
+    public static List<PrideMongoPsmSummaryEvidence> getPrideMongoPsmSummaryEvidenceFromBackup(String backupPath, String projectAccession, String assayAccession) throws IOException {
+        return readAll(openBackupReader(backupPath, projectAccession, assayAccession, PrideMongoPsmSummaryEvidence.class));
     }
 
     public static List<ArchiveSpectrum> getArchiveSpectrumFromBackup(String backupPath, String projectAccession, String assayAccession) throws IOException {
-        List<ArchiveSpectrum> list = new ArrayList<>();
-        BufferedReader reader;
-        reader = new BufferedReader(new FileReader(getArchiveSpectrumFile(backupPath, projectAccession, assayAccession)));
-        String line = reader.readLine();
-        while (line != null) {
-            list.add(objectMapper.readValue(line, ArchiveSpectrum.class));
-            line = reader.readLine();
+        return readAll(openBackupReader(backupPath, projectAccession, assayAccession, ArchiveSpectrum.class));
+    }
+
+    /**
+     * Read all the records of a backup file in memory, prefer {@link #openBackupReader(Path, Class)} for large files.
+     */
+    public static <T> List<T> getObjectsFromFile(Path file, Class<T> classType) throws IOException {
+        return readAll(openBackupReader(file, classType));
+    }
+
+    /**
+     * Collect the protein accessions and the peptide sequences of the peptide evidences of a project. They are taken
+     * from the manifest of the project ({@link ProjectBackupManifest}) for the assays whose peptide evidence file
+     * hasn't changed since the manifest was updated, the other peptide evidence files are read with a projection on
+     * the two fields ({@link #openProjectionReader}).
+     *
+     * @param proteinAccessions protein accessions of the project
+     * @param peptideSequences  peptide sequences of the project, null if they are not needed
+     */
+    public static void collectProteinsAndPeptides(String backupPath, String projectAccession,
+                                                  Set<String> proteinAccessions, Set<String> peptideSequences)
+            throws IOException {
+        Map<String, ProjectBackupManifest.AssayEntry> assays = Collections.emptyMap();
+        try {
+            ProjectBackupManifest manifest = ProjectBackupManifest.read(backupPath, projectAccession);
+            if (manifest != null)
+                assays = manifest.getAssaysByFile(PrideMongoPeptideEvidence.class);
+        } catch (IOException e) {
+            log.warn("The backup files of the project are read without manifest -- " + e.getMessage());
         }
-        reader.close();
 
-        return list;
+        String type = PrideMongoPeptideEvidence.class.getSimpleName();
+        int manifestFiles = 0;
+        int readFiles = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(new File(backupPath, projectAccession).toPath(),
+                path -> path.toFile().isFile())) {
+            for (Path f : files) {
+                if (!isBackupFile(f, PrideMongoPeptideEvidence.class))
+                    continue;
+                ProjectBackupManifest.AssayEntry assay = assays.get(f.getFileName().toString());
+                if (assay != null && assay.getFiles().get(type).matches(f.toFile())) {
+                    proteinAccessions.addAll(assay.getProteinAccessions());
+                    if (peptideSequences != null)
+                        peptideSequences.addAll(assay.getPeptideSequences());
+                    manifestFiles++;
+                    continue;
+                }
+                try (BackupReader<String[]> evidences = openProjectionReader(f, PROTEIN_ACCESSION_PATH,
+                        PEPTIDE_SEQUENCE_PATH)) {
+                    while (evidences.hasNext()) {
+                        String[] evidence = evidences.next();
+                        proteinAccessions.add(evidence[0]);
+                        if (peptideSequences != null)
+                            peptideSequences.add(evidence[1]);
+                    }
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                readFiles++;
+            }
+        }
+        log.info("Proteins and peptides of " + projectAccession + " -- assays from the manifest: " + manifestFiles
+                + " assays read from the backup files: " + readFiles);
     }
 
-    public static <T> List<T> getObjectsFromFile(Path file, Class classType) throws Exception {
+    private static <T> List<T> readAll(BackupReader<T> reader) throws IOException {
         List<T> list = new ArrayList<>();
-        JavaType javaType = objectMapper.getTypeFactory().constructType(classType);
-        BufferedReader reader;
-        reader = new BufferedReader(new FileReader(file.toFile()));
-        String line = reader.readLine();
-        while (line != null) {
-            list.add(objectMapper.readValue(line, javaType));
-            line = reader.readLine();
+        try (BackupReader<T> records = reader) {
+            while (records.hasNext())
+                list.add(records.next());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
-        reader.close();
-
         return list;
     }
 }
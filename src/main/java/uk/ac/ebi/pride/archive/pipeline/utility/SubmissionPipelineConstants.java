@@ -7,7 +7,6 @@ import uk.ac.ebi.jmzidml.model.mzidml.SpectraData;
 import uk.ac.ebi.pride.archive.spectra.utils.Constants;
 import uk.ac.ebi.pride.utilities.util.Triple;
 
-import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -143,6 +142,9 @@ public class SubmissionPipelineConstants {
         PRIDE_ARCHIVE_MONGODB_ASSAY_ANALYSIS("analyzeAssayInformationJob",
                 "This command analyze the information of an assay"),
 
+        PRIDE_ARCHIVE_MONGODB_ASSAY_ANALYSIS_CHUNK("analyzeAssayInformationChunkJob",
+                "This command analyze the information of an assay in chunks, for assays that don't fit in memory"),
+
         PRIDE_ARCHIVE_SOLR_INDEX_PEPTIDE_PROTEIN("solrIndexPeptideProteinJob",
                 "This command indexes peptides & proteins to Solr"),
 
@@ -297,6 +299,12 @@ public class SubmissionPipelineConstants {
         PRIDE_ARCHIVE_MONGODB_PROTEIN_UPDATE("proteinPeptideIndexStep",
                 "This step update the protein and peptide information"),
 
+        PRIDE_ARCHIVE_MONGODB_SPECTRUM_CHUNK_UPDATE("indexSpectraChunkStep",
+                "This step read the spectrum information from the file and insert it into mongoDB and S3 in chunks"),
+
+        PRIDE_ARCHIVE_MONGODB_PROTEIN_CHUNK_UPDATE("proteinPeptideIndexChunkStep",
+                "This step update the protein and peptide information in chunks"),
+
         PRIDE_ARCHIVE_SOLR_INDEX_PEPTIDE_PROTEIN("solrIndexProteinPeptideIndexStep",
                 "This step update the protein and peptide information"),
 
@@ -340,9 +348,18 @@ public class SubmissionPipelineConstants {
         return productionPath + publicationYear + "/" + publicationMonth + "/" + projectAccession + "/" + "internal/";
     }
 
+    /**
+     * Path of the uncompressed file of a gzip or zip file. The uncompressed file may not exist, the
+     * {@link uk.ac.ebi.pride.archive.pipeline.services.pia.DecompressionCache} provides a decompressed copy.
+     *
+     * @param originalPath path of the file
+     * @return path without the compression extension
+     */
     public static String returnUnCompressPath(String originalPath) {
-        if (originalPath.endsWith(Compress_Type.GZIP.extension) || originalPath.endsWith(Compress_Type.ZIP.extension)) {
-            return originalPath.substring(0, originalPath.length() - 3);
+        for (Compress_Type compressType : Compress_Type.values()) {
+            String extension = "." + compressType.getExtension();
+            if (originalPath.toLowerCase().endsWith(extension))
+                return originalPath.substring(0, originalPath.length() - extension.length());
         }
         return originalPath;
     }
@@ -376,49 +393,117 @@ public class SubmissionPipelineConstants {
     }
 
     public static String getSpectrumId(uk.ac.ebi.jmzidml.model.mzidml.SpectraData spectraData, ReportPSM psm) {
-        SpecIdFormat fileIdFormat = getSpectraDataIdFormat(spectraData.getSpectrumIDFormat().getCvParam().getAccession());
+        return getSpectrumId(getSpectraDataIdFormat(spectraData.getSpectrumIDFormat().getCvParam().getAccession()), psm);
+    }
 
+    /**
+     * Spectrum id of a PSM in the spectrum file for an already resolved {@link SpecIdFormat}. The
+     * id is computed without regular expressions, the result is the same as the original replaceAll/matches
+     * implementation.
+     *
+     * @param fileIdFormat Spectrum id format of the spectrum file
+     * @param psm          PSM
+     * @return Spectrum id
+     */
+    public static String getSpectrumId(SpecIdFormat fileIdFormat, ReportPSM psm) {
 
         if (fileIdFormat == SpecIdFormat.MASCOT_QUERY_NUM) {
-            String rValueStr = psm.getSourceID().replaceAll("query=", "");
+            String rValueStr = psm.getSourceID().replace("query=", "");
             String id = null;
-            if (rValueStr.matches(INTEGER)) {
+            if (isInteger(rValueStr)) {
                 id = Integer.toString(Integer.parseInt(rValueStr) + 1);
             }
             return id;
         } else if (fileIdFormat == SpecIdFormat.MULTI_PEAK_LIST_NATIVE_ID) {
-            String rValueStr = psm.getSourceID().replaceAll("index=", "");
+            String rValueStr = psm.getSourceID().replace("index=", "");
             String id;
-            if (rValueStr.matches(INTEGER)) {
+            if (isInteger(rValueStr)) {
                 id = Integer.toString(Integer.parseInt(rValueStr) + 1);
                 return id;
             }
             return psm.getSourceID();
         } else if (fileIdFormat == SpecIdFormat.SINGLE_PEAK_LIST_NATIVE_ID) {
-            return psm.getSourceID().replaceAll("file=", "");
+            return psm.getSourceID().replace("file=", "");
         } else if (fileIdFormat == SpecIdFormat.MZML_ID) {
-            return psm.getSourceID().replaceAll("mzMLid=", "");
+            return psm.getSourceID().replace("mzMLid=", "");
         } else if (fileIdFormat == SpecIdFormat.SCAN_NUMBER_NATIVE_ID) {
-            return psm.getSourceID().replaceAll("scan=", "");
+            return psm.getSourceID().replace("scan=", "");
         } else {
             return psm.getSpectrumTitle();
         }
     }
 
+    /**
+     * Check if a String is an integer with an optional sign, same as matching {@link #INTEGER}.
+     *
+     * @param value String value
+     * @return true if the value is an integer
+     */
+    public static boolean isInteger(String value) {
+        int start = (value.length() > 0 && (value.charAt(0) == '+' || value.charAt(0) == '-')) ? 1 : 0;
+        if (start == value.length())
+            return false;
+        for (int i = start; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9')
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Scan type used in the USI for a spectrum id format.
+     *
+     * @param fileIdFormat Spectrum id format of the spectrum file
+     * @return {@link Constants.ScanType}
+     */
+    public static Constants.ScanType getUsiScanType(SpecIdFormat fileIdFormat) {
+        if (fileIdFormat == SpecIdFormat.MZML_ID || fileIdFormat == SpecIdFormat.SPECTRUM_NATIVE_ID)
+            return Constants.ScanType.SCAN;
+        return Constants.ScanType.INDEX;
+    }
+
+    /**
+     * Spectrum identifier used in the USI, for mzML ids and spectrum native ids it is the value after "scan=".
+     *
+     * @param fileIdFormat Spectrum id format of the spectrum file
+     * @param spectrumID   Spectrum id in the file
+     * @return spectrum identifier of the USI
+     */
+    public static String getUsiSpectrumId(SpecIdFormat fileIdFormat, String spectrumID) {
+        if (getUsiScanType(fileIdFormat) == Constants.ScanType.SCAN) {
+            int start = spectrumID.indexOf("scan=");
+            if (start >= 0) {
+                start = start + "scan=".length();
+                int end = spectrumID.indexOf("scan=", start);
+                String scan = (end < 0) ? spectrumID.substring(start) : spectrumID.substring(start, end);
+                if (scan.length() > 0)
+                    return scan;
+            }
+            // Corner cases (missing or empty scan) keep the behaviour of the split
+            return spectrumID.split("scan=")[1];
+        }
+        return spectrumID;
+    }
+
+    /**
+     * Beginning of the USI of a spectrum file, everything before the spectrum identifier.
+     *
+     * @param projectAccession Project accession
+     * @param fileName         Spectrum file name
+     * @param scanType         {@link Constants.ScanType}
+     * @return USI prefix
+     */
+    public static String buildUsiPrefix(String projectAccession, String fileName, Constants.ScanType scanType) {
+        return Constants.SPECTRUM_S3_HEADER + projectAccession + ":" + fileName + ":" + scanType.getName() + ":";
+    }
+
     public static String buildUsi(String projectAccession, Triple<String, SpectraData, FileType> refeFile, ReportPSM psm) {
-        Constants.ScanType scanType = Constants.ScanType.INDEX;
         SpecIdFormat fileIFormat = getSpectraDataIdFormat(refeFile.getSecond().getSpectrumIDFormat().getCvParam().getAccession());
-        String spectrumID = getSpectrumId(refeFile.getSecond(), psm);
-        if (fileIFormat == SpecIdFormat.MASCOT_QUERY_NUM || fileIFormat == SpecIdFormat.MULTI_PEAK_LIST_NATIVE_ID) {
-            scanType = Constants.ScanType.INDEX;
-        } else if (fileIFormat == SpecIdFormat.MZML_ID || fileIFormat == SpecIdFormat.SPECTRUM_NATIVE_ID) {
-            scanType = Constants.ScanType.SCAN;
-            String[] scanStrings = spectrumID.split("scan=");
-            spectrumID = scanStrings[1];
-        }
-        Path p = Paths.get(refeFile.getFirst());
-        String fileName = p.getFileName().toString();
-        return Constants.SPECTRUM_S3_HEADER + projectAccession + ":" + fileName + ":" + scanType.getName() + ":" + spectrumID + ":" + encodePSM(psm.getSequence(), psm.getModifications(), psm.getCharge());
+        String spectrumID = getUsiSpectrumId(fileIFormat, getSpectrumId(fileIFormat, psm));
+        String fileName = Paths.get(refeFile.getFirst()).getFileName().toString();
+        return appendUsi(new StringBuilder(128), buildUsiPrefix(projectAccession, fileName, getUsiScanType(fileIFormat)),
+                spectrumID, psm).toString();
     }
 
     /**
@@ -430,8 +515,23 @@ public class SubmissionPipelineConstants {
      * @return
      */
     public static String buildUsi(String projectAccession, String fileName, ReportPSM psm) {
-        Constants.ScanType scanType = Constants.ScanType.INDEX;
-        return Constants.SPECTRUM_S3_HEADER + projectAccession + ":" + fileName + ":" + scanType.getName() + ":" + psm.getSourceID() + ":" + encodePSM(psm.getSequence(), psm.getModifications(), psm.getCharge());
+        return appendUsi(new StringBuilder(128), buildUsiPrefix(projectAccession, fileName, Constants.ScanType.INDEX),
+                psm.getSourceID(), psm).toString();
+    }
+
+    /**
+     * Append the USI of a PSM to a builder: the USI prefix of the file ({@link #buildUsiPrefix}), the spectrum
+     * identifier and the encoded PSM ({@link #encodePSM}).
+     *
+     * @param builder       builder to append to
+     * @param usiPrefix     USI prefix of the spectrum file
+     * @param usiSpectrumId spectrum identifier of the USI ({@link #getUsiSpectrumId})
+     * @param psm           PSM
+     * @return the builder
+     */
+    public static StringBuilder appendUsi(StringBuilder builder, String usiPrefix, String usiSpectrumId, ReportPSM psm) {
+        builder.append(usiPrefix).append(usiSpectrumId).append(':');
+        return appendEncodedPeptide(builder, psm.getSequence(), psm.getModifications()).append('/').append(psm.getCharge());
     }
 
     public static String encodePSM(String sequence, Map<Integer, Modification> ptms, Integer charge) {
@@ -439,32 +539,45 @@ public class SubmissionPipelineConstants {
     }
 
     public static String encodePeptide(String sequence, Map<Integer, Modification> ptms) {
-        StringBuilder stringBuilder = new StringBuilder();
-        String finalSequence = sequence;
-        if (ptms != null && ptms.size() > 0) {
-            char[] sequenceList = sequence.toCharArray();
-            if (ptms.containsKey(0))
-                stringBuilder.append("[" + ptms.get(0).getAccession() + "]");
-            for (int i = 0; i < sequenceList.length; i++) {
-                stringBuilder.append(sequenceList[i]);
-                if (ptms.containsKey(i + 1)) {
-                    stringBuilder.append("[" + ptms.get(i + 1).getAccession() + "]");
-                }
-            }
+        if (ptms == null || ptms.isEmpty())
+            return sequence;
+        return appendEncodedPeptide(new StringBuilder(sequence.length() + 16 * ptms.size()), sequence, ptms)
+                .toString();
+    }
 
-            // Add the CTerm modifications
-            for (Map.Entry entry : ptms.entrySet()) {
-                Integer position = (Integer) entry.getKey();
-                Modification mod = (Modification) entry.getValue();
-                if (position > sequence.length()) {
-                    stringBuilder.append("-").append("[").append(mod.getAccession()).append("]");
-                }
-            }
-            finalSequence = stringBuilder.toString();
+    /**
+     * Append the encoded peptide of {@link #encodePeptide} to a builder: the accession of each modification in
+     * brackets after the modified residue, the N-terminal modification (position 0) before the first residue and the
+     * C-terminal modifications (positions after the last residue) at the end, after a dash.
+     *
+     * @param builder  builder to append to
+     * @param sequence peptide sequence
+     * @param ptms     modifications by position, it can be null
+     * @return the builder
+     */
+    public static StringBuilder appendEncodedPeptide(StringBuilder builder, String sequence, Map<Integer, Modification> ptms) {
+        if (ptms == null || ptms.isEmpty())
+            return builder.append(sequence);
+
+        appendModification(builder, ptms.get(0));
+        for (int i = 0; i < sequence.length(); i++) {
+            builder.append(sequence.charAt(i));
+            appendModification(builder, ptms.get(i + 1));
         }
 
-        return finalSequence;
+        // Add the CTerm modifications
+        for (Map.Entry<Integer, Modification> entry : ptms.entrySet()) {
+            if (entry.getKey() > sequence.length() && entry.getValue() != null) {
+                builder.append('-');
+                appendModification(builder, entry.getValue());
+            }
+        }
+        return builder;
+    }
 
+    private static void appendModification(StringBuilder builder, Modification modification) {
+        if (modification != null)
+            builder.append('[').append(modification.getAccession()).append(']');
     }
 
 
@@ -0,0 +1,35 @@
+package uk.ac.ebi.pride.archive.pipeline.metrics;
+
+import jdk.jfr.FlightRecorder;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+
+/**
+ * {@link JfrSupport} with the JFR API, loaded by {@link PipelineProfiler} when the {@code jdk.jfr} module is present.
+ */
+class FlightRecorderSupport implements JfrSupport {
+
+    @Override
+    public boolean isAvailable() {
+        return FlightRecorder.isAvailable();
+    }
+
+    @Override
+    public PipelineProfiler.Span start(PipelineProfiler.Phase phase, String operation, String subject, long items) {
+        PhaseEvent event = new PhaseEvent();
+        event.phase = phase.getLabel();
+        event.operation = operation;
+        event.subject = subject;
+        event.items = items;
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public PipelineProfiler.Recording startRecording(String name, String configuration, File destination)
+            throws IOException, ParseException {
+        return JfrRecorder.start(name, configuration, destination);
+    }
+}
@@ -0,0 +1,148 @@
+package uk.ac.ebi.pride.archive.pipeline.metrics;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Time breakdown by phase of a JFR recording of a job ({@link JfrRecorder}): number of events, total, mean and
+ * maximum time and records of every phase, sorted by total time. The phases can be nested (a Solr call inside the
+ * write of a project), so the totals are not added up.
+ *
+ * Command line, from the jar of the pipeline:
+ * <pre>
+ * java -cp pride-pipelines.jar -Dloader.main=uk.ac.ebi.pride.archive.pipeline.metrics.JfrPhaseSummary \
+ *     org.springframework.boot.loader.PropertiesLauncher recording.jfr [--subject=PXD000001] [--by-operation]
+ * </pre>
+ * {@code --subject} only counts the events of an assay or a project and the events without subject (backup writes,
+ * bulk inserts, S3 uploads and calls to the services), {@code --by-operation} splits the phases by the operation
+ * (e.g. the method of the Solr service).
+ */
+public class JfrPhaseSummary {
+
+    private final Map<String, PhaseTime> phases = new LinkedHashMap<>();
+
+    /**
+     * Read the pipeline events of a recording.
+     *
+     * @param subject     only the events of this assay or project and the ones without subject, null for all the events
+     * @param byOperation split the phases by operation
+     */
+    public static JfrPhaseSummary read(Path recording, String subject, boolean byOperation) throws IOException {
+        JfrPhaseSummary summary = new JfrPhaseSummary();
+        try (RecordingFile file = new RecordingFile(recording)) {
+            while (file.hasMoreEvents()) {
+                RecordedEvent event = file.readEvent();
+                if (!PhaseEvent.NAME.equals(event.getEventType().getName()))
+                    continue;
+                String eventSubject = event.getString("subject");
+                if (subject != null && eventSubject != null && !subject.equals(eventSubject))
+                    continue;
+                String phase = event.getString("phase");
+                String operation = event.getString("operation");
+                if (byOperation && operation != null)
+                    phase = phase + " " + operation;
+                summary.add(phase, event.getDuration().toNanos(), event.getLong("items"));
+            }
+        }
+        return summary;
+    }
+
+    void add(String phase, long nanos, long items) {
+        phases.computeIfAbsent(phase, PhaseTime::new).add(nanos, items);
+    }
+
+    /**
+     * @return time of the phases, the longest first
+     */
+    public List<PhaseTime> getPhases() {
+        List<PhaseTime> sorted = new ArrayList<>(phases.values());
+        sorted.sort((a, b) -> Long.compare(b.totalNanos, a.totalNanos));
+        return sorted;
+    }
+
+    public void print(PrintStream out) {
+        out.println(String.format(Locale.ROOT, "%-40s %10s %12s %10s %10s %12s",
+                "phase", "count", "total (ms)", "mean (ms)", "max (ms)", "items"));
+        for (PhaseTime phase : getPhases()) {
+            out.println(String.format(Locale.ROOT, "%-40s %10d %12.1f %10.3f %10.1f %12d", phase.phase, phase.count,
+                    phase.getTotalMillis(), phase.getTotalMillis() / phase.count, phase.getMaxMillis(), phase.items));
+        }
+    }
+
+    public static void main(String[] args) {
+        String recording = null;
+        String subject = null;
+        boolean byOperation = false;
+        for (String arg : args) {
+            if (arg.startsWith("--subject="))
+                subject = arg.substring("--subject=".length());
+            else if (arg.equals("--by-operation"))
+                byOperation = true;
+            else
+                recording = arg;
+        }
+        if (recording == null) {
+            System.err.println("Usage: JfrPhaseSummary recording.jfr [--subject=accession] [--by-operation]");
+            System.exit(1);
+        }
+        try {
+            read(Paths.get(recording), subject, byOperation).print(System.out);
+        } catch (IOException e) {
+            System.err.println("The recording can't be read -- " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Time of a phase in the recording.
+     */
+    public static class PhaseTime {
+
+        private final String phase;
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+        private long items;
+
+        PhaseTime(String phase) {
+            this.phase = phase;
+        }
+
+        void add(long nanos, long items) {
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+            this.items += items;
+        }
+
+        public String getPhase() {
+            return phase;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getTotalMillis() {
+            return totalNanos / 1e6;
+        }
+
+        public double getMaxMillis() {
+            return maxNanos / 1e6;
+        }
+
+        public long getItems() {
+            return items;
+        }
+    }
+}
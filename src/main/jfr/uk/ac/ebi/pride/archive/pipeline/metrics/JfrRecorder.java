@@ -0,0 +1,71 @@
+package uk.ac.ebi.pride.archive.pipeline.metrics;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * JFR recording of a job execution, written into a {@code .jfr} file when it is stopped. The recording enables the
+ * {@link PhaseEvent} of the pipeline and the garbage collections; the settings of a JFR configuration (e.g.
+ * {@code default}, about 1% of overhead, or {@code profile}) can be added to get method sampling, allocations and
+ * I/O events as well.
+ *
+ * The recordings are global to the JVM: when several jobs run at the same time (the assay analysis worker), each
+ * recording has the events of all of them, the subject of the events tells them apart.
+ *
+ * This class uses the JFR API, it is compiled by the {@code jfr} Maven profile and started through
+ * {@link PipelineProfiler#startRecording(String, String, File)}.
+ */
+public class JfrRecorder implements PipelineProfiler.Recording {
+
+    private final Recording recording;
+    private final File destination;
+
+    private JfrRecorder(Recording recording, File destination) {
+        this.recording = recording;
+        this.destination = destination;
+    }
+
+    /**
+     * Start a recording.
+     *
+     * @param name          name of the recording
+     * @param configuration JFR configuration to add to the pipeline events, null for only the pipeline events
+     * @param destination   file of the recording
+     */
+    public static JfrRecorder start(String name, String configuration, File destination)
+            throws IOException, ParseException {
+        Map<String, String> settings = (configuration == null) ? Collections.emptyMap() :
+                Configuration.getConfiguration(configuration).getSettings();
+        Recording recording = new Recording(settings);
+        recording.setName(name);
+        recording.enable(PhaseEvent.class).withoutStackTrace().withoutThreshold();
+        recording.enable("jdk.GarbageCollection");
+        recording.setToDisk(true);
+        recording.setDestination(destination.toPath());
+        recording.start();
+        PipelineProfiler.recordingStarted();
+        return new JfrRecorder(recording, destination);
+    }
+
+    /**
+     * Stop the recording and write it into its destination.
+     *
+     * @return file of the recording
+     */
+    @Override
+    public File stop() {
+        PipelineProfiler.recordingStopped();
+        try {
+            recording.stop();
+        } finally {
+            recording.close();
+        }
+        return destination;
+    }
+}
@@ -0,0 +1,44 @@
+package uk.ac.ebi.pride.archive.pipeline.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event of a phase of the processing, created by {@link PipelineProfiler#start(PipelineProfiler.Phase)} through
+ * {@link FlightRecorderSupport}. The events are recorded without stack trace and threshold to keep the overhead low
+ * on the per-PSM path.
+ */
+@Name(PhaseEvent.NAME)
+@Label("Pipeline Phase")
+@Category({"PRIDE", "Pipeline"})
+@Description("Time of a phase of the per-PSM or per-record processing of the pipeline")
+@StackTrace(false)
+public class PhaseEvent extends Event implements PipelineProfiler.Span {
+
+    public static final String NAME = "uk.ac.ebi.pride.pipeline.Phase";
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Operation")
+    @Description("Class and method called")
+    String operation;
+
+    @Label("Subject")
+    @Description("Accession of the assay or the project")
+    String subject;
+
+    @Label("Items")
+    @Description("Records processed in the phase")
+    long items;
+
+    @Override
+    public void close() {
+        // commit() ends the event and skips it if the recording doesn't enable it
+        commit();
+    }
+}
@@ -0,0 +1,110 @@
+package uk.ac.ebi.pride.archive.pipeline.benchmarks;
+
+import de.mpc.pia.modeller.psm.ReportPSM;
+import de.mpc.pia.modeller.score.ScoreModelEnum;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import uk.ac.ebi.pride.archive.dataprovider.data.peptide.PSMProvider;
+import uk.ac.ebi.pride.archive.dataprovider.param.CvParam;
+import uk.ac.ebi.pride.archive.pipeline.services.spectra.PeakArraySpectrum;
+import uk.ac.ebi.pride.archive.pipeline.services.spectra.SpectrumPeaks;
+import uk.ac.ebi.pride.archive.pipeline.utility.SubmissionPipelineConstants;
+import uk.ac.ebi.pride.archive.pipeline.utility.SubmissionPipelineConstants.SpecIdFormat;
+import uk.ac.ebi.pride.archive.spectra.model.ArchiveSpectrum;
+import uk.ac.ebi.pride.utilities.term.CvTermReference;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building of the {@link ArchiveSpectrum} of a PSM in indexSpectraStep, once the spectrum has been read: spectrum id
+ * and USI, boxed peaks of the {@link SpectrumPeaks}, score properties and the spectrum itself.
+ * The steps follow AssayAnalysisExecution#processPsm without the modifications and the delta mass.
+ *
+ * The PSMs and the spectrum are synthetic, see {@link BenchmarkFixtures}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ArchiveSpectrumBenchmark {
+
+    @Param({"200", "1000"})
+    int numPeaks;
+
+    private ReportPSM[] psms;
+    private PeakArraySpectrum spectrum;
+    private SpectrumPeaks peaks;
+    private int next;
+
+    @Setup
+    public void setup() {
+        psms = BenchmarkFixtures.psms(4096);
+        spectrum = BenchmarkFixtures.spectrum(numPeaks);
+        peaks = new SpectrumPeaks();
+    }
+
+    @Benchmark
+    public PSMProvider buildArchiveSpectrum() {
+        next = (next + 1) % psms.length;
+        return buildArchiveSpectrum(psms[next], spectrum, peaks);
+    }
+
+    /**
+     * {@link ArchiveSpectrum} of a PSM and its spectrum.
+     */
+    static ArchiveSpectrum buildArchiveSpectrum(ReportPSM psm, PeakArraySpectrum fileSpectrum, SpectrumPeaks peaks) {
+        String spectrumId = SubmissionPipelineConstants.getSpectrumId(SpecIdFormat.MULTI_PEAK_LIST_NATIVE_ID, psm);
+        String usi = SubmissionPipelineConstants.buildUsiPrefix(BenchmarkFixtures.PROJECT_ACCESSION, "spectra.mgf",
+                SubmissionPipelineConstants.getUsiScanType(SpecIdFormat.MULTI_PEAK_LIST_NATIVE_ID))
+                + spectrumId + ":" + SubmissionPipelineConstants.encodePSM(psm.getSequence(), psm.getModifications(),
+                psm.getCharge());
+        peaks.load(fileSpectrum);
+
+        Set<CvParam> properties = new HashSet<>();
+        for (ScoreModelEnum scoreModel : ScoreModelEnum.values()) {
+            Double scoreValue = psm.getScore(scoreModel.getShortName());
+            if (scoreValue != null && !scoreValue.isNaN()) {
+                for (CvTermReference ref : CvTermReference.values()) {
+                    if (ref.getAccession().equalsIgnoreCase(scoreModel.getCvAccession()))
+                        properties.add(new CvParam(ref.getCvLabel(), ref.getAccession(), ref.getName(),
+                                String.valueOf(scoreValue)));
+                }
+            }
+        }
+
+        return ArchiveSpectrum
+                .builder()
+                .projectAccession(BenchmarkFixtures.PROJECT_ACCESSION)
+                .assayAccession(BenchmarkFixtures.ASSAY_ACCESSION)
+                .peptideSequence(psm.getSequence())
+                .isDecoy(psm.getIsDecoy())
+                .retentionTime(psm.getRetentionTime())
+                .msLevel(fileSpectrum.getMsLevel())
+                .precursorCharge(fileSpectrum.getPrecursorCharge())
+                .masses(peaks.toMzObjectArray())
+                .numPeaks(peaks.size())
+                .intensities(peaks.toIntensityObjectArray())
+                .properties(properties)
+                .spectrumFile(BenchmarkFixtures.SPECTRUM_FILE)
+                .precursorMz(fileSpectrum.getPrecursorMZ())
+                .usi(usi)
+                .isValid(true)
+                .missedCleavages(psm.getMissedCleavages())
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(ArchiveSpectrumBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,160 @@
+package uk.ac.ebi.pride.archive.pipeline.benchmarks;
+
+import de.mpc.pia.modeller.psm.ReportPSM;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import uk.ac.ebi.pride.archive.pipeline.services.backup.BackupFormat;
+import uk.ac.ebi.pride.archive.pipeline.services.backup.BackupWriter;
+import uk.ac.ebi.pride.archive.pipeline.services.backup.BinaryBackupWriter;
+import uk.ac.ebi.pride.archive.pipeline.services.backup.JsonBackupWriter;
+import uk.ac.ebi.pride.archive.pipeline.services.spectra.PeakArraySpectrum;
+import uk.ac.ebi.pride.archive.pipeline.services.spectra.SpectrumPeaks;
+import uk.ac.ebi.pride.archive.pipeline.utility.BackupUtil;
+import uk.ac.ebi.pride.archive.pipeline.utility.SubmissionPipelineConstants;
+import uk.ac.ebi.pride.archive.spectra.model.ArchiveSpectrum;
+import uk.ac.ebi.pride.mongodb.molecules.model.psm.PrideMongoPsmSummaryEvidence;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Backup files of the assay analysis: {@link BackupWriter#write} of one record and
+ * {@link BackupUtil#getObjectsFromFile} of a whole file, for the spectra (large records with the peak lists) and the
+ * PSM summaries (small records), in the JSON and the binary formats.
+ *
+ * The records are synthetic, see {@link BenchmarkFixtures}; the backup files are written to temporary files, the
+ * files of the write benchmarks are replaced at every iteration. Compare the time per record of the write benchmarks
+ * and the time per file of the read benchmarks; the sizes of the files are printed by the setup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class BackupBenchmark {
+
+    @Param({"1000"})
+    int numRecords;
+
+    @Param({"300"})
+    int numPeaks;
+
+    @Param({"json", "binary"})
+    String format;
+
+    private ArchiveSpectrum[] spectra;
+    private PrideMongoPsmSummaryEvidence[] psmSummaries;
+    private BackupFormat backupFormat;
+    private File spectrumFile;
+    private File psmSummaryFile;
+    private int next;
+
+    private File spectrumWriterFile;
+    private File psmSummaryWriterFile;
+    private BackupWriter<ArchiveSpectrum> spectrumWriter;
+    private BackupWriter<PrideMongoPsmSummaryEvidence> psmSummaryWriter;
+
+    @Setup
+    public void setup() throws Exception {
+        ReportPSM[] psms = BenchmarkFixtures.psms(numRecords);
+        PeakArraySpectrum spectrum = BenchmarkFixtures.spectrum(numPeaks);
+        SpectrumPeaks peaks = new SpectrumPeaks();
+        spectra = new ArchiveSpectrum[numRecords];
+        psmSummaries = new PrideMongoPsmSummaryEvidence[numRecords];
+        for (int i = 0; i < numRecords; i++) {
+            spectra[i] = ArchiveSpectrumBenchmark.buildArchiveSpectrum(psms[i], spectrum, peaks);
+            psmSummaries[i] = PrideMongoPsmSummaryEvidence
+                    .builder()
+                    .usi(spectra[i].getUsi())
+                    .peptideSequence(psms[i].getSequence())
+                    .assayAccession(BenchmarkFixtures.ASSAY_ACCESSION)
+                    .isDecoy(psms[i].getIsDecoy())
+                    .charge(psms[i].getCharge())
+                    .isValid(true)
+                    .projectAccession(BenchmarkFixtures.PROJECT_ACCESSION)
+                    .fileName("spectra.mgf")
+                    .precursorMass(psms[i].getMassToCharge())
+                    .modifiedPeptideSequence(SubmissionPipelineConstants
+                            .encodePeptide(psms[i].getSequence(), psms[i].getModifications()))
+                    .build();
+        }
+        backupFormat = BackupFormat.fromProperty(format);
+        spectrumFile = writeBackup(spectra, ArchiveSpectrum.class);
+        psmSummaryFile = writeBackup(psmSummaries, PrideMongoPsmSummaryEvidence.class);
+        System.out.println(String.format("%s backup files -- spectra %d bytes, PSM summaries %d bytes",
+                format, spectrumFile.length(), psmSummaryFile.length()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        spectrumFile.delete();
+        psmSummaryFile.delete();
+    }
+
+    @Setup(Level.Iteration)
+    public void openWriters() throws Exception {
+        spectrumWriterFile = File.createTempFile("benchmark", backupFormat.getExtension());
+        psmSummaryWriterFile = File.createTempFile("benchmark", backupFormat.getExtension());
+        spectrumWriter = openWriter(spectrumWriterFile, ArchiveSpectrum.class);
+        psmSummaryWriter = openWriter(psmSummaryWriterFile, PrideMongoPsmSummaryEvidence.class);
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeWriters() throws Exception {
+        spectrumWriter.close();
+        psmSummaryWriter.close();
+        spectrumWriterFile.delete();
+        psmSummaryWriterFile.delete();
+    }
+
+    @Benchmark
+    public void writeArchiveSpectrum() throws Exception {
+        next = (next + 1) % numRecords;
+        spectrumWriter.write(spectra[next]);
+    }
+
+    @Benchmark
+    public void writePsmSummaryEvidence() throws Exception {
+        next = (next + 1) % numRecords;
+        psmSummaryWriter.write(psmSummaries[next]);
+    }
+
+    @Benchmark
+    public List<ArchiveSpectrum> readArchiveSpectrumFile() throws Exception {
+        return BackupUtil.getObjectsFromFile(spectrumFile.toPath(), ArchiveSpectrum.class);
+    }
+
+    @Benchmark
+    public List<PrideMongoPsmSummaryEvidence> readPsmSummaryEvidenceFile() throws Exception {
+        return BackupUtil.getObjectsFromFile(psmSummaryFile.toPath(), PrideMongoPsmSummaryEvidence.class);
+    }
+
+    private <T> File writeBackup(T[] records, Class<T> type) throws Exception {
+        File file = File.createTempFile("benchmark", backupFormat.getExtension());
+        try (BackupWriter<T> writer = openWriter(file, type)) {
+            for (T record : records)
+                writer.write(record);
+        }
+        return file;
+    }
+
+    private <T> BackupWriter<T> openWriter(File file, Class<T> type) throws IOException {
+        if (backupFormat == BackupFormat.BINARY)
+            return new BinaryBackupWriter<>(file, type);
+        return new JsonBackupWriter<>(file);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(BackupBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
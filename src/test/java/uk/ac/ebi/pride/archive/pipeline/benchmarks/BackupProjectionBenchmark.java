@@ -0,0 +1,102 @@
+package uk.ac.ebi.pride.archive.pipeline.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import uk.ac.ebi.pride.archive.pipeline.services.backup.BackupFormat;
+import uk.ac.ebi.pride.archive.pipeline.services.backup.BackupReader;
+import uk.ac.ebi.pride.archive.pipeline.services.backup.BackupWriter;
+import uk.ac.ebi.pride.archive.pipeline.services.backup.BinaryBackupWriter;
+import uk.ac.ebi.pride.archive.pipeline.services.backup.JsonBackupWriter;
+import uk.ac.ebi.pride.archive.pipeline.utility.BackupUtil;
+import uk.ac.ebi.pride.mongodb.molecules.model.peptide.PrideMongoPeptideEvidence;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads of a peptide evidence backup file for its protein accessions and peptide sequences: binding of the whole
+ * records ({@link BackupUtil#openBackupReader(java.nio.file.Path, Class)}) and projection on the two fields
+ * ({@link BackupUtil#openProjectionReader}), in the JSON and the binary formats.
+ *
+ * The records are the peptide evidence of the PXD002633 test project, written {@code numRecords} times to a temporary
+ * file. Compare the time per file and the allocation rate of the two reads.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class BackupProjectionBenchmark {
+
+    private static final String PEPTIDE_EVIDENCE_RESOURCE = "/PXD002633/PXD002633_55852_PrideMongoPeptideEvidence.json";
+
+    @Param({"10000"})
+    int numRecords;
+
+    @Param({"json", "binary"})
+    String format;
+
+    private File peptideEvidenceFile;
+
+    @Setup
+    public void setup() throws Exception {
+        PrideMongoPeptideEvidence evidence;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                BackupProjectionBenchmark.class.getResourceAsStream(PEPTIDE_EVIDENCE_RESOURCE), StandardCharsets.UTF_8))) {
+            evidence = BackupFormat.JSON.getObjectMapper().readValue(reader.readLine(), PrideMongoPeptideEvidence.class);
+        }
+        BackupFormat backupFormat = BackupFormat.fromProperty(format);
+        peptideEvidenceFile = File.createTempFile("benchmark", backupFormat.getExtension());
+        try (BackupWriter<PrideMongoPeptideEvidence> writer = backupFormat == BackupFormat.BINARY
+                ? new BinaryBackupWriter<>(peptideEvidenceFile, PrideMongoPeptideEvidence.class)
+                : new JsonBackupWriter<>(peptideEvidenceFile)) {
+            for (int i = 0; i < numRecords; i++)
+                writer.write(evidence);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        peptideEvidenceFile.delete();
+    }
+
+    @Benchmark
+    public void readBoundPeptideEvidences(Blackhole blackhole) throws Exception {
+        try (BackupReader<PrideMongoPeptideEvidence> evidences = BackupUtil.openBackupReader(
+                peptideEvidenceFile.toPath(), PrideMongoPeptideEvidence.class)) {
+            while (evidences.hasNext()) {
+                PrideMongoPeptideEvidence evidence = evidences.next();
+                blackhole.consume(evidence.getProteinAccession());
+                blackhole.consume(evidence.getPeptideSequence());
+            }
+        }
+    }
+
+    @Benchmark
+    public void readProjectedPeptideEvidences(Blackhole blackhole) throws Exception {
+        try (BackupReader<String[]> evidences = BackupUtil.openProjectionReader(peptideEvidenceFile.toPath(),
+                "proteinAccession", "peptideSequence")) {
+            while (evidences.hasNext()) {
+                String[] evidence = evidences.next();
+                blackhole.consume(evidence[0]);
+                blackhole.consume(evidence[1]);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(BackupProjectionBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,143 @@
+package uk.ac.ebi.pride.archive.pipeline.benchmarks;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.mpc.pia.intermediate.Modification;
+import de.mpc.pia.intermediate.PeptideSpectrumMatch;
+import de.mpc.pia.modeller.psm.ReportPSM;
+import de.mpc.pia.modeller.score.ScoreModel;
+import de.mpc.pia.modeller.score.ScoreModelEnum;
+import uk.ac.ebi.jmzidml.model.mzidml.CvParam;
+import uk.ac.ebi.jmzidml.model.mzidml.SpectraData;
+import uk.ac.ebi.jmzidml.model.mzidml.SpectrumIDFormat;
+import uk.ac.ebi.pride.archive.pipeline.services.spectra.PeakArraySpectrum;
+import uk.ac.ebi.pride.archive.repo.repos.project.Project;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Synthetic fixtures of the benchmarks. The fixtures are generated from a fixed seed, so the benchmarks of two commits
+ * run on the same data, and no file, database or service is needed.
+ */
+final class BenchmarkFixtures {
+
+    static final String PROJECT_ACCESSION = "PXD000001";
+    static final String ASSAY_ACCESSION = "100001";
+    static final String SPECTRUM_FILE = "/nfs/pride/benchmark/submitted/spectra.mgf";
+
+    private static final String AMINO_ACIDS = "ACDEFGHIKLMNPQRSTVWY";
+
+    private static final Modification[] MODIFICATIONS = {
+            new Modification('M', 15.994915, "Oxidation", "UNIMOD:35"),
+            new Modification('C', 57.021464, "Carbamidomethyl", "UNIMOD:4"),
+            new Modification('S', 79.966331, "Phospho", "UNIMOD:21"),
+            new Modification(null, 42.010565, "Acetyl", "UNIMOD:1"),
+    };
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * PSMs of tryptic-like peptides of 7 to 30 residues, charges 2 to 4 and up to 3 modifications, including N-terminal
+     * and C-terminal ones. The source ids follow the multiple peak list native id format ({@code index=N}).
+     *
+     * @param count number of PSMs
+     * @return PSMs
+     */
+    static ReportPSM[] psms(int count) {
+        Random random = new Random(42);
+        ReportPSM[] psms = new ReportPSM[count];
+        for (int i = 0; i < count; i++) {
+            int length = 7 + random.nextInt(24);
+            StringBuilder sequence = new StringBuilder(length);
+            for (int residue = 0; residue < length - 1; residue++)
+                sequence.append(AMINO_ACIDS.charAt(random.nextInt(AMINO_ACIDS.length())));
+            sequence.append(random.nextBoolean() ? 'K' : 'R');
+
+            int charge = 2 + random.nextInt(3);
+            double massToCharge = 400 + random.nextDouble() * 1200;
+            PeptideSpectrumMatch spectrum = new PeptideSpectrumMatch((long) i, charge, massToCharge,
+                    random.nextDouble() * 0.01, 600.0 + i, sequence.toString(), random.nextInt(2),
+                    "index=" + i, "controllerType=0 controllerNumber=1 scan=" + (i + 1), null, null);
+
+            int modifications = random.nextInt(4);
+            for (int modification = 0; modification < modifications; modification++) {
+                // positions 0 and length + 1 are the terminal modifications
+                spectrum.addModification(random.nextInt(length + 2), MODIFICATIONS[random.nextInt(MODIFICATIONS.length)]);
+            }
+            spectrum.addScore(new ScoreModel(random.nextDouble() * 100, ScoreModelEnum.MASCOT_SCORE));
+            spectrum.addScore(new ScoreModel(random.nextDouble() * 0.01, ScoreModelEnum.MASCOT_EXPECT));
+
+            psms[i] = new ReportPSM((long) i, spectrum);
+        }
+        return psms;
+    }
+
+    /**
+     * Spectrum of the MGF reader with sorted m/z values.
+     *
+     * @param numPeaks number of peaks
+     * @return spectrum
+     */
+    static PeakArraySpectrum spectrum(int numPeaks) {
+        Random random = new Random(42);
+        double[] mz = new double[numPeaks];
+        double[] intensity = new double[numPeaks];
+        double value = 100;
+        for (int peak = 0; peak < numPeaks; peak++) {
+            value += random.nextDouble() * 5;
+            mz[peak] = value;
+            intensity[peak] = random.nextDouble() * 1e5;
+        }
+        return new PeakArraySpectrum("1", 2, 2, 754.3872, 1.2e6, mz, intensity, numPeaks);
+    }
+
+    /**
+     * Spectra data of an MGF file with the multiple peak list native id format.
+     */
+    static SpectraData mgfSpectraData() {
+        CvParam idFormat = new CvParam();
+        idFormat.setAccession("MS:1000774");
+        idFormat.setName("multiple peak list nativeID format");
+        SpectrumIDFormat spectrumIDFormat = new SpectrumIDFormat();
+        spectrumIDFormat.setCvParam(idFormat);
+        SpectraData spectraData = new SpectraData();
+        spectraData.setId("SD_1");
+        spectraData.setLocation(SPECTRUM_FILE);
+        spectraData.setSpectrumIDFormat(spectrumIDFormat);
+        return spectraData;
+    }
+
+    /**
+     * Oracle project with the size of a typical public dataset. The entity is read from JSON so only the properties
+     * used by the transformers are set.
+     */
+    static Project oracleProject() throws IOException {
+        StringBuilder description = new StringBuilder();
+        for (int i = 0; i < 40; i++)
+            description.append("Proteome of the sample ").append(i).append(" digested with trypsin and analysed by LC-MS/MS. ");
+        String json = "{"
+                + "\"id\": 1,"
+                + "\"accession\": \"" + PROJECT_ACCESSION + "\","
+                + "\"title\": \"Synthetic proteome of Homo sapiens cell lines\","
+                + "\"projectDescription\": \"" + description + "\","
+                + "\"sampleProcessingProtocol\": \"" + description + "\","
+                + "\"dataProcessingProtocol\": \"" + description + "\","
+                + "\"keywords\": \"proteome, cell line, label-free, human, tissue\","
+                + "\"submissionType\": \"COMPLETE\","
+                + "\"submissionDate\": 1546300800000,"
+                + "\"publicationDate\": 1548979200000,"
+                + "\"updateDate\": 1548979200000,"
+                + "\"publicProject\": true,"
+                + "\"submitter\": {\"id\": 10, \"title\": \"Dr\", \"firstName\": \"Jane\", \"lastName\": \"Doe\","
+                + "\"email\": \"jane.doe@example.org\", \"affiliation\": \"Proteomics Institute\"},"
+                + "\"labHeads\": [], \"instruments\": [], \"references\": [], \"ptms\": [], \"software\": [],"
+                + "\"projectTags\": [], \"quantificationMethods\": [], \"samples\": []"
+                + "}";
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        objectMapper.configure(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY, true);
+        return objectMapper.readValue(json, Project.class);
+    }
+}
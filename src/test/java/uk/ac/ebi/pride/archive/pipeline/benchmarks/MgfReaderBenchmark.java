@@ -0,0 +1,130 @@
+package uk.ac.ebi.pride.archive.pipeline.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import uk.ac.ebi.pride.archive.pipeline.services.pia.MappedMgfFileReader;
+import uk.ac.ebi.pride.archive.pipeline.services.pia.SpectrumOffsetIndex;
+import uk.ac.ebi.pride.archive.pipeline.services.spectra.SpectrumPeaks;
+import uk.ac.ebi.pride.archive.pipeline.utility.SubmissionPipelineConstants;
+import uk.ac.ebi.pride.tools.mgf_parser.MgfFile;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Random access to the spectra of an MGF file, the access pattern of indexSpectraStep, including the load of the
+ * peaks into a {@link SpectrumPeaks}.
+ *
+ * <ul>
+ *     <li>mgfFile: {@link MgfFile} of jmzReader, the spectrum is read as lines and the peaks are boxed into a map.</li>
+ *     <li>mappedMgfFile: {@link MappedMgfFileReader}, the peaks are parsed from the memory-mapped file into primitive
+ *     arrays.</li>
+ * </ul>
+ *
+ * A synthetic MGF file is generated, run with {@code -Dmgf.file=<path>} to read a real one. Run the main method and
+ * compare the time and the {@code gc.alloc.rate.norm} (bytes per spectrum) of both benchmarks.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MgfReaderBenchmark {
+
+    @Param({"20000"})
+    int numSpectra;
+
+    @Param({"300"})
+    int numPeaks;
+
+    private File mgfFile;
+    private boolean generated;
+    private MgfFile jmzReaderFile;
+    private MappedMgfFileReader mappedReader;
+    private SpectrumPeaks peaks;
+    private String[] ids;
+    private int next;
+
+    @Setup
+    public void setup() throws Exception {
+        String path = System.getProperty("mgf.file");
+        if (path != null) {
+            mgfFile = new File(path);
+        } else {
+            mgfFile = File.createTempFile("benchmark", ".mgf");
+            generated = true;
+            writeMgf(mgfFile, numSpectra, numPeaks);
+        }
+        jmzReaderFile = new MgfFile(mgfFile, true);
+        mappedReader = new MappedMgfFileReader(mgfFile,
+                SpectrumOffsetIndex.build(mgfFile, SubmissionPipelineConstants.FileType.MGF));
+        peaks = new SpectrumPeaks();
+
+        Random random = new Random(42);
+        ids = new String[4096];
+        for (int i = 0; i < ids.length; i++)
+            ids[i] = String.valueOf(1 + random.nextInt(mappedReader.getSpectraCount()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        mappedReader.close();
+        if (generated)
+            mgfFile.delete();
+    }
+
+    @Benchmark
+    public int mgfFile() throws Exception {
+        peaks.load(jmzReaderFile.getSpectrumById(nextId()));
+        return peaks.size();
+    }
+
+    @Benchmark
+    public int mappedMgfFile() throws Exception {
+        peaks.load(mappedReader.getSpectrumById(nextId()));
+        return peaks.size();
+    }
+
+    private String nextId() {
+        next = (next + 1) % ids.length;
+        return ids[next];
+    }
+
+    private static void writeMgf(File file, int numSpectra, int numPeaks) throws IOException {
+        Random random = new Random(42);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            writer.write("MASS=Monoisotopic\n");
+            for (int spectrum = 1; spectrum <= numSpectra; spectrum++) {
+                writer.write("BEGIN IONS\n");
+                writer.write("TITLE=controllerType=0 controllerNumber=1 scan=" + spectrum + "\n");
+                writer.write(String.format(Locale.ROOT, "PEPMASS=%.6f %.2f\n",
+                        400 + random.nextDouble() * 1200, random.nextDouble() * 1e7));
+                writer.write("CHARGE=" + (2 + random.nextInt(3)) + "+\n");
+                writer.write("RTINSECONDS=" + spectrum / 10 + "\n");
+                double mz = 100;
+                for (int peak = 0; peak < numPeaks; peak++) {
+                    mz += random.nextDouble() * 5;
+                    writer.write(String.format(Locale.ROOT, "%.5f %.4f\n", mz, random.nextDouble() * 1e5));
+                }
+                writer.write("END IONS\n\n");
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(MgfReaderBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,58 @@
+package uk.ac.ebi.pride.archive.pipeline.benchmarks;
+
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import uk.ac.ebi.pride.archive.pipeline.core.transformers.PrideProjectTransformer;
+import uk.ac.ebi.pride.archive.repo.repos.project.Project;
+import uk.ac.ebi.pride.mongodb.archive.model.projects.MongoPrideProject;
+import uk.ac.ebi.pride.solr.indexes.pride.model.PrideSolrProject;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Project transformations of the sync jobs: Oracle project to MongoDB ({@link PrideProjectTransformer#transformOracleToMongo})
+ * and MongoDB project to Solr ({@link PrideProjectTransformer#transformProjectMongoToSolr}).
+ *
+ * The Oracle project is synthetic, see {@link BenchmarkFixtures#oracleProject()}, and the MongoDB project is its
+ * transformation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ProjectTransformerBenchmark {
+
+    private Project oracleProject;
+    private MongoPrideProject mongoProject;
+
+    @Setup
+    public void setup() throws Exception {
+        oracleProject = BenchmarkFixtures.oracleProject();
+        mongoProject = PrideProjectTransformer.transformOracleToMongo(oracleProject);
+        mongoProject.setId(new ObjectId());
+    }
+
+    @Benchmark
+    public MongoPrideProject transformOracleToMongo() {
+        return PrideProjectTransformer.transformOracleToMongo(oracleProject);
+    }
+
+    @Benchmark
+    public PrideSolrProject transformProjectMongoToSolr() {
+        return PrideProjectTransformer.transformProjectMongoToSolr(mongoProject);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(ProjectTransformerBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
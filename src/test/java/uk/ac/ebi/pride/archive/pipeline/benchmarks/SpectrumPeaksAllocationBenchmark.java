@@ -0,0 +1,203 @@
+package uk.ac.ebi.pride.archive.pipeline.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.paranamer.ParanamerModule;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import uk.ac.ebi.pride.archive.dataprovider.data.peptide.PSMProvider;
+import uk.ac.ebi.pride.archive.pipeline.services.spectra.PeakArraySpectrum;
+import uk.ac.ebi.pride.archive.pipeline.services.spectra.SpectrumPeaks;
+import uk.ac.ebi.pride.archive.pipeline.utility.BackupUtil;
+import uk.ac.ebi.pride.archive.spectra.model.ArchiveSpectrum;
+import uk.ac.ebi.pride.tools.jmzreader.model.Spectrum;
+import uk.ac.ebi.pride.tools.jmzreader.model.impl.ParamGroup;
+
+import java.io.BufferedWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allocation per PSM of the peak path of indexSpectraStep: spectrum of the reader to {@link ArchiveSpectrum}
+ * and the line of the backup file.
+ *
+ * <ul>
+ *     <li>boxedPeaksStringBackup: the peak list of the spectrum is copied into {@code Double[]} and the spectrum is
+ *     serialized into a {@link String} before it is written to the backup file (previous implementation).</li>
+ *     <li>spectrumPeaksBufferedBackup: the boxed arrays are built by {@link SpectrumPeaks} from the source of the peaks,
+ *     without building a peak list, and the spectrum is serialized by {@link BackupUtil#write} into the reusable
+ *     buffer of the thread.</li>
+ * </ul>
+ *
+ * The source of the spectrum is a jmzReader peak list ({@code peakList}), or a {@link PeakArraySpectrum} of the
+ * readers of the pipeline ({@code peakArray}), whose peak list is built by {@link Spectrum#getPeakList()} in the
+ * previous implementation. {@link ArchiveSpectrum} only accepts {@code Double[]}, so both implementations allocate the
+ * two arrays of the spectrum: with a peak list they reuse its {@link Double} objects, with a peak array both box every
+ * peak once. The difference is the peak list built from a peak array and the {@link String} of the backup line.
+ *
+ * The fixtures are synthetic, no file or service is needed. Run the main method and compare the
+ * {@code gc.alloc.rate.norm} (bytes per PSM) of both benchmarks for each source.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SpectrumPeaksAllocationBenchmark {
+
+    @Param({"200", "1000"})
+    int numPeaks;
+
+    @Param({"peakList", "peakArray"})
+    String source;
+
+    private Spectrum spectrum;
+    private SpectrumPeaks peaks;
+    private BufferedWriter backupWriter;
+    private ObjectMapper objectMapper;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        Map<Double, Double> peakList = new HashMap<>();
+        while (peakList.size() < numPeaks) {
+            peakList.put(100 + random.nextDouble() * 1900, random.nextDouble() * 100000);
+        }
+        if ("peakArray".equals(source)) {
+            double[] mz = new double[numPeaks];
+            double[] intensities = new double[numPeaks];
+            int count = 0;
+            for (Map.Entry<Double, Double> peak : peakList.entrySet()) {
+                mz[count] = peak.getKey();
+                intensities[count] = peak.getValue();
+                count++;
+            }
+            spectrum = new PeakArraySpectrum("1", 2, 2, 465.2403, null, mz, intensities, numPeaks);
+        } else {
+            spectrum = new PeakListSpectrum(peakList);
+        }
+        peaks = new SpectrumPeaks();
+        backupWriter = new BufferedWriter(new NullWriter());
+        objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new ParanamerModule());
+    }
+
+    @Benchmark
+    public PSMProvider boxedPeaksStringBackup() throws Exception {
+        Map<Double, Double> peakList = spectrum.getPeakList();
+        Double[] masses = new Double[peakList.size()];
+        Double[] intensities = new Double[peakList.size()];
+        int count = 0;
+        for (Map.Entry entry : peakList.entrySet()) {
+            masses[count] = (Double) entry.getKey();
+            intensities[count] = (Double) entry.getValue();
+            count++;
+        }
+        PSMProvider archiveSpectrum = buildSpectrum(masses, intensities);
+
+        String line = objectMapper.writeValueAsString(archiveSpectrum);
+        backupWriter.write(line);
+        backupWriter.newLine();
+        return archiveSpectrum;
+    }
+
+    @Benchmark
+    public PSMProvider spectrumPeaksBufferedBackup() throws Exception {
+        peaks.load(spectrum);
+        PSMProvider archiveSpectrum = buildSpectrum(peaks.toMzObjectArray(), peaks.toIntensityObjectArray());
+
+        BackupUtil.write(archiveSpectrum, backupWriter);
+        return archiveSpectrum;
+    }
+
+    private static PSMProvider buildSpectrum(Double[] masses, Double[] intensities) {
+        return ArchiveSpectrum
+                .builder()
+                .usi("mzspec:PXD000001:file.mgf:index:1:PEPTIDEK/2")
+                .projectAccession("PXD000001")
+                .assayAccession("1")
+                .peptideSequence("PEPTIDEK")
+                .msLevel(2)
+                .precursorCharge(2)
+                .precursorMz(465.2403)
+                .masses(masses)
+                .numPeaks(intensities.length)
+                .intensities(intensities)
+                .build();
+    }
+
+    /**
+     * Spectrum of the jmzReader readers, with a boxed peak list.
+     */
+    private static class PeakListSpectrum implements Spectrum {
+
+        private final Map<Double, Double> peakList;
+
+        PeakListSpectrum(Map<Double, Double> peakList) {
+            this.peakList = peakList;
+        }
+
+        @Override
+        public String getId() {
+            return "1";
+        }
+
+        @Override
+        public Integer getPrecursorCharge() {
+            return 2;
+        }
+
+        @Override
+        public Double getPrecursorMZ() {
+            return 465.2403;
+        }
+
+        @Override
+        public Double getPrecursorIntensity() {
+            return null;
+        }
+
+        @Override
+        public Map<Double, Double> getPeakList() {
+            return peakList;
+        }
+
+        @Override
+        public Integer getMsLevel() {
+            return 2;
+        }
+
+        @Override
+        public ParamGroup getAdditional() {
+            return new ParamGroup();
+        }
+    }
+
+    private static class NullWriter extends Writer {
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(SpectrumPeaksAllocationBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,86 @@
+package uk.ac.ebi.pride.archive.pipeline.benchmarks;
+
+import de.mpc.pia.modeller.psm.ReportPSM;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import uk.ac.ebi.jmzidml.model.mzidml.SpectraData;
+import uk.ac.ebi.pride.archive.pipeline.utility.SubmissionPipelineConstants;
+import uk.ac.ebi.pride.archive.pipeline.utility.SubmissionPipelineConstants.FileType;
+import uk.ac.ebi.pride.archive.pipeline.utility.SubmissionPipelineConstants.SpecIdFormat;
+import uk.ac.ebi.pride.utilities.util.Triple;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per PSM string building of {@link SubmissionPipelineConstants}: the encoded peptide and PSM (ProForma-like sequence
+ * with the modification accessions), the spectrum id in the spectrum file and the USI, both from a {@link SpectraData}
+ * (the id format is resolved for every PSM) and from the file name (PRIDE XML).
+ *
+ * The PSMs are synthetic, see {@link BenchmarkFixtures#psms(int)}; every invocation processes the next PSM.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class UsiBenchmark {
+
+    private ReportPSM[] psms;
+    private Triple<String, SpectraData, FileType> spectrumFile;
+    private int next;
+
+    @Setup
+    public void setup() {
+        psms = BenchmarkFixtures.psms(4096);
+        spectrumFile = new Triple<>(BenchmarkFixtures.SPECTRUM_FILE, BenchmarkFixtures.mgfSpectraData(), FileType.MGF);
+    }
+
+    @Benchmark
+    public String encodePeptide() {
+        ReportPSM psm = nextPsm();
+        return SubmissionPipelineConstants.encodePeptide(psm.getSequence(), psm.getModifications());
+    }
+
+    @Benchmark
+    public String encodePSM() {
+        ReportPSM psm = nextPsm();
+        return SubmissionPipelineConstants.encodePSM(psm.getSequence(), psm.getModifications(), psm.getCharge());
+    }
+
+    @Benchmark
+    public String getSpectrumId() {
+        return SubmissionPipelineConstants.getSpectrumId(SpecIdFormat.MULTI_PEAK_LIST_NATIVE_ID, nextPsm());
+    }
+
+    @Benchmark
+    public String getSpectrumIdFromSpectraData() {
+        return SubmissionPipelineConstants.getSpectrumId(spectrumFile.getSecond(), nextPsm());
+    }
+
+    @Benchmark
+    public String buildUsi() {
+        return SubmissionPipelineConstants.buildUsi(BenchmarkFixtures.PROJECT_ACCESSION, spectrumFile, nextPsm());
+    }
+
+    @Benchmark
+    public String buildUsiFromFileName() {
+        return SubmissionPipelineConstants.buildUsi(BenchmarkFixtures.PROJECT_ACCESSION, "spectra.mgf", nextPsm());
+    }
+
+    private ReportPSM nextPsm() {
+        next = (next + 1) % psms.length;
+        return psms[next];
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(UsiBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
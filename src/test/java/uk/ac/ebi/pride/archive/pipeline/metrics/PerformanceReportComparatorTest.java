@@ -0,0 +1,91 @@
+package uk.ac.ebi.pride.archive.pipeline.metrics;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PerformanceReportComparatorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final PerformanceReportComparator comparator = new PerformanceReportComparator(0.2, 0.5, 1000);
+
+    @Test
+    public void closestBaselineOfTheJobIsSelectedTest() {
+        PerformanceReport report = report("assayJob", 1, 10000, 60000);
+        PerformanceReport small = report("assayJob", 2, 4000, 20000);
+        PerformanceReport close = report("assayJob", 3, 9000, 50000);
+        PerformanceReport otherJob = report("solrJob", 4, 10000, 1000);
+
+        assertSame(close, comparator.selectBaseline(report, Arrays.asList(small, close, otherJob)));
+        // 4000 PSMs is 60% smaller, out of the size tolerance
+        assertNull(comparator.selectBaseline(report, Arrays.asList(small, otherJob)));
+        assertNull(comparator.selectBaseline(report, Collections.singletonList(report("assayJob", 1, 10000, 60000))));
+    }
+
+    @Test
+    public void stepsAboveTheScaledBaselineAreRegressionsTest() {
+        PerformanceReport baseline = report("assayJob", 1, 5000, 30000);
+        // twice the input, 60 s are expected
+        assertTrue(comparator.compare(report("assayJob", 2, 10000, 70000), baseline).isEmpty());
+
+        List<PerformanceReportComparator.Regression> regressions =
+                comparator.compare(report("assayJob", 3, 10000, 80000), baseline);
+        assertEquals(1, regressions.size());
+        assertEquals("indexSpectra", regressions.get(0).getStep());
+        assertEquals("wallTime", regressions.get(0).getMetric());
+        assertEquals(60000, regressions.get(0).getExpectedMillis(), 0.001);
+
+        // short steps are not flagged under the minimum delta
+        assertTrue(comparator.compare(report("assayJob", 4, 0, 900), report("assayJob", 5, 0, 300)).isEmpty());
+    }
+
+    @Test
+    public void reportIsSavedAsBaselineWithoutRegressionsTest() throws Exception {
+        File baselines = folder.newFolder("baselines");
+        File first = folder.newFile("assayJob-1.perf.json");
+        report("assayJob", 1, 5000, 30000).write(first);
+        assertEquals(0, PerformanceReportComparator.run(new String[]{first.getPath(), baselines.getPath(),
+                "--save-baseline"}));
+        assertEquals(1, PerformanceReportComparator.readBaselines(baselines).size());
+
+        File slow = folder.newFile("assayJob-2.perf.json");
+        report("assayJob", 2, 5000, 60000).write(slow);
+        assertEquals(2, PerformanceReportComparator.run(new String[]{slow.getPath(), baselines.getPath(),
+                "--save-baseline"}));
+        assertEquals(1, PerformanceReportComparator.readBaselines(baselines).size());
+    }
+
+    private static PerformanceReport report(String jobName, long executionId, long inputSize, long stepTime) {
+        PerformanceReport report = new PerformanceReport();
+        report.setJobName(jobName);
+        report.setJobExecutionId(executionId);
+        report.setStatus("COMPLETED");
+        report.setInputSize(inputSize);
+        report.setWallTimeMillis(stepTime + 100);
+
+        PerformanceReport.StepReport step = new PerformanceReport.StepReport();
+        step.setName("indexSpectra");
+        step.setWallTimeMillis(stepTime);
+        step.setCpuTimeMillis(-1);
+        report.getSteps().add(step);
+
+        PerformanceReport.StepReport init = new PerformanceReport.StepReport();
+        init.setName("init");
+        init.setWallTimeMillis(100);
+        init.setCpuTimeMillis(50);
+        report.getSteps().add(init);
+        return report;
+    }
+}
@@ -0,0 +1,74 @@
+package uk.ac.ebi.pride.archive.pipeline.services.backup;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.ebi.pride.archive.pipeline.utility.BackupUtil;
+import uk.ac.ebi.pride.mongodb.molecules.model.peptide.PrideMongoPeptideEvidence;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BackupProjectionTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void jsonRecordsAreProjectedTest() throws Exception {
+        File file = new File(folder.getRoot(), "PXD002633_55852_PrideMongoPeptideEvidence.json");
+        try (InputStream in = getClass().getResourceAsStream(
+                "/PXD002633/PXD002633_55852_PrideMongoPeptideEvidence.json")) {
+            Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        try (BackupReader<String[]> reader = BackupUtil.openProjectionReader(file.toPath(), "$.proteinAccession",
+                "peptideSequence", "database", "missing.field", "additionalAttributes")) {
+            assertTrue(reader.hasNext());
+            String[] values = reader.next();
+            assertEquals("APOB_HUMAN", values[0]);
+            assertEquals("AASGTTGTYQEWK", values[1]);
+            assertNull(values[2]);
+            assertNull(values[3]);
+            assertTrue(values[4].startsWith("[{\"@type\":\"CvParam\""));
+            assertFalse(reader.hasNext());
+        }
+    }
+
+    @Test
+    public void binaryRecordsAreProjectedTest() throws Exception {
+        File file = new File(folder.getRoot(), "PXD000001_1_PrideMongoPeptideEvidence.bin");
+        try (BackupWriter<PrideMongoPeptideEvidence> writer = new BinaryBackupWriter<>(file,
+                PrideMongoPeptideEvidence.class)) {
+            for (int i = 0; i < 3; i++) {
+                writer.write(PrideMongoPeptideEvidence
+                        .builder()
+                        .projectAccession("PXD000001")
+                        .assayAccession("1")
+                        .proteinAccession("P1234" + i)
+                        .peptideSequence("PEPTIDEK")
+                        .build());
+            }
+        }
+
+        try (BackupReader<String[]> reader = BackupUtil.openProjectionReader(file.toPath(), "peptideSequence",
+                "proteinAccession")) {
+            for (int i = 0; i < 3; i++)
+                assertArrayEquals(new String[]{"PEPTIDEK", "P1234" + i}, reader.next());
+            assertFalse(reader.hasNext());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void conflictingPathsAreRejectedTest() {
+        new BackupProjection("proteinAccession", "proteinAccession.name");
+    }
+}
@@ -0,0 +1,160 @@
+package uk.ac.ebi.pride.archive.pipeline.services.backup;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.ebi.pride.archive.pipeline.utility.BackupUtil;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BinaryBackupWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recordsAreReadInWriteOrderTest() throws Exception {
+        File file = new File(folder.getRoot(), "records.bin");
+        // small blocks, the records are spread over many blocks
+        try (BinaryBackupWriter<Record> writer = new BinaryBackupWriter<>(file, Record.class, 4096, 1)) {
+            for (int i = 0; i < 1000; i++)
+                writer.write(record(i));
+            assertEquals(1000, writer.getRecordCount());
+        }
+
+        try (BinaryBackupReader<Record> reader = new BinaryBackupReader<>(file, Record.class)) {
+            assertEquals(1000, reader.getRecordCount());
+            assertEquals(Record.class.getName(), reader.getRecordType());
+            List<Record> records = readAll(reader);
+            assertEquals(1000, records.size());
+            for (int i = 0; i < records.size(); i++) {
+                assertEquals(record(i).getUsi(), records.get(i).getUsi());
+                assertArrayEquals(record(i).getMasses(), records.get(i).getMasses(), 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void emptyFileTest() throws Exception {
+        File file = new File(folder.getRoot(), "empty.bin");
+        new BinaryBackupWriter<>(file, Record.class).close();
+
+        try (BinaryBackupReader<Record> reader = new BinaryBackupReader<>(file, Record.class)) {
+            assertEquals(0, reader.getRecordCount());
+            assertFalse(reader.hasNext());
+        }
+    }
+
+    @Test
+    public void unclosedFileIsReadUpToTheLastBlockTest() throws Exception {
+        File file = new File(folder.getRoot(), "unclosed.bin");
+        BinaryBackupWriter<Record> writer = new BinaryBackupWriter<>(file, Record.class, 4096, 1);
+        for (int i = 0; i < 1000; i++)
+            writer.write(record(i));
+
+        try (BinaryBackupReader<Record> reader = new BinaryBackupReader<>(file, Record.class)) {
+            assertEquals(-1, reader.getRecordCount());
+            int records = readAll(reader).size();
+            assertTrue(records > 0 && records < 1000);
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void truncatedFileFailsTest() throws Exception {
+        File file = new File(folder.getRoot(), "truncated.bin");
+        try (BinaryBackupWriter<Record> writer = new BinaryBackupWriter<>(file, Record.class, 4096, 1)) {
+            for (int i = 0; i < 1000; i++)
+                writer.write(record(i));
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 10);
+        }
+
+        try (BinaryBackupReader<Record> reader = new BinaryBackupReader<>(file, Record.class)) {
+            readAll(reader);
+            fail("The truncated file was read");
+        } catch (UncheckedIOException e) {
+            assertTrue(e.getMessage().contains("truncated"));
+        }
+    }
+
+    @Test
+    public void backupFilesOfBothFormatsAreReadTest() throws Exception {
+        String backupPath = folder.getRoot().getPath();
+        assertTrue(new File(backupPath, "PXD000001").mkdir());
+
+        try (BackupWriter<Record> writer = BackupUtil.createBackupWriter(backupPath, "PXD000001", "1",
+                Record.class, BackupFormat.JSON)) {
+            writer.write(record(1));
+            writer.write(record(2));
+        }
+        try (BackupReader<Record> reader = BackupUtil.openBackupReader(backupPath, "PXD000001", "1", Record.class)) {
+            assertTrue(reader instanceof JsonBackupReader);
+            assertEquals(2, readAll(reader).size());
+        }
+
+        // the binary file replaces the JSON file of the assay
+        try (BackupWriter<Record> writer = BackupUtil.createBackupWriter(backupPath, "PXD000001", "1",
+                Record.class, BackupFormat.BINARY)) {
+            writer.write(record(3));
+        }
+        assertFalse(new File(BackupUtil.getBackupFile(backupPath, "PXD000001", "1", Record.class,
+                BackupFormat.JSON)).exists());
+        try (BackupReader<Record> reader = BackupUtil.openBackupReader(backupPath, "PXD000001", "1", Record.class)) {
+            assertTrue(reader instanceof BinaryBackupReader);
+            List<Record> records = readAll(reader);
+            assertEquals(1, records.size());
+            assertEquals(record(3).getUsi(), records.get(0).getUsi());
+        }
+    }
+
+    private static <T> List<T> readAll(BackupReader<T> reader) {
+        List<T> records = new ArrayList<>();
+        reader.forEachRemaining(records::add);
+        return records;
+    }
+
+    private static Record record(int index) {
+        Record record = new Record();
+        record.setUsi("mzspec:PXD000001:file.mgf:index:" + index + ":PEPTIDEK/2");
+        double[] masses = new double[50];
+        for (int i = 0; i < masses.length; i++)
+            masses[i] = 100 + index + i * 0.25;
+        record.setMasses(masses);
+        return record;
+    }
+
+    public static class Record {
+
+        private String usi;
+        private double[] masses;
+
+        public String getUsi() {
+            return usi;
+        }
+
+        public void setUsi(String usi) {
+            this.usi = usi;
+        }
+
+        public double[] getMasses() {
+            return masses;
+        }
+
+        public void setMasses(double[] masses) {
+            this.masses = masses;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package uk.ac.ebi.pride.archive.pipeline.services.backup;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.ebi.pride.archive.pipeline.utility.BackupUtil;
+import uk.ac.ebi.pride.mongodb.molecules.model.peptide.PrideMongoPeptideEvidence;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ProjectBackupManifestTest {
+
+    private static final String PROJECT = "PXD000001";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void assaysAreAddedAndReplacedTest() throws Exception {
+        String backupPath = folder.getRoot().getPath();
+        assertTrue(new File(backupPath, PROJECT).mkdir());
+        assertNull(ProjectBackupManifest.read(backupPath, PROJECT));
+
+        File first = writePeptideEvidences(backupPath, "1", "P12345", "PEPTIDEK", "P12345", "ELVISK");
+        File second = writePeptideEvidences(backupPath, "2", "Q99999", "PEPTIDEK");
+        ProjectBackupManifest.update(backupPath, PROJECT, assayEntry("1", first, 3,
+                Arrays.asList("P12345", "P12345"), Arrays.asList("PEPTIDEK", "ELVISK")));
+        ProjectBackupManifest.update(backupPath, PROJECT, assayEntry("2", second, 1,
+                Arrays.asList("Q99999"), Arrays.asList("PEPTIDEK")));
+
+        ProjectBackupManifest manifest = ProjectBackupManifest.read(backupPath, PROJECT);
+        assertEquals(PROJECT, manifest.getProjectAccession());
+        assertEquals(2, manifest.getAssays().size());
+        assertEquals(Arrays.asList("ELVISK", "PEPTIDEK"), manifest.getAssays().get("1").getPeptideSequences());
+        assertEquals(new TreeSet<>(Arrays.asList("P12345", "Q99999")), manifest.getProteinAccessions());
+        ProjectBackupManifest.FileEntry fileEntry = manifest.getAssays().get("1").getFiles()
+                .get(PrideMongoPeptideEvidence.class.getSimpleName());
+        assertEquals(3, fileEntry.getRecords());
+        assertEquals(ProjectBackupManifest.FileEntry.checksum(first), fileEntry.getCrc32());
+
+        // the assay is analysed again
+        ProjectBackupManifest.update(backupPath, PROJECT, assayEntry("2", second, 1,
+                Arrays.asList("Q11111"), Arrays.asList("PEPTIDEK")));
+        manifest = ProjectBackupManifest.read(backupPath, PROJECT);
+        assertEquals(2, manifest.getAssays().size());
+        assertEquals(new TreeSet<>(Arrays.asList("P12345", "Q11111")), manifest.getProteinAccessions());
+    }
+
+    @Test
+    public void changedFilesAreReadInsteadOfTheManifestTest() throws Exception {
+        String backupPath = folder.getRoot().getPath();
+        assertTrue(new File(backupPath, PROJECT).mkdir());
+        File first = writePeptideEvidences(backupPath, "1", "P12345", "PEPTIDEK");
+        File second = writePeptideEvidences(backupPath, "2", "Q99999", "ELVISK");
+        // the sets of the manifest are used for the files that have not changed
+        ProjectBackupManifest.update(backupPath, PROJECT, assayEntry("1", first, 1,
+                Arrays.asList("FROM_MANIFEST"), Arrays.asList("FROMMANIFEST")));
+        ProjectBackupManifest.update(backupPath, PROJECT, assayEntry("2", second, 1,
+                Arrays.asList("FROM_MANIFEST"), Arrays.asList("FROMMANIFEST")));
+        writePeptideEvidences(backupPath, "2", "Q99999", "ELVISK", "Q88888", "ELVISR");
+        // an assay without manifest entry, from a previous version of the pipeline
+        writePeptideEvidences(backupPath, "3", "O77777", "PEPTIDER");
+
+        Set<String> proteinAccessions = new HashSet<>();
+        Set<String> peptideSequences = new HashSet<>();
+        BackupUtil.collectProteinsAndPeptides(backupPath, PROJECT, proteinAccessions, peptideSequences);
+
+        assertEquals(new HashSet<>(Arrays.asList("FROM_MANIFEST", "Q99999", "Q88888", "O77777")), proteinAccessions);
+        assertEquals(new HashSet<>(Arrays.asList("FROMMANIFEST", "ELVISK", "ELVISR", "PEPTIDER")), peptideSequences);
+    }
+
+    private static ProjectBackupManifest.AssayEntry assayEntry(String assay, File peptideEvidenceFile, long records,
+                                                               Iterable<String> proteins, Iterable<String> peptides)
+            throws Exception {
+        ProjectBackupManifest.AssayEntry entry = new ProjectBackupManifest.AssayEntry(assay);
+        entry.addFile(PrideMongoPeptideEvidence.class, peptideEvidenceFile, records);
+        Set<String> proteinAccessions = new HashSet<>();
+        proteins.forEach(proteinAccessions::add);
+        Set<String> peptideSequences = new HashSet<>();
+        peptides.forEach(peptideSequences::add);
+        entry.setProteinAccessions(proteinAccessions);
+        entry.setPeptideSequences(peptideSequences);
+        return entry;
+    }
+
+    /**
+     * @param proteinsAndPeptides protein accession and peptide sequence of every evidence
+     */
+    private static File writePeptideEvidences(String backupPath, String assay, String... proteinsAndPeptides)
+            throws Exception {
+        try (BackupWriter<PrideMongoPeptideEvidence> writer = BackupUtil.createBackupWriter(backupPath, PROJECT, assay,
+                PrideMongoPeptideEvidence.class, BackupFormat.BINARY)) {
+            for (int i = 0; i < proteinsAndPeptides.length; i += 2) {
+                writer.write(PrideMongoPeptideEvidence
+                        .builder()
+                        .projectAccession(PROJECT)
+                        .assayAccession(assay)
+                        .proteinAccession(proteinsAndPeptides[i])
+                        .peptideSequence(proteinsAndPeptides[i + 1])
+                        .build());
+            }
+        }
+        return new File(BackupUtil.getBackupFile(backupPath, PROJECT, assay, PrideMongoPeptideEvidence.class,
+                BackupFormat.BINARY));
+    }
+}
@@ -0,0 +1,102 @@
+package uk.ac.ebi.pride.archive.pipeline.services.backup;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RestoreCheckpointTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void restoredFilesAreSkippedWhenResumingTest() throws Exception {
+        Path backupDirectory = folder.getRoot().toPath();
+        Path first = backupFile(backupDirectory, "PXD000001_1_PrideMongoPeptideEvidence.bin");
+        Path second = backupFile(backupDirectory, "PXD000001_1_ArchiveSpectrum.bin");
+        File file = new File(folder.getRoot(), "restore-checkpoint.txt");
+
+        try (RestoreCheckpoint checkpoint = new RestoreCheckpoint(file, backupDirectory, true)) {
+            assertFalse(checkpoint.isRestored(first));
+            checkpoint.markRestored(first);
+            assertTrue(checkpoint.isRestored(first));
+        }
+
+        // an interrupted write of the checkpoint
+        try (FileWriter writer = new FileWriter(file, true)) {
+            writer.write("PXD000001" + File.separator + "PXD0000");
+        }
+
+        try (RestoreCheckpoint checkpoint = new RestoreCheckpoint(file, backupDirectory, true)) {
+            assertTrue(checkpoint.isRestored(first));
+            assertFalse(checkpoint.isRestored(second));
+            checkpoint.markRestored(second);
+        }
+        try (RestoreCheckpoint checkpoint = new RestoreCheckpoint(file, backupDirectory, true)) {
+            assertEquals(2, checkpoint.getRestoredFiles());
+            assertTrue(checkpoint.isRestored(first));
+            assertTrue(checkpoint.isRestored(second));
+
+            // a file written again after its restore
+            Files.setLastModifiedTime(second, FileTime.fromMillis(Files.getLastModifiedTime(second).toMillis() + 1000));
+            assertFalse(checkpoint.isRestored(second));
+        }
+    }
+
+    @Test
+    public void restoreFromScratchTest() throws Exception {
+        Path backupDirectory = folder.getRoot().toPath();
+        Path backupFile = backupFile(backupDirectory, "PXD000001_1_PrideMongoPeptideEvidence.bin");
+        File file = new File(folder.getRoot(), "restore-checkpoint.txt");
+
+        try (RestoreCheckpoint checkpoint = new RestoreCheckpoint(file, backupDirectory, true)) {
+            checkpoint.markRestored(backupFile);
+        }
+        try (RestoreCheckpoint checkpoint = new RestoreCheckpoint(file, backupDirectory, false)) {
+            assertFalse(checkpoint.isRestored(backupFile));
+            assertEquals(0, checkpoint.getRestoredFiles());
+        }
+    }
+
+    @Test
+    public void projectRestoreKeepsTheFullRestoreCheckpointTest() throws Exception {
+        Path backupDirectory = folder.getRoot().toPath();
+        Path backupFile = backupFile(backupDirectory, "PXD000001_1_PrideMongoPeptideEvidence.bin");
+        File fullFile = RestoreCheckpoint.getCheckpointFile(folder.getRoot(), null);
+        File projectFile = RestoreCheckpoint.getCheckpointFile(folder.getRoot(), "PXD000001");
+        assertEquals("restore-checkpoint.txt", fullFile.getName());
+        assertEquals("restore-checkpoint-PXD000001.txt", projectFile.getName());
+
+        // an interrupted restore of the whole directory
+        try (RestoreCheckpoint checkpoint = new RestoreCheckpoint(fullFile, backupDirectory, true)) {
+            checkpoint.markRestored(backupFile);
+        }
+
+        // the project is restored twice from scratch, its files are restored again every time
+        for (int i = 0; i < 2; i++) {
+            try (RestoreCheckpoint checkpoint = new RestoreCheckpoint(projectFile, backupDirectory, false)) {
+                assertFalse(checkpoint.isRestored(backupFile));
+                checkpoint.markRestored(backupFile);
+            }
+        }
+
+        try (RestoreCheckpoint checkpoint = new RestoreCheckpoint(fullFile, backupDirectory, true)) {
+            assertTrue(checkpoint.isRestored(backupFile));
+        }
+    }
+
+    private static Path backupFile(Path backupDirectory, String name) throws Exception {
+        Path project = Files.createDirectories(backupDirectory.resolve("PXD000001"));
+        return Files.write(project.resolve(name), new byte[]{1, 2, 3});
+    }
+}
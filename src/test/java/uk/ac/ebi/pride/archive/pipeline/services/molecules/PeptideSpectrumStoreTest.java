@@ -0,0 +1,44 @@
+package uk.ac.ebi.pride.archive.pipeline.services.molecules;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PeptideSpectrumStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void overviewsAreReadBackPerPeptideTest() throws Exception {
+        File file = new File(folder.getRoot(), "PXD000001_1_peptide_spectra.tmp");
+        try (PeptideSpectrumStore store = new PeptideSpectrumStore(file)) {
+            for (long peptide = 0; peptide < 5000; peptide++)
+                for (int psm = 0; psm < 3; psm++)
+                    store.add(peptide, psm + 1, peptide + psm / 10.0, "mzspec:PXD000001:run:scan:" + peptide + "_" + psm);
+            // PSMs of a peptide that are not contiguous are read after the first ones
+            store.add(7, 4, 7.5, "mzspec:PXD000001:run:scan:7_3");
+            assertEquals(5000, store.getPeptides());
+
+            List<String> usis = new ArrayList<>();
+            assertTrue(store.read(7, (charge, precursorMz, usi) -> usis.add(charge + " " + precursorMz + " " + usi)));
+            assertEquals(4, usis.size());
+            assertEquals("1 7.0 mzspec:PXD000001:run:scan:7_0", usis.get(0));
+            assertEquals("4 7.5 mzspec:PXD000001:run:scan:7_3", usis.get(3));
+
+            usis.clear();
+            assertTrue(store.read(4999, (charge, precursorMz, usi) -> usis.add(usi)));
+            assertEquals("mzspec:PXD000001:run:scan:4999_2", usis.get(2));
+            assertFalse(store.read(5000, (charge, precursorMz, usi) -> usis.add(usi)));
+        }
+        assertFalse(file.exists());
+    }
+}
@@ -0,0 +1,153 @@
+package uk.ac.ebi.pride.archive.pipeline.services.pia;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.ebi.pride.archive.pipeline.services.spectra.PeakArraySpectrum;
+import uk.ac.ebi.pride.archive.pipeline.utility.SubmissionPipelineConstants;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the {@link BlockGzipReader} with block gzip files written as bgzip does.
+ */
+public class BlockGzipReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void regionsAcrossBlocksAreReadTest() throws IOException {
+        byte[] content = new byte[200000];
+        for (int i = 0; i < content.length; i++)
+            content[i] = (byte) ('a' + (i * 7 + i / 1000) % 26);
+        File file = writeBlockGzip("content.gz", content, 30000);
+
+        assertTrue(BlockGzipReader.isBlockGzip(file));
+        try (BlockGzipReader reader = new BlockGzipReader(file)) {
+            // 7 data blocks and the empty end of file block
+            assertEquals(8, reader.getBlocks());
+            assertEquals(content.length, reader.getUncompressedSize());
+
+            assertArrayEquals(Arrays.copyOfRange(content, 0, 10), bytes(reader.read(0, 10)));
+            assertArrayEquals(Arrays.copyOfRange(content, 29990, 90010), bytes(reader.read(29990, 60020)));
+            assertArrayEquals(Arrays.copyOfRange(content, 60000, 60001), bytes(reader.read(60000, 1)));
+            assertArrayEquals(Arrays.copyOfRange(content, 199000, 200000), bytes(reader.read(199000, 1000)));
+        }
+    }
+
+    @Test
+    public void blockIndexIsStoredAndReusedTest() throws IOException {
+        byte[] content = new byte[100000];
+        for (int i = 0; i < content.length; i++)
+            content[i] = (byte) ('a' + i % 26);
+        File file = writeBlockGzip("content.gz", content, 30000);
+        File indexFile = new File(folder.getRoot(), "content.gz" + BlockGzipReader.EXTENSION);
+
+        try (BlockGzipReader reader = new BlockGzipReader(file, indexFile)) {
+            assertEquals(5, reader.getBlocks());
+        }
+        assertTrue(indexFile.isFile());
+        assertTrue(indexFile.setLastModified(1000));
+
+        // the stored index is reused, not written again
+        try (BlockGzipReader reader = new BlockGzipReader(file, indexFile)) {
+            assertEquals(5, reader.getBlocks());
+            assertEquals(content.length, reader.getUncompressedSize());
+            assertArrayEquals(Arrays.copyOfRange(content, 29990, 60010), bytes(reader.read(29990, 30020)));
+        }
+        assertEquals(1000, indexFile.lastModified());
+
+        // the index of a modified file is built again
+        assertTrue(file.setLastModified(file.lastModified() - 10000));
+        try (BlockGzipReader reader = new BlockGzipReader(file, indexFile)) {
+            assertEquals(5, reader.getBlocks());
+        }
+        assertTrue(indexFile.lastModified() != 1000);
+    }
+
+    @Test
+    public void plainGzipIsNotBlockGzipTest() throws IOException {
+        File file = folder.newFile("plain.gz");
+        try (OutputStream outputStream = new GZIPOutputStream(new FileOutputStream(file))) {
+            outputStream.write("BEGIN IONS\nEND IONS\n".getBytes(StandardCharsets.US_ASCII));
+        }
+        assertFalse(BlockGzipReader.isBlockGzip(file));
+        assertFalse(BlockGzipReader.isBlockGzip(folder.newFile("empty.gz")));
+    }
+
+    @Test
+    public void mgfSpectraAreReadFromTheCompressedFileTest() throws Exception {
+        StringBuilder mgf = new StringBuilder();
+        for (int spectrum = 1; spectrum <= 500; spectrum++) {
+            mgf.append("BEGIN IONS\nTITLE=spectrum ").append(spectrum).append("\nPEPMASS=").append(400 + spectrum)
+                    .append("\nCHARGE=2+\n");
+            for (int peak = 1; peak <= 20; peak++)
+                mgf.append(100 + peak).append(".5 ").append(spectrum * peak).append("\n");
+            mgf.append("END IONS\n\n");
+        }
+        File file = writeBlockGzip("spectra.mgf.gz", mgf.toString().getBytes(StandardCharsets.US_ASCII), 4096);
+
+        SpectrumOffsetIndex index = SpectrumOffsetIndex.build(file, SubmissionPipelineConstants.FileType.MGF);
+        assertEquals(500, index.size());
+        try (MappedMgfFileReader reader = new MappedMgfFileReader(file, index, new BlockGzipReader(file))) {
+            PeakArraySpectrum spectrum = (PeakArraySpectrum) reader.getSpectrumById("spectrum 321");
+            assertEquals(Double.valueOf(721), spectrum.getPrecursorMZ());
+            assertEquals(20, spectrum.size());
+            assertEquals(321 * 20, spectrum.intensityArray()[19], 0);
+        }
+    }
+
+    private File writeBlockGzip(String name, byte[] content, int blockSize) throws IOException {
+        File file = folder.newFile(name);
+        try (OutputStream outputStream = new FileOutputStream(file)) {
+            for (int start = 0; start < content.length; start += blockSize)
+                outputStream.write(block(content, start, Math.min(blockSize, content.length - start)));
+            outputStream.write(block(content, 0, 0));
+        }
+        return file;
+    }
+
+    private static byte[] block(byte[] content, int start, int length) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(content, start, length);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        while (!deflater.finished())
+            compressed.write(chunk, 0, deflater.deflate(chunk));
+        deflater.end();
+        CRC32 crc = new CRC32();
+        crc.update(content, start, length);
+
+        int blockSize = 18 + compressed.size() + 8;
+        ByteBuffer block = ByteBuffer.allocate(blockSize).order(ByteOrder.LITTLE_ENDIAN);
+        block.put((byte) 0x1f).put((byte) 0x8b).put((byte) 8).put((byte) 4).putInt(0).put((byte) 0).put((byte) 0xff);
+        block.putShort((short) 6).put((byte) 'B').put((byte) 'C').putShort((short) 2).putShort((short) (blockSize - 1));
+        block.put(compressed.toByteArray());
+        block.putInt((int) crc.getValue()).putInt(length);
+        return block.array();
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,139 @@
+package uk.ac.ebi.pride.archive.pipeline.services.pia;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.ebi.pride.archive.pipeline.utility.SubmissionPipelineConstants;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the {@link DecompressionCache}.
+ */
+public class DecompressionCacheTest {
+
+    private static final String CONTENT = "BEGIN IONS\nTITLE=spectrum\nEND IONS\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void uncompressedPathTest() {
+        assertEquals("/data/spectra.mgf", SubmissionPipelineConstants.returnUnCompressPath("/data/spectra.mgf.gz"));
+        assertEquals("/data/spectra.mgf", SubmissionPipelineConstants.returnUnCompressPath("/data/spectra.mgf.zip"));
+        assertEquals("/data/spectra.mgf", SubmissionPipelineConstants.returnUnCompressPath("/data/spectra.mgf"));
+    }
+
+    @Test
+    public void compressedFilesAreDecompressedOnceTest() throws IOException {
+        File data = folder.newFolder("data");
+        writeGzip(new File(data, "spectra.mgf.gz"));
+        writeZip(new File(data, "result.mzid.zip"), "result.mzid");
+        Files.write(new File(data, "plain.mgf").toPath(), CONTENT.getBytes(StandardCharsets.UTF_8));
+
+        try (DecompressionCache cache = new DecompressionCache(folder.newFolder("cache"), Long.MAX_VALUE, 2)) {
+            String mgf = new File(data, "spectra.mgf").getPath();
+            cache.prefetch(mgf);
+            File decompressed = cache.resolve(mgf);
+            assertTrue(decompressed.getName().endsWith("-spectra.mgf"));
+            assertEquals(CONTENT, read(decompressed));
+            assertEquals(decompressed, cache.resolve(mgf));
+
+            File result = cache.resolve(new File(data, "result.mzid").getPath());
+            assertEquals(CONTENT, read(result));
+
+            // the uncompressed files and the missing files are returned as they are
+            assertEquals(new File(data, "plain.mgf"), cache.resolve(new File(data, "plain.mgf").getPath()));
+            assertEquals(new File(data, "missing.mgf"), cache.resolve(new File(data, "missing.mgf").getPath()));
+            assertNull(DecompressionCache.findCompressed(new File(data, "plain.mgf").getPath()));
+        }
+    }
+
+    @Test
+    public void leastRecentlyUsedFilesAreEvictedTest() throws IOException {
+        File data = folder.newFolder("data");
+        File cacheDirectory = folder.newFolder("cache");
+        try (DecompressionCache cache = new DecompressionCache(cacheDirectory, CONTENT.length() * 2L, 1)) {
+            File first = cache.resolve(gzip(data, "first.mgf"));
+            File second = cache.resolve(gzip(data, "second.mgf"));
+            // the files used in the last minutes are kept even if the cache is full
+            long old = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1);
+            assertTrue(first.setLastModified(old - 1000));
+            assertTrue(second.setLastModified(old));
+
+            File third = cache.resolve(gzip(data, "third.mgf"));
+            assertFalse(first.exists());
+            assertTrue(second.exists());
+            assertTrue(third.exists());
+
+            // an evicted file is decompressed again
+            assertEquals(CONTENT, read(cache.resolve(new File(data, "first.mgf").getPath())));
+        }
+    }
+
+    @Test
+    public void acquiredFilesAreNotEvictedTest() throws IOException {
+        File data = folder.newFolder("data");
+        File cacheDirectory = folder.newFolder("cache");
+        try (DecompressionCache cache = new DecompressionCache(cacheDirectory, CONTENT.length(), 1)) {
+            File first = cache.acquire(gzip(data, "first.mgf"));
+            long old = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1);
+            assertTrue(first.setLastModified(old));
+
+            // the file is still open, it is kept even if it has not been used recently
+            File second = cache.resolve(gzip(data, "second.mgf"));
+            assertTrue(first.exists());
+
+            cache.release(first);
+            assertTrue(first.setLastModified(old));
+            assertTrue(second.setLastModified(old + 1000));
+            cache.resolve(gzip(data, "third.mgf"));
+            assertFalse(first.exists());
+
+            // the original file is returned as it is and its release is ignored
+            File plain = new File(data, "plain.mgf");
+            Files.write(plain.toPath(), CONTENT.getBytes(StandardCharsets.UTF_8));
+            assertEquals(plain, cache.acquire(plain.getPath()));
+            cache.release(plain);
+        }
+    }
+
+    private static String gzip(File directory, String name) throws IOException {
+        writeGzip(new File(directory, name + ".gz"));
+        return new File(directory, name).getPath();
+    }
+
+    private static void writeGzip(File file) throws IOException {
+        try (OutputStream outputStream = new GZIPOutputStream(new FileOutputStream(file))) {
+            outputStream.write(CONTENT.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void writeZip(File file, String name) throws IOException {
+        try (ZipOutputStream outputStream = new ZipOutputStream(new FileOutputStream(file))) {
+            outputStream.putNextEntry(new ZipEntry("readme.txt"));
+            outputStream.write("other file".getBytes(StandardCharsets.UTF_8));
+            outputStream.putNextEntry(new ZipEntry("folder/" + name));
+            outputStream.write(CONTENT.getBytes(StandardCharsets.UTF_8));
+            outputStream.closeEntry();
+        }
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,120 @@
+package uk.ac.ebi.pride.archive.pipeline.services.pia;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.ebi.pride.archive.pipeline.services.spectra.PeakArraySpectrum;
+import uk.ac.ebi.pride.archive.pipeline.utility.SubmissionPipelineConstants;
+import uk.ac.ebi.pride.tools.jmzreader.JMzReaderException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the {@link MappedMgfFileReader}.
+ */
+public class MappedMgfFileReaderTest {
+
+    private static final String MGF = "MASS=Monoisotopic\n"
+            + "BEGIN IONS\n"
+            + "TITLE=first spectrum\n"
+            + "PEPMASS=500.25 1200.5\n"
+            + "CHARGE=2+ and 3+\n"
+            + "100.1 20.0\n"
+            + "# comment\n"
+            + "  150.125\t1e3\n"
+            + "200.2 not-a-number\n"
+            + "250.5\n"
+            + "END IONS\n"
+            + "\n"
+            + "BEGIN IONS\r\n"
+            + "TITLE=second spectrum\r\n"
+            + "PEPMASS=612.3\r\n"
+            + "300.3 30.0\r\n"
+            + "END IONS\r\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void spectrumIsParsedTest() throws Exception {
+        try (MappedMgfFileReader reader = open()) {
+            assertEquals(2, reader.getSpectraCount());
+
+            PeakArraySpectrum spectrum = (PeakArraySpectrum) reader.getSpectrumById("1");
+            assertEquals("1", spectrum.getId());
+            assertEquals(Integer.valueOf(2), spectrum.getMsLevel());
+            assertEquals(Double.valueOf(500.25), spectrum.getPrecursorMZ());
+            assertEquals(Double.valueOf(1200.5), spectrum.getPrecursorIntensity());
+            assertEquals(Integer.valueOf(2), spectrum.getPrecursorCharge());
+            // the comment and the line with an invalid intensity are ignored, a missing intensity is 0
+            assertArrayEquals(new double[]{100.1, 150.125, 250.5}, spectrum.mzArray(), 0);
+            assertArrayEquals(new double[]{20.0, 1000.0, 0.0}, spectrum.intensityArray(), 0);
+        }
+    }
+
+    @Test
+    public void spectrumIsFoundByTitleTest() throws Exception {
+        try (MappedMgfFileReader reader = open()) {
+            PeakArraySpectrum spectrum = (PeakArraySpectrum) reader.getSpectrumById("second spectrum");
+            assertEquals(Double.valueOf(612.3), spectrum.getPrecursorMZ());
+            assertNull(spectrum.getPrecursorIntensity());
+            assertNull(spectrum.getPrecursorCharge());
+            assertArrayEquals(new double[]{300.3}, spectrum.mzArray(), 0);
+            assertEquals(1, spectrum.getPeakList().size());
+        }
+    }
+
+    @Test(expected = JMzReaderException.class)
+    public void missingSpectrumTest() throws Exception {
+        try (MappedMgfFileReader reader = open()) {
+            reader.getSpectrumById("3");
+        }
+    }
+
+    @Test
+    public void numbersAreParsedAsDoubleParseDoubleTest() {
+        String[] numbers = {"0", "-0.5", "+12", ".75", "1.", "123.456789012", "0.000001234", "1E-5", "6.02e23",
+                "1234567890.123456789012", "9007199254740993", "4.9e-324", "1e400", "17976931348623157e292",
+                "0.30000000000000004", "1405.7251408299998"};
+        for (String number : numbers)
+            assertEquals(number, Double.parseDouble(number), parse(number), 0);
+
+        String[] invalid = {"", "-", ".", "1.2.3", "12a", "1e", "e5"};
+        for (String number : invalid)
+            assertTrue(number, Double.isNaN(parse(number)));
+    }
+
+    @Test
+    public void chargeIsParsedTest() {
+        assertEquals(Integer.valueOf(2), charge("2+"));
+        assertEquals(Integer.valueOf(-3), charge("3-"));
+        assertEquals(Integer.valueOf(2), charge("+2"));
+        assertEquals(Integer.valueOf(1), charge(" 1 and 2"));
+        assertNull(charge(""));
+    }
+
+    private MappedMgfFileReader open() throws IOException {
+        File file = folder.newFile("spectra.mgf");
+        Files.write(file.toPath(), MGF.getBytes(StandardCharsets.UTF_8));
+        return new MappedMgfFileReader(file, SpectrumOffsetIndex.build(file, SubmissionPipelineConstants.FileType.MGF));
+    }
+
+    private static double parse(String number) {
+        ByteBuffer bytes = ByteBuffer.wrap(("x" + number + "x").getBytes(StandardCharsets.US_ASCII));
+        return AsciiNumbers.parseDouble(bytes, 1, number.length() + 1);
+    }
+
+    private static Integer charge(String charge) {
+        ByteBuffer bytes = ByteBuffer.wrap(charge.getBytes(StandardCharsets.US_ASCII));
+        return MappedMgfFileReader.parseCharge(bytes, 0, charge.length());
+    }
+}
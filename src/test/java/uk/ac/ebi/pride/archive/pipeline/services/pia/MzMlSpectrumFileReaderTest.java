@@ -0,0 +1,141 @@
+package uk.ac.ebi.pride.archive.pipeline.services.pia;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.ebi.pride.archive.pipeline.services.spectra.PeakArraySpectrum;
+import uk.ac.ebi.pride.archive.pipeline.utility.SubmissionPipelineConstants;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Base64;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests of the {@link MzMlSpectrumFileReader}.
+ */
+public class MzMlSpectrumFileReaderTest {
+
+    private static final double[] MZ = {100.123456789, 250.5, 1999.987654321};
+    private static final double[] INTENSITIES = {10.5, 2000.25, 3.0};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void arraysAreDecodedTest() throws Exception {
+        String mzML = "<mzML><run><spectrumList count=\"2\">\n"
+                + "<spectrum index=\"0\" id=\"scan=1\" defaultArrayLength=\"3\">\n"
+                + "  <cvParam cvRef=\"MS\" accession=\"MS:1000511\" name=\"ms level\" value=\"2\"/>\n"
+                + "  <precursorList count=\"1\"><precursor><selectedIonList count=\"2\">\n"
+                + "    <selectedIon>\n"
+                + "      <cvParam cvRef=\"MS\" accession=\"MS:1000744\" name=\"selected ion m/z\" value=\"445.34\"/>\n"
+                + "      <cvParam cvRef=\"MS\" accession=\"MS:1000041\" name=\"charge state\" value=\"2\"/>\n"
+                + "      <cvParam cvRef=\"MS\" accession=\"MS:1000042\" name=\"peak intensity\" value=\"1.2e5\"/>\n"
+                + "    </selectedIon>\n"
+                + "    <selectedIon><cvParam cvRef=\"MS\" accession=\"MS:1000744\" value=\"1.0\"/></selectedIon>\n"
+                + "  </selectedIonList></precursor></precursorList>\n"
+                + "  <binaryDataArrayList count=\"2\">\n"
+                + "    <binaryDataArray encodedLength=\"0\">\n"
+                + "      <cvParam cvRef=\"MS\" accession=\"MS:1000523\" name=\"64-bit float\"/>\n"
+                + "      <cvParam cvRef=\"MS\" accession=\"MS:1000574\" name=\"zlib compression\"/>\n"
+                + "      <cvParam cvRef=\"MS\" accession=\"MS:1000514\" name=\"m/z array\"/>\n"
+                + "      <binary>" + encode(MZ, true, true) + "</binary>\n"
+                + "    </binaryDataArray>\n"
+                + "    <binaryDataArray encodedLength=\"0\">\n"
+                + "      <cvParam cvRef=\"MS\" accession=\"MS:1000521\" name=\"32-bit float\"/>\n"
+                + "      <cvParam cvRef=\"MS\" accession=\"MS:1000576\" name=\"no compression\"/>\n"
+                + "      <cvParam cvRef=\"MS\" accession=\"MS:1000515\" name=\"intensity array\"/>\n"
+                + "      <binary>" + encode(INTENSITIES, false, false) + "</binary>\n"
+                + "    </binaryDataArray>\n"
+                + "  </binaryDataArrayList>\n"
+                + "</spectrum>\n"
+                + "<spectrum index=\"1\" id=\"scan=2\" defaultArrayLength=\"0\">\n"
+                + "  <cvParam cvRef=\"MS\" accession=\"MS:1000511\" name=\"ms level\" value=\"1\"/>\n"
+                + "  <binaryDataArrayList count=\"2\">\n"
+                + "    <binaryDataArray encodedLength=\"0\">\n"
+                + "      <cvParam cvRef=\"MS\" accession=\"MS:1000523\"/><cvParam cvRef=\"MS\" accession=\"MS:1000574\"/>\n"
+                + "      <cvParam cvRef=\"MS\" accession=\"MS:1000514\"/><binary/>\n"
+                + "    </binaryDataArray>\n"
+                + "    <binaryDataArray encodedLength=\"0\">\n"
+                + "      <cvParam cvRef=\"MS\" accession=\"MS:1000523\"/><cvParam cvRef=\"MS\" accession=\"MS:1000574\"/>\n"
+                + "      <cvParam cvRef=\"MS\" accession=\"MS:1000515\"/><binary></binary>\n"
+                + "    </binaryDataArray>\n"
+                + "  </binaryDataArrayList>\n"
+                + "</spectrum>\n"
+                + "</spectrumList></run></mzML>";
+
+        try (MzMlSpectrumFileReader reader = open(mzML)) {
+            assertEquals(2, reader.getSpectraCount());
+
+            PeakArraySpectrum spectrum = (PeakArraySpectrum) reader.getSpectrumById("scan=1");
+            assertEquals(Integer.valueOf(2), spectrum.getMsLevel());
+            assertEquals(Double.valueOf(445.34), spectrum.getPrecursorMZ());
+            assertEquals(Integer.valueOf(2), spectrum.getPrecursorCharge());
+            assertEquals(Double.valueOf(1.2e5), spectrum.getPrecursorIntensity());
+            assertArrayEquals(MZ, spectrum.mzArray(), 0);
+            assertArrayEquals(INTENSITIES, spectrum.intensityArray(), 0);
+
+            spectrum = (PeakArraySpectrum) reader.getSpectrumById("scan=2");
+            assertEquals(Integer.valueOf(1), spectrum.getMsLevel());
+            assertNull(spectrum.getPrecursorMZ());
+            assertEquals(0, spectrum.size());
+        }
+    }
+
+    @Test
+    public void unsupportedArraysAreNotDecodedTest() throws Exception {
+        String spectrum = "<spectrum index=\"0\" id=\"scan=1\" defaultArrayLength=\"3\">\n"
+                + "  <binaryDataArray encodedLength=\"0\">\n"
+                + "    <cvParam cvRef=\"MS\" accession=\"MS:1000523\"/>\n"
+                + "    <cvParam cvRef=\"MS\" accession=\"MS:1002312\" name=\"MS-Numpress linear prediction compression\"/>\n"
+                + "    <cvParam cvRef=\"MS\" accession=\"MS:1000514\"/><binary>AAAA</binary>\n"
+                + "  </binaryDataArray>\n"
+                + "</spectrum>";
+
+        try (MzMlSpectrumFileReader reader = open("<mzML>" + spectrum + "</mzML>")) {
+            ByteBuffer bytes = ByteBuffer.wrap(spectrum.getBytes(StandardCharsets.UTF_8));
+            assertNull(reader.parse("scan=1", bytes));
+        }
+    }
+
+    private MzMlSpectrumFileReader open(String mzML) throws IOException {
+        File file = folder.newFile("spectra.mzML");
+        Files.write(file.toPath(), mzML.getBytes(StandardCharsets.UTF_8));
+        SpectrumOffsetIndex index = SpectrumOffsetIndex.build(file, SubmissionPipelineConstants.FileType.MZML);
+        return new MzMlSpectrumFileReader(file, index);
+    }
+
+    private static String encode(double[] values, boolean float64, boolean zlib) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * (float64 ? 8 : 4)).order(ByteOrder.LITTLE_ENDIAN);
+        for (double value : values) {
+            if (float64)
+                buffer.putDouble(value);
+            else
+                buffer.putFloat((float) value);
+        }
+        byte[] bytes = buffer.array();
+        if (zlib) {
+            Deflater deflater = new Deflater();
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            byte[] chunk = new byte[64];
+            while (!deflater.finished())
+                compressed.write(chunk, 0, deflater.deflate(chunk));
+            deflater.end();
+            bytes = compressed.toByteArray();
+        }
+        // the binary elements of the converters are often wrapped
+        return Base64.getMimeEncoder(16, "\n".getBytes(StandardCharsets.US_ASCII)).encodeToString(bytes);
+    }
+}
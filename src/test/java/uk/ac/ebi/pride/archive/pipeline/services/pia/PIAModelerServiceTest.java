@@ -0,0 +1,257 @@
+package uk.ac.ebi.pride.archive.pipeline.services.pia;
+
+import de.mpc.pia.intermediate.Accession;
+import de.mpc.pia.intermediate.compiler.PIACompiler;
+import de.mpc.pia.intermediate.compiler.PIASimpleCompiler;
+import de.mpc.pia.intermediate.compiler.parser.InputFileParserFactory;
+import de.mpc.pia.modeller.PIAModeller;
+import de.mpc.pia.modeller.peptide.ReportPeptide;
+import de.mpc.pia.modeller.protein.ReportProtein;
+import de.mpc.pia.modeller.protein.inference.OccamsRazorInference;
+import de.mpc.pia.modeller.protein.scoring.AbstractScoring;
+import de.mpc.pia.modeller.protein.scoring.MultiplicativeScoring;
+import de.mpc.pia.modeller.protein.scoring.settings.PSMForScoring;
+import de.mpc.pia.modeller.psm.ReportPSM;
+import de.mpc.pia.modeller.report.filter.AbstractFilter;
+import de.mpc.pia.modeller.report.filter.FilterComparator;
+import de.mpc.pia.modeller.report.filter.RegisteredFilters;
+import de.mpc.pia.modeller.report.filter.impl.PSMScoreFilter;
+import de.mpc.pia.modeller.score.FDRData;
+import de.mpc.pia.modeller.score.ScoreModelEnum;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ebi.pride.archive.pipeline.utility.SubmissionPipelineConstants;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * The single-pass inference of the assay analysis (PSM level FDR computed once, protein inference with the
+ * thresholds and, only when needed, without threshold) must report the same PSMs, peptides and proteins as the
+ * previous double filtering run, for an assay that passes the validation and for an assay without decoys. The
+ * previous run is a copy of the previous implementation ({@link #legacyCompile}, {@link #legacyFilteringInference}),
+ * so it doesn't depend on the service.
+ */
+public class PIAModelerServiceTest {
+
+    private static final String ASSAY_ID = "1";
+    private static final double PSM_Q_THRESHOLD = 0.01;
+    private static final double PROTEIN_Q_THRESHOLD = 0.01;
+
+    private String filePath;
+    private String noDecoyFilePath;
+
+    @Before
+    public void setUp() throws Exception {
+        filePath = getResourcePath("pia/inference-regression.mzid");
+        noDecoyFilePath = getResourcePath("pia/inference-no-decoy.mzid");
+    }
+
+    private String getResourcePath(String resource) throws Exception {
+        return new File(getClass().getClassLoader().getResource(resource).toURI()).getAbsolutePath();
+    }
+
+    @Test
+    public void singlePassInferenceReportsTheSameItemsTest() throws Exception {
+        PIAModelerService service = new PIAModelerService();
+
+        // previous implementation: inference without threshold, then inference with the thresholds
+        PIAModeller legacy = legacyFilteringInference(legacyCompile(filePath), 1.0, 1.0);
+        List<AbstractFilter> legacyFilters = sourceFilters();
+        List<String> legacyAllPsms = describePsms(legacy.getPSMModeller().getFilteredReportPSMs(1L, legacyFilters));
+        List<String> legacyAllPeptides = describePeptides(legacy.getPeptideModeller()
+                .getFilteredReportPeptides(1L, legacyFilters));
+        List<String> legacyAllProteins = describeProteins(legacy.getProteinModeller()
+                .getFilteredReportProteins(legacyFilters));
+
+        legacy = legacyFilteringInference(legacy, PSM_Q_THRESHOLD, PROTEIN_Q_THRESHOLD);
+        legacyFilters.add(highQualityFilter());
+        List<String> legacyPsms = describePsms(legacy.getPSMModeller().getFilteredReportPSMs(1L, legacyFilters));
+        List<String> legacyPeptides = describePeptides(legacy.getPeptideModeller()
+                .getFilteredReportPeptides(1L, legacyFilters));
+        List<String> legacyProteins = describeProteins(legacy.getProteinModeller()
+                .getFilteredReportProteins(legacyFilters));
+
+        // single pass
+        PIAModeller modeller = service.performPSMLevelInference(ASSAY_ID, filePath,
+                SubmissionPipelineConstants.FileType.MZID, 1.0);
+        List<AbstractFilter> filters = sourceFilters();
+        List<String> allPsms = describePsms(modeller.getPSMModeller().getFilteredReportPSMs(1L, filters));
+
+        modeller = service.performProteinLevelInference(modeller, PSM_Q_THRESHOLD, PROTEIN_Q_THRESHOLD);
+        List<AbstractFilter> highQualityFilters = new ArrayList<>(filters);
+        highQualityFilters.add(highQualityFilter());
+        List<String> psms = describePsms(modeller.getPSMModeller().getFilteredReportPSMs(1L, highQualityFilters));
+        List<String> peptides = describePeptides(modeller.getPeptideModeller()
+                .getFilteredReportPeptides(1L, highQualityFilters));
+        List<String> proteins = describeProteins(modeller.getProteinModeller()
+                .getFilteredReportProteins(highQualityFilters));
+
+        modeller = service.performProteinLevelInference(modeller, 1.0, 1.0);
+        List<String> allPeptides = describePeptides(modeller.getPeptideModeller()
+                .getFilteredReportPeptides(1L, filters));
+        List<String> allProteins = describeProteins(modeller.getProteinModeller().getFilteredReportProteins(filters));
+
+        assertFalse(legacyProteins.isEmpty());
+        // the PSM filters of the file are set once by the PSM level inference
+        assertEquals(2, modeller.getPSMModeller().getFilters(1L).size());
+
+        assertEquals(legacyAllPsms, allPsms);
+        assertEquals(legacyAllPeptides, allPeptides);
+        assertEquals(legacyAllProteins, allProteins);
+        assertEquals(legacyPsms, psms);
+        assertEquals(legacyPeptides, peptides);
+        assertEquals(legacyProteins, proteins);
+    }
+
+    @Test
+    public void singlePassInferenceReportsAllTheItemsWithoutDecoysTest() throws Exception {
+        PIAModelerService service = new PIAModelerService();
+
+        // previous implementation: the items of the inference without threshold are reported
+        PIAModeller legacy = legacyFilteringInference(legacyCompile(noDecoyFilePath), 1.0, 1.0);
+        List<AbstractFilter> legacyFilters = sourceFilters();
+        List<String> legacyAllPsms = describePsms(legacy.getPSMModeller().getFilteredReportPSMs(1L, legacyFilters));
+        List<String> legacyAllPeptides = describePeptides(legacy.getPeptideModeller()
+                .getFilteredReportPeptides(1L, legacyFilters));
+        List<String> legacyAllProteins = describeProteins(legacy.getProteinModeller()
+                .getFilteredReportProteins(legacyFilters));
+
+        // single pass: the assay doesn't pass the validation, the inference is performed again without threshold
+        PIAModeller modeller = service.performPSMLevelInference(ASSAY_ID, noDecoyFilePath,
+                SubmissionPipelineConstants.FileType.MZID, 1.0);
+        long decoys = modeller.getPSMModeller().getReportPSMSets().values().stream()
+                .filter(psmSet -> psmSet.getIsDecoy())
+                .count();
+        List<AbstractFilter> filters = sourceFilters();
+        List<String> allPsms = describePsms(modeller.getPSMModeller().getFilteredReportPSMs(1L, filters));
+
+        modeller = service.performProteinLevelInference(modeller, PSM_Q_THRESHOLD, PROTEIN_Q_THRESHOLD);
+        modeller = service.performProteinLevelInference(modeller, 1.0, 1.0);
+        List<String> allPeptides = describePeptides(modeller.getPeptideModeller()
+                .getFilteredReportPeptides(1L, filters));
+        List<String> allProteins = describeProteins(modeller.getProteinModeller().getFilteredReportProteins(filters));
+
+        assertEquals(0, decoys);
+        assertFalse(legacyAllProteins.isEmpty());
+        assertEquals(2, modeller.getPSMModeller().getFilters(1L).size());
+
+        assertEquals(legacyAllPsms, allPsms);
+        assertEquals(legacyAllPeptides, allPeptides);
+        assertEquals(legacyAllProteins, allProteins);
+    }
+
+    /**
+     * Compilation of the assay file of the previous implementation.
+     */
+    private static PIAModeller legacyCompile(String filePath) throws IOException {
+        PIACompiler piaCompiler = new PIASimpleCompiler();
+        piaCompiler.getDataFromFile(ASSAY_ID, filePath, null,
+                InputFileParserFactory.InputFileTypes.MZIDENTML_INPUT.getFileTypeShort());
+        piaCompiler.buildClusterList();
+        piaCompiler.buildIntermediateStructure();
+
+        File inferenceTempFile = File.createTempFile(ASSAY_ID, ".tmp");
+        inferenceTempFile.deleteOnExit();
+        piaCompiler.writeOutXML(inferenceTempFile);
+        piaCompiler.finish();
+        return new PIAModeller(inferenceTempFile.getAbsolutePath());
+    }
+
+    /**
+     * PSM level FDR and protein inference of the previous implementation: the PSM filters of the file are added on
+     * every call and the PSM level FDR is computed again.
+     */
+    private static PIAModeller legacyFilteringInference(PIAModeller piaModeller, double psmQThreshold,
+                                                        double proteinQThreshold) {
+        piaModeller.setCreatePSMSets(true);
+
+        piaModeller.getPSMModeller().setAllDecoyPattern("searchengine");
+        piaModeller.getPSMModeller().setAllTopIdentifications(0);
+
+        piaModeller.getPSMModeller().addFilter(1L, new PSMScoreFilter(FilterComparator.less_equal,
+                false, psmQThreshold, ScoreModelEnum.PSM_LEVEL_FDR_SCORE.getShortName()));
+
+        piaModeller.getPSMModeller().addFilter(1L, RegisteredFilters.PSM_SOURCE_ID_FILTER
+                .newInstanceOf(FilterComparator.equal, "index=null", true));
+
+        piaModeller.getPSMModeller().calculateAllFDR();
+        piaModeller.getPSMModeller().calculateCombinedFDRScore();
+        piaModeller.setConsiderModifications(true);
+
+        // protein level
+        OccamsRazorInference seInference = new OccamsRazorInference();
+
+        seInference.addFilter(new PSMScoreFilter(FilterComparator.less_equal,
+                false, psmQThreshold, ScoreModelEnum.PSM_LEVEL_FDR_SCORE.getShortName()));
+        seInference.addFilter(RegisteredFilters.PSM_SOURCE_ID_FILTER
+                .newInstanceOf(FilterComparator.equal, "index=null", true));
+
+        seInference.setScoring(new MultiplicativeScoring(new HashMap<>()));
+        seInference.getScoring()
+                .setSetting(AbstractScoring.SCORING_SETTING_ID,
+                        ScoreModelEnum.PSM_LEVEL_FDR_SCORE.getShortName());
+        seInference.getScoring()
+                .setSetting(AbstractScoring.SCORING_SPECTRA_SETTING_ID,
+                        PSMForScoring.ONLY_BEST.getShortName());
+
+        piaModeller.getProteinModeller().infereProteins(seInference);
+
+        piaModeller.getProteinModeller()
+                .updateFDRData(FDRData.DecoyStrategy.SEARCHENGINE, "searchengine", proteinQThreshold);
+        piaModeller.getProteinModeller().updateDecoyStates();
+        piaModeller.getProteinModeller().calculateFDR();
+        piaModeller.getPeptideModeller().calculateFDR(1L);
+
+        return piaModeller;
+    }
+
+    private static List<AbstractFilter> sourceFilters() {
+        List<AbstractFilter> filters = new ArrayList<>();
+        filters.add(RegisteredFilters.PSM_SOURCE_ID_FILTER
+                .newInstanceOf(FilterComparator.equal, "index=null", true));
+        return filters;
+    }
+
+    private static AbstractFilter highQualityFilter() {
+        return new PSMScoreFilter(FilterComparator.less_equal, false,
+                PSM_Q_THRESHOLD, ScoreModelEnum.PSM_LEVEL_Q_VALUE.getShortName());
+    }
+
+    private static List<String> describePsms(List<ReportPSM> psms) {
+        return psms.stream()
+                .map(psm -> String.join("|", psm.getSourceID(), psm.getSequence(), String.valueOf(psm.getCharge()),
+                        String.valueOf(psm.getIsDecoy()),
+                        String.valueOf(psm.getScore(ScoreModelEnum.PSM_LEVEL_FDR_SCORE.getShortName())),
+                        String.valueOf(psm.getScore(ScoreModelEnum.PSM_LEVEL_Q_VALUE.getShortName()))))
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    private static List<String> describePeptides(List<ReportPeptide> peptides) {
+        return peptides.stream()
+                .map(peptide -> String.join("|", peptide.getStringID(), String.valueOf(peptide.getIsDecoy()),
+                        String.valueOf(peptide.getQValue()), String.valueOf(peptide.getScore("peptide_fdr_score")),
+                        String.valueOf(peptide.getNrPSMs())))
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    private static List<String> describeProteins(List<ReportProtein> proteins) {
+        return proteins.stream()
+                .map(protein -> String.join("|", protein.getRepresentative().getAccession(),
+                        protein.getAccessions().stream().map(Accession::getAccession).sorted()
+                                .collect(Collectors.joining(",")),
+                        String.valueOf(protein.getIsDecoy()), String.valueOf(protein.getScore()),
+                        String.valueOf(protein.getQValue()), String.valueOf(protein.getNrPeptides())))
+                .sorted()
+                .collect(Collectors.toList());
+    }
+}
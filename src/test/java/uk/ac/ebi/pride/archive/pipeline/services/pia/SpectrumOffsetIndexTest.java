@@ -0,0 +1,132 @@
+package uk.ac.ebi.pride.archive.pipeline.services.pia;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.ebi.pride.archive.pipeline.utility.SubmissionPipelineConstants;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the {@link SpectrumOffsetIndex} and the {@link SpectrumOffsetIndexStore}.
+ */
+public class SpectrumOffsetIndexTest {
+
+    private static final String MGF = "MASS=Monoisotopic\n"
+            + "BEGIN IONS\n"
+            + "TITLE=first spectrum\n"
+            + "PEPMASS=500.25\n"
+            + "CHARGE=2+\n"
+            + "100.1 20.0\n"
+            + "END IONS\n"
+            + "\n"
+            + "BEGIN IONS\r\n"
+            + "TITLE=second spectrum\r\n"
+            + "PEPMASS=612.3\r\n"
+            + "200.2 30.0\r\n"
+            + "END IONS\r\n";
+
+    private static final String MZML = "<mzML><run><spectrumList count=\"2\">\n"
+            + "<spectrum index=\"0\" id=\"scan=1\" defaultArrayLength=\"1\"><cvParam name=\"ms level\" value=\"1\"/></spectrum>\n"
+            + "<spectrum\tid=\"scan=2\" index=\"1\"><binaryDataArrayList count=\"0\"/></spectrum>\n"
+            + "</spectrumList></run></mzML>";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void mgfIndexTest() throws IOException {
+        File file = write("spectra.mgf", MGF);
+        SpectrumOffsetIndex index = SpectrumOffsetIndex.build(file, SubmissionPipelineConstants.FileType.MGF);
+
+        assertEquals(2, index.size());
+        assertEquals(0, index.findById("1"));
+        assertEquals(1, index.findById("2"));
+        assertEquals(-1, index.findById("3"));
+        assertEquals(1, index.findByTitle("second spectrum"));
+        assertEquals("first spectrum", index.getTitle(0));
+        assertTrue(spectrum(file, index, 0).startsWith("BEGIN IONS\n"));
+        assertTrue(spectrum(file, index, 0).endsWith("END IONS\n"));
+        assertTrue(spectrum(file, index, 1).startsWith("BEGIN IONS\r\nTITLE=second"));
+        assertTrue(spectrum(file, index, 1).endsWith("END IONS\r\n"));
+    }
+
+    @Test
+    public void mzMLIndexTest() throws IOException {
+        File file = write("spectra.mzML", MZML);
+        SpectrumOffsetIndex index = SpectrumOffsetIndex.build(file, SubmissionPipelineConstants.FileType.MZML);
+
+        assertEquals(2, index.size());
+        assertEquals(1, index.findById("scan=2"));
+        assertNull(index.getTitle(0));
+        assertTrue(spectrum(file, index, 0).startsWith("<spectrum index=\"0\" id=\"scan=1\""));
+        assertTrue(spectrum(file, index, 1).endsWith("</spectrum>"));
+    }
+
+    @Test
+    public void storedIndexIsReusedUntilTheFileChangesTest() throws IOException {
+        File file = write("spectra.mgf", MGF);
+        SpectrumOffsetIndexStore store = new SpectrumOffsetIndexStore(null);
+
+        SpectrumOffsetIndex index = store.getIndex(file, SubmissionPipelineConstants.FileType.MGF);
+        File indexFile = store.getIndexFile(file);
+        assertTrue(indexFile.isFile());
+        // the stored index is memory-mapped
+        assertEquals(0, index.getHeapSize());
+        assertEquals(1, index.findByTitle("second spectrum"));
+        long indexModified = indexFile.lastModified();
+        index.close();
+
+        index = store.getIndex(file, SubmissionPipelineConstants.FileType.MGF);
+        assertEquals(indexModified, indexFile.lastModified());
+        assertEquals(2, index.size());
+        index.close();
+
+        Files.write(file.toPath(), (MGF + "BEGIN IONS\nTITLE=third\nEND IONS\n").getBytes(StandardCharsets.UTF_8));
+        index = store.getIndex(file, SubmissionPipelineConstants.FileType.MGF);
+        assertEquals(3, index.size());
+        assertTrue(index.isValidFor(file));
+        index.close();
+    }
+
+    @Test
+    public void corruptedIndexIsRebuiltTest() throws IOException {
+        File file = write("spectra.mgf", MGF);
+        File cache = folder.newFolder("cache");
+        SpectrumOffsetIndexStore store = new SpectrumOffsetIndexStore(cache);
+        File indexFile = store.getIndexFile(file);
+        assertEquals(cache, indexFile.getParentFile());
+        assertNotEquals(indexFile, new SpectrumOffsetIndexStore(cache).getIndexFile(folder.newFile("other.mgf")));
+
+        Files.write(indexFile.toPath(), new byte[]{1, 2, 3});
+        SpectrumOffsetIndex index = store.getIndex(file, SubmissionPipelineConstants.FileType.MGF);
+        assertEquals(2, index.size());
+        assertFalse(indexFile.length() == 3);
+        index.close();
+    }
+
+    private File write(String name, String content) throws IOException {
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static String spectrum(File file, SpectrumOffsetIndex index, int position) throws IOException {
+        byte[] bytes = new byte[index.getLength(position)];
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            randomAccessFile.seek(index.getOffset(position));
+            randomAccessFile.readFully(bytes);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,98 @@
+package uk.ac.ebi.pride.archive.pipeline.services.pia;
+
+import org.junit.Test;
+import uk.ac.ebi.pride.archive.pipeline.utility.SubmissionPipelineConstants;
+import uk.ac.ebi.pride.tools.jmzreader.JMzReaderException;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests of the {@link SpectrumReaderPool} with mocked readers.
+ */
+public class SpectrumReaderPoolTest {
+
+    private static final SubmissionPipelineConstants.FileType MGF = SubmissionPipelineConstants.FileType.MGF;
+    private static final long INDEX_BYTES_PER_SPECTRUM = 200;
+
+    private final Map<String, Integer> opened = new HashMap<>();
+
+    private SpectrumFileReader openReader(String filePath, int spectra) {
+        opened.merge(filePath, 1, Integer::sum);
+        SpectrumFileReader reader = mock(SpectrumFileReader.class);
+        when(reader.getSpectraCount()).thenReturn(spectra);
+        when(reader.getIndexMemory()).thenReturn(spectra * INDEX_BYTES_PER_SPECTRUM);
+        return reader;
+    }
+
+    @Test
+    public void readersAreOpenedOnFirstAccessTest() throws JMzReaderException {
+        SpectrumReaderPool pool = new SpectrumReaderPool(10, Long.MAX_VALUE, (path, type) -> openReader(path, 10));
+        assertEquals(0, pool.getOpenReaders());
+
+        SpectrumFileReader first = pool.read("a.mgf", MGF, reader -> reader);
+        SpectrumFileReader second = pool.read("a.mgf", MGF, reader -> reader);
+
+        assertSame(first, second);
+        assertEquals(1, pool.getOpenReaders());
+        assertEquals(Integer.valueOf(1), opened.get("a.mgf"));
+        assertEquals(10 * INDEX_BYTES_PER_SPECTRUM, pool.getIndexMemory());
+    }
+
+    @Test
+    public void leastRecentlyUsedReaderIsClosedTest() throws Exception {
+        SpectrumReaderPool pool = new SpectrumReaderPool(2, Long.MAX_VALUE, (path, type) -> openReader(path, 10));
+
+        SpectrumFileReader a = pool.read("a.mgf", MGF, reader -> reader);
+        SpectrumFileReader b = pool.read("b.mgf", MGF, reader -> reader);
+        pool.read("a.mgf", MGF, reader -> reader);
+        pool.read("c.mgf", MGF, reader -> reader);
+
+        assertEquals(2, pool.getOpenReaders());
+        assertEquals(1, pool.getEvictedReaders());
+        verify(b).close();
+        verify(a, never()).close();
+
+        // an evicted reader is opened again
+        pool.read("b.mgf", MGF, reader -> reader);
+        assertEquals(Integer.valueOf(2), opened.get("b.mgf"));
+    }
+
+    @Test
+    public void indexMemoryLimitsOpenReadersTest() throws Exception {
+        long readerMemory = 100 * INDEX_BYTES_PER_SPECTRUM;
+        SpectrumReaderPool pool = new SpectrumReaderPool(10, readerMemory * 2, (path, type) -> openReader(path, 100));
+
+        pool.read("a.mgf", MGF, reader -> reader);
+        pool.read("b.mgf", MGF, reader -> reader);
+        pool.read("c.mgf", MGF, reader -> reader);
+
+        assertEquals(2, pool.getOpenReaders());
+        assertEquals(readerMemory * 2, pool.getIndexMemory());
+    }
+
+    @Test
+    public void readerInUseIsNotClosedTest() throws Exception {
+        SpectrumReaderPool pool = new SpectrumReaderPool(1, Long.MAX_VALUE, (path, type) -> openReader(path, 10));
+
+        SpectrumFileReader a = pool.read("a.mgf", MGF, outer -> {
+            // the reader of a.mgf is being read while b.mgf is opened
+            pool.read("b.mgf", MGF, inner -> inner);
+            return outer;
+        });
+
+        verify(a, never()).close();
+        assertEquals(1, pool.getOpenReaders());
+
+        pool.close();
+        verify(a).close();
+        assertEquals(0, pool.getOpenReaders());
+    }
+}
@@ -0,0 +1,133 @@
+package uk.ac.ebi.pride.archive.pipeline.services.pia;
+
+import de.mpc.pia.intermediate.Modification;
+import de.mpc.pia.modeller.peptide.ReportPeptide;
+import de.mpc.pia.modeller.psm.ReportPSM;
+import org.junit.Test;
+import uk.ac.ebi.pride.archive.pipeline.utility.SubmissionPipelineConstants;
+import uk.ac.ebi.pride.archive.pipeline.utility.SubmissionPipelineConstants.FileType;
+import uk.ac.ebi.pride.archive.pipeline.utility.SubmissionPipelineConstants.SpecIdFormat;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests of the {@link UsiEncoder}. The expected USIs are the ones of the previous implementation
+ * (string concatenation, {@code split("scan=")} and {@code Paths.get}), the USIs must not change.
+ */
+public class UsiEncoderTest {
+
+    private static final String PROJECT = "PXD000001";
+
+    @Test
+    public void goldenUsisTest() {
+        UsiEncoder encoder = new UsiEncoder();
+        SpectrumReferenceIndex.SpectrumFileReference mgf = reference("spectra.mgf", FileType.MGF,
+                SpecIdFormat.MULTI_PEAK_LIST_NATIVE_ID);
+        SpectrumReferenceIndex.SpectrumFileReference mzml = reference("run.mzML", FileType.MZML, SpecIdFormat.MZML_ID);
+        SpectrumReferenceIndex.SpectrumFileReference mascot = reference("query.mgf", FileType.MGF,
+                SpecIdFormat.MASCOT_QUERY_NUM);
+
+        assertEquals("mzspec:PXD000001:spectra.mgf:index:11:PEPTIDEK/2",
+                usi(encoder, mgf, 1, psm("PEPTIDEK", null, 2, "index=10")));
+        assertEquals("mzspec:PXD000001:spectra.mgf:index:4:[UNIMOD:1]PEPM[UNIMOD:35]C[UNIMOD:4]K/3",
+                usi(encoder, mgf, 2, psm("PEPMCK", modifications(0, "UNIMOD:1", 4, "UNIMOD:35", 5, "UNIMOD:4"), 3,
+                        "index=3")));
+        assertEquals("mzspec:PXD000001:spectra.mgf:index:8:SAMPLER[UNIMOD:21]-[UNIMOD:2]/2",
+                usi(encoder, mgf, 3, psm("SAMPLER", modifications(7, "UNIMOD:21", 8, "UNIMOD:2"), 2, "index=7")));
+        assertEquals("mzspec:PXD000001:spectra.mgf:index:title=spectrum 5:PEPTIDEK/2",
+                usi(encoder, mgf, 1, psm("PEPTIDEK", new HashMap<>(), 2, "title=spectrum 5")));
+        assertEquals("mzspec:PXD000001:run.mzML:scan:42:M[UNIMOD:35]PEPTIDEK/4",
+                usi(encoder, mzml, 4, psm("MPEPTIDEK", modifications(1, "UNIMOD:35"), 4,
+                        "mzMLid=controllerType=0 controllerNumber=1 scan=42")));
+        assertEquals("mzspec:PXD000001:query.mgf:index:101:PEPTIDER/1",
+                usi(encoder, mascot, 5, psm("PEPTIDER", null, 1, "query=100")));
+
+        // the spectra of PRIDE XML files are identified by the source id of the PSM
+        SpectrumReferenceIndex.SpectrumFileReference prideXml = SpectrumReferenceIndex.buildForResultFile(PROJECT,
+                "/data/result.xml", "result.xml", null).getReference(null);
+        ReportPSM psm = psm("ACDK", modifications(2, "UNIMOD:4"), 2, "12");
+        assertEquals("mzspec:PXD000001:result.xml:index:12:AC[UNIMOD:4]DK/2", usi(encoder, prideXml, 6, psm));
+        assertEquals(SubmissionPipelineConstants.buildUsi(PROJECT, "result.xml", psm), usi(encoder, prideXml, 6, psm));
+    }
+
+    @Test
+    public void encodedPeptideTest() {
+        assertEquals("PEPTIDEK", SubmissionPipelineConstants.encodePeptide("PEPTIDEK", null));
+        assertEquals("PEPTIDEK", SubmissionPipelineConstants.encodePeptide("PEPTIDEK", new HashMap<>()));
+        assertEquals("[UNIMOD:1]PEPTIDEK-[UNIMOD:2]", SubmissionPipelineConstants.encodePeptide("PEPTIDEK",
+                modifications(0, "UNIMOD:1", 9, "UNIMOD:2")));
+        assertEquals("PEPTIDEK[UNIMOD:1]/3", SubmissionPipelineConstants.encodePSM("PEPTIDEK",
+                modifications(8, "UNIMOD:1"), 3));
+    }
+
+    @Test
+    public void encodedPeptideIsReusedByThePsmsOfThePeptideTest() {
+        UsiEncoder encoder = new UsiEncoder();
+        ReportPeptide peptide = peptide(1);
+        Map<Integer, Modification> oxidation = modifications(1, "UNIMOD:35");
+
+        String first = encoder.encodePeptide(peptide, "MPEPTIDEK", oxidation);
+        String second = encoder.encodePeptide(peptide, "MPEPTIDEK", new HashMap<>(oxidation));
+        assertEquals("M[UNIMOD:35]PEPTIDEK", first);
+        assertSame(first, second);
+
+        // PSMs of the same peptide with other modifications keep their own sequence
+        String unmodified = encoder.encodePeptide(peptide, "MPEPTIDEK", null);
+        assertEquals("MPEPTIDEK", unmodified);
+        String phospho = encoder.encodePeptide(peptide, "MPEPTIDEK", modifications(1, "UNIMOD:21"));
+        assertEquals("M[UNIMOD:21]PEPTIDEK", phospho);
+        assertSame(first, encoder.encodePeptide(peptide, "MPEPTIDEK", oxidation));
+
+        assertNotSame(first, encoder.encodePeptide(peptide(2), "MPEPTIDEK", oxidation));
+        assertEquals(2, encoder.size());
+    }
+
+    private static String usi(UsiEncoder encoder, SpectrumReferenceIndex.SpectrumFileReference reference,
+                              long peptideId, ReportPSM psm) {
+        String spectrumId = reference.getSpectrumId(psm);
+        String modifiedSequence = encoder.encodePeptide(peptide(peptideId), psm.getSequence(), psm.getModifications());
+        String usi = reference.buildUsi(psm, spectrumId, modifiedSequence);
+        assertEquals(reference.buildUsi(psm, spectrumId), usi);
+        return usi;
+    }
+
+    private static SpectrumReferenceIndex.SpectrumFileReference reference(String fileName, FileType fileType,
+                                                                          SpecIdFormat idFormat) {
+        return new SpectrumReferenceIndex.SpectrumFileReference(null, "/data/" + fileName, "/data/" + fileName,
+                fileName, fileType, idFormat, PROJECT);
+    }
+
+    private static ReportPSM psm(String sequence, Map<Integer, Modification> modifications, int charge, String sourceId) {
+        ReportPSM psm = mock(ReportPSM.class);
+        when(psm.getSequence()).thenReturn(sequence);
+        when(psm.getModifications()).thenReturn(modifications);
+        when(psm.getCharge()).thenReturn(charge);
+        when(psm.getSourceID()).thenReturn(sourceId);
+        return psm;
+    }
+
+    private static ReportPeptide peptide(long id) {
+        ReportPeptide peptide = mock(ReportPeptide.class, RETURNS_DEEP_STUBS);
+        when(peptide.getPeptide().getID()).thenReturn(id);
+        return peptide;
+    }
+
+    private static Map<Integer, Modification> modifications(Object... positionsAndAccessions) {
+        Map<Integer, Modification> modifications = new TreeMap<>();
+        for (int i = 0; i < positionsAndAccessions.length; i += 2) {
+            Modification modification = mock(Modification.class);
+            when(modification.getAccession()).thenReturn((String) positionsAndAccessions[i + 1]);
+            modifications.put((Integer) positionsAndAccessions[i], modification);
+        }
+        return modifications;
+    }
+}
@@ -0,0 +1,216 @@
+package uk.ac.ebi.pride.archive.pipeline.services.worker;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import redis.embedded.RedisServer;
+import uk.ac.ebi.pride.archive.pipeline.services.redis.RedisAssayAnalysisQueue;
+import uk.ac.ebi.pride.archive.pipeline.services.redis.RedisMessageNotifier;
+import uk.ac.ebi.pride.integration.message.model.impl.AssayDataGenerationPayload;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the {@link AssayAnalysisWorker} against an embedded Redis server, the assays are pushed with
+ * {@link RedisMessageNotifier} as PrideImportAssaysMongoJob does.
+ */
+public class AssayAnalysisWorkerTest {
+
+    private static final String QUEUE = "test.assay.analyse.queue";
+    private static final long TIMEOUT = 20000;
+
+    private RedisServer redisServer;
+    private JedisConnectionFactory connectionFactory;
+    private RedisMessageNotifier messageNotifier;
+    private RedisAssayAnalysisQueue queue;
+    private AssayAnalysisWorker worker;
+
+    @Before
+    public void setUp() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redisServer = new RedisServer(port);
+        redisServer.start();
+
+        connectionFactory = new JedisConnectionFactory(new RedisStandaloneConfiguration("localhost", port));
+        connectionFactory.afterPropertiesSet();
+        messageNotifier = new RedisMessageNotifier(connectionFactory);
+        queue = new RedisAssayAnalysisQueue(connectionFactory, QUEUE, "test-worker");
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (worker != null)
+            worker.stop();
+        connectionFactory.destroy();
+        redisServer.stop();
+    }
+
+    @Test
+    public void analysedAssaysAreAcknowledgedTest() throws Exception {
+        TestRunner runner = new TestRunner(2);
+        worker = new AssayAnalysisWorker(queue, runner, 2, 10000, 1000, 1, 60);
+        worker.start();
+
+        sendAssay("PXD000001", "1");
+        sendAssay("PXD000001", "2");
+        sendAssay("PXD000002", "3");
+
+        waitFor(() -> runner.analysed.size() == 3 && queue.processingSize() == 0);
+        assertEquals(0, queue.size());
+        assertEquals(0, queue.failedSize());
+        assertTrue(runner.analysed.contains("PXD000001-1"));
+        assertTrue(runner.analysed.contains("PXD000002-3"));
+    }
+
+    @Test
+    public void failedAssaysAreMovedToFailedListTest() throws Exception {
+        TestRunner runner = new TestRunner(1);
+        runner.failingAssay = "2";
+        worker = new AssayAnalysisWorker(queue, runner, 1, 10000, 1000, 1, 60);
+        worker.start();
+
+        sendAssay("PXD000001", "1");
+        sendAssay("PXD000001", "2");
+        new StringRedisTemplate(connectionFactory).opsForList().leftPush(QUEUE, "not an assay");
+        sendAssay("PXD000001", "3");
+
+        waitFor(() -> runner.analysed.size() == 2 && queue.failedSize() == 2 && queue.processingSize() == 0);
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void unfinishedAssaysAreRecoveredTest() throws Exception {
+        // message left in the processing list by a worker that died
+        messageNotifier.sendNotification(queue.getProcessingListName(),
+                new AssayDataGenerationPayload("PXD000001", "1"), AssayDataGenerationPayload.class);
+
+        TestRunner runner = new TestRunner(1);
+        worker = new AssayAnalysisWorker(queue, runner, 1, 10000, 1000, 1, 60);
+        worker.start();
+
+        waitFor(() -> runner.analysed.size() == 1 && queue.processingSize() == 0);
+        assertEquals("PXD000001-1", runner.analysed.get(0));
+    }
+
+    @Test
+    public void memoryBudgetLimitsConcurrentAnalysesTest() throws Exception {
+        TestRunner runner = new TestRunner(4);
+        runner.analysisTime = 300;
+        // 4 slots, but the memory budget only admits two assays at the same time
+        worker = new AssayAnalysisWorker(queue, runner, 4, 2000, 1000, 1, 60);
+        worker.start();
+
+        for (int i = 0; i < 6; i++)
+            sendAssay("PXD000001", String.valueOf(i));
+
+        waitFor(() -> runner.analysed.size() == 6 && queue.processingSize() == 0);
+        assertEquals(2, runner.maxConcurrent.get());
+    }
+
+    @Test
+    public void slotsAreLimitedByTheRunnerTest() {
+        worker = new AssayAnalysisWorker(queue, new TestRunner(1), 4, 10000, 1000, 1, 60);
+        assertEquals(1, worker.getSlots());
+    }
+
+    @Test
+    public void stopWaitsForRunningAnalysesTest() throws Exception {
+        TestRunner runner = new TestRunner(1);
+        runner.release = new CountDownLatch(1);
+        worker = new AssayAnalysisWorker(queue, runner, 1, 10000, 1000, 1, 60);
+        worker.start();
+
+        sendAssay("PXD000001", "1");
+        sendAssay("PXD000001", "2");
+        waitFor(() -> runner.running.get() == 1);
+
+        Thread stopThread = new Thread(() -> {
+            try {
+                worker.stop();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        stopThread.start();
+
+        // the running assay is not interrupted and not acknowledged until it finishes
+        Thread.sleep(1500);
+        assertTrue(stopThread.isAlive());
+        assertEquals(1, queue.processingSize());
+
+        runner.release.countDown();
+        stopThread.join(TIMEOUT);
+        worker = null;
+
+        assertEquals(1, runner.analysed.size());
+        assertEquals(0, queue.processingSize());
+        // the second assay has not been taken
+        assertEquals(1, queue.size());
+    }
+
+    private void sendAssay(String projectAccession, String assayAccession) {
+        messageNotifier.sendNotification(QUEUE, new AssayDataGenerationPayload(projectAccession, assayAccession),
+                AssayDataGenerationPayload.class);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long end = System.currentTimeMillis() + TIMEOUT;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timeout waiting for the worker", System.currentTimeMillis() < end);
+            Thread.sleep(50);
+        }
+    }
+
+    private static class TestRunner implements AssayAnalysisRunner {
+
+        private final int maxConcurrentAnalyses;
+        private final List<String> analysed = new CopyOnWriteArrayList<>();
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicInteger maxConcurrent = new AtomicInteger();
+        private volatile String failingAssay;
+        private volatile long analysisTime;
+        private volatile CountDownLatch release;
+
+        TestRunner(int maxConcurrentAnalyses) {
+            this.maxConcurrentAnalyses = maxConcurrentAnalyses;
+        }
+
+        @Override
+        public void analyse(String projectAccession, String assayAccession) throws Exception {
+            int current = running.incrementAndGet();
+            maxConcurrent.accumulateAndGet(current, Math::max);
+            try {
+                if (release != null)
+                    release.await(TIMEOUT, TimeUnit.MILLISECONDS);
+                if (analysisTime > 0)
+                    Thread.sleep(analysisTime);
+                if (assayAccession.equals(failingAssay))
+                    throw new IllegalStateException("Analysis failed -- " + assayAccession);
+                analysed.add(projectAccession + "-" + assayAccession);
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+
+        @Override
+        public int getMaxConcurrentAnalyses() {
+            return maxConcurrentAnalyses;
+        }
+    }
+}
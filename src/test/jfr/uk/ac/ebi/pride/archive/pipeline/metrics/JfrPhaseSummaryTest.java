@@ -0,0 +1,53 @@
+package uk.ac.ebi.pride.archive.pipeline.metrics;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class JfrPhaseSummaryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void phasesAreOnlyRecordedWhileProfilingTest() throws Exception {
+        assumeTrue(PipelineProfiler.isAvailable());
+        // without recording the spans are no-op
+        assertFalse(PipelineProfiler.isRecording());
+        PipelineProfiler.start(PipelineProfiler.Phase.DELTA_MASS, "PXD000000").close();
+
+        File file = new File(folder.getRoot(), "job.jfr");
+        JfrRecorder recorder = JfrRecorder.start("job", null, file);
+        assertTrue(PipelineProfiler.isRecording());
+        for (int i = 0; i < 3; i++) {
+            PipelineProfiler.Span span = PipelineProfiler.start(PipelineProfiler.Phase.SPECTRUM_READ, "PXD000001");
+            Thread.sleep(2);
+            span.close();
+        }
+        PipelineProfiler.start(PipelineProfiler.Phase.DELTA_MASS, "PXD000002").close();
+        PipelineProfiler.start(PipelineProfiler.Phase.MONGODB_BULK_INSERT, "PrideMongoPsmSummaryEvidence", null, 500)
+                .close();
+        assertEquals(file, recorder.stop());
+        assertFalse(PipelineProfiler.isRecording());
+
+        List<JfrPhaseSummary.PhaseTime> phases = JfrPhaseSummary.read(file.toPath(), null, false).getPhases();
+        assertEquals(3, phases.size());
+        assertEquals("spectrumRead", phases.get(0).getPhase());
+        assertEquals(3, phases.get(0).getCount());
+        assertTrue(phases.get(0).getTotalMillis() >= 6);
+
+        // the events without subject are kept with the subject filter
+        phases = JfrPhaseSummary.read(file.toPath(), "PXD000001", true).getPhases();
+        assertEquals(2, phases.size());
+        assertEquals("mongodbBulkInsert PrideMongoPsmSummaryEvidence", phases.get(1).getPhase());
+        assertEquals(500, phases.get(1).getItems());
+    }
+}